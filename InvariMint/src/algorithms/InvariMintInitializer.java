@@ -69,6 +69,8 @@ public class InvariMintInitializer {
         options.recoverFromParseErrors = opts.recoverFromParseErrors;
         options.debugParse = opts.debugParse;
         options.ignoreNonMatchingLines = opts.ignoreNonMatchingLines;
+        options.saveTraceSnapshot = opts.saveTraceSnapshot;
+        options.loadTraceSnapshot = opts.loadTraceSnapshot;
 
         if (AbstractMain.instance == null) {
             SynopticMain synMain = new SynopticMain(options,
@@ -195,6 +195,8 @@ public abstract class PGraphInvariMint {
         options.recoverFromParseErrors = opts.recoverFromParseErrors;
         options.debugParse = opts.debugParse;
         options.ignoreNonMatchingLines = opts.ignoreNonMatchingLines;
+        options.saveTraceSnapshot = opts.saveTraceSnapshot;
+        options.loadTraceSnapshot = opts.loadTraceSnapshot;
 
         if (AbstractMain.instance == null) {
             @SuppressWarnings("unused")
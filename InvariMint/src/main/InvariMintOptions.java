@@ -127,6 +127,22 @@ public class InvariMintOptions extends Options {
             value = "Format of the dates contained in the log (required by DATETIME)",
             aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
+
+    /**
+     * Name of a file to write a binary snapshot of the parsed traces to, so
+     * that later runs on the same logs can load it with loadTraceSnapshot.
+     */
+    @Option(
+            value = "Write a binary snapshot of the parsed traces to this file")
+    public String saveTraceSnapshot = null;
+
+    /**
+     * Name of a trace snapshot file, written with saveTraceSnapshot, to load
+     * the parsed traces from instead of parsing the log files.
+     */
+    @Option(
+            value = "Load the parsed traces from a snapshot file written with saveTraceSnapshot, instead of parsing log files")
+    public String loadTraceSnapshot = null;
     // end option group "Input Options"
 
     // //////////////////////////////////////////////////
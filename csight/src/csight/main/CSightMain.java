@@ -263,7 +263,7 @@ public class CSightMain {
             initializeSynoptic();
         }
 
-        if (opts.logFilenames.isEmpty()) {
+        if (opts.logFilenames.isEmpty() && opts.loadTraceSnapshot == null) {
             String err = "No log filenames specified, exiting. Specify log files at the end of the command line.";
             throw new OptionException(err);
         }
@@ -457,6 +457,8 @@ public class CSightMain {
         options.ignoreNonMatchingLines = opts.ignoreNonMatchingLines;
         options.recoverFromParseErrors = opts.recoverFromParseErrors;
         options.debugParse = opts.debugParse;
+        options.saveTraceSnapshot = opts.saveTraceSnapshot;
+        options.loadTraceSnapshot = opts.loadTraceSnapshot;
         this.synMain = new SynopticMain(options, new DotExportFormatter());
     }
 
@@ -479,7 +481,7 @@ public class CSightMain {
         assert parser != null;
         assert synMain != null;
         assert logFilenames != null;
-        assert !logFilenames.isEmpty();
+        assert !logFilenames.isEmpty() || opts.loadTraceSnapshot != null;
 
         List<EventNode> parsedEvents;
 
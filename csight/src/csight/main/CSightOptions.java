@@ -142,6 +142,22 @@ public class CSightOptions extends Options {
             aliases = { "-topK" })
     public int topKElements = 1;
 
+    /**
+     * Name of a file to write a binary snapshot of the parsed traces to, so
+     * that later runs on the same logs can load it with loadTraceSnapshot.
+     */
+    @Option(
+            value = "Write a binary snapshot of the parsed traces to this file")
+    public String saveTraceSnapshot = null;
+
+    /**
+     * Name of a trace snapshot file, written with saveTraceSnapshot, to load
+     * the parsed traces from instead of parsing the log files.
+     */
+    @Option(
+            value = "Load the parsed traces from a snapshot file written with saveTraceSnapshot, instead of parsing log files")
+    public String loadTraceSnapshot = null;
+
     // end option group "Input Options"
     // //////////////////////////////////////////////////
 
@@ -0,0 +1,92 @@
+package synoptic.benchmarks.jmh;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.GraphExporter;
+
+/**
+ * Measures exporting the final model of a log (after refinement and
+ * coarsening) with GraphExporter.exportGraph. The output is discarded, so only
+ * the generation of the model's text is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    /**
+     * The final model of a log. Exporting does not modify it, so it is
+     * inferred once per trial.
+     */
+    @State(Scope.Thread)
+    public static class FinalGraph {
+        public PartitionGraph pGraph;
+
+        @Setup(Level.Trial)
+        public void setUp(TOLogState log) {
+            pGraph = new PartitionGraph(log.traceGraph, true, log.invariants);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            Bisimulation.mergePartitions(pGraph);
+        }
+    }
+
+    /**
+     * A writer that counts and discards its output.
+     */
+    private static class CountingWriter extends Writer {
+        long count = 0;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+            // Nothing is buffered.
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release.
+        }
+    }
+
+    @Benchmark
+    public long exportGraph(FinalGraph graph) throws IOException {
+        CountingWriter writer = new CountingWriter();
+        GraphExporter.exportGraph(writer, graph.pGraph, false, false);
+        return writer.count;
+    }
+
+    @Benchmark
+    public long exportGraphWithProbabilities(FinalGraph graph)
+            throws IOException {
+        CountingWriter writer = new CountingWriter();
+        GraphExporter.exportGraph(writer, graph.pGraph, true, false);
+        return writer.count;
+    }
+}
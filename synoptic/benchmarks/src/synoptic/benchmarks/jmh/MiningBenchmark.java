@@ -0,0 +1,50 @@
+package synoptic.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.invariants.miners.TransitiveClosureInvMiner;
+
+/**
+ * Measures the invariant miners on totally and partially ordered logs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MiningBenchmark {
+
+    @Benchmark
+    public TemporalInvariantSet chainWalkingTO(TOLogState state) {
+        return new ChainWalkingTOInvMiner().computeInvariants(
+                state.traceGraph, false, false);
+    }
+
+    @Benchmark
+    public TemporalInvariantSet transitiveClosureTO(TOLogState state) {
+        return new TransitiveClosureInvMiner().computeInvariants(
+                state.traceGraph, false, false);
+    }
+
+    @Benchmark
+    public TemporalInvariantSet transitiveClosurePO(POLogState state) {
+        return new TransitiveClosureInvMiner().computeInvariants(
+                state.traceGraph);
+    }
+
+    @Benchmark
+    public TemporalInvariantSet dagWalkingPO(POLogState state) {
+        return new DAGWalkingPOInvMiner().computeInvariants(state.traceGraph);
+    }
+}
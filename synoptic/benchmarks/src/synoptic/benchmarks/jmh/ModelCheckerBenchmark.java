@@ -0,0 +1,62 @@
+package synoptic.benchmarks.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Measures the time that the FSM model checker takes to find counter-examples
+ * for all mined invariants of a totally ordered log. Invariants are checked
+ * against one of two partition graphs of the log: the initial one (one
+ * partition per event type, which violates many invariants) and the finest
+ * one (one partition per event, which is as large as the trace graph).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelCheckerBenchmark {
+
+    /**
+     * A partition graph of the log. Model checking does not modify it, so it
+     * is constructed once per trial. Constructing a partition graph
+     * re-assigns the partitions of all events, so there is only one per
+     * trial.
+     */
+    @State(Scope.Thread)
+    public static class Graph {
+        @Param({ "true", "false" })
+        public boolean partitionByLabel;
+
+        public PartitionGraph pGraph;
+
+        @Setup(Level.Trial)
+        public void setUp(TOLogState log) {
+            pGraph = new PartitionGraph(log.traceGraph, partitionByLabel,
+                    log.invariants);
+        }
+    }
+
+    @Benchmark
+    public List<CExamplePath<Partition>> getAllCounterExamples(
+            TOLogState log, Graph graph) {
+        return log.invariants.getAllCounterExamples(graph.pGraph);
+    }
+}
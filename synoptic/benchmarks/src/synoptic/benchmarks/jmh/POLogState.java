@@ -0,0 +1,59 @@
+package synoptic.benchmarks.jmh;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import synoptic.main.parser.TraceParser;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+
+/**
+ * A parsed, partially ordered log. The log is either the synthetic log of the
+ * given shape, or one of the named logs of TraceLogs.getPOLog.
+ */
+@State(Scope.Benchmark)
+public class POLogState {
+    @Param({ TraceLogs.SYNTHETIC, "PetersonLeaderElection" })
+    public String log;
+
+    // The shape of the synthetic log, which is ignored for the other logs.
+    @Param({ "20" })
+    public int numTraces;
+
+    @Param({ "50" })
+    public int traceLength;
+
+    @Param({ "10" })
+    public int alphabetSize;
+
+    @Param({ "3" })
+    public int numProcesses;
+
+    public DAGsTraceGraph traceGraph;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TraceLogs.initSynoptic();
+        TraceLogs.LogSpec spec = TraceLogs.getPOLog(log);
+        TraceParser parser = spec.newParser();
+        List<EventNode> events = new ArrayList<EventNode>();
+        if (log.equals(TraceLogs.SYNTHETIC)) {
+            events.addAll(parser.parseTraceString(TraceLogs.generatePOLog(
+                    numTraces, traceLength, alphabetSize, numProcesses),
+                    TraceLogs.SYNTHETIC, -1));
+        } else {
+            for (String path : spec.files) {
+                File file = TraceLogs.getTraceFile(path);
+                events.addAll(parser.parseTraceFile(file, -1));
+            }
+        }
+        traceGraph = parser.generateDirectPORelation(events);
+    }
+}
@@ -0,0 +1,45 @@
+package synoptic.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import synoptic.main.parser.TraceParser;
+
+/**
+ * Measures parsing a log with TraceParser.parseTraceString. The log is read
+ * into memory beforehand, so file I/O is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Benchmark
+    public void parseTraceString(TOLogState state, Blackhole bh)
+            throws Exception {
+        TraceParser parser = state.spec.newParser();
+        for (int i = 0; i < state.fileNames.size(); i++) {
+            bh.consume(parser.parseTraceString(state.fileContents.get(i),
+                    state.fileNames.get(i), -1));
+        }
+    }
+
+    /**
+     * Parsing followed by the construction of the trace graph.
+     */
+    @Benchmark
+    public void parseAndGenerateTORelation(TOLogState state, Blackhole bh)
+            throws Exception {
+        bh.consume(state.parse());
+    }
+}
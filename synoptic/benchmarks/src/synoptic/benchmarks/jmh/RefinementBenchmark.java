@@ -0,0 +1,82 @@
+package synoptic.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.KTails;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Measures model inference on totally ordered logs: refinement of the initial
+ * partition graph until all invariants are satisfied, coarsening of the
+ * refined graph, and kTails. Refinement and coarsening modify the partition
+ * graph, so a new one is constructed (outside of the measurement) before
+ * every invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefinementBenchmark {
+
+    /**
+     * The initial partition graph of a log, with a partition per event type.
+     */
+    @State(Scope.Thread)
+    public static class InitialGraph {
+        public PartitionGraph pGraph;
+
+        @Setup(Level.Invocation)
+        public void setUp(TOLogState log) {
+            pGraph = new PartitionGraph(log.traceGraph, true, log.invariants);
+        }
+    }
+
+    /**
+     * The partition graph of a log after refinement, ready to be coarsened.
+     */
+    @State(Scope.Thread)
+    public static class RefinedGraph {
+        public PartitionGraph pGraph;
+
+        @Setup(Level.Invocation)
+        public void setUp(TOLogState log) {
+            pGraph = new PartitionGraph(log.traceGraph, true, log.invariants);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        }
+    }
+
+    @Param({ "2" })
+    public int k;
+
+    @Benchmark
+    public PartitionGraph splitUntilAllInvsSatisfied(InitialGraph graph) {
+        Bisimulation.splitUntilAllInvsSatisfied(graph.pGraph);
+        return graph.pGraph;
+    }
+
+    @Benchmark
+    public PartitionGraph mergePartitions(RefinedGraph graph) {
+        Bisimulation.mergePartitions(graph.pGraph);
+        return graph.pGraph;
+    }
+
+    @Benchmark
+    public PartitionGraph performKTails(TOLogState log) {
+        return KTails.performKTails(log.traceGraph, k);
+    }
+}
@@ -0,0 +1,98 @@
+package synoptic.benchmarks.jmh;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+
+/**
+ * A parsed, totally ordered log, along with its mined invariants. The log is
+ * either the synthetic log of the given shape, or one of the named logs of
+ * TraceLogs.getTOLog. By default, the benchmarks run over logs that they can
+ * finish within a few seconds; larger logs (e.g., "-p log=ApacheLogs", or
+ * "-p numTraces=100") have to be selected explicitly.
+ */
+@State(Scope.Benchmark)
+public class TOLogState {
+    @Param({ TraceLogs.SYNTHETIC, "TwoPhaseCommit", "OsxLogin" })
+    public String log;
+
+    // The shape of the synthetic log, which is ignored for the other logs.
+    @Param({ "20" })
+    public int numTraces;
+
+    @Param({ "20" })
+    public int traceLength;
+
+    @Param({ "10" })
+    public int alphabetSize;
+
+    public TraceLogs.LogSpec spec;
+
+    /** The names and contents of the log's files. */
+    public List<String> fileNames;
+    public List<String> fileContents;
+
+    public ChainsTraceGraph traceGraph;
+    public TemporalInvariantSet invariants;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TraceLogs.initSynoptic();
+        spec = TraceLogs.getTOLog(log);
+        fileNames = new ArrayList<String>();
+        fileContents = new ArrayList<String>();
+        if (log.equals(TraceLogs.SYNTHETIC)) {
+            fileNames.add(TraceLogs.SYNTHETIC);
+            fileContents.add(TraceLogs.generateTOLog(numTraces, traceLength,
+                    alphabetSize));
+        } else {
+            for (String path : spec.files) {
+                File file = TraceLogs.getTraceFile(path);
+                fileNames.add(file.getName());
+                fileContents.add(new String(Files.readAllBytes(file.toPath())));
+            }
+        }
+
+        traceGraph = parse();
+        // Mine the invariants that Synoptic uses by default, which excludes
+        // IntrBy invariants (see AbstractMain.createInitialPartitionGraph).
+        AbstractMain main = AbstractMain.getInstance();
+        invariants = main.mineTOInvariants(false, traceGraph);
+        if (main.options.ignoreIntrByInvs) {
+            for (Iterator<ITemporalInvariant> it = invariants.iterator(); it
+                    .hasNext();) {
+                if (it.next().getShortName().equals("IntrBy")) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the log into a new trace graph.
+     */
+    public ChainsTraceGraph parse() throws Exception {
+        TraceParser parser = spec.newParser();
+        List<EventNode> events = new ArrayList<EventNode>();
+        for (int i = 0; i < fileNames.size(); i++) {
+            events.addAll(parser.parseTraceString(fileContents.get(i),
+                    fileNames.get(i), -1));
+        }
+        return parser.generateDirectTORelation(events);
+    }
+}
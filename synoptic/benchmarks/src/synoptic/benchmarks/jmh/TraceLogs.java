@@ -0,0 +1,224 @@
+package synoptic.benchmarks.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.export.DotExportFormatter;
+
+/**
+ * The logs over which the benchmarks run: synthetic logs whose shape is given
+ * by a number of traces, a trace length, and an alphabet size, and a few of
+ * the logs under traces/. The traces directory is found through the
+ * synoptic.traces system property, and defaults to ../traces (relative to the
+ * synoptic project directory, from which the benchmarks target runs).
+ */
+public class TraceLogs {
+    /** The name of the synthetic log. */
+    public static final String SYNTHETIC = "synthetic";
+
+    /** The seed of the synthetic logs, so that all runs see the same log. */
+    private static final long seed = 0;
+
+    /**
+     * How to parse a log: the Synoptic regular expressions, and the files
+     * (relative to the traces directory) that the log consists of.
+     */
+    public static class LogSpec {
+        public final List<String> regExps;
+        public final String partitionRegExp;
+        public final String separatorRegExp;
+        public final boolean ignoreNonMatchingLines;
+        public final List<String> files;
+
+        public LogSpec(List<String> regExps, String partitionRegExp,
+                String separatorRegExp, boolean ignoreNonMatchingLines,
+                List<String> files) {
+            this.regExps = regExps;
+            this.partitionRegExp = partitionRegExp;
+            this.separatorRegExp = separatorRegExp;
+            this.ignoreNonMatchingLines = ignoreNonMatchingLines;
+            this.files = files;
+        }
+
+        /**
+         * Returns a new parser for this log. Parsers are stateful, so each
+         * parse requires a new one.
+         */
+        public TraceParser newParser() throws ParseException {
+            AbstractOptions.partitionRegExp = partitionRegExp;
+            AbstractOptions.separatorRegExp = separatorRegExp;
+            AbstractMain.getInstance().options.ignoreNonMatchingLines = ignoreNonMatchingLines;
+            return new TraceParser(regExps, partitionRegExp, separatorRegExp,
+                    null);
+        }
+    }
+
+    /** The totally ordered synthetic log: one event type per line. */
+    public static final LogSpec syntheticTO = new LogSpec(
+            Arrays.asList("^(?<TYPE>.+)$"), AbstractOptions.partitionRegExpDefault,
+            "^--$", false, Collections.<String> emptyList());
+
+    /**
+     * The partially ordered synthetic log: a vector timestamp followed by an
+     * event type per line.
+     */
+    public static final LogSpec syntheticPO = new LogSpec(
+            Arrays.asList("^(?<VTIME>)(?<TYPE>)$"),
+            AbstractOptions.partitionRegExpDefault, "^--$", false,
+            Collections.<String> emptyList());
+
+    /**
+     * Returns the specification of the totally ordered log with the given
+     * name.
+     */
+    public static LogSpec getTOLog(String name) {
+        if (name.equals(SYNTHETIC)) {
+            return syntheticTO;
+        } else if (name.equals("TwoPhaseCommit")) {
+            return new LogSpec(
+                    Arrays.asList("^(?<sender>),(?<receiver>),(?<TYPE>),(?<txId>)"),
+                    "\\k<txId>", null, false,
+                    Arrays.asList("TwoPhaseCommit/2pc_3nodes_100tx.log"));
+        } else if (name.equals("ApacheLogs")) {
+            return new LogSpec(
+                    Arrays.asList("(?<Id>) .+ /education/courses/cse142/11wi/images/(?<TYPE>[^\\.]+).*"),
+                    "\\k<Id>", null, false,
+                    Arrays.asList("ApacheLogs/short142"));
+        } else if (name.equals("OsxLogin")) {
+            return new LogSpec(Arrays.asList(
+                    ".+User info.+guest$(?<TYPE=>guest login)",
+                    ".+User info.+(?<TYPE=>login attempt)",
+                    ".+Failed to authenticate.+(?<TYPE=>failed auth)",
+                    ".+Login Window done$(?<TYPE=>authorized)"),
+                    AbstractOptions.partitionRegExpDefault,
+                    ".+Succeeded authorizing.+", true,
+                    Arrays.asList("abstract/osx-login-example/trace-full.txt"));
+        }
+        throw new IllegalArgumentException("Unknown totally ordered log: "
+                + name);
+    }
+
+    /**
+     * Returns the specification of the partially ordered log with the given
+     * name.
+     */
+    public static LogSpec getPOLog(String name) {
+        if (name.equals(SYNTHETIC)) {
+            return syntheticPO;
+        } else if (name.equals("PetersonLeaderElection")) {
+            // Ten of the generated runs of five processes, one per file.
+            List<String> files = new ArrayList<String>();
+            for (int i = 1; i <= 10; i++) {
+                files.add("PetersonLeaderElection/generated_traces/peterson_trace-n5-1-s"
+                        + i + ".txt");
+            }
+            return new LogSpec(Arrays.asList(
+                    "^(?:#.*|\\s*|.*round-done.*)(?<HIDE=>true)$",
+                    "(?<nodename>)(?<VTIME>)(?<TYPE>)(?:(?<mtype>)(?:(?<roundId>)(?:(?<payload>)(?:(?<id>))?)?)?)?"),
+                    AbstractOptions.partitionRegExpDefault, null, false, files);
+        }
+        throw new IllegalArgumentException("Unknown partially ordered log: "
+                + name);
+    }
+
+    /**
+     * Returns the file of a log under the traces directory.
+     */
+    public static File getTraceFile(String path) throws IOException {
+        File file = new File(System.getProperty("synoptic.traces", "../traces"),
+                path);
+        if (!file.isFile()) {
+            throw new IOException("Log file not found: " + file
+                    + " (set -Dsynoptic.traces to the traces directory)");
+        }
+        return file;
+    }
+
+    /**
+     * Generates a totally ordered log of numTraces traces, each of which has
+     * traceLength events whose types are drawn from alphabetSize types. To give
+     * the log some structure for the miners and refinement to discover, each
+     * type is followed by one of only a few types.
+     */
+    public static String generateTOLog(int numTraces, int traceLength,
+            int alphabetSize) {
+        Random rand = new Random(seed);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t > 0) {
+                log.append("--\n");
+            }
+            int type = 0;
+            for (int i = 0; i < traceLength; i++) {
+                log.append('e').append(type).append('\n');
+                type = nextType(rand, type, alphabetSize);
+            }
+        }
+        return log.toString();
+    }
+
+    /**
+     * Generates a partially ordered log of numTraces traces of numProcesses
+     * processes, each of which has traceLength events whose types are drawn
+     * from alphabetSize types. Every so often a process receives a message
+     * from another process, which orders the two processes' events.
+     */
+    public static String generatePOLog(int numTraces, int traceLength,
+            int alphabetSize, int numProcesses) {
+        Random rand = new Random(seed);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t > 0) {
+                log.append("--\n");
+            }
+            int[][] clocks = new int[numProcesses][numProcesses];
+            int type = 0;
+            for (int i = 0; i < traceLength; i++) {
+                int p = rand.nextInt(numProcesses);
+                clocks[p][p]++;
+                if (rand.nextInt(4) == 0) {
+                    int sender = rand.nextInt(numProcesses);
+                    for (int q = 0; q < numProcesses; q++) {
+                        clocks[p][q] = Math.max(clocks[p][q], clocks[sender][q]);
+                    }
+                }
+                for (int q = 0; q < numProcesses; q++) {
+                    if (q > 0) {
+                        log.append(',');
+                    }
+                    log.append(clocks[p][q]);
+                }
+                log.append(" p").append(p).append('e').append(type)
+                        .append('\n');
+                type = nextType(rand, type, alphabetSize);
+            }
+        }
+        return log.toString();
+    }
+
+    private static int nextType(Random rand, int type, int alphabetSize) {
+        return (type + 1 + rand.nextInt(3)) % alphabetSize;
+    }
+
+    /**
+     * Resets the Synoptic instance that the algorithms read their options
+     * from, and silences logging.
+     */
+    public static void initSynoptic() {
+        AbstractMain.instance = null;
+        AbstractOptions options = new SynopticOptions().toAbstractOptions();
+        options.logLvlQuiet = true;
+        new SynopticMain(options, new DotExportFormatter());
+    }
+}
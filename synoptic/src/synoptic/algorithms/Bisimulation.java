@@ -14,12 +14,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import synoptic.algorithms.graphops.IOperation;
@@ -32,12 +37,14 @@ import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.fsmcheck.IndexedGraph;
 import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
+import synoptic.util.LongHashSet;
 
 /**
  * Partition graphs can be transformed using two algorithms -- coarsening and
@@ -69,6 +76,35 @@ public class Bisimulation {
      *            the partition graph to refine\split
      */
     public static void splitUntilAllInvsSatisfied(PartitionGraph pGraph) {
+        splitUntilAllInvsSatisfied(pGraph, null);
+    }
+
+    /**
+     * Splits the partitions in {@code pGraph} until ALL synoptic.invariants
+     * returned by {@code pGraph.getInvariants()} are satisfied, reporting the
+     * progress of every round to listener.
+     * 
+     * @param pGraph
+     *            the partition graph to refine\split
+     * @param listener
+     *            the listener to report progress to, can be null
+     */
+    public static void splitUntilAllInvsSatisfied(PartitionGraph pGraph,
+            IBisimulationListener listener) {
+        splitUntilAllInvsSatisfied(pGraph, listener, null);
+    }
+
+    /**
+     * Like splitUntilAllInvsSatisfied(pGraph, listener), but model checks the
+     * invariants in parallel on executor if more than one checker thread is
+     * configured.
+     * 
+     * @param executor
+     *            the executor owned by the caller to run the model checking
+     *            tasks on, can be null to check the invariants sequentially
+     */
+    public static void splitUntilAllInvsSatisfied(PartitionGraph pGraph,
+            IBisimulationListener listener, ExecutorService executor) {
         // TODO: assert that the pGraph represents totally ordered traces.
 
         TimedTask refinement = PerformanceMetrics.createTask("refinement",
@@ -81,6 +117,7 @@ public class Bisimulation {
 
         int numSplitSteps = 0;
         int prevNumSplitSteps = 0;
+        int numRounds = 0;
 
         Set<ITemporalInvariant> unsatisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
         unsatisfiedInvariants.addAll(pGraph.getInvariants().getSet());
@@ -88,15 +125,27 @@ public class Bisimulation {
 
         List<CExamplePath<Partition>> counterExampleTraces = null;
 
+        ExecutorService checkerExecutor = null;
+        if (main.options.numCheckerThreads > 1) {
+            checkerExecutor = executor;
+        }
+
         while (true) {
+            TimedTask round = PerformanceMetrics.createTask("round", false);
             // Recompute the counter-examples for the unsatisfied invariants.
             counterExampleTraces = new TemporalInvariantSet(
-                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
+                    unsatisfiedInvariants).getAllCounterExamples(pGraph,
+                    checkerExecutor);
             logger.fine("Counter-examples: " + counterExampleTraces);
 
             if (counterExampleTraces == null
                     || counterExampleTraces.size() == 0) {
                 logger.fine("Invariants satisfied. Stopping.");
+                if (listener != null) {
+                    listener.refinementRound(numRounds, 0, pGraph.getNodes()
+                            .size());
+                }
+                round.stop();
                 break;
             }
 
@@ -119,6 +168,11 @@ public class Bisimulation {
             satisfiedInvariants.addAll(pGraph.getInvariants().getSet());
             satisfiedInvariants.removeAll(unsatisfiedInvariants);
             // /////////
+            if (listener != null) {
+                listener.refinementRound(numRounds,
+                        unsatisfiedInvariants.size(), pGraph.getNodes().size());
+            }
+            numRounds++;
             // logger.fine("New graph size: " + pGraph.getNodes().size()
             // + ", unsat invs remaining: " + unsatisfiedInvariants.size());
 
@@ -126,6 +180,7 @@ public class Bisimulation {
             prevNumSplitSteps = numSplitSteps;
             numSplitSteps = performSplits(numSplitSteps, pGraph,
                     counterExampleTraces);
+            round.stop();
 
             if (numSplitSteps == prevNumSplitSteps) {
                 // No splits were performed, which means that we could not
@@ -244,8 +299,22 @@ public class Bisimulation {
      * @param pGraph
      */
     public static void mergePartitions(PartitionGraph pGraph) {
+        mergePartitions(pGraph, (IBisimulationListener) null);
+    }
+
+    /**
+     * Merge partitions in pGraph that are k-equal (kTails equality), with k=0
+     * without unsatisfying any of the pGraph invariants, reporting the
+     * progress of every round to listener.
+     * 
+     * @param pGraph
+     * @param listener
+     *            the listener to report progress to, can be null
+     */
+    public static void mergePartitions(PartitionGraph pGraph,
+            IBisimulationListener listener) {
         TemporalInvariantSet invariants = pGraph.getInvariants();
-        mergePartitions(pGraph, invariants, 1);
+        mergePartitions(pGraph, invariants, 1, listener);
     }
 
     /**************************************************************************/
@@ -774,12 +843,42 @@ public class Bisimulation {
      */
     public static void mergePartitions(PartitionGraph pGraph,
             TemporalInvariantSet invariants, int k) {
+        mergePartitions(pGraph, invariants, k, null);
+    }
+
+    /**
+     * Like mergePartitions(pGraph, invariants, k), but reports the progress of
+     * every round to listener, which can be null.
+     */
+    public static void mergePartitions(PartitionGraph pGraph,
+            TemporalInvariantSet invariants, int k,
+            IBisimulationListener listener) {
+        mergePartitions(pGraph, invariants, k, listener, null);
+    }
+
+    /**
+     * Like mergePartitions(pGraph, invariants, k, listener), but checks
+     * batches of candidate merges in parallel on executor if more than one
+     * merge thread is configured.
+     * 
+     * @param executor
+     *            the executor owned by the caller to run the merge checks on,
+     *            can be null to check the merges one at a time
+     */
+    public static void mergePartitions(PartitionGraph pGraph,
+            TemporalInvariantSet invariants, int k,
+            IBisimulationListener listener, ExecutorService executor) {
+        TimedTask coarsening = PerformanceMetrics.createTask("coarsening",
+                false);
         int outerItters = 0;
 
         // The blacklist keeps a history of partitions we've attempted to merge
         // and which did not work out because they resulted in invariant
         // violations.
-        Map<Partition, Set<Partition>> mergeBlacklist = new LinkedHashMap<Partition, Set<Partition>>();
+        MergeBlacklist mergeBlacklist = new MergeBlacklist();
+
+        // The candidate merges, which are kept up to date across rounds.
+        MergeCandidates candidates = new MergeCandidates(pGraph, k);
 
         AbstractMain syn = AbstractMain.getInstance();
         while (true) {
@@ -788,10 +887,20 @@ public class Bisimulation {
                         syn.getIntermediateDumpFilename("c", outerItters),
                         pGraph);
             }
+            if (listener != null) {
+                listener.coarseningRound(outerItters, pGraph.getNodes().size());
+            }
             outerItters++;
 
             logger.fine("--------------------------------");
-            if (!mergePartitions(pGraph, mergeBlacklist, invariants, k)) {
+            TimedTask round = PerformanceMetrics.createTask("round", false);
+            long roundStart = System.nanoTime();
+            boolean merged = mergePartitions(pGraph, mergeBlacklist,
+                    candidates, invariants, executor);
+            PerformanceMetrics.get().record("coarseningRoundMicros",
+                    (System.nanoTime() - roundStart) / 1000);
+            round.stop();
+            if (!merged) {
                 break;
             }
         }
@@ -800,6 +909,194 @@ public class Bisimulation {
             syn.exportNonInitialGraph(
                     syn.getIntermediateDumpFilename("c", outerItters), pGraph);
         }
+        coarsening.stop();
+    }
+
+    /**
+     * The pairs of partitions whose merge has been attempted and violated an
+     * invariant. Partitions are given int ids, and pairs are stored as a long
+     * that packs the two ids, so the blacklist is symmetric and does not hold
+     * a set per partition.
+     */
+    private static class MergeBlacklist {
+        private final Map<Partition, Integer> ids = new IdentityHashMap<Partition, Integer>();
+        private final LongHashSet pairs = new LongHashSet();
+
+        private int getId(Partition p) {
+            Integer id = ids.get(p);
+            if (id == null) {
+                id = ids.size();
+                ids.put(p, id);
+            }
+            return id;
+        }
+
+        private long pairKey(Partition p, Partition q) {
+            long pId = getId(p);
+            long qId = getId(q);
+            if (pId < qId) {
+                return (pId << 32) | qId;
+            }
+            return (qId << 32) | pId;
+        }
+
+        public void add(Partition p, Partition q) {
+            pairs.add(pairKey(p, q));
+        }
+
+        public boolean contains(Partition p, Partition q) {
+            if (!ids.containsKey(p) || !ids.containsKey(q)) {
+                return false;
+            }
+            return pairs.contains(pairKey(p, q));
+        }
+    }
+
+    /**
+     * The candidate merges of coarsening: the partitions of a graph, bucketed
+     * by the signatures of their k-tails, so that the partitions in a bucket
+     * are exactly the k-equivalent ones. Each bucket lists its partitions in
+     * the order of the partitions of the graph. The buckets are kept across
+     * rounds of coarsening: after a merge, only the merged partition and the
+     * partitions within k - 1 steps before it, whose k-tails may have changed,
+     * are re-bucketed.
+     */
+    private static class MergeCandidates {
+        private final KTailSignatures<Partition> signatures;
+        private final int k;
+
+        /** The bucket of each signature, and the signature of each partition. */
+        private final Map<Integer, List<Partition>> buckets = new HashMap<Integer, List<Partition>>();
+        private final Map<Partition, Integer> partitionSignatures = new IdentityHashMap<Partition, Integer>();
+
+        /**
+         * The position of each partition in the order of the partitions of the
+         * graph. Positions increase with the order, but are not contiguous.
+         */
+        private final Map<Partition, Long> positions = new IdentityHashMap<Partition, Long>();
+        private long nextPosition = 0;
+
+        /**
+         * The predecessors of each partition. These may include partitions
+         * that no longer precede it, or that have been merged away, which
+         * only causes more partitions than necessary to be re-bucketed.
+         */
+        private final Map<Partition, Set<Partition>> predecessors = new IdentityHashMap<Partition, Set<Partition>>();
+
+        public MergeCandidates(PartitionGraph pGraph, int k) {
+            this.k = k;
+            signatures = new KTailSignatures<Partition>(pGraph.getNodes(), k);
+            for (Partition p : pGraph.getNodes()) {
+                positions.put(p, nextPosition++);
+                addToBucket(p, signatures.getSignature(p));
+                for (Partition succ : p.getAllSuccessors()) {
+                    getPredecessors(succ).add(p);
+                }
+            }
+        }
+
+        /**
+         * Returns the partitions that are k-equivalent to p (including p), in
+         * the order of the partitions of the graph.
+         */
+        public List<Partition> getBucket(Partition p) {
+            return buckets.get(partitionSignatures.get(p));
+        }
+
+        /**
+         * Records that the merge of p with the given partition was rewound,
+         * which moved that partition to the end of the partitions of the
+         * graph.
+         */
+        public void rewound(Partition p) {
+            removeFromBucket(p);
+            positions.put(p, nextPosition++);
+            addToBucket(p, signatures.getSignature(p));
+        }
+
+        /**
+         * Records that removed was merged into retained, and re-buckets the
+         * partitions whose k-tails may have changed.
+         */
+        public void merged(Partition retained, Partition removed) {
+            removeFromBucket(removed);
+            positions.remove(removed);
+            signatures.remove(removed);
+            // The predecessors of removed now precede retained.
+            Set<Partition> removedPreds = predecessors.remove(removed);
+            if (removedPreds != null) {
+                getPredecessors(retained).addAll(removedPreds);
+            }
+            for (Partition succ : retained.getAllSuccessors()) {
+                getPredecessors(succ).add(retained);
+            }
+
+            // The partitions within k - 1 steps before retained.
+            Set<Partition> changed = new LinkedHashSet<Partition>();
+            changed.add(retained);
+            List<Partition> level = Collections.singletonList(retained);
+            for (int d = 1; d < k; d++) {
+                List<Partition> next = new ArrayList<Partition>();
+                for (Partition p : level) {
+                    Set<Partition> preds = predecessors.get(p);
+                    if (preds == null) {
+                        continue;
+                    }
+                    for (Partition pred : preds) {
+                        if (positions.containsKey(pred) && changed.add(pred)) {
+                            next.add(pred);
+                        }
+                    }
+                }
+                level = next;
+            }
+
+            signatures.update(changed);
+            for (Partition p : changed) {
+                int signature = signatures.getSignature(p);
+                if (partitionSignatures.get(p) != signature) {
+                    removeFromBucket(p);
+                    addToBucket(p, signature);
+                }
+            }
+        }
+
+        /**
+         * Adds p to the bucket of the given signature, at its position in the
+         * order of the partitions.
+         */
+        private void addToBucket(Partition p, int signature) {
+            List<Partition> bucket = buckets.get(signature);
+            if (bucket == null) {
+                bucket = new ArrayList<Partition>();
+                buckets.put(signature, bucket);
+            }
+            long position = positions.get(p);
+            int i = bucket.size();
+            while (i > 0 && positions.get(bucket.get(i - 1)) > position) {
+                i--;
+            }
+            bucket.add(i, p);
+            partitionSignatures.put(p, signature);
+        }
+
+        private void removeFromBucket(Partition p) {
+            int signature = partitionSignatures.remove(p);
+            List<Partition> bucket = buckets.get(signature);
+            bucket.remove(p);
+            if (bucket.isEmpty()) {
+                buckets.remove(signature);
+            }
+        }
+
+        private Set<Partition> getPredecessors(Partition p) {
+            Set<Partition> preds = predecessors.get(p);
+            if (preds == null) {
+                preds = new LinkedHashSet<Partition>();
+                predecessors.put(p, preds);
+            }
+            return preds;
+        }
     }
 
     /**
@@ -808,22 +1105,67 @@ public class Bisimulation {
      * that are in the mergeBlacklist (these have been attempted previously and
      * are known to violate invariants). Returns true if at least one merge was
      * performed, otherwise returns false.
+     * <p>
+     * Only pairs of partitions in the same bucket of candidates, which are
+     * exactly the k-equivalent pairs, are considered. Pairs are tried in the
+     * same order as by a scan over all pairs of partitions, so the first merge
+     * that is accepted is the same. The candidates are updated with the
+     * rewound merges and the accepted merge.
+     * </p>
      * 
      * @param pGraph
      * @param mergeBlacklist
+     * @param candidates
      * @param invariants
-     * @param k
+     * @param executor
      * @return
      */
     private static boolean mergePartitions(PartitionGraph pGraph,
-            Map<Partition, Set<Partition>> mergeBlacklist,
-            TemporalInvariantSet invariants, int k) {
+            MergeBlacklist mergeBlacklist, MergeCandidates candidates,
+            TemporalInvariantSet invariants, ExecutorService executor) {
         ArrayList<Partition> partitions = new ArrayList<Partition>();
         partitions.addAll(pGraph.getNodes());
 
-        // Attempt to merge all pairs of partitions in the current graph.
+        // The partitions whose merges were rewound, in the order of the
+        // rewinds, and the accepted merge.
+        List<Partition> rewound = new ArrayList<Partition>();
+        Partition[] accepted = null;
+
+        int numThreads = AbstractMain.getInstance().options.numMergeThreads;
+        if (executor != null && numThreads > 1
+                && canMergeSpeculatively(invariants)) {
+            accepted = mergePartitionsSpeculatively(pGraph, partitions,
+                    candidates, mergeBlacklist, invariants, executor,
+                    numThreads, rewound);
+        } else {
+            accepted = mergePartitionsSequentially(pGraph, partitions,
+                    candidates, mergeBlacklist, invariants, rewound);
+        }
+
+        // The buckets are not changed while they are being iterated over.
+        for (Partition q : rewound) {
+            candidates.rewound(q);
+        }
+        if (accepted == null) {
+            // Unable to find any k-equivalent partitions; we're done.
+            return false;
+        }
+        candidates.merged(accepted[0], accepted[1]);
+        return true;
+    }
+
+    /**
+     * Attempts to merge all pairs of k-equivalent partitions in the current
+     * graph, one at a time, and returns the first pair whose merge is
+     * accepted, or null. The partitions whose merges were rewound are added
+     * to rewound.
+     */
+    private static Partition[] mergePartitionsSequentially(
+            PartitionGraph pGraph, List<Partition> partitions,
+            MergeCandidates candidates, MergeBlacklist mergeBlacklist,
+            TemporalInvariantSet invariants, List<Partition> rewound) {
         for (Partition p : partitions) {
-            for (Partition q : partitions) {
+            for (Partition q : candidates.getBucket(p)) {
                 // 1. Can't merge a partition with itself
                 if (p == q) {
                     continue;
@@ -833,24 +1175,14 @@ public class Bisimulation {
                         + p.hashCode() + ") + " + q + "(hash: " + q.hashCode()
                         + ")");
 
-                // 2. Only merge partitions that are k-equivalent
-                if (!KTails.kEquals(p, q, k)) {
-                    logger.fine("Partitions are not k-equivalent(k=" + k + ")");
-                    continue;
-                }
-
-                // 3. Ignore partition pairs that were previously tried (are
+                // 2. Ignore partition pairs that were previously tried (are
                 // in blacklist)
-                if ((mergeBlacklist.containsKey(p) && mergeBlacklist.get(p)
-                        .contains(q))
-                        || (mergeBlacklist.containsKey(q) && mergeBlacklist
-                                .get(q).contains(p))) {
+                if (mergeBlacklist.contains(p, q)) {
                     logger.fine("Partitions are in the merge blacklist.");
                     continue;
                 }
 
-                Set<Partition> parts = new LinkedHashSet<Partition>();
-                parts.addAll(pGraph.getNodes());
+                int numPartitions = pGraph.getNodes().size();
                 IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
                         q));
 
@@ -866,13 +1198,11 @@ public class Bisimulation {
                     logger.fine("Merge violates invariant: "
                             + cExample.toString());
 
-                    if (!mergeBlacklist.containsKey(p)) {
-                        mergeBlacklist.put(p, new LinkedHashSet<Partition>());
-                    }
-                    mergeBlacklist.get(p).add(q);
+                    mergeBlacklist.add(p, q);
 
                     // Undo the merge.
                     pGraph.apply(rewindOperation);
+                    rewound.add(q);
 
                     if (AbstractMain.getInstance().options.performExtraChecks) {
                         pGraph.checkSanity();
@@ -880,10 +1210,11 @@ public class Bisimulation {
 
                     // We cannot change the partition sets because we are
                     // iterating over the partitions. Therefore, check that
-                    // the resulting partition set is the same as the
-                    // original partition set.
-                    if (!(parts.containsAll(pGraph.getNodes()) && pGraph
-                            .getNodes().containsAll(parts))) {
+                    // the rewind restored the original partition set, which
+                    // it does if it added back the one partition that the
+                    // merge removed.
+                    if (pGraph.getNodes().size() != numPartitions
+                            || !pGraph.getNodes().contains(q)) {
                         throw new InternalSynopticException(
                                 "partition set changed due to rewind: "
                                         + rewindOperation);
@@ -892,12 +1223,133 @@ public class Bisimulation {
                 } else {
                     logger.fine("Merge of partitions " + p.getEType()
                             + " nodes maintains invs, accepted.");
-                    return true;
+                    return new Partition[] { p, q };
                 }
             }
         }
+        return null;
+    }
 
-        // Unable to find any k-equivalent partitions; we're done.
-        return false;
+    /**
+     * Whether candidate merges can be checked against merged views of an
+     * index of the partition graph. Constrained invariants are checked against
+     * the event transitions between partitions, which the views do not merge.
+     */
+    private static boolean canMergeSpeculatively(
+            TemporalInvariantSet invariants) {
+        if (invariants == null) {
+            return false;
+        }
+        for (ITemporalInvariant inv : invariants) {
+            if (inv instanceof TempConstrainedInvariant<?>) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Performs the same merge as mergePartitionsSequentially, but checks
+     * batches of numThreads candidate merges in parallel on executor. Every
+     * candidate is checked against a merged view of a single index of pGraph,
+     * so pGraph is only modified to apply the first valid merge in the
+     * sequential order, and to reorder the partitions in the same way as
+     * rewinding the rejected merges before it would have.
+     */
+    private static Partition[] mergePartitionsSpeculatively(
+            PartitionGraph pGraph, List<Partition> partitions,
+            MergeCandidates candidates, MergeBlacklist mergeBlacklist,
+            TemporalInvariantSet invariants, ExecutorService executor,
+            int numThreads, List<Partition> rewound) {
+        IndexedGraph<Partition> indexed = new IndexedGraph<Partition>(pGraph);
+        List<Partition[]> batch = new ArrayList<Partition[]>(numThreads);
+        for (Partition p : partitions) {
+            for (Partition q : candidates.getBucket(p)) {
+                if (p == q || mergeBlacklist.contains(p, q)) {
+                    continue;
+                }
+                batch.add(new Partition[] { p, q });
+                if (batch.size() == numThreads) {
+                    Partition[] accepted = applyFirstValidMerge(pGraph,
+                            indexed, batch, mergeBlacklist, invariants,
+                            executor, rewound);
+                    if (accepted != null) {
+                        return accepted;
+                    }
+                    batch.clear();
+                }
+            }
+        }
+        return applyFirstValidMerge(pGraph, indexed, batch, mergeBlacklist,
+                invariants, executor, rewound);
+    }
+
+    /**
+     * Checks the candidate merges in batch in parallel, and applies the first
+     * valid one. The candidates before it are blacklisted, and added to
+     * rewound. Returns the merge that was applied, or null.
+     */
+    private static Partition[] applyFirstValidMerge(PartitionGraph pGraph,
+            final IndexedGraph<Partition> indexed, List<Partition[]> batch,
+            MergeBlacklist mergeBlacklist,
+            final TemporalInvariantSet invariants, ExecutorService executor,
+            List<Partition> rewound) {
+        if (batch.isEmpty()) {
+            return null;
+        }
+
+        final PerformanceMetrics metrics = PerformanceMetrics.get();
+        List<Callable<Boolean>> checks = new ArrayList<Callable<Boolean>>(
+                batch.size());
+        for (final Partition[] pair : batch) {
+            checks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    PerformanceMetrics.setCurrent(metrics);
+                    try {
+                        return invariants.getFirstCounterExample(indexed
+                                .merge(pair[0], pair[1])) == null;
+                    } finally {
+                        PerformanceMetrics.setCurrent(null);
+                    }
+                }
+            });
+        }
+
+        try {
+            List<Future<Boolean>> results = executor.invokeAll(checks);
+            for (int i = 0; i < batch.size(); i++) {
+                Partition p = batch.get(i)[0];
+                Partition q = batch.get(i)[1];
+                // The sequential loop skips a pair if the same two partitions
+                // were blacklisted in the opposite order earlier in the batch.
+                if (mergeBlacklist.contains(p, q)) {
+                    continue;
+                }
+
+                if (results.get(i).get()) {
+                    logger.fine("Merge of partitions " + p.getEType()
+                            + " nodes maintains invs, accepted.");
+                    pGraph.apply(new PartitionMerge(p, q));
+                    return batch.get(i);
+                }
+
+                logger.fine("Merge of " + p + " and " + q
+                        + " violates an invariant.");
+                mergeBlacklist.add(p, q);
+                // Rewinding a merge re-adds the removed partition at the end
+                // of the partitions, which determines the order of the
+                // candidates in the next round.
+                pGraph.removePartition(q);
+                pGraph.add(q);
+                rewound.add(q);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            throw new InternalSynopticException(e);
+        }
+        return null;
     }
 }
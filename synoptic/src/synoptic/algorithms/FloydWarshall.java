@@ -1,9 +1,6 @@
 package synoptic.algorithms;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.Collection;
 import java.util.Set;
 
 import synoptic.model.EventNode;
@@ -20,18 +17,28 @@ public class FloydWarshall {
      */
     public static TransitiveClosure warshallAlg(IGraph<EventNode> graph,
             Set<String> relations) {
-        Set<EventNode> allNodes = graph.getNodes();
+        return warshallAlg(graph.getNodes(), relations);
+    }
 
+    /**
+     * Warshall's Algorithm, over just the nodes in allNodes (e.g., the nodes
+     * of a single trace). Transitions to nodes that are not in allNodes must
+     * only lead to initial/terminal nodes, which are ignored.
+     */
+    public static TransitiveClosure warshallAlg(Collection<EventNode> allNodes,
+            Set<String> relations) {
         TransitiveClosure transClosure = new TransitiveClosure(relations);
-        Map<EventNode, Set<EventNode>> tc = transClosure.getTC();
 
-        // Maps a node to its parents in the transitive closure.
-        HashMap<EventNode, HashSet<EventNode>> tcParents = new HashMap<EventNode, HashSet<EventNode>>();
+        // The parents of each node in the transitive closure, by node id. Node
+        // ids are given by transClosure, to at most all of the nodes.
+        TransitiveClosure.Reachables[] tcParents = new TransitiveClosure.Reachables[allNodes
+                .size()];
 
         for (EventNode m : allNodes) {
             if (m.getEType().isSpecialEventType()) {
                 continue;
             }
+            int mId = transClosure.getOrCreateId(m);
 
             /**
              * Iterate through all children of m and for each child do 2 things:
@@ -49,30 +56,24 @@ public class FloydWarshall {
                     continue;
                 }
                 // ///////////////
-
-                // Create new tc map for node m.
-                if (!tc.containsKey(m)) {
-                    tc.put(m, new LinkedHashSet<EventNode>());
-                }
-
-                if (!tcParents.containsKey(child)) {
-                    tcParents.put(child, new HashSet<EventNode>());
-                }
+                int childId = transClosure.getOrCreateId(child);
 
                 // Link m to c
-                tc.get(m).add(child);
-                tcParents.get(child).add(m);
+                TransitiveClosure.Reachables mTC = transClosure
+                        .getOrCreateReachables(mId);
+                mTC.set(childId);
+                getParents(tcParents, childId).set(mId);
 
                 // Link m to all nodes that c is linked to in tc
-                if (tc.containsKey(child)) {
+                TransitiveClosure.Reachables childTC = transClosure
+                        .getReachables(childId);
+                if (childTC != null) {
                     // m can reach nodes the child can reach transitively:
-                    tc.get(m).addAll(tc.get(child));
+                    mTC.or(childTC);
                     // nodes that child can reach have m as a tc parent:
-                    for (EventNode n : tc.get(child)) {
-                        if (!tcParents.containsKey(n)) {
-                            tcParents.put(n, new HashSet<EventNode>());
-                        }
-                        tcParents.get(n).add(m);
+                    for (int n = childTC.nextSetBit(0); n >= 0; n = childTC
+                            .nextSetBit(n + 1)) {
+                        getParents(tcParents, n).set(mId);
                     }
                 }
             }
@@ -87,20 +88,32 @@ public class FloydWarshall {
              * 2. For each node n in tc of m, add p to tcParents[n]
              * </pre>
              */
-            if (tcParents.containsKey(m) && tc.containsKey(m)) {
-                for (EventNode p : tcParents.get(m)) {
+            TransitiveClosure.Reachables mTC = transClosure.getReachables(mId);
+            if (tcParents[mId] != null && mTC != null) {
+                TransitiveClosure.Reachables mParents = tcParents[mId];
+                for (int p = mParents.nextSetBit(0); p >= 0; p = mParents
+                        .nextSetBit(p + 1)) {
                     // P has a tc entry because its already part of
                     // tcParents of m (so we've already processed it)
                     // previously.
-                    tc.get(p).addAll(tc.get(m));
-                    for (EventNode n : tc.get(m)) {
+                    transClosure.getReachables(p).or(mTC);
+                    for (int n = mTC.nextSetBit(0); n >= 0; n = mTC
+                            .nextSetBit(n + 1)) {
                         // n has a tcParents entry because m is a tc parent
                         // of n and it must have been set above.
-                        tcParents.get(n).add(p);
+                        tcParents[n].set(p);
                     }
                 }
             }
         }
         return transClosure;
     }
+
+    private static TransitiveClosure.Reachables getParents(
+            TransitiveClosure.Reachables[] tcParents, int id) {
+        if (tcParents[id] == null) {
+            tcParents[id] = new TransitiveClosure.Reachables();
+        }
+        return tcParents[id];
+    }
 }
@@ -0,0 +1,33 @@
+package synoptic.algorithms;
+
+/**
+ * Receives the progress of refinement and coarsening by Bisimulation, e.g., to
+ * report it while Bisimulation runs in the background. A listener may stop
+ * refinement or coarsening by throwing an unchecked exception, which leaves
+ * the partition graph in an intermediate state.
+ */
+public interface IBisimulationListener {
+    /**
+     * Called after the counter-examples of each refinement round are
+     * computed, before the round's splits.
+     * 
+     * @param round
+     *            The number of rounds before this one
+     * @param numUnsatInvs
+     *            The number of invariants that the graph does not satisfy (0
+     *            in the last round)
+     * @param numPartitions
+     *            The number of partitions in the graph
+     */
+    void refinementRound(int round, int numUnsatInvs, int numPartitions);
+
+    /**
+     * Called at the start of each coarsening round.
+     * 
+     * @param round
+     *            The number of rounds before this one
+     * @param numPartitions
+     *            The number of partitions in the graph
+     */
+    void coarseningRound(int round, int numPartitions);
+}
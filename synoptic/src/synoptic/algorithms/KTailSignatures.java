@@ -0,0 +1,275 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.INode;
+
+/**
+ * Computes the k-tail signatures of a set of nodes: two of the nodes have the
+ * same signature if and only if they are k-equal (see KTails.kEquals), i.e.
+ * the sets of strings of length at most k that start at them are the same.
+ * <p>
+ * Such a set of strings is prefix-closed, so it is represented by a trie, and
+ * every trie is interned: equal tries get the same int id, which serves as the
+ * signature. The trie of the strings of length at most d from a node is built
+ * from the tries of length at most d - 1 of its successors, merging the tries
+ * of successors of the same type, so the signatures of all nodes are computed
+ * bottom-up in k passes over the graph, instead of enumerating the (possibly
+ * exponentially many) strings of every node.
+ * </p>
+ * <p>
+ * Signatures are only comparable with the signatures computed by the same
+ * instance. As the graph changes, the signatures of the nodes whose k-tails
+ * changed can be recomputed with update, and remain comparable with the
+ * signatures of the other nodes.
+ * </p>
+ *
+ * @param <NodeType>
+ *            the type of the nodes
+ */
+public class KTailSignatures<NodeType extends INode<NodeType>> {
+
+    /**
+     * An interned trie: the id of the event type of its root, and the ids of
+     * its children, ordered by the ids of their roots' event types.
+     */
+    private static final class Trie {
+        final int label;
+        final int[] children;
+        final int hash;
+
+        Trie(int label, int[] children) {
+            this.label = label;
+            this.children = children;
+            this.hash = 31 * label + Arrays.hashCode(children);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Trie)) {
+                return false;
+            }
+            Trie trie = (Trie) other;
+            return label == trie.label
+                    && Arrays.equals(children, trie.children);
+        }
+    }
+
+    /** The ids of the event types. */
+    private final Map<EventType, Integer> labelIds = new HashMap<EventType, Integer>();
+
+    /** The interned tries, and the id of every interned trie. */
+    private final List<Trie> tries = new ArrayList<Trie>();
+    private final Map<Trie, Integer> trieIds = new HashMap<Trie, Integer>();
+
+    /** The union of every pair of tries that has been merged. */
+    private final Map<Long, Integer> unions = new HashMap<Long, Integer>();
+
+    /** The length of the k-tails. */
+    private final int k;
+
+    /** The signature of each of the nodes. */
+    private final Map<NodeType, Integer> signatures = new HashMap<NodeType, Integer>();
+
+    /**
+     * Computes the k-tail signatures of the given nodes.
+     *
+     * @param nodes
+     *            the nodes whose signatures are computed
+     * @param k
+     *            the length of the k-tails, at least 1
+     */
+    public KTailSignatures(Collection<NodeType> nodes, int k) {
+        assert (k > 0);
+        this.k = k;
+        update(nodes);
+    }
+
+    /**
+     * (Re)computes the k-tail signatures of the given nodes, e.g., after their
+     * k-tails have changed.
+     */
+    public void update(Collection<NodeType> nodes) {
+        // Index the nodes that are within k - 1 steps of the given nodes. The
+        // given nodes come first, and the nodes found in each step after the
+        // ones found in the step before.
+        Map<NodeType, Integer> ids = new LinkedHashMap<NodeType, Integer>();
+        List<NodeType> indexed = new ArrayList<NodeType>(nodes.size());
+        for (NodeType n : nodes) {
+            if (!ids.containsKey(n)) {
+                ids.put(n, indexed.size());
+                indexed.add(n);
+            }
+        }
+        // levelEnd[d] is the number of nodes within d steps of the given ones.
+        int[] levelEnd = new int[k];
+        levelEnd[0] = indexed.size();
+        List<int[]> successors = new ArrayList<int[]>(indexed.size());
+        int start = 0;
+        for (int d = 1; d < k; d++) {
+            for (int i = start; i < levelEnd[d - 1]; i++) {
+                successors.add(indexSuccessors(indexed.get(i), ids, indexed));
+            }
+            start = levelEnd[d - 1];
+            levelEnd[d] = indexed.size();
+        }
+
+        int[] labels = new int[indexed.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = getLabelId(indexed.get(i).getEType());
+        }
+
+        // The tries of the strings of length at most 1 are the nodes' types.
+        // Pass d computes the tries of length at most d for the nodes within
+        // k - d steps, whose successors are all within k - d + 1 steps.
+        int[] level = new int[indexed.size()];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = intern(labels[i], new int[0]);
+        }
+        for (int d = 2; d <= k; d++) {
+            int[] next = new int[levelEnd[k - d]];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = intern(labels[i],
+                        mergeChildren(successors.get(i), level));
+            }
+            level = next;
+        }
+
+        for (int i = 0; i < levelEnd[0]; i++) {
+            signatures.put(indexed.get(i), level[i]);
+        }
+    }
+
+    /**
+     * Returns the k-tail signature of n, which must be one of the nodes the
+     * signatures were computed for.
+     */
+    public int getSignature(NodeType n) {
+        Integer signature = signatures.get(n);
+        assert signature != null : "no signature computed for " + n;
+        return signature;
+    }
+
+    /**
+     * Forgets the signature of n, e.g., after it has been removed from the
+     * graph.
+     */
+    public void remove(NodeType n) {
+        signatures.remove(n);
+    }
+
+    /**
+     * Returns the indices of the successors of n, indexing the successors that
+     * have not been indexed yet.
+     */
+    private int[] indexSuccessors(NodeType n, Map<NodeType, Integer> ids,
+            List<NodeType> indexed) {
+        Collection<NodeType> succs = n.getAllSuccessors();
+        int[] result = new int[succs.size()];
+        int j = 0;
+        for (NodeType succ : succs) {
+            Integer id = ids.get(succ);
+            if (id == null) {
+                id = indexed.size();
+                ids.put(succ, id);
+                indexed.add(succ);
+            }
+            result[j++] = id;
+        }
+        return result;
+    }
+
+    private int getLabelId(EventType eType) {
+        Integer id = labelIds.get(eType);
+        if (id == null) {
+            id = labelIds.size();
+            labelIds.put(eType, id);
+        }
+        return id;
+    }
+
+    private int intern(int label, int[] children) {
+        Trie trie = new Trie(label, children);
+        Integer id = trieIds.get(trie);
+        if (id == null) {
+            id = tries.size();
+            tries.add(trie);
+            trieIds.put(trie, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the children of the trie of a node with the given successors:
+     * the union of the successors' tries (in level) of each type, ordered by
+     * type.
+     */
+    private int[] mergeChildren(int[] succs, int[] level) {
+        if (succs.length == 0) {
+            return succs;
+        }
+        int[] children = new int[succs.length];
+        int n = 0;
+        for (int succ : succs) {
+            n = addChild(children, n, level[succ]);
+        }
+        return Arrays.copyOf(children, n);
+    }
+
+    /**
+     * Adds the trie child to the n children, which are ordered by the types of
+     * their roots, merging it with the child of the same type if there is one.
+     * Returns the new number of children.
+     */
+    private int addChild(int[] children, int n, int child) {
+        int label = tries.get(child).label;
+        int i = 0;
+        while (i < n && tries.get(children[i]).label < label) {
+            i++;
+        }
+        if (i < n && tries.get(children[i]).label == label) {
+            children[i] = union(children[i], child);
+            return n;
+        }
+        System.arraycopy(children, i, children, i + 1, n - i);
+        children[i] = child;
+        return n + 1;
+    }
+
+    /**
+     * Returns the trie of the union of the strings of the two tries, which have
+     * roots of the same type.
+     */
+    private int union(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        long key = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+        Integer id = unions.get(key);
+        if (id == null) {
+            Trie trieA = tries.get(a);
+            Trie trieB = tries.get(b);
+            int[] children = Arrays.copyOf(trieA.children,
+                    trieA.children.length + trieB.children.length);
+            int n = trieA.children.length;
+            for (int child : trieB.children) {
+                n = addChild(children, n, child);
+            }
+            id = intern(trieA.label, Arrays.copyOf(children, n));
+            unions.put(key, id);
+        }
+        return id;
+    }
+}
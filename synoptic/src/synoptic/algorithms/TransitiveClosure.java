@@ -1,7 +1,11 @@
 package synoptic.algorithms;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -11,12 +15,117 @@ import synoptic.model.EventNode;
  * Computes and maintains the transitive closure. Code based on
  * http://www.cs.princeton.edu/courses/archive/fall05/cos226/lectures
  * /digraph.pdf
+ * <p>
+ * Nodes are given dense integer ids in the order in which they are first
+ * recorded, and the nodes reachable from each node are kept as a bitset over
+ * these ids. Each bitset only spans the range of words between the smallest
+ * and the largest id that it contains. Since the closure algorithms record the
+ * nodes of one trace at a time, and nodes of different traces never reach each
+ * other, each bitset is about as long as the node's trace, rather than the
+ * whole graph.
+ * </p>
  */
 public class TransitiveClosure {
-    // Reachability map.
-    // If y is reachable from x then tc.get(x).contains(y) == true,
-    // otherwise tc.get(x).contains(y) == false
-    Map<EventNode, Set<EventNode>> tc = new LinkedHashMap<EventNode, Set<EventNode>>();
+    /**
+     * A set of node ids, stored as the words of a bitset from the word with
+     * index base on.
+     */
+    static final class Reachables {
+        private int base = 0;
+        private long[] words = new long[0];
+
+        boolean get(int id) {
+            int w = (id >>> 6) - base;
+            return w >= 0 && w < words.length
+                    && (words[w] & (1L << id)) != 0;
+        }
+
+        void set(int id) {
+            ensureWords(id >>> 6, id >>> 6);
+            words[(id >>> 6) - base] |= 1L << id;
+        }
+
+        void or(Reachables other) {
+            if (other.words.length == 0) {
+                return;
+            }
+            ensureWords(other.base, other.base + other.words.length - 1);
+            int offset = other.base - base;
+            for (int i = 0; i < other.words.length; i++) {
+                words[offset + i] |= other.words[i];
+            }
+        }
+
+        /**
+         * Returns the smallest id in the set that is at least from, or -1 if
+         * there is none.
+         */
+        int nextSetBit(int from) {
+            int w = Math.max((from >>> 6) - base, 0);
+            if (w >= words.length) {
+                return -1;
+            }
+            long word = words[w];
+            if ((from >>> 6) - base == w) {
+                word &= -1L << from;
+            }
+            while (true) {
+                if (word != 0) {
+                    return ((w + base) << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == words.length) {
+                    return -1;
+                }
+                word = words[w];
+            }
+        }
+
+        int cardinality() {
+            int n = 0;
+            for (long word : words) {
+                n += Long.bitCount(word);
+            }
+            return n;
+        }
+
+        /**
+         * Widens the words to include the words with indices first to last.
+         */
+        private void ensureWords(int first, int last) {
+            if (words.length == 0) {
+                base = first;
+                words = new long[last - first + 1];
+                return;
+            }
+            int newBase = Math.min(base, first);
+            int newEnd = Math.max(base + words.length, last + 1);
+            if (newBase == base && newEnd == base + words.length) {
+                return;
+            }
+            // Leave room to grow towards later ids, which are the usual case.
+            if (newEnd > base + words.length) {
+                newEnd = Math.max(newEnd, newBase + 2 * (newEnd - newBase));
+            }
+            long[] newWords = new long[newEnd - newBase];
+            System.arraycopy(words, 0, newWords, base - newBase, words.length);
+            base = newBase;
+            words = newWords;
+        }
+
+        @Override
+        public String toString() {
+            return base + ":" + Arrays.toString(words);
+        }
+    }
+
+    // The id of each node, and the node with each id.
+    private final Map<EventNode, Integer> ids = new HashMap<EventNode, Integer>();
+    private final List<EventNode> nodes = new ArrayList<EventNode>();
+
+    // Reachability sets, by node id. If y is reachable from x then
+    // tc.get(id(x)).get(id(y)) == true, otherwise it is false or x has no
+    // reachability set (a null entry).
+    private final List<Reachables> tc = new ArrayList<Reachables>();
 
     private final Set<String> relations;
 
@@ -24,7 +133,7 @@ public class TransitiveClosure {
      * Create the transitive closure of {@code graph} for the Relation
      * {@code relation} using one of two algorithms -- an iterative Warshall's
      * algorithm or the recursive older algorithm.
-     * 
+     *
      * @param graph
      *            the graph
      * @param relation
@@ -36,10 +145,67 @@ public class TransitiveClosure {
         this.relations = relation;
     }
 
+    /**
+     * Returns the id of node n, or -1 if it has no id.
+     */
+    int getId(EventNode n) {
+        Integer id = ids.get(n);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of node n, giving it the next id if it has none.
+     */
+    int getOrCreateId(EventNode n) {
+        Integer id = ids.get(n);
+        if (id == null) {
+            id = nodes.size();
+            ids.put(n, id);
+            nodes.add(n);
+            tc.add(null);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of ids that have been given to nodes.
+     */
+    int getNumIds() {
+        return nodes.size();
+    }
+
+    EventNode getNode(int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * Returns the reachability set of the node with the given id, or null if
+     * nothing has been recorded as reachable from it.
+     */
+    Reachables getReachables(int id) {
+        return tc.get(id);
+    }
+
+    /**
+     * Returns the reachability set of the node with the given id, creating an
+     * empty one if necessary.
+     */
+    Reachables getOrCreateReachables(int id) {
+        Reachables r = tc.get(id);
+        if (r == null) {
+            r = new Reachables();
+            tc.set(id, r);
+        }
+        return r;
+    }
+
     /**
      * Check whether there is an edge in the transitive closure between
      * {@code m} and {@code n}.
-     * 
+     *
      * @param m
      *            a node
      * @param n
@@ -47,21 +213,30 @@ public class TransitiveClosure {
      * @return true if {@code m} can reach {@code n}
      */
     public boolean isReachable(EventNode m, EventNode n) {
-        Set<EventNode> i = tc.get(m);
+        int mId = getId(m);
+        int nId = getId(n);
+        if (mId < 0 || nId < 0) {
+            return false;
+        }
+        Reachables i = tc.get(mId);
         if (i == null) {
             return false;
         }
-        return i.contains(n);
+        return i.get(nId);
     }
 
     // WARNING: Assumes that 'into' has a non-null entry in tc.
     public void mergeReachables(EventNode from, EventNode into) {
-        Set<EventNode> srcSet = tc.get(from);
+        int fromId = getId(from);
+        if (fromId < 0) {
+            return;
+        }
+        Reachables srcSet = tc.get(fromId);
 
         if (srcSet != null) {
-            Set<EventNode> destSet = tc.get(into);
-            assert destSet != null;
-            destSet.addAll(srcSet);
+            int intoId = getId(into);
+            assert intoId >= 0 && tc.get(intoId) != null;
+            tc.get(intoId).or(srcSet);
         }
     }
 
@@ -69,29 +244,37 @@ public class TransitiveClosure {
      * Records the fact that m can transitively reach n.
      */
     public void recordTransitiveReachability(EventNode m, EventNode n) {
-        Set<EventNode> r;
-        if (!tc.containsKey(m)) {
-            r = new LinkedHashSet<EventNode>();
-            tc.put(m, r);
-        } else {
-            r = tc.get(m);
-        }
-        r.add(n);
+        int mId = getOrCreateId(m);
+        int nId = getOrCreateId(n);
+        getOrCreateReachables(mId).set(nId);
     }
 
     /**
-     * Returns the set of nodes that are reachable from a source node
-     * 
+     * Returns the set of nodes that are reachable from a source node, or null
+     * if there are none. The returned set is a copy.
+     *
      * @param source
      *            the node from which the reachability closure is computed.
      */
     public Set<EventNode> getReachableNodes(EventNode source) {
-        return tc.get(source);
+        int id = getId(source);
+        if (id < 0 || tc.get(id) == null) {
+            return null;
+        }
+        return toNodes(tc.get(id));
+    }
+
+    private Set<EventNode> toNodes(Reachables r) {
+        Set<EventNode> set = new LinkedHashSet<EventNode>(r.cardinality() * 2);
+        for (int i = r.nextSetBit(0); i >= 0; i = r.nextSetBit(i + 1)) {
+            set.add(nodes.get(i));
+        }
+        return set;
     }
 
     /**
      * Equality for transitive closure
-     * 
+     *
      * @param other
      * @return if {@code o} describes the same relation is {@code this}
      */
@@ -99,22 +282,23 @@ public class TransitiveClosure {
         if (!this.relations.equals(other.relations)) {
             return false;
         }
+        return isContainedIn(other) && other.isContainedIn(this);
+    }
 
-        for (EventNode u : other.tc.keySet()) {
-            for (EventNode v : other.tc.get(u)) {
-                // v is reachable from u in other.tc, check that same is true
-                // for this.tc:
-                if (!isReachable(u, v)) {
-                    return false;
-                }
+    /**
+     * Whether every pair of nodes in this transitive closure is also in the
+     * other one.
+     */
+    private boolean isContainedIn(TransitiveClosure other) {
+        for (int u = 0; u < tc.size(); u++) {
+            Reachables r = tc.get(u);
+            if (r == null) {
+                continue;
             }
-        }
-
-        for (EventNode u : tc.keySet()) {
-            for (EventNode v : tc.get(u)) {
-                // v is reachable from u in this.tc, check that same is true for
-                // other.tc:
-                if (!other.isReachable(u, v)) {
+            for (int v = r.nextSetBit(0); v >= 0; v = r.nextSetBit(v + 1)) {
+                // v is reachable from u in this.tc, check that same is true
+                // for other.tc:
+                if (!other.isReachable(nodes.get(u), nodes.get(v))) {
                     return false;
                 }
             }
@@ -123,14 +307,22 @@ public class TransitiveClosure {
     }
 
     public String toString() {
-        return tc.toString();
+        return getTC().toString();
     }
 
     /**
-     * @return tc
+     * Returns the transitive closure as a map from each node from which some
+     * node is reachable to the set of nodes reachable from it. The map is a
+     * copy, which takes space proportional to the size of the closure.
      */
     public Map<EventNode, Set<EventNode>> getTC() {
-        return tc;
+        Map<EventNode, Set<EventNode>> map = new LinkedHashMap<EventNode, Set<EventNode>>();
+        for (int i = 0; i < tc.size(); i++) {
+            if (tc.get(i) != null) {
+                map.put(nodes.get(i), toNodes(tc.get(i)));
+            }
+        }
+        return map;
     }
 
 }
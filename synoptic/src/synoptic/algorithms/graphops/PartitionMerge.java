@@ -47,14 +47,6 @@ public class PartitionMerge implements IOperation {
                     + retained.size());
         }
 
-        // //////////////
-        // Invalidate the appropriate elements in the graph's transitionCache
-
-        g.clearNodeAdjacentsCache(retained);
-        g.clearNodeAdjacentsCache(removed);
-
-        // //////////////
-
         return split;
     }
 
@@ -40,17 +40,8 @@ public class PartitionMultiMerge implements IOperation {
             retainedPartition.addEventNodes(removed.getEventNodes());
             removed.removeAllEventNodes();
             g.removePartition(removed);
-
-            // //////////////
-            // Invalidate the appropriate elements in the graph's
-            // transitionCache
-
-            g.clearNodeAdjacentsCache(removed);
-            // //////////////
         }
 
-        g.removeFromCache(retainedPartition);
-
         // TODO: Provide undo
         return null;
     }
@@ -50,17 +50,8 @@ public class PartitionMultiSplit implements IOperation {
             partition.removeEventNodes(set);
             newPartition.addEventNodes(set);
             g.add(newPartition);
-
-            g.clearNodeAdjacentsCache(newPartition);
         }
 
-        // //////////////
-        // Invalidate the appropriate elements in the graph's transitionCache
-
-        g.clearNodeAdjacentsCache(partition);
-
-        // //////////////
-
         if (AbstractMain.getInstance().options.performExtraChecks) {
             g.checkSanity();
         }
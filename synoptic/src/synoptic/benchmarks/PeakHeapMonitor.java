@@ -0,0 +1,108 @@
+package synoptic.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures the peak heap usage of a stage. The heap usage only grows between
+ * garbage collections, so its peak is the usage right before one of the
+ * collections during the stage, or at the end of the stage. The usage before
+ * each collection is taken from the collection's notification, which reports
+ * the usage of all the memory pools at the same point in time (unlike the
+ * peak usages of the pools, which may peak at different times).
+ */
+public class PeakHeapMonitor implements NotificationListener {
+    /** The names of the heap memory pools. */
+    private final Set<String> heapPools = new HashSet<String>();
+
+    /** The collectors that this monitor listens to. */
+    private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+    /** The peak heap usage so far, in bytes. */
+    private final AtomicLong peak = new AtomicLong();
+
+    /**
+     * Starts monitoring the heap usage.
+     */
+    public PeakHeapMonitor() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+        }
+        updatePeak(getHeapUsed());
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                .equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                .from((CompositeData) notification.getUserData());
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo()
+                .getMemoryUsageBeforeGc().entrySet()) {
+            if (heapPools.contains(entry.getKey())) {
+                used += entry.getValue().getUsed();
+            }
+        }
+        updatePeak(used);
+    }
+
+    /**
+     * Stops monitoring the heap usage, and returns its peak, in megabytes.
+     * The notification of a collection may be delivered after this, in which
+     * case the collection is missed.
+     */
+    public long stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // Already removed.
+            }
+        }
+        emitters.clear();
+        updatePeak(getHeapUsed());
+        return peak.get() / (1024 * 1024);
+    }
+
+    private void updatePeak(long used) {
+        long current;
+        do {
+            current = peak.get();
+        } while (used > current && !peak.compareAndSet(current, used));
+    }
+
+    private static long getHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+}
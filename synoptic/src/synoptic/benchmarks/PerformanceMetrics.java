@@ -1,76 +1,134 @@
 package synoptic.benchmarks;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import org.json.simple.JSONValue;
+
 import synoptic.main.AbstractMain;
 
 /**
  * A class to record performance metrics. It is a key value store, that keeps
  * record of the number of updates to each value. An update to a value (using
- * record) will add the value to the previously recorded one. This also keeps
- * track of a hierarchy of tasks: createTask adds a task to the task stack, and
- * a call to the task's stop method pops it.
+ * record) will add the value to the previously recorded one, and count the
+ * value in the histogram of the key's values. This also keeps track of a
+ * hierarchy of tasks: createTask adds a task to the task stack, and a call to
+ * the task's stop method pops it.
+ * <p>
+ * Metrics can be recorded by several threads at once: values are updated
+ * without locking, and every thread has its own task stack. The metrics that
+ * get() returns are those of the calling thread's current run, if one was set
+ * with setCurrent (e.g., for a session of the web interface), and the global
+ * metrics otherwise. Threads do not inherit the current run of the thread that
+ * created them, so worker threads that should record into the same run have
+ * to call setCurrent themselves.
+ * </p>
  */
 public class PerformanceMetrics {
     private static Logger logger = Logger.getLogger("Performance Metrics");
     /**
      * A global performance metric instance to record statistics.
      */
-    private static PerformanceMetrics globalPerformanceMetrics = new PerformanceMetrics();
+    private static volatile PerformanceMetrics globalPerformanceMetrics = new PerformanceMetrics();
     /**
-     * The last created timed task. This is used to create a hierarchy of tasks.
+     * The performance metrics of the run that each thread is part of, or null
+     * if the thread records to the global performance metrics.
      */
-    private static TimedTask previousTask = null;
+    private static final ThreadLocal<PerformanceMetrics> currentMetrics = new ThreadLocal<PerformanceMetrics>();
+
     /**
-     * Holds the values measured for each metric. Consecutive measurements will
-     * be accumulated by addition here.
+     * The percentiles of each metric that are exported.
      */
-    LinkedHashMap<String, Long> values = new LinkedHashMap<String, Long>();
+    private static final int[] exportedPercentiles = { 50, 90, 99 };
+
     /**
-     * For each metric, this holds the number of different measurements that
-     * contributed to the measurement. E.g., if add("task", _) has been called
-     * three times, this will hold 3.
+     * The measurements of a single metric.
      */
-    LinkedHashMap<String, Long> numberOfMesurements = new LinkedHashMap<String, Long>();
+    private static class Metric {
+        /**
+         * The value measured for the metric. Consecutive measurements are
+         * accumulated by addition.
+         */
+        final AtomicLong value = new AtomicLong();
+        /**
+         * All the measurements that contributed to the value. E.g., if
+         * add("task", _) has been called three times, this holds 3 values.
+         */
+        final Histogram histogram = new Histogram();
+        /**
+         * Whether the metric is accumulative. If a metric is accumulative, it
+         * will not be divided by the number of measurements.
+         */
+        volatile boolean accumulativity = false;
+    }
 
     /**
-     * Record whether the task should be accumulative or not. If a task is
-     * accumulative, it will not be divided by the number of measurements.
+     * The metrics by name.
      */
-    LinkedHashMap<String, Boolean> accumulativity = new LinkedHashMap<String, Boolean>();
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    /**
+     * The last created (and not yet stopped) timed task of each thread. This
+     * is used to create a hierarchy of tasks.
+     */
+    private final ThreadLocal<TimedTask> previousTask = new ThreadLocal<TimedTask>();
+
+    private Metric getMetric(String key) {
+        Metric metric = metrics.get(key);
+        if (metric == null) {
+            Metric newMetric = new Metric();
+            metric = metrics.putIfAbsent(key, newMetric);
+            if (metric == null) {
+                metric = newMetric;
+            }
+        }
+        return metric;
+    }
 
     /**
      * Record the task t. This will increment the number of measurements for
-     * that task name, and pop previousTask from the task stack.
-     * 
+     * that task name, and pop t from the task stack of the calling thread.
+     *
      * @param t
      *            the task to record
      */
     public void record(TimedTask t) {
         // t.stop();
+        getMetric(t.getTask()).accumulativity = t.getAccumulativity();
         record(t.getTask(), t.getTime());
-        accumulativity.put(t.getTask(), t.getAccumulativity());
-        previousTask = t.getParent();
+        if (previousTask.get() == t) {
+            if (t.getParent() == null) {
+                previousTask.remove();
+            } else {
+                previousTask.set(t.getParent());
+            }
+        }
     }
 
     /**
      * Find out whether a task is accumulative
      */
     private boolean getAccumulativity(String key) {
-        if (!accumulativity.containsKey(key)) {
-            return false;
-        }
-        return accumulativity.get(key);
+        Metric metric = metrics.get(key);
+        return metric != null && metric.accumulativity;
     }
 
     /**
      * Record a value. This will increment the number of measurements for the
      * given key, and add the value to the value saved for that key. If no
      * previous value has been recorded, the previous value is set to 0.
-     * 
+     *
      * @param key
      *            name of this measurement
      * @param value
@@ -79,31 +137,62 @@ public class PerformanceMetrics {
     public void record(String key, long value) {
         if (!getAccumulativity(key)) {
             // Print all recorded values.
-            if (AbstractMain.getInstance().options.doBenchmarking) {
+            AbstractMain main = AbstractMain.instance;
+            if (main != null && main.options.doBenchmarking) {
                 logger.fine(key + " = " + value);
             }
         }
-        if (!values.containsKey(key)) {
-            values.put(key, 0L);
-        }
-        values.put(key, values.get(key) + value);
-        if (!numberOfMesurements.containsKey(key)) {
-            numberOfMesurements.put(key, 0L);
-        }
-        numberOfMesurements.put(key, numberOfMesurements.get(key) + 1);
+        Metric metric = getMetric(key);
+        metric.value.addAndGet(value);
+        metric.histogram.record(value);
+    }
 
+    /**
+     * Returns the value recorded for a key (the sum of its measurements), or 0
+     * if nothing has been recorded.
+     */
+    public long getValue(String key) {
+        Metric metric = metrics.get(key);
+        return metric == null ? 0 : metric.value.get();
     }
 
     /**
-     * Returns the global performance metrics object
+     * Returns the histogram of the measurements for a key, or null if nothing
+     * has been recorded.
+     */
+    public Histogram getHistogram(String key) {
+        Metric metric = metrics.get(key);
+        return metric == null ? null : metric.histogram;
+    }
+
+    /**
+     * Returns the performance metrics of the current run of the calling
+     * thread, or the global performance metrics if it is not part of one.
      */
     static public PerformanceMetrics get() {
+        PerformanceMetrics metrics = currentMetrics.get();
+        if (metrics != null) {
+            return metrics;
+        }
         return globalPerformanceMetrics;
     }
 
+    /**
+     * Sets the performance metrics that the calling thread records to, until
+     * setCurrent is called again. If metrics is null, the thread records to
+     * the global performance metrics.
+     */
+    static public void setCurrent(PerformanceMetrics metrics) {
+        if (metrics == null) {
+            currentMetrics.remove();
+        } else {
+            currentMetrics.set(metrics);
+        }
+    }
+
     /**
      * Create a new task.
-     * 
+     *
      * @param string
      *            the task name. Choose something unique.
      * @return the timed task created
@@ -113,8 +202,9 @@ public class PerformanceMetrics {
     }
 
     /**
-     * Create a new task.
-     * 
+     * Create a new task in the performance metrics of the current run (see
+     * get).
+     *
      * @param taskName
      *            the task name. Choose something unique.
      * @param accumulativity
@@ -122,59 +212,150 @@ public class PerformanceMetrics {
      * @return the created timed task
      */
     public static TimedTask createTask(String taskName, boolean accumulativity) {
-        previousTask = new TimedTask(taskName, previousTask,
-                globalPerformanceMetrics, accumulativity);
-        return previousTask;
+        return get().startTask(taskName, accumulativity);
+    }
+
+    /**
+     * Create a new task that is a subtask of the calling thread's last
+     * created task that has not been stopped yet.
+     *
+     * @param taskName
+     *            the task name. Choose something unique.
+     * @param accumulativity
+     *            set this task to be accumulative
+     * @return the created timed task
+     */
+    public TimedTask startTask(String taskName, boolean accumulativity) {
+        TimedTask task = new TimedTask(taskName, previousTask.get(), this,
+                accumulativity);
+        previousTask.set(task);
+        return task;
+    }
+
+    private List<String> getSortedKeys() {
+        ArrayList<String> keys = new ArrayList<String>(metrics.keySet());
+        Collections.sort(keys);
+        return keys;
     }
 
     /**
      * Get the data averaged over recording numbers. That means every
      * measurements is divided by the number of measurements for that key.
-     * 
+     *
      * @return the data in alphabetic order
      */
     public String getDataRelative() {
-        ArrayList<String> keys = new ArrayList<String>(values.keySet());
-        Collections.sort(keys);
         StringBuilder str = new StringBuilder();
-        for (String key : keys) {
-            str.append(values.get(key) / numberOfMesurements.get(key) + " ");
+        for (String key : getSortedKeys()) {
+            Metric metric = metrics.get(key);
+            str.append(metric.value.get() / metric.histogram.getCount() + " ");
         }
         return str.toString();
     }
 
     /**
      * Get the data associated with the keys in alphabetic order.
-     * 
+     *
      * @param divisor
      *            the number to divide each measurement through (use for avg)
      * @return data in alphabetic order
      */
     public String getDataDividedBy(int divisor) {
-        ArrayList<String> keys = new ArrayList<String>(values.keySet());
-        Collections.sort(keys);
         StringBuilder str = new StringBuilder();
-        for (String key : keys) {
-            str.append(values.get(key) / divisor + " ");
+        for (String key : getSortedKeys()) {
+            str.append(metrics.get(key).value.get() / divisor + " ");
         }
         return str.toString();
     }
 
     /**
      * Get the keys in alphabetic order.
-     * 
+     *
      * @return keys in alphabetic order
      */
     public String getHeader() {
-        ArrayList<String> keys = new ArrayList<String>(values.keySet());
-        Collections.sort(keys);
         StringBuilder str = new StringBuilder();
-        for (String key : keys) {
+        for (String key : getSortedKeys()) {
             str.append(key + " ");
         }
         return str.toString();
     }
 
+    /**
+     * Writes all metrics as a JSON object that maps each key (in alphabetic
+     * order) to the metric's value, number of measurements, and the mean,
+     * minimum, maximum and percentiles of its measurements.
+     */
+    public void writeJSON(Writer writer) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        for (String key : getSortedKeys()) {
+            Metric metric = metrics.get(key);
+            Histogram histogram = metric.histogram;
+            Map<String, Object> fields = new LinkedHashMap<String, Object>();
+            fields.put("value", metric.value.get());
+            fields.put("count", histogram.getCount());
+            fields.put("accumulative", metric.accumulativity);
+            fields.put("mean", histogram.getMean());
+            fields.put("min", histogram.getMin());
+            fields.put("max", histogram.getMax());
+            for (int p : exportedPercentiles) {
+                fields.put("p" + p, histogram.getValueAtPercentile(p));
+            }
+            json.put(key, fields);
+        }
+        JSONValue.writeJSONString(json, writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes all metrics as CSV, with a header line and a line per key (in
+     * alphabetic order). The columns are the same as the fields of writeJSON.
+     */
+    public void writeCSV(Writer writer) throws IOException {
+        writer.write("metric,value,count,accumulative,mean,min,max");
+        for (int p : exportedPercentiles) {
+            writer.write(",p" + p);
+        }
+        writer.write("\n");
+        for (String key : getSortedKeys()) {
+            Metric metric = metrics.get(key);
+            Histogram histogram = metric.histogram;
+            writer.write(csvField(key) + "," + metric.value.get() + ","
+                    + histogram.getCount() + "," + metric.accumulativity + ","
+                    + histogram.getMean() + "," + histogram.getMin() + ","
+                    + histogram.getMax());
+            for (int p : exportedPercentiles) {
+                writer.write("," + histogram.getValueAtPercentile(p));
+            }
+            writer.write("\n");
+        }
+        writer.flush();
+    }
+
+    private static String csvField(String str) {
+        if (str.indexOf(',') < 0 && str.indexOf('"') < 0) {
+            return str;
+        }
+        return "\"" + str.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Writes all metrics to a file, as CSV if the file name ends in ".csv"
+     * and as JSON otherwise.
+     */
+    public void export(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            if (file.getName().toLowerCase().endsWith(".csv")) {
+                writeCSV(writer);
+            } else {
+                writeJSON(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
     /**
      * Resets the global performance metrics object.
      */
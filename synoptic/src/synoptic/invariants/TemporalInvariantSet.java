@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -12,15 +13,21 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.IndexedGraph;
 import synoptic.main.AbstractMain;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.util.InternalSynopticException;
 
 /**
  * Maintains a set of temporal invariants.
@@ -153,18 +160,46 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
             IGraph<T> graph) {
+        return getAllCounterExamples(graph, null);
+    }
+
+    /**
+     * Like getAllCounterExamples(graph), but model checks the invariants as
+     * separate tasks on executor, which is owned (and shut down) by the
+     * caller. The returned paths are the same as with sequential checking.
+     * 
+     * @param executor
+     *            the executor to run the model checking tasks on, can be null
+     *            to check the invariants sequentially
+     */
+    public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
+            IGraph<T> graph, ExecutorService executor) {
         TimedTask violations = PerformanceMetrics.createTask(
                 "getAllCounterExamples", false);
         AbstractMain main = AbstractMain.getInstance();
         try {
             List<CExamplePath<T>> paths = null;
 
-            paths = new ArrayList<CExamplePath<T>>();
-            for (ITemporalInvariant tinv : invariants) {
-                CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                        (BinaryInvariant) tinv, graph);
-                if (path != null) {
-                    paths.add(path);
+            if (invariants.isEmpty()) {
+                return null;
+            }
+
+            // All invariants are checked against the same index of graph.
+            IndexedGraph<T> indexed = new IndexedGraph<T>(graph);
+
+            List<BinaryInvariant> toCheck = getInvariantsToCheck(indexed);
+
+            if (executor != null && toCheck.size() > 1) {
+                paths = getAllCounterExamplesInParallel(toCheck, indexed,
+                        executor);
+            } else {
+                paths = new ArrayList<CExamplePath<T>>();
+                for (BinaryInvariant inv : toCheck) {
+                    CExamplePath<T> path = FsmModelChecker.getCounterExample(
+                            inv, indexed);
+                    if (path != null) {
+                        paths.add(path);
+                    }
                 }
             }
 
@@ -190,6 +225,79 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         }
     }
 
+    /**
+     * Returns the invariants of this set, in iteration order, for which the
+     * tracing model checker must be run to find their counter-examples in the
+     * graph. Unless screening is disabled, these are only the invariants that
+     * the bitset model checker cannot rule out as satisfied.
+     */
+    private <T extends INode<T>> List<BinaryInvariant> getInvariantsToCheck(
+            IndexedGraph<T> graph) {
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>(
+                invariants.size());
+        for (ITemporalInvariant tinv : invariants) {
+            invs.add((BinaryInvariant) tinv);
+        }
+
+        AbstractMain main = AbstractMain.getInstance();
+        if (main != null && !main.options.screenInvariants) {
+            return invs;
+        }
+
+        TimedTask screening = PerformanceMetrics.createTask(
+                "screenInvariants", true);
+        try {
+            BitSet mayFail = FsmModelChecker.screenInvariants(invs, graph);
+            List<BinaryInvariant> toCheck = new ArrayList<BinaryInvariant>(
+                    mayFail.cardinality());
+            for (int i = mayFail.nextSetBit(0); i >= 0; i = mayFail
+                    .nextSetBit(i + 1)) {
+                toCheck.add(invs.get(i));
+            }
+            return toCheck;
+        } finally {
+            screening.stop();
+        }
+    }
+
+    /**
+     * Model checks each of the given invariants as a separate task on
+     * executor. All tasks share the (immutable) index of the graph, so they
+     * never access the graph itself, which may cache adjacency information
+     * lazily. The returned paths are in the iteration order of the
+     * invariants, exactly as with sequential checking, regardless of the order
+     * in which the tasks complete.
+     */
+    private <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamplesInParallel(
+            List<BinaryInvariant> toCheck, final IndexedGraph<T> graph,
+            ExecutorService executor) {
+        List<Callable<CExamplePath<T>>> tasks = new ArrayList<Callable<CExamplePath<T>>>();
+        for (final BinaryInvariant inv : toCheck) {
+            tasks.add(new Callable<CExamplePath<T>>() {
+                @Override
+                public CExamplePath<T> call() {
+                    return FsmModelChecker.getCounterExample(inv, graph);
+                }
+            });
+        }
+
+        List<CExamplePath<T>> paths = new ArrayList<CExamplePath<T>>();
+        try {
+            for (Future<CExamplePath<T>> result : executor.invokeAll(tasks)) {
+                CExamplePath<T> path = result.get();
+                if (path != null) {
+                    paths.add(path);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            throw new InternalSynopticException(e);
+        }
+        return paths;
+    }
+
     /**
      * Returns the first counter-example encountered in the graph g. The order
      * of exploration is unspecified.
@@ -202,12 +310,34 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> CExamplePath<T> getFirstCounterExample(
             IGraph<T> g) {
+        if (invariants.isEmpty()) {
+            return null;
+        }
+        return getFirstCounterExample(new IndexedGraph<T>(g));
+    }
+
+    /**
+     * Returns the first counter-example encountered in an indexed graph (or a
+     * merged view of one). The order of exploration is unspecified. This only
+     * reads the index, so it can be called by several threads at once.
+     * 
+     * @param <T>
+     *            the node type
+     * @param indexed
+     *            the indexed graph to check
+     * @return null if no violation is found, the counter-example path otherwise
+     */
+    public <T extends INode<T>> CExamplePath<T> getFirstCounterExample(
+            IndexedGraph<T> indexed) {
         TimedTask violations = PerformanceMetrics.createTask(
                 "getFirstCounterExample", false);
         try {
-            for (ITemporalInvariant tinv : invariants) {
-                CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                        (BinaryInvariant) tinv, g);
+            if (invariants.isEmpty()) {
+                return null;
+            }
+            for (BinaryInvariant inv : getInvariantsToCheck(indexed)) {
+                CExamplePath<T> path = FsmModelChecker.getCounterExample(inv,
+                        indexed);
                 if (path != null) {
                     return path;
                 }
@@ -50,6 +50,13 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
      */
     List<ConstrainedHistoryNode<T>> states;
 
+    /**
+     * The list that states was stored in before the last transition, which
+     * the next transition reuses rather than allocating a new one. Null until
+     * the first transition.
+     */
+    private List<ConstrainedHistoryNode<T>> spareStates;
+
     /**
      * The node (usually Partition) being transitioned _from_
      */
@@ -144,7 +151,8 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
      *            tracing state set
      */
     public void setStates(List<ConstrainedHistoryNode<T>> states) {
-        this.states = states;
+        // Copied, since the states are modified in place.
+        this.states = new ArrayList<ConstrainedHistoryNode<T>>(states);
         numStates = states.size();
     }
 
@@ -303,13 +311,21 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         List<ConstrainedHistoryNode<T>> statesOld = states;
 
         // Final state nodes after the transition will be stored in s
-        states = new ArrayList<ConstrainedHistoryNode<T>>(numStates);
-        for (int i = 0; i < numStates; ++i) {
-            states.add(null);
+        if (spareStates == null || spareStates.size() != numStates) {
+            states = new ArrayList<ConstrainedHistoryNode<T>>(numStates);
+            for (int i = 0; i < numStates; ++i) {
+                states.add(null);
+            }
+        } else {
+            states = spareStates;
+            for (int i = 0; i < numStates; ++i) {
+                states.set(i, null);
+            }
         }
 
         // Call transition code specific to each invariant
         transition(input, minMaxTrans, isA, isB, outOfBound, statesOld);
+        spareStates = statesOld;
 
         // The node we just transitioned _to_ is our new previous node (for
         // future transitions)
@@ -463,6 +479,38 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> o) {
+        ConstrainedTracingSet<T> other = (ConstrainedTracingSet<T>) o;
+
+        a = other.a;
+        b = other.b;
+        tBound = other.tBound;
+        numStates = other.numStates;
+        // The lists are refilled rather than copied, since fixpoint
+        // computations set the same state sets many times.
+        states = refill(states, other.states);
+        tRunning = refill(tRunning, other.tRunning);
+        previous = other.previous;
+        relation = other.relation;
+    }
+
+    /**
+     * Returns list, or a new list if it is null, after replacing its contents
+     * with those of from.
+     */
+    private static <E> List<E> refill(List<E> list, List<E> from) {
+        if (list == null) {
+            return new ArrayList<E>(from);
+        }
+        if (list == from) {
+            return list;
+        }
+        list.clear();
+        list.addAll(from);
+        return list;
+    }
+
     @Override
     public boolean isSubset(TracingStateSet<T> o) {
         // Cast so that we can access FSM states
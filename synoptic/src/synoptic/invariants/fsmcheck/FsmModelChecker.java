@@ -3,12 +3,8 @@ package synoptic.invariants.fsmcheck;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Queue;
-import java.util.Set;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -50,71 +46,152 @@ public class FsmModelChecker {
     public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runChecker(
             IStateSet<Node, StateSet> initial, IGraph<Node> graph,
             boolean earlyExit) {
-
-        // A queue of nodes that we should process.
-        Queue<Node> workList = new LinkedList<Node>();
+        IndexedGraph<Node> indexed = new IndexedGraph<Node>(graph);
+        List<StateSet> states = runChecker(initial, indexed, earlyExit);
 
         // Maps a node to a set of states.
-        Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
+        Map<Node, StateSet> result = new LinkedHashMap<Node, StateSet>();
+        for (int i = 0; i < indexed.size(); i++) {
+            result.put(indexed.getNode(i), states.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Same as runChecker above, but for a graph that has already been indexed.
+     * 
+     * @return The stateset of each node, indexed by node id.
+     */
+    public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> List<StateSet> runChecker(
+            IStateSet<Node, StateSet> initial, IndexedGraph<Node> graph,
+            boolean earlyExit) {
+        int numNodes = graph.size();
 
-        // Populate the state map with initial states.
-        for (Node node : graph.getNodes()) {
-            states.put(node, initial.copy());
+        // Populate the state of each node with the initial state.
+        List<StateSet> states = new ArrayList<StateSet>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            states.add(initial.copy());
         }
 
         // Add initial node to the worklist.
-        Node node = graph.getDummyInitialNode();
-        workList.add(node);
-        states.get(node).setInitial(node);
-
-        // Actual model checking step - takes an item off the worklist, and
-        // transitions the state found at that node, using the labels of all
-        // of the adjacent nodes as input. The resulting state is then checked
-        // for subset with the stateset cached at the destination node. If it is
-        // found to be a subset, then merging in the new state would cause no
-        // change. Therefore, only in the case where it's not a subset is the
-        // merge performed and the destination node added to the worklist
-        // (the changed states need to be propagated).
+        int initialId = graph.getInitialNodeId();
+        states.get(initialId).setInitial(graph.getNode(initialId));
+        WorkList workList = new WorkList(numNodes);
+        workList.add(initialId);
+
+        propagate(graph, states, workList, initial.copy(), earlyExit);
+        return states;
+    }
+
+    /**
+     * Actual model checking step - takes an item off the worklist, and
+     * transitions the state found at that node, using the labels of all of the
+     * adjacent nodes as input. The resulting state is then checked for subset
+     * with the stateset cached at the destination node. If it is found to be a
+     * subset, then merging in the new state would cause no change. Therefore,
+     * only in the case where it's not a subset is the merge performed and the
+     * destination node added to the worklist (the changed states need to be
+     * propagated).
+     */
+    private static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> void propagate(
+            IndexedGraph<Node> graph, List<StateSet> states,
+            WorkList workList, StateSet scratch, boolean earlyExit) {
         while (!workList.isEmpty()) {
-            node = workList.remove();
-            StateSet current = states.get(node);
+            int nodeId = workList.remove();
+            StateSet current = states.get(nodeId);
 
             // Process all the nodes that are adjacent to the current node.
-            for (Node target : graph.getAdjacentNodes(node)) {
-                StateSet oldTargetStates = states.get(target);
-                StateSet updatesToTargetStates = current.copy();
-                updatesToTargetStates.transition(target);
-
-                // Evaluate isSubset _before_ the merge.
-                boolean isSubset = updatesToTargetStates
-                        .isSubset(oldTargetStates);
-                oldTargetStates.mergeWith(updatesToTargetStates);
-                if (earlyExit && oldTargetStates.isFail()
-                        && target.isTerminal()) {
-                    return states;
+            for (int target : graph.getSuccessors(nodeId)) {
+                Node targetNode = graph.getNode(target);
+                StateSet targetStates = states.get(target);
+                boolean changed = propagateEdge(current, targetNode,
+                        targetStates, scratch);
+                if (earlyExit && targetStates.isFail()
+                        && targetNode.isTerminal()) {
+                    return;
                 }
 
                 // If updatesToTargetStates is subset of targetStates, then NOT
                 // re-exploring the graph starting from the current node
                 // prevents infinitely traversing loops
-                if (!isSubset && !workList.contains(target)) {
+                if (changed) {
                     workList.add(target);
                 }
             }
         }
+    }
 
-        return states;
+    /**
+     * Transitions current along the edge into target and merges the result
+     * into targetStates. The transitioned states are computed in scratch,
+     * which is overwritten.
+     *
+     * @return true if targetStates was not a superset of the transitioned
+     *         states (i.e., target needs to be re-explored)
+     */
+    private static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> boolean propagateEdge(
+            StateSet current, Node target, StateSet targetStates,
+            StateSet scratch) {
+        StateSet updatesToTargetStates = scratch;
+        updatesToTargetStates.setTo(current);
+        updatesToTargetStates.transition(target);
+
+        // Evaluate isSubset _before_ the merge.
+        boolean isSubset = updatesToTargetStates.isSubset(targetStates);
+        targetStates.mergeWith(updatesToTargetStates);
+        return !isSubset;
+    }
+
+    /**
+     * A FIFO queue of node ids, in which every id appears at most once. Adding
+     * an id that is already queued has no effect. Since there are at most
+     * numNodes ids in the queue at any time, it is a fixed-size ring buffer.
+     */
+    private static final class WorkList {
+        private final int[] queue;
+        private final BitSet queued;
+        private int head = 0;
+        private int size = 0;
+
+        WorkList(int numNodes) {
+            this.queue = new int[Math.max(numNodes, 1)];
+            this.queued = new BitSet(numNodes);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(int id) {
+            if (queued.get(id)) {
+                return;
+            }
+            queued.set(id);
+            queue[(head + size) % queue.length] = id;
+            size++;
+        }
+
+        int remove() {
+            int id = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            queued.clear(id);
+            return id;
+        }
     }
 
     // Helper which invokes runChecker given an fsm state set, and process the
     // resulting states into a summary failure-indicating BitSet.
     protected static <T extends INode<T>> BitSet whichFail(
-            FsmStateSet<T> initial, IGraph<T> graph) {
-        Map<T, FsmStateSet<T>> states = runChecker(initial, graph, false);
+            FsmStateSet<T> initial, IndexedGraph<T> graph) {
         BitSet result = new BitSet();
-        for (Entry<T, FsmStateSet<T>> entry : states.entrySet()) {
-            if (entry.getKey().isTerminal()) {
-                result.or(entry.getValue().whichFail());
+        if (initial.count == 0) {
+            return result;
+        }
+        List<FsmStateSet<T>> states = runChecker(initial, graph, false);
+        for (int i = 0; i < graph.size(); i++) {
+            if (graph.getNode(i).isTerminal()) {
+                result.or(states.get(i).whichFail());
             }
         }
         return result;
@@ -132,40 +209,112 @@ public class FsmModelChecker {
         }
     }
 
+    // Helper to set the positions, in the screened list, of the invariants
+    // corresponding to 1s in a BitSet.
+    private static void bitFilter(BitSet set, List<Integer> positions,
+            BitSet results) {
+        for (int i = set.nextSetBit(0); i >= 0 && i < positions.size(); i = set
+                .nextSetBit(i + 1)) {
+            results.set(positions.get(i));
+        }
+    }
+
     /**
      * Use the BitSet checker to evaluate, and return which synoptic.invariants
-     * failed.
+     * may fail, in the order in which they are passed in. For all but the
+     * constrained invariants, these are exactly the failing invariants.
+     * 
+     * @see #screenInvariants(List, IndexedGraph)
      */
-    @SuppressWarnings("rawtypes")
     public static <T extends INode<T>> List<BinaryInvariant> runBitSetChecker(
             Iterable<BinaryInvariant> invariants, IGraph<T> graph) {
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (BinaryInvariant inv : invariants) {
+            invs.add(inv);
+        }
+        BitSet mayFail = screenInvariants(invs, new IndexedGraph<T>(graph));
 
-        // TODO: store the TemporalInvariantSet in this way instead of needing
-        // to process it here.
-        // Filter the elements of the set into categorized lists.
+        List<BinaryInvariant> results = new ArrayList<BinaryInvariant>();
+        bitFilter(mayFail, invs, results);
+        return results;
+    }
+
+    /**
+     * Screens the invariants with the BitSet checker, which evaluates all
+     * invariants of a type in one pass over the graph, so that the (much more
+     * expensive) tracing checker only has to be run for invariants that can
+     * fail. An unconstrained invariant may fail exactly when its FSM reaches a
+     * failure state at a terminal node. A constrained invariant may fail if its
+     * untimed part fails (for AP and IntrBy, whose constrained FSMs include
+     * the untimed failures), or if its time bound may be violated according to
+     * a TimeBoundsScreen. Invariants of other types are never screened out.
+     * 
+     * @return The positions, in invariants, of the invariants that may fail.
+     */
+    @SuppressWarnings("rawtypes")
+    public static <T extends INode<T>> BitSet screenInvariants(
+            List<BinaryInvariant> invariants, IndexedGraph<T> graph) {
+        // Filter the elements of the list into categorized lists, along with
+        // the positions of the invariants they came from.
         List<BinaryInvariant> alwaysFollowed = new ArrayList<BinaryInvariant>();
         List<BinaryInvariant> alwaysPrecedes = new ArrayList<BinaryInvariant>();
         List<BinaryInvariant> neverFollowed = new ArrayList<BinaryInvariant>();
-        for (ITemporalInvariant inv : invariants) {
+        List<BinaryInvariant> interruptedBy = new ArrayList<BinaryInvariant>();
+        List<Integer> afPositions = new ArrayList<Integer>();
+        List<Integer> apPositions = new ArrayList<Integer>();
+        List<Integer> nfPositions = new ArrayList<Integer>();
+        List<Integer> ibPositions = new ArrayList<Integer>();
+
+        BitSet results = new BitSet();
+        TimeBoundsScreen<T> timeBounds = null;
+        for (int i = 0; i < invariants.size(); i++) {
+            BinaryInvariant inv = invariants.get(i);
             @SuppressWarnings("unchecked")
             Class<Object> invClass = (Class) inv.getClass();
             if (invClass.equals(AlwaysFollowedInvariant.class)) {
-                alwaysFollowed.add((BinaryInvariant) inv);
+                alwaysFollowed.add(inv);
+                afPositions.add(i);
             } else if (invClass.equals(AlwaysPrecedesInvariant.class)) {
-                alwaysPrecedes.add((BinaryInvariant) inv);
+                alwaysPrecedes.add(inv);
+                apPositions.add(i);
             } else if (invClass.equals(NeverFollowedInvariant.class)) {
-                neverFollowed.add((BinaryInvariant) inv);
+                neverFollowed.add(inv);
+                nfPositions.add(i);
+            } else if (invClass.equals(InterruptedByInvariant.class)) {
+                interruptedBy.add(inv);
+                ibPositions.add(i);
+            } else if (invClass.equals(TempConstrainedInvariant.class)) {
+                TempConstrainedInvariant<?> constInv = (TempConstrainedInvariant<?>) inv;
+                BinaryInvariant untimed = constInv.getInv();
+                if (untimed instanceof AlwaysPrecedesInvariant) {
+                    alwaysPrecedes.add(untimed);
+                    apPositions.add(i);
+                } else if (untimed instanceof InterruptedByInvariant) {
+                    interruptedBy.add(untimed);
+                    ibPositions.add(i);
+                } else if (!(untimed instanceof AlwaysFollowedInvariant)) {
+                    results.set(i);
+                    continue;
+                }
+                if (timeBounds == null) {
+                    timeBounds = new TimeBoundsScreen<T>(graph);
+                }
+                if (timeBounds.mayViolateBound(constInv)) {
+                    results.set(i);
+                }
+            } else {
+                results.set(i);
             }
         }
 
-        BitSet afs = whichFail(new AFbyInvFsms<T>(alwaysFollowed), graph);
-        BitSet aps = whichFail(new APInvFsms<T>(alwaysPrecedes), graph);
-        BitSet nfs = whichFail(new NFbyInvFsms<T>(neverFollowed), graph);
-
-        List<BinaryInvariant> results = new ArrayList<BinaryInvariant>();
-        bitFilter(afs, alwaysFollowed, results);
-        bitFilter(aps, alwaysPrecedes, results);
-        bitFilter(nfs, neverFollowed, results);
+        bitFilter(whichFail(new AFbyInvFsms<T>(alwaysFollowed), graph),
+                afPositions, results);
+        bitFilter(whichFail(new APInvFsms<T>(alwaysPrecedes), graph),
+                apPositions, results);
+        bitFilter(whichFail(new NFbyInvFsms<T>(neverFollowed), graph),
+                nfPositions, results);
+        bitFilter(whichFail(new IntrByInvFsms<T>(interruptedBy), graph),
+                ibPositions, results);
         return results;
     }
 
@@ -179,14 +328,36 @@ public class FsmModelChecker {
      *            The invariant to test.
      * @return The shortest counterexample path for this invariant.
      */
-    @SuppressWarnings("unchecked")
     public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
             BinaryInvariant invariant, IGraph<Node> graph) {
+        if (invariant == null) {
+            return null;
+        }
+        return getCounterExample(invariant, new IndexedGraph<Node>(graph));
+    }
 
-        TracingStateSet<Node> stateset = null;
+    /**
+     * Same as getCounterExample above, but for a graph that has already been
+     * indexed. Use this to check many invariants against the same graph.
+     */
+    public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
+            BinaryInvariant invariant, IndexedGraph<Node> graph) {
         if (invariant == null) {
             return null;
         }
+        TracingStateSet<Node> stateset = newTracingStateSet(invariant);
+        return getShortestCounterExample(invariant, graph,
+                runChecker(stateset, graph, true));
+    }
+
+    /**
+     * Creates the tracing state set that simulates the finite state machine of
+     * the given invariant.
+     */
+    @SuppressWarnings("unchecked")
+    public static <Node extends INode<Node>> TracingStateSet<Node> newTracingStateSet(
+            BinaryInvariant invariant) {
+        TracingStateSet<Node> stateset = null;
         Class<BinaryInvariant> invClass = (Class<BinaryInvariant>) invariant
                 .getClass();
         if (invClass.equals(AlwaysFollowedInvariant.class)) {
@@ -233,15 +404,21 @@ public class FsmModelChecker {
                 }
             }
         }
+        return stateset;
+    }
 
-        // Return the shortest path, ending on a final node, which causes the
-        // invariant to fail.
+    /**
+     * Returns the shortest path, ending on a final node, which causes the
+     * invariant to fail, given the states (indexed by node id) computed by
+     * runChecker.
+     */
+    private static <Node extends INode<Node>> CExamplePath<Node> getShortestCounterExample(
+            BinaryInvariant invariant, IndexedGraph<Node> graph,
+            List<TracingStateSet<Node>> states) {
         HistoryNode<Node> shortestPath = null;
-        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
-                graph, true).entrySet();
-        for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
-            TracingStateSet<Node> stateSet = e.getValue();
-            Node node = e.getKey();
+        for (int i = 0; i < graph.size(); i++) {
+            TracingStateSet<Node> stateSet = states.get(i);
+            Node node = graph.getNode(i);
 
             HistoryNode<Node> path = stateSet.failpath();
 
@@ -1,7 +1,5 @@
 package synoptic.invariants.fsmcheck;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
@@ -52,9 +50,10 @@ import synoptic.util.InternalSynopticException;
  * @see AFbyInvFsms
  * @see APInvFsms
  * @see NFbyInvFsms
+ * @see IntrByInvFsms
  */
 public abstract class FsmStateSet<T extends INode<T>> implements
-        IStateSet<T, FsmStateSet<T>> {
+        IStateSet<T, FsmStateSet<T>>, Cloneable {
     protected List<BitSet> sets;
     protected int count;
 
@@ -175,8 +174,8 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     }
 
     /**
-     * Clones this set of states, using reflection to ascertain the actual type
-     * to construct.
+     * Clones this set of states. The state vectors are copied, while the
+     * (immutable) input mapping is shared with the clone.
      * 
      * @see java.lang.Object#clone()
      */
@@ -184,36 +183,32 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     @SuppressWarnings("unchecked")
     public FsmStateSet<T> copy() {
         FsmStateSet<T> result;
-
-        Constructor<?> cons = null;
-        for (Constructor<?> c : this.getClass().getConstructors()) {
-            Class<?>[] params = c.getParameterTypes();
-            if (params.length == 1 && params[0].toString().equals("int")) {
-                cons = c;
-            }
-        }
         try {
-            result = (FsmStateSet<T>) cons.newInstance(sets.size());
-        } catch (IllegalArgumentException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InstantiationException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (IllegalAccessException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InvocationTargetException e) {
+            result = (FsmStateSet<T>) super.clone();
+        } catch (CloneNotSupportedException e) {
             throw InternalSynopticException.wrap(e);
         }
 
-        result.count = count;
-        ArrayList<BitSet> newSets = new ArrayList<BitSet>();
+        ArrayList<BitSet> newSets = new ArrayList<BitSet>(sets.size());
         for (int i = 0; i < sets.size(); i++) {
             newSets.add((BitSet) sets.get(i).clone());
         }
         result.sets = newSets;
-        result.invariantsMap = invariantsMap;
         return result;
     }
 
+    @Override
+    public void setTo(FsmStateSet<T> other) {
+        assert other.sets.size() == sets.size();
+        count = other.count;
+        for (int i = 0; i < sets.size(); i++) {
+            BitSet set = sets.get(i);
+            set.clear();
+            set.or(other.sets.get(i));
+        }
+        invariantsMap = other.invariantsMap;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object otherObj) {
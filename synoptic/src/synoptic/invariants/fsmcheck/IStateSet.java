@@ -43,4 +43,11 @@ public interface IStateSet<T, StateSetType> {
      * Version of clone which doesn't require unsafe casting.
      */
     StateSetType copy();
+
+    /**
+     * Overwrites the states of this stateset with those of other (which must
+     * be of the same type and track the same invariants), so that this set can
+     * be reused instead of creating a new copy of other.
+     */
+    void setTo(StateSetType other);
 }
@@ -0,0 +1,266 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * An immutable view of a graph for the model checkers, in which every node has
+ * a dense integer id (in the iteration order of getNodes()) and the successors
+ * of every node are stored as an array of ids. This lets the checkers keep
+ * per-node data in arrays, and is built once per graph and shared by all of the
+ * invariants checked against it. Since all adjacency information is looked up
+ * when the index is built, an index can also be shared by checkers running in
+ * different threads, even if the underlying graph is not thread-safe. The
+ * index does not observe changes made to the graph after it was built.
+ * <p>
+ * The index can also produce a view of the graph in which two of its nodes are
+ * merged (see merge), without modifying or re-indexing the graph. Such views
+ * share all of the adjacency information that the merge does not change with
+ * the index, so many of them can be checked at once, e.g. to speculatively
+ * validate candidate merges in parallel.
+ * </p>
+ *
+ * @param <Node>
+ *            The node type of the graph.
+ */
+public final class IndexedGraph<Node extends INode<Node>> {
+    private final List<Node> nodes;
+    private final Map<Node, Integer> ids;
+    private final int[][] successors;
+    private final int initialNodeId;
+
+    /**
+     * In a merged view, the node that was merged away, which is no longer in
+     * the view, and the node that was moved into its id. Both are null in the
+     * index of a graph.
+     */
+    private final Node removedNode;
+    private final Node movedNode;
+
+    /**
+     * The ids of the predecessors of every node, computed on the first merge.
+     */
+    private int[][] predecessors = null;
+
+    public IndexedGraph(IGraph<Node> graph) {
+        nodes = new ArrayList<Node>(graph.getNodes());
+        ids = new HashMap<Node, Integer>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            ids.put(nodes.get(i), i);
+        }
+
+        successors = new int[nodes.size()][];
+        for (int i = 0; i < nodes.size(); i++) {
+            Set<Node> adjacent = graph.getAdjacentNodes(nodes.get(i));
+            int[] targets = new int[adjacent.size()];
+            int j = 0;
+            for (Node target : adjacent) {
+                targets[j++] = ids.get(target);
+            }
+            successors[i] = targets;
+        }
+
+        initialNodeId = ids.get(graph.getDummyInitialNode());
+        removedNode = null;
+        movedNode = null;
+    }
+
+    private IndexedGraph(List<Node> nodes, Map<Node, Integer> ids,
+            int[][] successors, int initialNodeId, Node removedNode,
+            Node movedNode) {
+        this.nodes = nodes;
+        this.ids = ids;
+        this.successors = successors;
+        this.initialNodeId = initialNodeId;
+        this.removedNode = removedNode;
+        this.movedNode = movedNode;
+    }
+
+    /**
+     * Returns a view of the graph in which the removed node is merged into the
+     * retained node: the retained node has the successors of both nodes, and
+     * all edges to the removed node lead to the retained node instead. This is
+     * the graph that merging the two nodes' partitions would produce, as long
+     * as the checkers only depend on its structure and the nodes' event types.
+     * The removed node's id is reused for the node with the largest id, so
+     * only the successor arrays of the nodes adjacent to these three nodes are
+     * copied. Views can be created concurrently, but not from other views.
+     */
+    public IndexedGraph<Node> merge(Node retained, Node removed) {
+        assert removedNode == null : "merging nodes in a merged view";
+        int retainedId = getId(retained);
+        int removedId = getId(removed);
+        assert retainedId >= 0 && removedId >= 0 && retainedId != removedId;
+        assert removedId != initialNodeId : "merging the initial node";
+
+        int[][] preds = getPredecessors();
+        int lastId = nodes.size() - 1;
+        int[][] succs = Arrays.copyOf(successors, nodes.size());
+
+        // Redirect the edges to the removed node to the retained node, and add
+        // the edges from the removed node to the retained node.
+        for (int u : preds[removedId]) {
+            if (u != removedId) {
+                succs[u] = replace(succs[u], removedId, retainedId);
+            }
+        }
+        succs[retainedId] = union(succs[retainedId],
+                replace(successors[removedId], removedId, retainedId));
+
+        List<Node> viewNodes = new ArrayList<Node>(nodes);
+        Node moved = null;
+        int viewInitialId = initialNodeId;
+        if (removedId != lastId) {
+            // Move the last node into the removed node's id. Only the
+            // predecessors of the last node, and the nodes whose edges were
+            // redirected above, can have edges to it.
+            fixMovedId(succs, preds[lastId], lastId, removedId);
+            fixMovedId(succs, preds[removedId], lastId, removedId);
+            fixMovedId(succs, new int[] { retainedId }, lastId, removedId);
+            succs[removedId] = succs[lastId];
+            moved = nodes.get(lastId);
+            viewNodes.set(removedId, moved);
+            if (initialNodeId == lastId) {
+                viewInitialId = removedId;
+            }
+        }
+        viewNodes.remove(lastId);
+        return new IndexedGraph<Node>(viewNodes, ids, Arrays.copyOf(succs,
+                lastId), viewInitialId, removed, moved);
+    }
+
+    private static void fixMovedId(int[][] succs, int[] nodeIds, int lastId,
+            int removedId) {
+        for (int u : nodeIds) {
+            if (u != removedId) {
+                succs[u] = replace(succs[u], lastId, removedId);
+            }
+        }
+    }
+
+    /**
+     * Returns targets with the id from replaced by the id to, or targets
+     * itself if it does not contain from.
+     */
+    private static int[] replace(int[] targets, int from, int to) {
+        int i = 0;
+        while (i < targets.length && targets[i] != from) {
+            i++;
+        }
+        if (i == targets.length) {
+            return targets;
+        }
+        for (int target : targets) {
+            if (target == to) {
+                // to is already a target, so just drop from.
+                int[] result = new int[targets.length - 1];
+                System.arraycopy(targets, 0, result, 0, i);
+                System.arraycopy(targets, i + 1, result, i, targets.length
+                        - i - 1);
+                return result;
+            }
+        }
+        int[] result = targets.clone();
+        result[i] = to;
+        return result;
+    }
+
+    /**
+     * Returns the ids in a followed by the ids in b that are not in a.
+     */
+    private static int[] union(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        int n = a.length;
+        for (int target : b) {
+            boolean found = false;
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] == target) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                result[n++] = target;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private synchronized int[][] getPredecessors() {
+        if (predecessors == null) {
+            int[] counts = new int[nodes.size()];
+            for (int[] targets : successors) {
+                for (int target : targets) {
+                    counts[target]++;
+                }
+            }
+            int[][] preds = new int[nodes.size()][];
+            for (int i = 0; i < preds.length; i++) {
+                preds[i] = new int[counts[i]];
+                counts[i] = 0;
+            }
+            for (int i = 0; i < successors.length; i++) {
+                for (int target : successors[i]) {
+                    preds[target][counts[target]++] = i;
+                }
+            }
+            predecessors = preds;
+        }
+        return predecessors;
+    }
+
+    /**
+     * @return the number of nodes in the graph
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the node with the given id
+     */
+    public Node getNode(int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * @return the id of the given node, or -1 if it is not in the graph
+     */
+    public int getId(Node node) {
+        if (removedNode != null) {
+            if (node == removedNode) {
+                return -1;
+            }
+            if (node == movedNode) {
+                return ids.get(removedNode);
+            }
+        }
+        Integer id = ids.get(node);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * @return the ids of the successors of the node with the given id. The
+     *         returned array must not be modified.
+     */
+    public int[] getSuccessors(int id) {
+        return successors[id];
+    }
+
+    /**
+     * @return the id of the dummy initial node of the graph
+     */
+    public int getInitialNodeId() {
+        return initialNodeId;
+    }
+}
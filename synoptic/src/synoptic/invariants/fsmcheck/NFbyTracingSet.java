@@ -78,6 +78,16 @@ public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        NFbyTracingSet<T> casted = (NFbyTracingSet<T>) other;
+        a = casted.a;
+        b = casted.b;
+        aNotSeen = casted.aNotSeen;
+        aSeen = casted.aSeen;
+        bSeenAfter = casted.bSeenAfter;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         NFbyTracingSet<T> casted = (NFbyTracingSet<T>) other;
@@ -0,0 +1,433 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.constraints.IThresholdConstraint;
+import synoptic.invariants.constraints.LowerBoundConstraint;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.resource.AbstractResource;
+
+/**
+ * A conservative check of the time bounds of constrained invariants against a
+ * partition graph, which is much cheaper than running a constrained tracing set
+ * over the graph. The tracing sets start a clock at an A, advance it along
+ * every edge by the largest (for upper bounds) or smallest (for lower bounds)
+ * time delta of the event transitions of the edge, and compare it against the
+ * bound at a B (or, for IntrBy, at the next A). Any such clock can be no larger
+ * than the largest time since the first A on a path to the node (and no smaller
+ * than the smallest time since the last A on a path to the node), as long as
+ * time deltas are non-negative. These two quantities are computed once for
+ * every event type A and shared by all of the invariants with that first event
+ * type. If no comparison against the bound can fail with them, then the
+ * invariant is satisfied, up to its untimed part (e.g., "B before A" for AP,
+ * which is checked by the bitset FSMs). Otherwise, the invariant may be
+ * violated, and must be checked with the tracing set, which also yields the
+ * counter-example.
+ *
+ * @param <Node>
+ *            The node type of the graph.
+ */
+public class TimeBoundsScreen<Node extends INode<Node>> {
+    private final IndexedGraph<Node> graph;
+
+    /** Whether all nodes are partitions, which have timed edges. */
+    private final boolean isPartitionGraph;
+
+    /**
+     * Strongly connected component of each node. Components are numbered in
+     * reverse topological order, i.e., all edges between two components go
+     * from a higher to a lower component number.
+     */
+    private int[] component = null;
+    private int numComponents = 0;
+
+    /** Time deltas of the edges of the graph, for each relation. */
+    private final Map<String, EdgeTimes> edgeTimes = new HashMap<String, EdgeTimes>();
+
+    /** Clocks at each node, for each (relation, A, upper bound?) triple. */
+    private final Map<List<Object>, Clocks> clocks = new HashMap<List<Object>, Clocks>();
+
+    public TimeBoundsScreen(IndexedGraph<Node> graph) {
+        this.graph = graph;
+        boolean partitions = true;
+        for (int i = 0; i < graph.size(); i++) {
+            if (!(graph.getNode(i) instanceof Partition)) {
+                partitions = false;
+                break;
+            }
+        }
+        this.isPartitionGraph = partitions;
+    }
+
+    /**
+     * Returns false if the constrained invariant is guaranteed to never exceed
+     * its time bound in the graph, and true if it may.
+     */
+    public boolean mayViolateBound(TempConstrainedInvariant<?> inv) {
+        if (!isPartitionGraph) {
+            return true;
+        }
+        IThresholdConstraint constraint = inv.getConstraint();
+        boolean isUpper;
+        if (constraint instanceof UpperBoundConstraint) {
+            isUpper = true;
+        } else if (constraint instanceof LowerBoundConstraint) {
+            isUpper = false;
+        } else {
+            return true;
+        }
+
+        EdgeTimes times = getEdgeTimes(inv.getRelation());
+        if (times == null) {
+            return true;
+        }
+
+        // The clocks of IntrBy invariants are compared against the bound at the
+        // next A (after a B), and those of AFby and AP invariants at a B.
+        EventType a = inv.getFirst();
+        EventType checked = inv.getSecond();
+        if (inv.getInv() instanceof InterruptedByInvariant) {
+            checked = a;
+        }
+        AbstractResource bound = constraint.getThreshold();
+        Clocks nodeClocks = getClocks(inv.getRelation(), a, isUpper, times,
+                bound.getZeroResource());
+
+        for (int i = 0; i < graph.size(); i++) {
+            if (nodeClocks.unbounded.get(i)) {
+                // Any comparison reachable from i may be out of bound.
+                return true;
+            }
+            AbstractResource clock = nodeClocks.values[i];
+            if (clock == null) {
+                // No A on any path to i.
+                continue;
+            }
+            int[] targets = graph.getSuccessors(i);
+            for (int j = 0; j < targets.length; j++) {
+                if (!checked.equals(graph.getNode(targets[j]).getEType())) {
+                    continue;
+                }
+                AbstractResource time = clock.incrBy(isUpper ? times.max[i][j]
+                        : times.min[i][j]);
+                int comparison = time.compareTo(bound);
+                if (isUpper && comparison > 0 || !isUpper && comparison < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the smallest and largest time deltas of every edge, over the
+     * event transitions of the edge with exactly the given relation, or null
+     * if the screen cannot be used with this relation: an edge without such
+     * transitions (on which the tracing sets fail), or a negative time delta.
+     * As in the tracing sets, a missing time delta (e.g., of a transition from
+     * the dummy initial event) is null, and does not advance a clock.
+     */
+    private EdgeTimes getEdgeTimes(String relation) {
+        if (edgeTimes.containsKey(relation)) {
+            return edgeTimes.get(relation);
+        }
+
+        Set<String> relations = Collections.singleton(relation);
+        int numNodes = graph.size();
+        EdgeTimes times = new EdgeTimes(numNodes);
+        for (int i = 0; i < numNodes && times != null; i++) {
+            Partition source = (Partition) graph.getNode(i);
+            int[] targets = graph.getSuccessors(i);
+            times.min[i] = new AbstractResource[targets.length];
+            times.max[i] = new AbstractResource[targets.length];
+            for (int j = 0; j < targets.length && times != null; j++) {
+                Set<ITransition<EventNode>> transitions = source
+                        .getEventTransitionsWithExactRelations(
+                                (Partition) graph.getNode(targets[j]),
+                                relations);
+                if (transitions.isEmpty()) {
+                    times = null;
+                    break;
+                }
+                boolean hasMissingDelta = false;
+                for (ITransition<EventNode> trans : transitions) {
+                    AbstractResource delta = trans.getTimeDelta();
+                    if (delta == null) {
+                        hasMissingDelta = true;
+                        continue;
+                    }
+                    if (delta.lessThan(delta.getZeroResource())) {
+                        times = null;
+                        break;
+                    }
+                    if (times.min[i][j] == null
+                            || delta.compareTo(times.min[i][j]) < 0) {
+                        times.min[i][j] = delta;
+                    }
+                    if (times.max[i][j] == null
+                            || delta.compareTo(times.max[i][j]) > 0) {
+                        times.max[i][j] = delta;
+                    }
+                }
+                if (hasMissingDelta && times != null) {
+                    // A missing delta is the smallest possible one.
+                    times.min[i][j] = null;
+                }
+            }
+        }
+        edgeTimes.put(relation, times);
+        return times;
+    }
+
+    private Clocks getClocks(String relation, EventType a, boolean isUpper,
+            EdgeTimes times, AbstractResource zero) {
+        List<Object> key = Arrays.<Object> asList(relation, a, isUpper);
+        Clocks result = clocks.get(key);
+        if (result == null) {
+            if (isUpper) {
+                result = getLargestClocks(a, times, zero);
+            } else {
+                result = getSmallestClocks(a, times, zero);
+            }
+            clocks.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Computes, for every node, the largest time since the first A over all
+     * paths to the node. This is unbounded if a path can go around a cycle
+     * with a positive time delta after an A. Since the time deltas within a
+     * component without such a cycle are all zero, all nodes of such a
+     * component have the same value, which is computed by processing the
+     * components in topological order.
+     */
+    private Clocks getLargestClocks(EventType a, EdgeTimes times,
+            AbstractResource zero) {
+        computeComponents();
+        int numNodes = graph.size();
+        List<List<Integer>> members = new ArrayList<List<Integer>>(
+                numComponents);
+        for (int c = 0; c < numComponents; c++) {
+            members.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < numNodes; i++) {
+            members.get(component[i]).add(i);
+        }
+
+        AbstractResource[] values = new AbstractResource[numComponents];
+        BitSet unbounded = new BitSet(numComponents);
+        for (int c = numComponents - 1; c >= 0; c--) {
+            boolean hasTimedCycle = false;
+            for (int i : members.get(c)) {
+                if (a.equals(graph.getNode(i).getEType())
+                        && (values[c] == null || values[c].lessThan(zero))) {
+                    values[c] = zero;
+                }
+                int[] targets = graph.getSuccessors(i);
+                for (int j = 0; j < targets.length; j++) {
+                    if (component[targets[j]] == c && times.max[i][j] != null
+                            && times.max[i][j].compareTo(zero) > 0) {
+                        hasTimedCycle = true;
+                    }
+                }
+            }
+            if (values[c] != null && hasTimedCycle) {
+                unbounded.set(c);
+            }
+
+            // Push the value of this component to its successors.
+            for (int i : members.get(c)) {
+                int[] targets = graph.getSuccessors(i);
+                for (int j = 0; j < targets.length; j++) {
+                    int target = component[targets[j]];
+                    if (target == c) {
+                        continue;
+                    }
+                    if (unbounded.get(c)) {
+                        unbounded.set(target);
+                    } else if (values[c] != null) {
+                        AbstractResource time = values[c]
+                                .incrBy(times.max[i][j]);
+                        if (values[target] == null
+                                || values[target].lessThan(time)) {
+                            values[target] = time;
+                        }
+                    }
+                }
+            }
+        }
+
+        Clocks result = new Clocks(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            result.values[i] = values[component[i]];
+            if (unbounded.get(component[i])) {
+                result.unbounded.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes, for every node, the smallest time since the last A over all
+     * paths to the node, using Dijkstra's algorithm with all As as sources.
+     */
+    private Clocks getSmallestClocks(EventType a, EdgeTimes times,
+            AbstractResource zero) {
+        int numNodes = graph.size();
+        Clocks result = new Clocks(numNodes);
+        AbstractResource[] values = result.values;
+        PriorityQueue<NodeTime> queue = new PriorityQueue<NodeTime>();
+        for (int i = 0; i < numNodes; i++) {
+            if (a.equals(graph.getNode(i).getEType())) {
+                values[i] = zero;
+                queue.add(new NodeTime(i, zero));
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            NodeTime current = queue.remove();
+            if (current.time != values[current.node]) {
+                // Stale entry.
+                continue;
+            }
+            int[] targets = graph.getSuccessors(current.node);
+            for (int j = 0; j < targets.length; j++) {
+                int target = targets[j];
+                AbstractResource time = current.time
+                        .incrBy(times.min[current.node][j]);
+                if (values[target] == null || time.lessThan(values[target])) {
+                    values[target] = time;
+                    queue.add(new NodeTime(target, time));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the strongly connected components of the graph, using an
+     * iterative version of Tarjan's algorithm (the graph may be too deep for
+     * recursion).
+     */
+    private void computeComponents() {
+        if (component != null) {
+            return;
+        }
+        int numNodes = graph.size();
+        component = new int[numNodes];
+        Arrays.fill(component, -1);
+        int[] index = new int[numNodes];
+        int[] lowLink = new int[numNodes];
+        Arrays.fill(index, -1);
+        BitSet onStack = new BitSet(numNodes);
+        int[] stack = new int[numNodes];
+        int stackSize = 0;
+        // DFS call stack: node, and the next successor to visit.
+        int[] callNode = new int[numNodes];
+        int[] callEdge = new int[numNodes];
+        int nextIndex = 0;
+
+        for (int root = 0; root < numNodes; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callNode[0] = root;
+            callEdge[0] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack.set(root);
+
+            while (depth >= 0) {
+                int node = callNode[depth];
+                int[] targets = graph.getSuccessors(node);
+                if (callEdge[depth] < targets.length) {
+                    int target = targets[callEdge[depth]++];
+                    if (index[target] < 0) {
+                        index[target] = lowLink[target] = nextIndex++;
+                        stack[stackSize++] = target;
+                        onStack.set(target);
+                        depth++;
+                        callNode[depth] = target;
+                        callEdge[depth] = 0;
+                    } else if (onStack.get(target)) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                    continue;
+                }
+
+                // All successors visited.
+                if (lowLink[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack.clear(member);
+                        component[member] = numComponents;
+                    } while (member != node);
+                    numComponents++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNode[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+            }
+        }
+    }
+
+    /** Smallest and largest time delta of every edge, by node id. */
+    private static final class EdgeTimes {
+        final AbstractResource[][] min;
+        final AbstractResource[][] max;
+
+        EdgeTimes(int numNodes) {
+            min = new AbstractResource[numNodes][];
+            max = new AbstractResource[numNodes][];
+        }
+    }
+
+    /**
+     * Bound on the clocks at every node: null if no clock has been started on
+     * any path to the node.
+     */
+    private static final class Clocks {
+        final AbstractResource[] values;
+        final BitSet unbounded;
+
+        Clocks(int numNodes) {
+            values = new AbstractResource[numNodes];
+            unbounded = new BitSet(numNodes);
+        }
+    }
+
+    private static final class NodeTime implements Comparable<NodeTime> {
+        final int node;
+        final AbstractResource time;
+
+        NodeTime(int node, AbstractResource time) {
+            this.node = node;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(NodeTime other) {
+            return time.compareTo(other.time);
+        }
+    }
+}
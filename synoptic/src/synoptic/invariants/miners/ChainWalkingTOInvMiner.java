@@ -1,8 +1,9 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -13,6 +14,7 @@ import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -32,6 +34,20 @@ import synoptic.model.interfaces.IRelationPath;
 public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         ITOInvariantMiner {
 
+    /**
+     * The number of threads that count the relation paths. Each thread counts
+     * its own share of the paths, and the counts are then merged.
+     */
+    public int numThreads = 1;
+
+    public ChainWalkingTOInvMiner() {
+        // Counts the relation paths in a single thread.
+    }
+
+    public ChainWalkingTOInvMiner(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             boolean multipleRelations, boolean supportCount) {
         TemporalInvariantSet result = new TemporalInvariantSet();
@@ -94,30 +110,16 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             String relation, boolean multipleRelations, boolean supportCount) {
 
-        // TODO: we can set the initial capacity of the following HashMaps more
-        // optimally, e.g. (N / 0.75) + 1 where N is the total number of event
-        // types. See:
-        // http://stackoverflow.com/questions/434989/hashmap-intialization-parameters-load-initialcapacity
-
-        // Stores generated RelationPaths
-        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
-
-        // Tracks event counts globally -- across all traces.
-        Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
-
-        /*
-         * Build the set of all event types in the RelationPaths. We will use
-         * this set to pre-seed the various maps below. Also, since we're
-         * iterating over all nodes, we might as well count up the total counts
-         * of instances for each event type.
-         */
-        Set<EventType> eTypes = new LinkedHashSet<EventType>();
+        // The relation paths of all the traces.
+        List<IRelationPath> relationPaths = new ArrayList<IRelationPath>();
         for (Trace trace : g.getTraces()) {
 
             if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
                 IRelationPath relationPath = trace.getBiRelationalPath(
                         relation, Event.defTimeRelationStr);
-                relationPaths.add(relationPath);
+                if (relationPath != null) {
+                    relationPaths.add(relationPath);
+                }
             } else {
                 Set<IRelationPath> subgraphs = trace
                         .getSingleRelationPaths(relation);
@@ -131,138 +133,57 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
 
         }
 
+        /*
+         * Give every event type in the RelationPaths a dense id, in the order
+         * in which the types first appear. All the counts below are kept in
+         * arrays indexed by these ids, and the counts for a pair of types
+         * (a, b) are kept in flat matrices, at index a * numTypes + b.
+         */
+        final Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+        List<EventType> eTypes = new ArrayList<EventType>();
         for (IRelationPath relationPath : relationPaths) {
-            eTypes.addAll(relationPath.getSeen());
-            Map<EventType, Integer> relationPathEventCounts = relationPath
-                    .getEventCounts();
-            for (EventType eventType : relationPathEventCounts.keySet()) {
-                int count = relationPathEventCounts.get(eventType);
-
-                if (gEventCnts.containsKey(eventType)) {
-                    count += gEventCnts.get(eventType);
+            List<EventNode> nodes = relationPath.getNodes();
+            for (EventNode node : nodes) {
+                if (!eTypeIds.containsKey(node.getEType())) {
+                    eTypeIds.put(node.getEType(), eTypes.size());
+                    eTypes.add(node.getEType());
                 }
-
-                gEventCnts.put(eventType, count);
-            }
-        }
-
-        // Tracks followed-by counts.
-        Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks precedence counts.
-        Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks interrupted-by counts.
-        Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
-
-        // Initialize the event-type contents of the maps that persist
-        // across traces (global counts maps).
-        for (EventType e : eTypes) {
-            Map<EventType, Integer> mapF = new LinkedHashMap<EventType, Integer>();
-            Map<EventType, Integer> mapP = new LinkedHashMap<EventType, Integer>();
-            gFollowedByCnts.put(e, mapF);
-            gPrecedesCnts.put(e, mapP);
-            for (EventType e2 : eTypes) {
-                mapF.put(e2, 0);
-                mapP.put(e2, 0);
             }
         }
-
-        // Tracks which events were observed across all RelationPaths.
-        Set<EventType> AlwaysFollowsINITIALSet = null;
+        final int numTypes = eTypes.size();
 
         /*
          * Iterates over each RelationPath in the graph and aggregates the
-         * individual Occurrences, Follows, and Precedes counts.
+         * individual Occurrences, Follows, and Precedes counts. The paths are
+         * split between numThreads threads, each of which counts its share of
+         * the paths, and the counts are then merged.
          */
-        for (IRelationPath relationPath : relationPaths) {
-
-            /*
-             * Adds the Precedes count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathPrecedesCounts = relationPath
-                    .getPrecedesCounts();
-            addCounts(relationPathPrecedesCounts, gPrecedesCnts);
-
-            /*
-             * Adds the FollowedBy count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathFollowedByCounts = relationPath
-                    .getFollowedByCounts();
-            addCounts(relationPathFollowedByCounts, gFollowedByCnts);
-
-            /*
-             * Updates the graph global InterruptedBy counts with the
-             * RelationPath counts
-             */
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts = relationPath
-                    .getPossibleInterrupts();
-            intersectInterrupts(relationPathPossibleInterrupts,
-                    gPossibleInterrupts);
-
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this RelationPath.
-            Set<EventType> relationPathSeen = relationPath.getSeen();
-            if (AlwaysFollowsINITIALSet == null) {
-                // This is the first RelationPath we are processing.
-                AlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        relationPathSeen);
-            } else {
-                AlwaysFollowsINITIALSet.retainAll(relationPathSeen);
+        PathCounts counts = new TraceShardSummarizer<IRelationPath, PathCounts>() {
+            @Override
+            protected PathCounts newSummary() {
+                return new PathCounts(numTypes);
             }
 
-            // At this point, we've completed all counts computation for the
-            // current RelationPath.
-        }
-
-        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts,
-                gPossibleInterrupts, null, AlwaysFollowsINITIALSet,
-                multipleRelations, supportCount));
-    }
-
-    /**
-     * Prune and update global possible InterruptedBy invariant counts by
-     * retaining only those that are valid in this RelationPath and updating
-     * their counts
-     */
-    private static void intersectInterrupts(
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts,
-            Map<EventType, Set<EventType>> gPossibleInterrupts) {
-        for (EventType et : relationPathPossibleInterrupts.keySet()) {
-            if (gPossibleInterrupts.containsKey(et)) {
-                gPossibleInterrupts.get(et).retainAll(
-                        relationPathPossibleInterrupts.get(et));
-            } else {
-                gPossibleInterrupts.put(et,
-                        relationPathPossibleInterrupts.get(et));
+            @Override
+            protected void addTrace(PathCounts summary,
+                    IRelationPath relationPath) {
+                summary.addPath(relationPath.getNodes(), eTypeIds);
             }
-        }
-    }
-
-    /**
-     * Adds the values from src into dst where the input maps have the form
-     * XCounts[a][b] = count
-     * 
-     * @param src
-     * @param dst
-     */
-    private static void addCounts(Map<EventType, Map<EventType, Integer>> src,
-            Map<EventType, Map<EventType, Integer>> dst) {
 
-        for (EventType a : src.keySet()) {
-            Map<EventType, Integer> srcBValues = src.get(a);
-            Map<EventType, Integer> dstBValues = dst.get(a);
-            for (EventType b : srcBValues.keySet()) {
-                int count = srcBValues.get(b);
-                if (dstBValues.containsKey(b)) {
-                    count += dstBValues.get(b);
-                }
-                dstBValues.put(b, count);
+            @Override
+            protected void merge(PathCounts summary, PathCounts other) {
+                summary.merge(other);
             }
-        }
+        }.summarize(relationPaths, numThreads);
+
+        // INITIAL AFby the events that were observed in all RelationPaths.
+        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
+                relation, eTypes, counts.getEventCnts(numTypes),
+                counts.getFollowedByCnts(numTypes),
+                counts.getPrecedesCnts(numTypes),
+                counts.getPossibleInterrupts(numTypes), null,
+                counts.getAlwaysFollowsINITIAL(numTypes), multipleRelations,
+                supportCount));
     }
 
     @Override
@@ -1,7 +1,11 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
@@ -14,7 +18,6 @@ import synoptic.invariants.birelational.APBiRelationInvariant;
 import synoptic.invariants.birelational.NFBiRelationInvariant;
 import synoptic.invariants.concurrency.AlwaysConcurrentInvariant;
 import synoptic.invariants.concurrency.NeverConcurrentInvariant;
-import synoptic.model.ChainRelationPath;
 import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -46,6 +49,9 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
      * #P(a->b)  = gPrecedesCnts[b][a]
      * </pre>
      * 
+     * This version takes the counts as maps, and copies them into the dense
+     * counts of the version below.
+     * 
      * @param relation
      * @param gEventCnts
      * @param gFollowedByCnts
@@ -62,23 +68,128 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
             Set<EventType> AlwaysFollowsINITIALSet, boolean multipleRelations,
             boolean supportCount) {
 
-        Set<ITemporalInvariant> invariants = new LinkedHashSet<ITemporalInvariant>();
+        List<EventType> eTypes = new ArrayList<EventType>(gEventCnts.keySet());
+        Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+        for (EventType e : eTypes) {
+            eTypeIds.put(e, eTypeIds.size());
+        }
+        int n = eTypes.size();
+
+        int[] eventCnts = new int[n];
+        int[] followedByCnts = new int[n * n];
+        int[] precedesCnts = new int[n * n];
+        long[][] possibleInterrupts = gPossibleInterrupts == null ? null
+                : new long[n][];
+        boolean[] eventCoOccurrences = gEventCoOccurrences == null ? null
+                : new boolean[n * n];
+        for (int e1 = 0; e1 < n; e1++) {
+            EventType e = eTypes.get(e1);
+            eventCnts[e1] = gEventCnts.get(e);
+            copyCounts(gFollowedByCnts.get(e), eTypeIds, followedByCnts, e1 * n);
+            copyCounts(gPrecedesCnts.get(e), eTypeIds, precedesCnts, e1 * n);
+            if (gPossibleInterrupts != null && gPossibleInterrupts.containsKey(e)) {
+                possibleInterrupts[e1] = new long[(n + 63) / 64];
+                for (EventType interrupt : gPossibleInterrupts.get(e)) {
+                    Integer e2 = eTypeIds.get(interrupt);
+                    if (e2 != null) {
+                        possibleInterrupts[e1][e2 >>> 6] |= 1L << e2;
+                    }
+                }
+            }
+            if (gEventCoOccurrences != null
+                    && gEventCoOccurrences.containsKey(e)) {
+                for (EventType coOccurring : gEventCoOccurrences.get(e)) {
+                    Integer e2 = eTypeIds.get(coOccurring);
+                    if (e2 != null) {
+                        eventCoOccurrences[e1 * n + e2] = true;
+                    }
+                }
+            }
+        }
 
-        for (EventType e1 : gEventCnts.keySet()) {
-            for (EventType e2 : gEventCnts.keySet()) {
+        int[] alwaysFollowsINITIAL = new int[AlwaysFollowsINITIALSet.size()];
+        int i = 0;
+        for (EventType label : AlwaysFollowsINITIALSet) {
+            alwaysFollowsINITIAL[i++] = eTypeIds.get(label);
+        }
 
-                if (neverFollowedBy(gFollowedByCnts, e1, e2)) {
-                    // Online filtering of subsumed invariants:
+        return extractPathInvariantsFromWalkCounts(relation, eTypes,
+                eventCnts, followedByCnts, precedesCnts, possibleInterrupts,
+                eventCoOccurrences, alwaysFollowsINITIAL, multipleRelations,
+                supportCount);
+    }
+
+    /**
+     * Copies the counts in src, by event type, into the row of the flat
+     * matrix dst that starts at offset, by event type id.
+     */
+    private static void copyCounts(Map<EventType, Integer> src,
+            Map<EventType, Integer> eTypeIds, int[] dst, int offset) {
+        for (Entry<EventType, Integer> count : src.entrySet()) {
+            Integer e2 = eTypeIds.get(count.getKey());
+            if (e2 != null) {
+                dst[offset + e2] = count.getValue();
+            }
+        }
+    }
+
+    /**
+     * Builds a set of local invariants from dense counts, as in the version
+     * above. Event types are identified by dense ids: eTypes.get(a) is the
+     * type with id a. The counts of pairs of types are kept in flat matrices
+     * of numTypes * numTypes entries, so that, e.g., #F(a->b) is
+     * gFollowedByCnts[a * numTypes + b].
+     * 
+     * @param relation
+     * @param eTypes
+     *            the event types, by id
+     * @param gEventCnts
+     * @param gFollowedByCnts
+     * @param gPrecedesCnts
+     * @param gPossibleInterrupts
+     *            the bitset of the ids of the possible interrupts of each
+     *            event type (null if there are none), or null to not mine
+     *            IntrBy
+     * @param gEventCoOccurrences
+     *            whether each pair of event types co-occurred in some trace, or
+     *            null to not filter out invariants subsumed by ACwith
+     * @param alwaysFollowsINITIAL
+     *            the ids of the event types that appeared in every trace
+     * @return
+     */
+    protected Set<ITemporalInvariant> extractPathInvariantsFromWalkCounts(
+            String relation, List<EventType> eTypes, int[] gEventCnts,
+            int[] gFollowedByCnts, int[] gPrecedesCnts,
+            long[][] gPossibleInterrupts, boolean[] gEventCoOccurrences,
+            int[] alwaysFollowsINITIAL, boolean multipleRelations,
+            boolean supportCount) {
+
+        Set<ITemporalInvariant> invariants = new LinkedHashSet<ITemporalInvariant>();
+        int numTypes = eTypes.size();
+
+        for (int i = 0; i < numTypes; i++) {
+            EventType e1 = eTypes.get(i);
+            for (int j = 0; j < numTypes; j++) {
+                EventType e2 = eTypes.get(j);
+                int e1_fby_e2 = gFollowedByCnts[i * numTypes + j];
+
+                // label1 was never followed by label2, therefore label1
+                // NFby label2 (i.e. #_F(label1->label2) == 0)
+                if (e1_fby_e2 == 0) {
+                    // Online filtering of subsumed invariants: e1 NFby e2
+                    // and e2 NFby e1 means that e1 and e2 are concurrent if
+                    // they _ever_ co-appeared in the same trace.
                     if (gEventCoOccurrences == null
-                            || !alwaysConcurrentWith(gFollowedByCnts,
-                                    gEventCoOccurrences, e1, e2)) {
+                            || gFollowedByCnts[j * numTypes + i] != 0
+                            || !(gEventCoOccurrences[i * numTypes + j] || gEventCoOccurrences[j
+                                    * numTypes + i])) {
                         if (multipleRelations) {
                             NFBiRelationInvariant invariant = new NFBiRelationInvariant(
                                     e1, e2, relation, Event.defTimeRelationStr);
                             if (supportCount) {
                                 invariant
                                         .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
+                                                gEventCnts[i]));
                             }
                             invariants.add(invariant);
                         } else {
@@ -88,21 +199,22 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                             if (supportCount) {
                                 invariant
                                         .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
+                                                gEventCnts[i]));
                             }
                             invariants.add(invariant);
                         }
                     }
                 }
 
-                if (alwaysFollowedBy(gEventCnts, gFollowedByCnts, e1, e2)) {
+                // #_F(label1->label2) == #label1 therefore label1 AFby label2
+                if (e1_fby_e2 == gEventCnts[i]) {
                     if (multipleRelations) {
 
                         AFBiRelationInvariant invariant = new AFBiRelationInvariant(
                                 e1, e2, relation, Event.defTimeRelationStr);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
+                                    gEventCnts[i]));
                         }
                         invariants.add(invariant);
 
@@ -111,19 +223,20 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                                 e1, e2, relation);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
+                                    gEventCnts[i]));
                         }
                         invariants.add(invariant);
                     }
                 }
 
-                if (alwaysPrecedes(gEventCnts, gPrecedesCnts, e1, e2)) {
+                // #_P(label1->label2) == #label2 therefore label1 AP label2
+                if (gPrecedesCnts[i * numTypes + j] == gEventCnts[j]) {
                     if (multipleRelations) {
                         APBiRelationInvariant invariant = new APBiRelationInvariant(
                                 e1, e2, relation, Event.defTimeRelationStr);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
+                                    gEventCnts[j]));
                         }
                         invariants.add(invariant);
                     } else {
@@ -131,13 +244,15 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                                 e1, e2, relation);
                         if (supportCount) {
                             invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
+                                    gEventCnts[j]));
                         }
                         invariants.add(invariant);
                     }
                 }
 
-                if (interruptedBy(gPossibleInterrupts, e1, e2)) {
+                if (gPossibleInterrupts != null
+                        && gPossibleInterrupts[i] != null
+                        && (gPossibleInterrupts[i][j >>> 6] & (1L << j)) != 0) {
                     if (multipleRelations) {
                         throw new NotImplementedException();
                     }
@@ -145,7 +260,7 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                             e1, e2, relation);
                     if (supportCount) {
                         invariant.setStatistics(new InvariantStatistics(
-                                gEventCnts.get(e1)));
+                                gEventCnts[i]));
                     }
                     invariants.add(invariant);
                 }
@@ -154,14 +269,15 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
 
         // Determine all the INITIAL AFby x invariants to represent
         // "eventually x"
-        for (EventType label : AlwaysFollowsINITIALSet) {
+        for (int i : alwaysFollowsINITIAL) {
+            EventType label = eTypes.get(i);
             if (multipleRelations) {
                 AFBiRelationInvariant invariant = new AFBiRelationInvariant(
                         StringEventType.newInitialStringEventType(), label,
                         relation);
                 if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
+                    invariant.setStatistics(new InvariantStatistics(
+                            gEventCnts[i]));
                 }
                 invariants.add(invariant);
             } else {
@@ -169,8 +285,8 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                         StringEventType.newInitialStringEventType(), label,
                         relation);
                 if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
+                    invariant.setStatistics(new InvariantStatistics(
+                            gEventCnts[i]));
                 }
                 invariants.add(invariant);
             }
@@ -178,30 +294,6 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         return invariants;
     }
 
-    /**
-     * Returns true if and only if <code>e1</code> gets interrupted by
-     * <code>e2</code>.
-     * 
-     * @param gPossibleInterrupts
-     *            pre-calculated map of possible IntrBy invariants (see e.g.,
-     *            {@link ChainRelationPath#getPossibleInterrupts()}
-     * @param e1
-     *            event which gets interrupted
-     * @param e2
-     *            interrupter event
-     * @return true if and only if <code>e1</code> gets interrupted by
-     *         <code>e2</code>
-     */
-    protected boolean interruptedBy(
-            Map<EventType, Set<EventType>> gPossibleInterrupts, EventType e1,
-            EventType e2) {
-        if (gPossibleInterrupts != null && gPossibleInterrupts.containsKey(e1)
-                && gPossibleInterrupts.get(e1).contains(e2)) {
-            return true;
-        }
-        return false;
-    }
-
     protected boolean alwaysPrecedes(Map<EventType, Integer> gEventCnts,
             Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
             EventType e1, EventType e2) {
@@ -213,17 +305,6 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         return false;
     }
 
-    protected boolean neverFollowedBy(
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
-            EventType e1, EventType e2) {
-        if (gFollowedByCnts.get(e1).get(e2) == 0) {
-            // label1 was never followed by label2, therefore label1
-            // NFby label2 (i.e. #_F(label1->label2) == 0)
-            return true;
-        }
-        return false;
-    }
-
     protected boolean alwaysFollowedBy(Map<EventType, Integer> gEventCnts,
             Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
             EventType e1, EventType e2) {
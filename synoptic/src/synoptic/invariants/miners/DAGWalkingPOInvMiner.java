@@ -184,6 +184,12 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
      */
     boolean mineConcurrencyInvariants = false;
 
+    /**
+     * The number of threads that walk the traces. Each thread walks its own
+     * share of the traces, and the counts are then merged.
+     */
+    public int numThreads = 1;
+
     public DAGWalkingPOInvMiner() {
         // By default, mine the NeverConcurrentWith invariant.
         mineNeverConcurrentWith = true;
@@ -193,6 +199,11 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
         this.mineNeverConcurrentWith = mineNeverConcurrentWith;
     }
 
+    public DAGWalkingPOInvMiner(boolean mineNeverConcurrentWith, int numThreads) {
+        this.mineNeverConcurrentWith = mineNeverConcurrentWith;
+        this.numThreads = numThreads;
+    }
+
     public boolean getMineNeverConcurrentWith() {
         return mineNeverConcurrentWith;
     }
@@ -248,11 +259,68 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             }
         }
 
-        // A couple of hash sets for containing parents of special nodes.
-        List<EventNode> initNodeList = new ArrayList<EventNode>();
-        initNodeList.add(initNode);
-        List<EventNode> emptyNodeHashSet = new ArrayList<EventNode>();
+        initCounts(eTypes);
+
+        // Iterate through all the traces. With more than one thread, the
+        // traces are split between the threads, each of which walks its share
+        // of the traces with a miner of its own, and the counts of the miners
+        // are then merged into this one.
+        final EventNode finalInitNode = initNode;
+        List<Set<EventNode>> traces = new ArrayList<Set<EventNode>>(g
+                .getTraceIdToInitNodes().values());
+        if (numThreads <= 1) {
+            for (Set<EventNode> initTraceNodes : traces) {
+                addTrace(initNode, initTraceNodes);
+            }
+        } else {
+            final Set<EventType> finalETypes = eTypes;
+            mergeCounts(new TraceShardSummarizer<Set<EventNode>, DAGWalkingPOInvMiner>() {
+                @Override
+                protected DAGWalkingPOInvMiner newSummary() {
+                    DAGWalkingPOInvMiner miner = new DAGWalkingPOInvMiner(
+                            mineNeverConcurrentWith);
+                    miner.initCounts(finalETypes);
+                    return miner;
+                }
 
+                @Override
+                protected void addTrace(DAGWalkingPOInvMiner miner,
+                        Set<EventNode> initTraceNodes) {
+                    miner.addTrace(finalInitNode, initTraceNodes);
+                }
+
+                @Override
+                protected void merge(DAGWalkingPOInvMiner miner,
+                        DAGWalkingPOInvMiner other) {
+                    miner.mergeCounts(other);
+                }
+            }.summarize(traces, numThreads));
+        }
+
+        // Extract the AFby, NFby, AP invariants based on counts.
+        Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
+                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
+                gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
+
+        if (mineConcurrencyInvariants) {
+            // Extract the concurrency invariants based on counts.
+            Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
+                    mineNeverConcurrentWith, relation, gEventCnts,
+                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
+                    gEventTypesOrderedBalances);
+            // Merge the two sets.
+            pathInvs.addAll(concurInvs);
+        }
+        // Return pathInvs, which at this point contains any non-redundant
+        // concurrency invariants (if these were also mined -- see above).
+        return new TemporalInvariantSet(pathInvs);
+    } // /computeInvariants
+
+    /**
+     * Clears all the counts, and initializes the global counts of the given
+     * event types to 0.
+     */
+    private void initCounts(Set<EventType> eTypes) {
         gFollowedByCnts.clear();
         gPrecedesCnts.clear();
         gAlwaysFollowsINITIALSet = null;
@@ -285,43 +353,110 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                 mapB.put(e2, 0);
             }
         }
+    }
+
+    /**
+     * Walks the trace with the given initial nodes, and adds its counts to
+     * the global counts.
+     */
+    private void addTrace(EventNode initNode, Set<EventNode> initTraceNodes) {
+        // A couple of hash sets for containing parents of special nodes.
+        List<EventNode> initNodeList = new ArrayList<EventNode>();
+        initNodeList.add(initNode);
+        List<EventNode> emptyNodeHashSet = new ArrayList<EventNode>();
+
+        tNodeParentsMap.put(initNode, emptyNodeHashSet);
+
+        // ///////////////////
+        // TODO: this assumes that we have a single terminal node. But a PO
+        // trace could have multiple terminals. We need to treat terminals
+        // as we do with initial nodes -- maintain a termTraceNodes list.
+        // ///////////////////
+
+        EventNode termNode = null, termNodeNew = null;
+        for (EventNode curNode : initTraceNodes) {
+            tNodeParentsMap.put(curNode, initNodeList);
+            // A pre-processing step: builds the parent\child counts maps,
+            // the parents map, the tSeenETypes set, and determines the
+            // terminal node in the trace.
+            termNodeNew = preTraverseTrace(curNode);
+            if (termNodeNew != null) {
+                termNode = termNodeNew;
+            }
+        }
+        assert (termNode != null);
+
+        // For every pair of event types in the trace record that the two
+        // types have event instances that co-occur in some trace.
+        Set<EventType> toVisitETypes = new LinkedHashSet<EventType>();
+        toVisitETypes.addAll(tSeenETypes);
+        for (EventType e1 : tSeenETypes) {
+            // We don't consider (e1, e1) as these would be useful for local
+            // invariants and we don't use conditional counts for mining
+            // local invariants; and we do not consider (e1,e2) if we've
+            // already considered (e2,e1).
+            toVisitETypes.remove(e1);
+            for (EventType e2 : toVisitETypes) {
+                // Optimization: We won't be using event co-occurrence
+                // information for
+                // events that are local.
+                if (e1 == e2) {
+                    continue;
+                }
+                if (!(e1 instanceof DistEventType)
+                        || !(e2 instanceof DistEventType)) {
+                    continue;
+                }
+                if (((DistEventType) e1).getProcessName().equals(
+                        ((DistEventType) e2).getProcessName())) {
 
-        // Iterate through all the traces.
-        for (Set<EventNode> initTraceNodes : g.getTraceIdToInitNodes().values()) {
-            tNodeParentsMap.put(initNode, emptyNodeHashSet);
-
-            // ///////////////////
-            // TODO: this assumes that we have a single terminal node. But a PO
-            // trace could have multiple terminals. We need to treat terminals
-            // as we do with initial nodes -- maintain a termTraceNodes list.
-            // ///////////////////
-
-            EventNode termNode = null, termNodeNew = null;
-            for (EventNode curNode : initTraceNodes) {
-                tNodeParentsMap.put(curNode, initNodeList);
-                // A pre-processing step: builds the parent\child counts maps,
-                // the parents map, the tSeenETypes set, and determines the
-                // terminal node in the trace.
-                termNodeNew = preTraverseTrace(curNode);
-                if (termNodeNew != null) {
-                    termNode = termNodeNew;
+                    continue;
                 }
+                // </Optimization>
+
+                // Record that e1 and e2 co-occur
+                if (!gEventCoOccurrences.containsKey(e1)) {
+                    gEventCoOccurrences.put(e1,
+                            new LinkedHashSet<EventType>());
+                }
+                gEventCoOccurrences.get(e1).add(e2);
+            }
+        }
+
+        // logger.info("co-occur-cnts: " +
+        // traceCoOccurrenceCnts.toString());
+
+        // ////////////////////////////////////////////////////////////////////////
+        // Precedes relations recording: traverse the trace rooted at each
+        // initial node in the forward direction.
+        for (EventNode curNode : initTraceNodes) {
+            if (mineNeverConcurrentWith) {
+                forwardTraverseTrace(curNode, null);
+            } else {
+                forwardTraverseTraceWithoutNeverConcurrent(curNode, null);
             }
-            assert (termNode != null);
+        }
+
+        // ////////////////////////////////////////////////////////////////////////
+        // FollowedBy relations recording: traverse the trace rooted at
+        // termNode in the reverse direction (following the
+        // tNodeParentsMap).
+        if (mineNeverConcurrentWith) {
+            reverseTraverseTrace(termNode, null);
+        } else {
+            reverseTraverseTraceWithoutNeverConcurrent(termNode, null);
+        }
+
+        if (mineNeverConcurrentWith) {
+            // Compute the gEventTypesOrderedBalances for the current trace.
+
+            // TODO: Because the NCwith invariant is symmetric, we only need
+            // to consider one of the permutations -- just (e1,e2) and not
+            // both (e1,e2) and (e2,e1).
 
-            // For every pair of event types in the trace record that the two
-            // types have event instances that co-occur in some trace.
-            Set<EventType> toVisitETypes = new LinkedHashSet<EventType>();
-            toVisitETypes.addAll(tSeenETypes);
             for (EventType e1 : tSeenETypes) {
-                // We don't consider (e1, e1) as these would be useful for local
-                // invariants and we don't use conditional counts for mining
-                // local invariants; and we do not consider (e1,e2) if we've
-                // already considered (e2,e1).
-                toVisitETypes.remove(e1);
-                for (EventType e2 : toVisitETypes) {
-                    // Optimization: We won't be using event co-occurrence
-                    // information for
+                for (EventType e2 : tSeenETypes) {
+                    // Optimization: we won't be using ordering balance for
                     // events that are local.
                     if (e1 == e2) {
                         continue;
@@ -332,152 +467,116 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                     }
                     if (((DistEventType) e1).getProcessName().equals(
                             ((DistEventType) e2).getProcessName())) {
-
                         continue;
                     }
                     // </Optimization>
 
-                    // Record that e1 and e2 co-occur
-                    if (!gEventCoOccurrences.containsKey(e1)) {
-                        gEventCoOccurrences.put(e1,
-                                new LinkedHashSet<EventType>());
+                    int typeFtypeCnt = 0;
+                    if (tTypeFollowingTypeCnts.containsKey(e1)
+                            && tTypeFollowingTypeCnts.get(e1).containsKey(
+                                    e2)) {
+                        typeFtypeCnt = tTypeFollowingTypeCnts.get(e1).get(
+                                e2);
                     }
-                    gEventCoOccurrences.get(e1).add(e2);
-                }
-            }
 
-            // logger.info("co-occur-cnts: " +
-            // traceCoOccurrenceCnts.toString());
+                    int numE1 = tEventCnts.get(e1);
+                    int numE2 = tEventCnts.get(e2);
 
-            // ////////////////////////////////////////////////////////////////////////
-            // Precedes relations recording: traverse the trace rooted at each
-            // initial node in the forward direction.
-            for (EventNode curNode : initTraceNodes) {
-                if (mineNeverConcurrentWith) {
-                    forwardTraverseTrace(curNode, null);
-                } else {
-                    forwardTraverseTraceWithoutNeverConcurrent(curNode, null);
+                    int typePtypeCnt = 0;
+                    if (tTypePrecedingTypeCnts.containsKey(e1)
+                            && tTypePrecedingTypeCnts.get(e1).containsKey(
+                                    e2)) {
+                        typePtypeCnt = tTypePrecedingTypeCnts.get(e1).get(
+                                e2);
+                    }
+
+                    int prevBalance = gEventTypesOrderedBalances.get(e1)
+                            .get(e2);
+
+                    // NOTE: since numE1 * numE2 is always >= typeFtypeCnt +
+                    // typePtypeCnt, the value is always <= 0. With 0
+                    // indicating that \forall \hat{e1}, \forall \hat{e2} e1
+                    // \precedes e2 or e2 \precedes e1. We use this to
+                    // deduce that e1 and e2 are never concurrent.
+                    gEventTypesOrderedBalances.get(e1).put(
+                            e2,
+                            prevBalance + typeFtypeCnt + typePtypeCnt
+                                    - (numE1 * numE2));
                 }
             }
+        }
 
-            // ////////////////////////////////////////////////////////////////////////
-            // FollowedBy relations recording: traverse the trace rooted at
-            // termNode in the reverse direction (following the
-            // tNodeParentsMap).
-            if (mineNeverConcurrentWith) {
-                reverseTraverseTrace(termNode, null);
-            } else {
-                reverseTraverseTraceWithoutNeverConcurrent(termNode, null);
-            }
+        // Update the AlwaysFollowsINITIALSet set of events by
+        // intersecting it with all events seen in this partition.
+        if (gAlwaysFollowsINITIALSet == null) {
+            // This is the first trace we've processed.
+            gAlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
+                    tSeenETypes);
+        } else {
+            gAlwaysFollowsINITIALSet.retainAll(tSeenETypes);
+        }
 
-            if (mineNeverConcurrentWith) {
-                // Compute the gEventTypesOrderedBalances for the current trace.
-
-                // TODO: Because the NCwith invariant is symmetric, we only need
-                // to consider one of the permutations -- just (e1,e2) and not
-                // both (e1,e2) and (e2,e1).
-
-                for (EventType e1 : tSeenETypes) {
-                    for (EventType e2 : tSeenETypes) {
-                        // Optimization: we won't be using ordering balance for
-                        // events that are local.
-                        if (e1 == e2) {
-                            continue;
-                        }
-                        if (!(e1 instanceof DistEventType)
-                                || !(e2 instanceof DistEventType)) {
-                            continue;
-                        }
-                        if (((DistEventType) e1).getProcessName().equals(
-                                ((DistEventType) e2).getProcessName())) {
-                            continue;
-                        }
-                        // </Optimization>
-
-                        int typeFtypeCnt = 0;
-                        if (tTypeFollowingTypeCnts.containsKey(e1)
-                                && tTypeFollowingTypeCnts.get(e1).containsKey(
-                                        e2)) {
-                            typeFtypeCnt = tTypeFollowingTypeCnts.get(e1).get(
-                                    e2);
-                        }
-
-                        int numE1 = tEventCnts.get(e1);
-                        int numE2 = tEventCnts.get(e2);
-
-                        int typePtypeCnt = 0;
-                        if (tTypePrecedingTypeCnts.containsKey(e1)
-                                && tTypePrecedingTypeCnts.get(e1).containsKey(
-                                        e2)) {
-                            typePtypeCnt = tTypePrecedingTypeCnts.get(e1).get(
-                                    e2);
-                        }
-
-                        int prevBalance = gEventTypesOrderedBalances.get(e1)
-                                .get(e2);
-
-                        // NOTE: since numE1 * numE2 is always >= typeFtypeCnt +
-                        // typePtypeCnt, the value is always <= 0. With 0
-                        // indicating that \forall \hat{e1}, \forall \hat{e2} e1
-                        // \precedes e2 or e2 \precedes e1. We use this to
-                        // deduce that e1 and e2 are never concurrent.
-                        gEventTypesOrderedBalances.get(e1).put(
-                                e2,
-                                prevBalance + typeFtypeCnt + typePtypeCnt
-                                        - (numE1 * numE2));
-                    }
-                }
+        // Clear all the per-trace structures to prepare for the next trace.
+        tNodeToNumParentsMap.clear();
+        tNodeParentsMap.clear();
+        tNodeToNumChildrenMap.clear();
+        tEventCnts.clear();
+        tSeenETypes.clear();
+        tFollowingNodeSets.clear();
+        tPrecedingNodeSets.clear();
+
+        if (mineNeverConcurrentWith) {
+            tTypeFollowingTypeCnts.clear();
+            tTypePrecedingTypeCnts.clear();
+        } else {
+            tNodeFollowingTypeCnts.clear();
+            tNodePrecedingTypeCnts.clear();
+        }
+
+        // At this point, we've completed all counts computation for the
+        // trace.
+    }
+
+    /**
+     * Adds the global counts of other, which walked other traces of the same
+     * graph, to the global counts of this miner. The other miner walked traces
+     * that come after the traces that this miner walked.
+     */
+    private void mergeCounts(DAGWalkingPOInvMiner other) {
+        addCounts(gFollowedByCnts, other.gFollowedByCnts);
+        addCounts(gPrecedesCnts, other.gPrecedesCnts);
+        addCounts(gEventTypesOrderedBalances, other.gEventTypesOrderedBalances);
+
+        for (Entry<EventType, Set<EventType>> entry : other.gEventCoOccurrences
+                .entrySet()) {
+            if (!gEventCoOccurrences.containsKey(entry.getKey())) {
+                gEventCoOccurrences.put(entry.getKey(),
+                        new LinkedHashSet<EventType>());
             }
+            gEventCoOccurrences.get(entry.getKey()).addAll(entry.getValue());
+        }
 
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this partition.
+        if (other.gAlwaysFollowsINITIALSet != null) {
             if (gAlwaysFollowsINITIALSet == null) {
-                // This is the first trace we've processed.
                 gAlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        tSeenETypes);
+                        other.gAlwaysFollowsINITIALSet);
             } else {
-                gAlwaysFollowsINITIALSet.retainAll(tSeenETypes);
+                gAlwaysFollowsINITIALSet
+                        .retainAll(other.gAlwaysFollowsINITIALSet);
             }
-
-            // Clear all the per-trace structures to prepare for the next trace.
-            tNodeToNumParentsMap.clear();
-            tNodeParentsMap.clear();
-            tNodeToNumChildrenMap.clear();
-            tEventCnts.clear();
-            tSeenETypes.clear();
-            tFollowingNodeSets.clear();
-            tPrecedingNodeSets.clear();
-
-            if (mineNeverConcurrentWith) {
-                tTypeFollowingTypeCnts.clear();
-                tTypePrecedingTypeCnts.clear();
-            } else {
-                tNodeFollowingTypeCnts.clear();
-                tNodePrecedingTypeCnts.clear();
-            }
-
-            // At this point, we've completed all counts computation for the
-            // trace rooted at curNode.
         }
+    }
 
-        // Extract the AFby, NFby, AP invariants based on counts.
-        Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
-                gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
-
-        if (mineConcurrencyInvariants) {
-            // Extract the concurrency invariants based on counts.
-            Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
-                    mineNeverConcurrentWith, relation, gEventCnts,
-                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
-                    gEventTypesOrderedBalances);
-            // Merge the two sets.
-            pathInvs.addAll(concurInvs);
+    private static void addCounts(Map<EventType, Map<EventType, Integer>> cnts,
+            Map<EventType, Map<EventType, Integer>> otherCnts) {
+        for (Entry<EventType, Map<EventType, Integer>> entry : otherCnts
+                .entrySet()) {
+            Map<EventType, Integer> map = cnts.get(entry.getKey());
+            for (Entry<EventType, Integer> cnt : entry.getValue().entrySet()) {
+                map.put(cnt.getKey(), map.get(cnt.getKey()) + cnt.getValue());
+            }
         }
-        // Return pathInvs, which at this point contains any non-redundant
-        // concurrency invariants (if these were also mined -- see above).
-        return new TemporalInvariantSet(pathInvs);
-    } // /computeInvariants
+    }
 
     /**
      * Recursively, depth-first traverses the trace forward to build the
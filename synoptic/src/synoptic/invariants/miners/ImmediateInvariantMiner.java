@@ -10,9 +10,9 @@ import synoptic.invariants.NeverImmediatelyFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Transition;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
-import synoptic.model.interfaces.ITransition;
 
 /**
  * Mines the NeverImmediatelyFollowedyBy invariants, which are the basis for the
@@ -28,49 +28,82 @@ public class ImmediateInvariantMiner {
     private final TemporalInvariantSet nifByInvariants;
 
     public ImmediateInvariantMiner(ChainsTraceGraph g) {
+        this(g, 1);
+    }
+
+    /**
+     * Mines the invariants of g, splitting the traces between numThreads
+     * threads if there is more than one.
+     */
+    public ImmediateInvariantMiner(ChainsTraceGraph g, int numThreads) {
         this.g = g;
-        Map<EventType, Set<EventType>> cifByMap = getCIFbyMap();
+        Map<EventType, Set<EventType>> cifByMap = getCIFbyMap(numThreads);
 
         allEvents = cifByMap.keySet();
 
         nifByInvariants = computeInvariants(cifByMap);
     }
 
-    private Map<EventType, Set<EventType>> getCIFbyMap() {
-        EventNode initNode = g.getDummyInitialNode();
+    private Map<EventType, Set<EventType>> getCIFbyMap(int numThreads) {
+        final EventNode initNode = g.getDummyInitialNode();
 
         // Maps each EventType to the set of EventTypes that immediately follow
-        // it.
-        Map<EventType, Set<EventType>> canFollow = new HashMap<EventType, Set<EventType>>();
-
-        // Iterate through all the traces -- each transition from the
-        // INITIAL node connects\holds a single trace.
-        for (ITransition<EventNode> initTrans : initNode.getAllTransitions()) {
+        // it. Each transition from the INITIAL node connects\holds a single
+        // trace, and each thread builds the map of its own share of the
+        // traces, after which the maps are merged.
+        return new TraceShardSummarizer<Transition<EventNode>, Map<EventType, Set<EventType>>>() {
+            @Override
+            protected Map<EventType, Set<EventType>> newSummary() {
+                return new HashMap<EventType, Set<EventType>>();
+            }
 
-            EventNode cur = initTrans.getTarget();
-            EventType first = initNode.getEType();
-            EventType second = cur.getEType();
+            @Override
+            protected void addTrace(Map<EventType, Set<EventType>> canFollow,
+                    Transition<EventNode> initTrans) {
+                addTraceCIFby(canFollow, initNode, initTrans);
+            }
 
-            while (true) {
-                if (!canFollow.containsKey(first)) {
-                    canFollow.put(first, new HashSet<EventType>());
+            @Override
+            protected void merge(Map<EventType, Set<EventType>> canFollow,
+                    Map<EventType, Set<EventType>> other) {
+                for (Entry<EventType, Set<EventType>> entry : other.entrySet()) {
+                    if (!canFollow.containsKey(entry.getKey())) {
+                        canFollow.put(entry.getKey(), new HashSet<EventType>());
+                    }
+                    canFollow.get(entry.getKey()).addAll(entry.getValue());
                 }
-                canFollow.get(first).add(second);
-                if (cur.getAllTransitions().size() == 0) {
+            }
+        }.summarize(initNode.getAllTransitions(), numThreads);
+    }
 
-                    // Add terminal event to the canFollow set
-                    if (!canFollow.containsKey(second)) {
-                        canFollow.put(second, new HashSet<EventType>());
-                    }
-                    break;
+    /**
+     * Adds the event types that immediately follow each event type in the
+     * trace that starts with initTrans to canFollow.
+     */
+    private static void addTraceCIFby(
+            Map<EventType, Set<EventType>> canFollow, EventNode initNode,
+            Transition<EventNode> initTrans) {
+        EventNode cur = initTrans.getTarget();
+        EventType first = initNode.getEType();
+        EventType second = cur.getEType();
+
+        while (true) {
+            if (!canFollow.containsKey(first)) {
+                canFollow.put(first, new HashSet<EventType>());
+            }
+            canFollow.get(first).add(second);
+            if (cur.getAllTransitions().size() == 0) {
+
+                // Add terminal event to the canFollow set
+                if (!canFollow.containsKey(second)) {
+                    canFollow.put(second, new HashSet<EventType>());
                 }
-                cur = cur.getAllTransitions().get(0).getTarget();
-                first = second;
-                second = cur.getEType();
+                break;
             }
+            cur = cur.getAllTransitions().get(0).getTarget();
+            first = second;
+            second = cur.getEType();
         }
-
-        return canFollow;
     }
 
     private TemporalInvariantSet computeInvariants(
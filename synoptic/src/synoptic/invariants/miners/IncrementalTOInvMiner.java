@@ -0,0 +1,112 @@
+package synoptic.invariants.miners;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Trace;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IRelationPath;
+
+/**
+ * Mines the AFby, AP, NFby and IntrBy invariants of totally ordered traces
+ * incrementally, as the traces arrive. Rather than keeping the traces, the
+ * miner keeps the same counts that {@link ChainWalkingTOInvMiner} computes in
+ * a single pass over all the traces, and updates them with every new trace.
+ * Adding a trace takes time linear in the length of the trace times the
+ * number of event types in it, and the invariants of all the traces added so
+ * far can be extracted from the counts at any time. <br/>
+ * <br/>
+ * The miner is Serializable, so that its counts can be saved, e.g., between
+ * runs over a log that keeps growing, and restored later to add new traces.
+ * Only the time relation (i.e., the order of the events in the traces) is
+ * mined.
+ */
+public class IncrementalTOInvMiner extends CountingInvariantMiner implements
+        Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The event types that appeared in the traces, in order of first
+     * appearance, and the id of each of them.
+     */
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+    private final Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+
+    private final PathCounts counts = new PathCounts(16);
+
+    /** Whether to compute the support counts of the invariants. */
+    private final boolean supportCount;
+
+    public IncrementalTOInvMiner() {
+        this(false);
+    }
+
+    public IncrementalTOInvMiner(boolean supportCount) {
+        this.supportCount = supportCount;
+    }
+
+    /**
+     * Adds a trace, given as the types of its events in order, without the
+     * INITIAL and TERMINAL events.
+     */
+    public void addTrace(List<EventType> trace) {
+        for (EventType eType : trace) {
+            if (!eTypeIds.containsKey(eType)) {
+                eTypeIds.put(eType, eTypes.size());
+                eTypes.add(eType);
+            }
+        }
+        counts.ensureCapacity(eTypes.size());
+        counts.addPathOfTypes(trace, eTypeIds);
+    }
+
+    /**
+     * Adds all the traces of g.
+     */
+    public void addTraces(ChainsTraceGraph g) {
+        for (Trace trace : g.getTraces()) {
+            Set<IRelationPath> paths = trace
+                    .getSingleRelationPaths(Event.defTimeRelationStr);
+            if (paths.size() != 1) {
+                throw new IllegalStateException(
+                        "Multiple relation subraphs for ordering relation graph");
+            }
+            List<EventType> types = new ArrayList<EventType>();
+            for (IRelationPath path : paths) {
+                for (EventNode node : path.getNodes()) {
+                    types.add(node.getEType());
+                }
+            }
+            addTrace(types);
+        }
+    }
+
+    /**
+     * Returns the number of traces added so far.
+     */
+    public int getNumTraces() {
+        return counts.getNumPaths();
+    }
+
+    /**
+     * Returns the invariants that hold in all the traces added so far.
+     */
+    public TemporalInvariantSet getInvariants() {
+        int numTypes = eTypes.size();
+        return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
+                Event.defTimeRelationStr, eTypes,
+                counts.getEventCnts(numTypes),
+                counts.getFollowedByCnts(numTypes),
+                counts.getPrecedesCnts(numTypes),
+                counts.getPossibleInterrupts(numTypes), null,
+                counts.getAlwaysFollowsINITIAL(numTypes), false, supportCount));
+    }
+}
@@ -0,0 +1,365 @@
+package synoptic.invariants.miners;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.EventNode;
+import synoptic.model.event.EventType;
+
+/**
+ * The counts of a set of totally ordered RelationPaths, from which
+ * CountingInvariantMiner extracts the AFby, AP, NFby and IntrBy invariants
+ * that hold in the paths. Event types are identified by dense ids, which the
+ * caller assigns, and the counts of a pair of types (a, b) are kept in flat
+ * matrices, at index a * capacity + b. Counts of disjoint sets of paths can be
+ * merged, which gives the counts of the union of the sets.
+ * <p>
+ * The capacity for event types grows as paths with new types are added, so
+ * adding a path costs time linear in the length of the path times the number
+ * of types in the path, independently of the number of paths counted before.
+ * </p>
+ */
+class PathCounts implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The number of event types that the counts have room for. */
+    private int capacity;
+
+    // Tracks event counts globally -- across all paths.
+    private int[] gEventCnts;
+    // Tracks followed-by counts.
+    private int[] gFollowedByCnts;
+    // Tracks precedence counts.
+    private int[] gPrecedesCnts;
+    // Tracks possible interrupts: gPossibleInterrupts[b] is the bitset of the
+    // types that interrupted every pair of b's so far, or null if no path had
+    // a pair of b's.
+    private long[][] gPossibleInterrupts;
+    // Tracks the number of paths that each event type appeared in.
+    private int[] gPathCnts;
+    // The number of paths counted.
+    private int numPaths = 0;
+
+    // Scratch space for counting a single path, which is reused across paths.
+    private transient PathCounter counter;
+
+    PathCounts(int capacity) {
+        this.capacity = capacity;
+        gEventCnts = new int[capacity];
+        gFollowedByCnts = new int[capacity * capacity];
+        gPrecedesCnts = new int[capacity * capacity];
+        gPossibleInterrupts = new long[capacity][];
+        gPathCnts = new int[capacity];
+    }
+
+    /**
+     * Makes room for at least numTypes event types.
+     */
+    void ensureCapacity(int numTypes) {
+        if (numTypes <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(numTypes, 2 * capacity);
+        gEventCnts = Arrays.copyOf(gEventCnts, newCapacity);
+        gPathCnts = Arrays.copyOf(gPathCnts, newCapacity);
+        gFollowedByCnts = copyMatrix(gFollowedByCnts, capacity, newCapacity,
+                newCapacity);
+        gPrecedesCnts = copyMatrix(gPrecedesCnts, capacity, newCapacity,
+                newCapacity);
+        // Types that were not seen yet cannot have interrupted anything.
+        gPossibleInterrupts = Arrays.copyOf(gPossibleInterrupts, newCapacity);
+        int numWords = (newCapacity + 63) / 64;
+        for (int b = 0; b < capacity; b++) {
+            if (gPossibleInterrupts[b] != null) {
+                gPossibleInterrupts[b] = Arrays.copyOf(gPossibleInterrupts[b],
+                        numWords);
+            }
+        }
+        capacity = newCapacity;
+        counter = null;
+    }
+
+    /**
+     * Copies the first n rows and columns of a matrix with the given stride
+     * into a new matrix of size newStride * newStride.
+     */
+    private static int[] copyMatrix(int[] matrix, int stride, int n,
+            int newStride) {
+        int[] copy = new int[newStride * newStride];
+        for (int a = 0; a < Math.min(stride, n); a++) {
+            System.arraycopy(matrix, a * stride, copy, a * newStride,
+                    Math.min(stride, n));
+        }
+        return copy;
+    }
+
+    private PathCounter getCounter(int pathLength) {
+        if (counter == null) {
+            counter = new PathCounter(capacity);
+        }
+        counter.ensurePathLength(pathLength);
+        return counter;
+    }
+
+    /**
+     * Adds the counts of the path with the given nodes, whose types all have
+     * ids in eTypeIds that are smaller than the capacity.
+     */
+    void addPath(List<EventNode> nodes, Map<EventType, Integer> eTypeIds) {
+        PathCounter c = getCounter(nodes.size());
+        int length = 0;
+        for (EventNode node : nodes) {
+            c.path[length++] = eTypeIds.get(node.getEType());
+        }
+        addPath(c, length);
+    }
+
+    /**
+     * Adds the counts of the path of events with the given types, which all
+     * have ids in eTypeIds that are smaller than the capacity.
+     */
+    void addPathOfTypes(List<EventType> types, Map<EventType, Integer> eTypeIds) {
+        PathCounter c = getCounter(types.size());
+        int length = 0;
+        for (EventType type : types) {
+            c.path[length++] = eTypeIds.get(type);
+        }
+        addPath(c, length);
+    }
+
+    private void addPath(PathCounter c, int length) {
+        c.count(length, gFollowedByCnts, gPrecedesCnts);
+
+        for (int k = 0; k < c.numSeen; k++) {
+            int a = c.seen[k];
+            gEventCnts[a] += c.eventCnts[a];
+            gPathCnts[a]++;
+        }
+
+        /*
+         * Prune the global possible InterruptedBy invariants by retaining only
+         * those that are valid in this path.
+         */
+        for (int k = 0; k < c.numInterrupted; k++) {
+            int b = c.interrupted[k];
+            intersectInterrupts(b, c.possibleInterrupts[b]);
+        }
+
+        c.reset();
+        numPaths++;
+
+        // At this point, we've completed all counts computation for the
+        // current path.
+    }
+
+    /**
+     * Adds the counts of other, which counts other paths, with the same type
+     * ids and capacity.
+     */
+    void merge(PathCounts other) {
+        assert other.capacity == capacity;
+
+        addAll(gEventCnts, other.gEventCnts);
+        addAll(gFollowedByCnts, other.gFollowedByCnts);
+        addAll(gPrecedesCnts, other.gPrecedesCnts);
+        addAll(gPathCnts, other.gPathCnts);
+        for (int b = 0; b < capacity; b++) {
+            if (other.gPossibleInterrupts[b] != null) {
+                intersectInterrupts(b, other.gPossibleInterrupts[b]);
+            }
+        }
+        numPaths += other.numPaths;
+    }
+
+    private void intersectInterrupts(int b, long[] interrupts) {
+        if (gPossibleInterrupts[b] == null) {
+            gPossibleInterrupts[b] = interrupts.clone();
+        } else {
+            for (int w = 0; w < interrupts.length; w++) {
+                gPossibleInterrupts[b][w] &= interrupts[w];
+            }
+        }
+    }
+
+    private static void addAll(int[] counts, int[] otherCounts) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += otherCounts[i];
+        }
+    }
+
+    int getNumPaths() {
+        return numPaths;
+    }
+
+    /*
+     * The accessors below return the counts of the first numTypes types, in
+     * the layout that CountingInvariantMiner.extractPathInvariantsFromWalkCounts
+     * expects. They return copies if the capacity is larger than numTypes.
+     */
+
+    int[] getEventCnts(int numTypes) {
+        return numTypes == capacity ? gEventCnts : Arrays.copyOf(gEventCnts,
+                numTypes);
+    }
+
+    int[] getFollowedByCnts(int numTypes) {
+        return numTypes == capacity ? gFollowedByCnts : copyMatrix(
+                gFollowedByCnts, capacity, numTypes, numTypes);
+    }
+
+    int[] getPrecedesCnts(int numTypes) {
+        return numTypes == capacity ? gPrecedesCnts : copyMatrix(
+                gPrecedesCnts, capacity, numTypes, numTypes);
+    }
+
+    long[][] getPossibleInterrupts(int numTypes) {
+        return numTypes == capacity ? gPossibleInterrupts : Arrays.copyOf(
+                gPossibleInterrupts, numTypes);
+    }
+
+    /**
+     * Returns the ids of the event types, out of the first numTypes, that
+     * appeared in every path.
+     */
+    int[] getAlwaysFollowsINITIAL(int numTypes) {
+        int num = 0;
+        int[] alwaysFollowsINITIAL = new int[numTypes];
+        for (int a = 0; a < numTypes; a++) {
+            if (gPathCnts[a] == numPaths) {
+                alwaysFollowsINITIAL[num++] = a;
+            }
+        }
+        return Arrays.copyOf(alwaysFollowsINITIAL, num);
+    }
+
+    /**
+     * Counts the events of a single path, into arrays that are reused across
+     * paths.
+     */
+    private static class PathCounter {
+        final int numTypes;
+
+        /** The ids of the types of the path's events, in path order. */
+        int[] path = new int[0];
+        /** The number of events of each type in the path. */
+        final int[] eventCnts;
+        /** The position of the last event of each type in the path. */
+        final int[] lastPos;
+        /** The position of the previous event of each type, while counting. */
+        final int[] prevPos;
+
+        /** The types in the path, in order of first appearance. */
+        final int[] seen;
+        int numSeen = 0;
+
+        /**
+         * For every type b that appeared at least twice in the path, the
+         * bitset of types that appeared between every pair of consecutive b's.
+         */
+        final long[][] possibleInterrupts;
+        /** The types that have a possibleInterrupts bitset for the path. */
+        final int[] interrupted;
+        int numInterrupted = 0;
+        final boolean[] isInterrupted;
+
+        /** The types between two consecutive events of the same type. */
+        final long[] typesInBetween;
+
+        PathCounter(int numTypes) {
+            this.numTypes = numTypes;
+            eventCnts = new int[numTypes];
+            lastPos = new int[numTypes];
+            prevPos = new int[numTypes];
+            seen = new int[numTypes];
+            possibleInterrupts = new long[numTypes][];
+            interrupted = new int[numTypes];
+            isInterrupted = new boolean[numTypes];
+            typesInBetween = new long[(numTypes + 63) / 64];
+        }
+
+        void ensurePathLength(int length) {
+            if (path.length < length) {
+                path = new int[Math.max(length, 2 * path.length)];
+            }
+        }
+
+        /**
+         * Counts the events of the path with the first length ids in path,
+         * and adds its followed-by and precedes counts to gFollowedByCnts and
+         * gPrecedesCnts.
+         */
+        void count(int length, int[] gFollowedByCnts, int[] gPrecedesCnts) {
+            for (int i = 0; i < length; i++) {
+                lastPos[path[i]] = i;
+            }
+
+            for (int i = 0; i < length; i++) {
+                // The current event is 'b', and all prior events are 'a' --
+                // this notation indicates that an 'a' always occur prior to a
+                // 'b' in the path.
+                int b = path[i];
+
+                for (int k = 0; k < numSeen; k++) {
+                    int a = seen[k];
+                    // Update the precedes counts based on the a events that
+                    // preceded the current b event in this path.
+                    gPrecedesCnts[a * numTypes + b]++;
+
+                    // The number of a FollowedBy b in this path is the number
+                    // of a's that appeared before the last b.
+                    if (i == lastPos[b]) {
+                        gFollowedByCnts[a * numTypes + b] += eventCnts[a];
+                    }
+                }
+
+                if (eventCnts[b] == 0) {
+                    seen[numSeen++] = b;
+                } else {
+                    // All event types in between b and the last occurrence of
+                    // b are possible IntrBy invariants. These get intersected
+                    // with the ones found between earlier pairs of b, until
+                    // there are only Interrupted by invariants which hold for
+                    // all pairs of b.
+                    for (int j = prevPos[b] + 1; j < i; j++) {
+                        typesInBetween[path[j] >>> 6] |= 1L << path[j];
+                    }
+                    if (!isInterrupted[b]) {
+                        if (possibleInterrupts[b] == null) {
+                            possibleInterrupts[b] = new long[typesInBetween.length];
+                        }
+                        System.arraycopy(typesInBetween, 0,
+                                possibleInterrupts[b], 0, typesInBetween.length);
+                        isInterrupted[b] = true;
+                        interrupted[numInterrupted++] = b;
+                    } else {
+                        for (int w = 0; w < typesInBetween.length; w++) {
+                            possibleInterrupts[b][w] &= typesInBetween[w];
+                        }
+                    }
+                    for (int j = prevPos[b] + 1; j < i; j++) {
+                        typesInBetween[path[j] >>> 6] = 0;
+                    }
+                }
+
+                eventCnts[b]++;
+                prevPos[b] = i;
+            }
+        }
+
+        /**
+         * Resets the counts of the last counted path.
+         */
+        void reset() {
+            for (int k = 0; k < numSeen; k++) {
+                eventCnts[seen[k]] = 0;
+            }
+            numSeen = 0;
+            for (int k = 0; k < numInterrupted; k++) {
+                isInterrupted[interrupted[k]] = false;
+            }
+            numInterrupted = 0;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Summarizes a list of traces, possibly with several threads. Every thread
+ * folds a contiguous share of the traces into its own summary, and the
+ * summaries of the shares are then merged in the order of the shares. So as
+ * long as merging two summaries gives the same summary as adding the traces
+ * of the second one to the first, the result does not depend on the number of
+ * threads.
+ *
+ * @param <T>
+ *            the type of the traces
+ * @param <S>
+ *            the type of the summaries
+ */
+abstract class TraceShardSummarizer<T, S> {
+
+    /**
+     * Returns a new summary of no traces.
+     */
+    protected abstract S newSummary();
+
+    /**
+     * Adds the trace to the summary.
+     */
+    protected abstract void addTrace(S summary, T trace);
+
+    /**
+     * Adds the traces summarized by other, which come after the traces of
+     * summary, to summary.
+     */
+    protected abstract void merge(S summary, S other);
+
+    /**
+     * Summarizes the traces, splitting them between numThreads threads if
+     * there is more than one.
+     */
+    public S summarize(List<T> traces, int numThreads) {
+        if (numThreads <= 1 || traces.size() <= 1) {
+            return summarizeShare(traces);
+        }
+
+        final PerformanceMetrics metrics = PerformanceMetrics.get();
+        int numShares = Math.min(numThreads, traces.size());
+        List<Callable<S>> tasks = new ArrayList<Callable<S>>();
+        for (int i = 0; i < numShares; i++) {
+            final List<T> share = traces.subList(i * traces.size()
+                    / numShares, (i + 1) * traces.size() / numShares);
+            tasks.add(new Callable<S>() {
+                @Override
+                public S call() {
+                    PerformanceMetrics.setCurrent(metrics);
+                    try {
+                        return summarizeShare(share);
+                    } finally {
+                        PerformanceMetrics.setCurrent(null);
+                    }
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numShares);
+        try {
+            S summary = null;
+            for (Future<S> result : executor.invokeAll(tasks)) {
+                if (summary == null) {
+                    summary = result.get();
+                } else {
+                    merge(summary, result.get());
+                }
+            }
+            return summary;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            throw new InternalSynopticException(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private S summarizeShare(List<T> share) {
+        S summary = newSummary();
+        for (T trace : share) {
+            addTrace(summary, trace);
+        }
+        return summary;
+    }
+}
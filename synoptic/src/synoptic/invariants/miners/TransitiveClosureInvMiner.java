@@ -1,9 +1,9 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,12 +29,11 @@ import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
-import synoptic.util.Pair;
 
 /**
  * Implements an invariant miner for both totally and partially ordered traces
- * that first creates a transitive closure of the TraceGraph, and then considers
- * the edges in the transitive closure to mine invariants. For example, if every
+ * that first creates the transitive closure of each trace of the TraceGraph,
+ * and then considers the edges in the transitive closures to mine invariants. For example, if every
  * instance of EventNode of type "a" has an edge in the transitive closure to an
  * EventNode of type "b", then a AlwaysFollowedBy b is an invariant of the
  * TraceGraph. <br />
@@ -50,6 +49,12 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
      */
     public boolean useWarshall = true;
 
+    /**
+     * The number of threads that summarize the traces. Each thread summarizes
+     * its own share of the traces, and the summaries are then merged.
+     */
+    public int numThreads = 1;
+
     public TransitiveClosureInvMiner() {
         // Empty constructor for testing.
     }
@@ -58,6 +63,11 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         this.useWarshall = useWarshall;
     }
 
+    public TransitiveClosureInvMiner(boolean useWarshall, int numThreads) {
+        this.useWarshall = useWarshall;
+        this.numThreads = numThreads;
+    }
+
     @Override
     public TemporalInvariantSet computeInvariants(DAGsTraceGraph g) {
         return computeTransClosureInvariants(g, true);
@@ -75,6 +85,13 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
      * over-approximation of the invariants that hold (i.e. it may return
      * invariants that do not hold, but may not fail to return an invariant that
      * does not hold)
+     * <p>
+     * Traces are disconnected from each other, so the transitive closure is
+     * computed one trace at a time: the orderings in each trace's closure are
+     * folded into a summary, after which the closure is discarded. Hence, only
+     * the closures of the traces that are being summarized are in memory at
+     * any time, rather than the closure of the whole graph.
+     * </p>
      * 
      * @param g
      *            the graph of nodes of type LogEvent
@@ -97,9 +114,53 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
             TimedTask itc = PerformanceMetrics.createTask(
                     "invariants_transitive_closure", false);
 
-            // Compute the transitive closure.
-            AllRelationsTransitiveClosure transitiveClosure = new AllRelationsTransitiveClosure(
-                    g);
+            // Give the event types dense ids, and collect the nodes of each
+            // trace.
+            Map<EventType, Integer> etypeIds = new LinkedHashMap<EventType, Integer>();
+            Map<Integer, List<EventNode>> traceIdToENodes = new LinkedHashMap<Integer, List<EventNode>>();
+            for (EventNode node : g.getNodes()) {
+                if (node.getEType().isSpecialEventType()) {
+                    /**
+                     * The inclusion of INITIAL and TERMINAL states in the
+                     * graphs generates the following types of "tautological"
+                     * invariants (for all event types X):
+                     * 
+                     * <pre>
+                     * - x AP TERMINAL
+                     * - INITIAL AP x
+                     * - x AP TERMINAL
+                     * - x AFby TERMINAL
+                     * - TERMINAL NFby INITIAL
+                     * </pre>
+                     * <p>
+                     * NOTE: x AP TERMINAL is not actually a tautological
+                     * invariant, but we do not mine/include it because we
+                     * instead use x AFby INITIAL.
+                     * </p>
+                     * <p>
+                     * We filter these out by simply ignoring any temporal
+                     * invariants of the form x INV y where x or y in {INITIAL,
+                     * TERMINAL}. This is useful because it relieves us from
+                     * checking/reporting invariants which are true for all
+                     * graphs produced with typical construction.
+                     **/
+                    continue;
+                }
+                if (!etypeIds.containsKey(node.getEType())) {
+                    etypeIds.put(node.getEType(), etypeIds.size());
+                }
+                List<EventNode> list = traceIdToENodes.get(node.getTraceID());
+                if (list == null) {
+                    list = new ArrayList<EventNode>();
+                    traceIdToENodes.put(node.getTraceID(), list);
+                }
+                list.add(node);
+            }
+
+            // Summarize the orderings in the transitive closure of every trace.
+            OrderingSummaries summaries = summarizeTraces(g, etypeIds,
+                    new ArrayList<Entry<Integer, List<EventNode>>>(
+                            traceIdToENodes.entrySet()));
 
             // Get the over-approximation.
             itc.stop();
@@ -113,10 +174,10 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
             // not considering invariants over multiple relations, this is
             // sufficient.
             overapproximatedInvariantsSet = new LinkedHashSet<ITemporalInvariant>();
+            List<EventType> etypes = new ArrayList<EventType>(etypeIds.keySet());
             for (String relation : g.getRelations()) {
                 overapproximatedInvariantsSet.addAll(extractInvariantsFromTC(g,
-                        transitiveClosure.get(relation), relation,
-                        mineConcurrencyInvariants));
+                        etypes, summaries, relation, mineConcurrencyInvariants));
             }
 
             io.stop();
@@ -132,6 +193,34 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         return new TemporalInvariantSet(overapproximatedInvariantsSet);
     }
 
+    /**
+     * Summarizes the orderings in the given traces, splitting them between
+     * numThreads threads if there is more than one.
+     */
+    private OrderingSummaries summarizeTraces(final TraceGraph<?> g,
+            final Map<EventType, Integer> etypeIds,
+            List<Entry<Integer, List<EventNode>>> traces) {
+        return new TraceShardSummarizer<Entry<Integer, List<EventNode>>, OrderingSummaries>() {
+            @Override
+            protected OrderingSummaries newSummary() {
+                return new OrderingSummaries(etypeIds.size(), g.getRelations());
+            }
+
+            @Override
+            protected void addTrace(OrderingSummaries summaries,
+                    Entry<Integer, List<EventNode>> trace) {
+                summaries.addTrace(g, trace.getKey(), trace.getValue(),
+                        etypeIds);
+            }
+
+            @Override
+            protected void merge(OrderingSummaries summaries,
+                    OrderingSummaries other) {
+                summaries.merge(other);
+            }
+        }.summarize(traces, numThreads);
+    }
+
     /**
      * Maintains state to summarize the ordering relationship between two event
      * types in the transitive closure. This summary is generated by
@@ -145,6 +234,8 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         // never ordered with respect to every instance of e2.
         public boolean alwaysOrdered = true;
         public boolean neverOrdered = true;
+        // The number of summarized traces that contain both e1 and e2.
+        public int numTraces = 0;
 
         public EventOrderingSummary() {
             // Nothing to do here.
@@ -158,198 +249,248 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
             return (!neverFollowedBy && !alwaysFollowedBy && !alwaysPrecedes
                     && !alwaysOrdered && !neverOrdered);
         }
+
+        /**
+         * Adds the summary of the orderings in other traces to this summary.
+         */
+        public void merge(EventOrderingSummary other) {
+            neverFollowedBy &= other.neverFollowedBy;
+            alwaysFollowedBy &= other.alwaysFollowedBy;
+            alwaysPrecedes &= other.alwaysPrecedes;
+            alwaysOrdered &= other.alwaysOrdered;
+            neverOrdered &= other.neverOrdered;
+            numTraces += other.numTraces;
+        }
     }
 
     /**
-     * Assumes that e1 and e2 are both not initial/terminal event types.
-     * 
-     * @param traceIdToEventNodesE1
-     * @param traceIdToEventNodesE2
-     * @param tc
-     * @return
+     * The ordering summaries between every pair of event types, for every
+     * relation, over a set of traces. Event types are identified by dense ids.
+     * Summaries of disjoint sets of traces can be merged.
      */
-    private EventOrderingSummary summarizeOrderings(
-            Map<Integer, List<EventNode>> traceIdToEventNodesE1,
-            Map<Integer, List<EventNode>> traceIdToEventNodesE2,
-            TransitiveClosure tc) {
-        EventOrderingSummary order = new EventOrderingSummary();
-
-        for (int tid : traceIdToEventNodesE1.keySet()) {
-            // Do not iterate if there are no e2 instances in the trace tid
-
-            for (EventNode node1 : traceIdToEventNodesE1.get(tid)) {
-                boolean followerFound = false;
-                boolean predecessorFound = false;
-
-                if (traceIdToEventNodesE2.containsKey(tid)) {
-                    for (EventNode node2 : traceIdToEventNodesE2.get(tid)) {
-                        if (node1 == node2) {
-                            continue;
-                        }
+    private static class OrderingSummaries {
+        // The number of traces that contain each event type.
+        final int[] numTraces;
+        // The summaries for each relation, indexed by the ids of e1 and e2. A
+        // missing summary is that of a pair of event types that never appeared
+        // in the same trace.
+        final Map<String, EventOrderingSummary[][]> summaries = new LinkedHashMap<String, EventOrderingSummary[][]>();
+
+        OrderingSummaries(int numEtypes, Set<String> relations) {
+            numTraces = new int[numEtypes];
+            for (String relation : relations) {
+                summaries.put(relation,
+                        new EventOrderingSummary[numEtypes][numEtypes]);
+            }
+        }
 
-                        if (tc.isReachable(node1, node2)) {
-                            order.neverFollowedBy = false;
-                            followerFound = true;
-                        }
+        /**
+         * Returns (a copy of) the summary of e1 with respect to e2 over all
+         * the summarized traces. The instances of e1 in traces that do not
+         * contain e2 are neither followed nor preceded by e2.
+         */
+        EventOrderingSummary get(String relation, int e1, int e2) {
+            EventOrderingSummary order = new EventOrderingSummary();
+            if (summaries.get(relation)[e1][e2] != null) {
+                order.merge(summaries.get(relation)[e1][e2]);
+            }
+            if (order.numTraces < numTraces[e1]) {
+                order.alwaysFollowedBy = false;
+                order.alwaysPrecedes = false;
+            }
+            return order;
+        }
+
+        /**
+         * Summarizes the orderings of the nodes of trace tid, using the
+         * trace's transitive closure for every relation.
+         */
+        void addTrace(TraceGraph<?> g, int tid, List<EventNode> traceNodes,
+                Map<EventType, Integer> etypeIds) {
+            // The nodes of each event type in the trace.
+            Map<Integer, List<EventNode>> etypeToENodes = new LinkedHashMap<Integer, List<EventNode>>();
+            for (EventNode node : traceNodes) {
+                int e = etypeIds.get(node.getEType());
+                List<EventNode> list = etypeToENodes.get(e);
+                if (list == null) {
+                    list = new ArrayList<EventNode>();
+                    etypeToENodes.put(e, list);
+                    numTraces[e]++;
+                }
+                list.add(node);
+            }
 
-                        if (tc.isReachable(node2, node1)) {
-                            predecessorFound = true;
+            for (Entry<String, EventOrderingSummary[][]> entry : summaries
+                    .entrySet()) {
+                TransitiveClosure tc = g.getTransitiveClosure(tid,
+                        entry.getKey());
+                EventOrderingSummary[][] orders = entry.getValue();
+                for (Entry<Integer, List<EventNode>> e1Entry : etypeToENodes
+                        .entrySet()) {
+                    for (Entry<Integer, List<EventNode>> e2Entry : etypeToENodes
+                            .entrySet()) {
+                        int e1 = e1Entry.getKey();
+                        int e2 = e2Entry.getKey();
+                        if (orders[e1][e2] == null) {
+                            orders[e1][e2] = new EventOrderingSummary();
                         }
+                        orders[e1][e2].numTraces++;
+                        summarizeOrderings(e1Entry.getValue(),
+                                e2Entry.getValue(), tc, orders[e1][e2]);
+                    }
+                }
+            }
+        }
 
-                        // If node1 and node2 belong to same trace then for them
-                        // to be alwaysOrdered, there must be a path between
-                        // them either from node1 to node2 or from node2 to
-                        // node1.
-                        if (!tc.isReachable(node1, node2)
-                                && !tc.isReachable(node2, node1)) {
-                            order.alwaysOrdered = false;
+        /**
+         * Adds the summaries of other, which summarizes other traces, to these
+         * summaries.
+         */
+        void merge(OrderingSummaries other) {
+            for (int e = 0; e < numTraces.length; e++) {
+                numTraces[e] += other.numTraces[e];
+            }
+            for (Entry<String, EventOrderingSummary[][]> entry : summaries
+                    .entrySet()) {
+                EventOrderingSummary[][] orders = entry.getValue();
+                EventOrderingSummary[][] otherOrders = other.summaries
+                        .get(entry.getKey());
+                for (int e1 = 0; e1 < orders.length; e1++) {
+                    for (int e2 = 0; e2 < orders.length; e2++) {
+                        if (otherOrders[e1][e2] == null) {
+                            continue;
+                        }
+                        if (orders[e1][e2] == null) {
+                            orders[e1][e2] = otherOrders[e1][e2];
+                        } else {
+                            orders[e1][e2].merge(otherOrders[e1][e2]);
                         }
                     }
                 }
+            }
+        }
+    }
+
+    /**
+     * Adds the orderings between the instances nodesE1 of e1 and nodesE2 of e2
+     * in a single trace to the summary order of e1 with respect to e2. Assumes
+     * that e1 and e2 are both not initial/terminal event types, and that e2
+     * appears in the trace (the instances of e1 in traces without e2 are
+     * accounted for by the summary's numTraces).
+     * 
+     * @param nodesE1
+     * @param nodesE2
+     * @param tc
+     *            the transitive closure of the trace
+     * @param order
+     */
+    private static void summarizeOrderings(List<EventNode> nodesE1,
+            List<EventNode> nodesE2, TransitiveClosure tc,
+            EventOrderingSummary order) {
+        for (EventNode node1 : nodesE1) {
+            // Optimization: if no possibly trace can change the outcome of
+            // the ordering summary we have gathered so far, then stop and
+            // exit with the summary that we have.
+            if (order.fixedPoint()) {
+                return;
+            }
+
+            boolean followerFound = false;
+            boolean predecessorFound = false;
 
-                // Every node instance with label1 must be followed by a
-                // node instance with label2 for label1 AFby label2 to be
-                // true.
-                if (!followerFound) {
-                    order.alwaysFollowedBy = false;
+            for (EventNode node2 : nodesE2) {
+                if (node1 == node2) {
+                    continue;
                 }
-                // Every node instance with label1 must be preceded by a
-                // node instance with label2 for label2 AP label1 to be
-                // true.
-                if (!predecessorFound) {
-                    order.alwaysPrecedes = false;
+
+                if (tc.isReachable(node1, node2)) {
+                    order.neverFollowedBy = false;
+                    followerFound = true;
                 }
 
-                if (followerFound || predecessorFound) {
-                    order.neverOrdered = false;
+                if (tc.isReachable(node2, node1)) {
+                    predecessorFound = true;
                 }
 
-                // Optimization: if no possibly trace can change the outcome of
-                // the ordering summary we have gathered so far, then stop and
-                // exit with the summary that we have.
-                if (order.fixedPoint()) {
-                    return order;
+                // If node1 and node2 belong to same trace then for them
+                // to be alwaysOrdered, there must be a path between
+                // them either from node1 to node2 or from node2 to
+                // node1.
+                if (!tc.isReachable(node1, node2)
+                        && !tc.isReachable(node2, node1)) {
+                    order.alwaysOrdered = false;
                 }
             }
-        }
 
-        return order;
+            // Every node instance with label1 must be followed by a
+            // node instance with label2 for label1 AFby label2 to be
+            // true.
+            if (!followerFound) {
+                order.alwaysFollowedBy = false;
+            }
+            // Every node instance with label1 must be preceded by a
+            // node instance with label2 for label2 AP label1 to be
+            // true.
+            if (!predecessorFound) {
+                order.alwaysPrecedes = false;
+            }
+
+            if (followerFound || predecessorFound) {
+                order.neverOrdered = false;
+            }
+        }
     }
 
     /**
-     * Extract an over-approximated set of invariants from the transitive
-     * closure {@code tc} of the graph {@code g}.
+     * Extract an over-approximated set of invariants from the summaries of
+     * the transitive closures of the traces of the graph {@code g}.
      * 
      * @param g
      *            the graph over LogEvent
-     * @param tc
-     *            the transitive closure (of {@code g}) from which to mine
-     *            invariants
+     * @param etypes
+     *            the event types, by id
+     * @param summaries
+     *            the summaries of the orderings in the transitive closures of
+     *            the traces of {@code g}, from which to mine invariants
      * @param relation
      *            the relation to consider for the invariants
      * @return the over-approximated set of invariants
      * @throws Exception
      */
     private Set<ITemporalInvariant> extractInvariantsFromTC(TraceGraph<?> g,
-            TransitiveClosure tc, String relation,
-            boolean mineConcurrencyInvariants) {
-
-        // This maintains the mapping from event type to a map of trace ids ->
-        // list of event instances in the trace. This is used to check
-        // reachability only between event instances that are in the same trace.
-        Map<EventType, Map<Integer, List<EventNode>>> etypeToTraceIdToENode = new LinkedHashMap<EventType, Map<Integer, List<EventNode>>>();
-
-        // Initialize the partitions map: each unique label maps to a list of
-        // nodes with that label.
-        for (EventNode node : g.getNodes()) {
-            if (node.getEType().isSpecialEventType()) {
-                /**
-                 * The inclusion of INITIAL and TERMINAL states in the graphs
-                 * generates the following types of "tautological" invariants
-                 * (for all event types X):
-                 * 
-                 * <pre>
-                 * - x AP TERMINAL
-                 * - INITIAL AP x
-                 * - x AP TERMINAL
-                 * - x AFby TERMINAL
-                 * - TERMINAL NFby INITIAL
-                 * </pre>
-                 * <p>
-                 * NOTE: x AP TERMINAL is not actually a tautological invariant,
-                 * but we do not mine/include it because we instead use x AFby
-                 * INITIAL.
-                 * </p>
-                 * <p>
-                 * We filter these out by simply ignoring any temporal
-                 * invariants of the form x INV y where x or y in {INITIAL,
-                 * TERMINAL}. This is useful because it relieves us from
-                 * checking/reporting invariants which are true for all graphs
-                 * produced with typical construction.
-                 **/
-                continue;
-            }
-            Map<Integer, List<EventNode>> map;
-            EventType etype = node.getEType();
-            if (!etypeToTraceIdToENode.containsKey(etype)) {
-                map = new LinkedHashMap<Integer, List<EventNode>>();
-                etypeToTraceIdToENode.put(etype, map);
-            } else {
-                map = etypeToTraceIdToENode.get(etype);
-            }
-
-            List<EventNode> list;
-            int tid = node.getTraceID();
-            if (!map.containsKey(tid)) {
-                list = new LinkedList<EventNode>();
-                map.put(tid, list);
-            } else {
-                list = map.get(tid);
-            }
-            list.add(node);
-        }
+            List<EventType> etypes, OrderingSummaries summaries,
+            String relation, boolean mineConcurrencyInvariants) {
 
         Set<ITemporalInvariant> pathInvs = new LinkedHashSet<ITemporalInvariant>();
         Set<ITemporalInvariant> neverConcurInvs = new LinkedHashSet<ITemporalInvariant>();
         Set<ITemporalInvariant> alwaysConcurInvs = new LinkedHashSet<ITemporalInvariant>();
 
-        Set<Pair<EventType, EventType>> observedPairs = new LinkedHashSet<Pair<EventType, EventType>>();
         int numTraces = g.getNumTraces();
-        for (Entry<EventType, Map<Integer, List<EventNode>>> e1Entry : etypeToTraceIdToENode
-                .entrySet()) {
-            EventType e1 = e1Entry.getKey();
+        for (int i = 0; i < etypes.size(); i++) {
+            EventType e1 = etypes.get(i);
             // ///////////////// Determine if "INITIAL AFby e1" is true
             // Check if an e1 node appeared in every trace, if yes then inv
             // true.
-            if (e1Entry.getValue().keySet().size() == numTraces) {
+            if (summaries.numTraces[i] == numTraces) {
                 pathInvs.add(new AlwaysFollowedInvariant(StringEventType
                         .newInitialStringEventType(), e1,
                         Event.defTimeRelationStr));
             }
             // /////////////////
 
-            for (Entry<EventType, Map<Integer, List<EventNode>>> e2Entry : etypeToTraceIdToENode
-                    .entrySet()) {
-                EventType e2 = e2Entry.getKey();
-                // If we have done (e1,e2) then do not do (e2,e1) because for
-                // pair (e1,e2) we derive orderings and invariants for both
-                // (e1,e2) and (e2,e1) -- this is done so that we can do correct
-                // subsumption of invariants (and concurrency invariants require
-                // symmetrical information).
-                if (observedPairs.contains(new Pair<EventType, EventType>(e2,
-                        e1))) {
-                    continue;
-                }
-                observedPairs.add(new Pair<EventType, EventType>(e1, e2));
+            // For pair (e1,e2) we derive orderings and invariants for both
+            // (e1,e2) and (e2,e1), so we do not also do pair (e2,e1) -- this
+            // is done so that we can do correct subsumption of invariants (and
+            // concurrency invariants require symmetrical information).
+            for (int j = i; j < etypes.size(); j++) {
+                EventType e2 = etypes.get(j);
 
                 // ///////////////////////////////
-                // Derive the ordering summary between each instance of e1 and
+                // Get the ordering summary between each instance of e1 and
                 // every instance of e2.
-                EventOrderingSummary E1orderE2 = summarizeOrderings(
-                        e1Entry.getValue(), e2Entry.getValue(), tc);
+                EventOrderingSummary E1orderE2 = summaries.get(relation, i, j);
                 // Do same for e2,e1.
-                EventOrderingSummary E2orderE1 = summarizeOrderings(
-                        e2Entry.getValue(), e1Entry.getValue(), tc);
+                EventOrderingSummary E2orderE1 = summaries.get(relation, j, i);
                 // ///////////////////////////////
 
                 // Whether or not never ordered invariant was added --
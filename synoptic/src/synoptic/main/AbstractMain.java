@@ -4,7 +4,11 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -14,6 +18,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -23,6 +29,9 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.benchmarks.PeakHeapMonitor;
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -37,6 +46,7 @@ import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.Options;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
+import synoptic.main.parser.TraceSnapshot;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
@@ -51,6 +61,7 @@ import synoptic.model.export.GraphExportFormatter;
 import synoptic.model.export.GraphExporter;
 import synoptic.model.export.JsonExporter;
 import synoptic.model.export.LtsExporter;
+import synoptic.model.export.PngRenderer;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.IRelationPath;
@@ -88,6 +99,12 @@ public abstract class AbstractMain {
      */
     public AbstractOptions options = null;
 
+    /**
+     * Converts exported dot files to png images in the background, if
+     * options.numRenderThreads is positive. Created when first needed.
+     */
+    private PngRenderer pngRenderer = null;
+
     /**
      * The instance of either SynopticOptions or PerfumeOptions from which plume
      * methods can be called and from which the AbstractOptions object above
@@ -166,7 +183,8 @@ public abstract class AbstractMain {
             return null;
         }
 
-        if (AbstractOptions.plumeOpts.logFilenames.size() == 0) {
+        if (AbstractOptions.plumeOpts.logFilenames.size() == 0
+                && options.loadTraceSnapshot == null) {
             logger.severe(
                     "No log filenames specified, exiting. Specify log files at the end of the command line with no options.");
             return null;
@@ -325,6 +343,26 @@ public abstract class AbstractMain {
         } else {
             filename = baseFilename + ".dot";
         }
+        // Currently we support only .dot -> .png generation
+        if (imageGenCondition && options.numRenderThreads > 0) {
+            // The renderer dedupes files by their contents, so keep the
+            // exported text instead of reading the file back.
+            StringWriter dotText = new StringWriter();
+            try {
+                GraphExporter.exportGraph(dotText, g, outputProbLabelsCond, outputCountLabelsCond);
+                logger.info("Exporting graph to: " + filename);
+                Files.write(Paths.get(filename), dotText.toString().getBytes(Charset.defaultCharset()));
+            } catch (IOException e) {
+                logger.fine("Unable to export graph to " + filename);
+                return;
+            }
+            if (pngRenderer == null) {
+                pngRenderer = new PngRenderer(options.numRenderThreads);
+            }
+            pngRenderer.render(filename, dotText.toString());
+            return;
+        }
+
         try {
             GraphExporter.exportGraph(filename, g, outputProbLabelsCond, outputCountLabelsCond);
         } catch (IOException e) {
@@ -332,11 +370,21 @@ public abstract class AbstractMain {
         }
 
         if (imageGenCondition) {
-            // Currently we support only .dot -> .png generation
             GraphExporter.generatePngFileFromDotFile(filename);
         }
     }
 
+    /**
+     * Waits for the png files of all the exported graphs to be generated, and
+     * stops the threads that generated them. A later export starts new ones.
+     */
+    public void closePngRenderer() {
+        if (pngRenderer != null) {
+            pngRenderer.close();
+            pngRenderer = null;
+        }
+    }
+
     /**
      * Export the trace graph g.
      */
@@ -423,9 +471,85 @@ public abstract class AbstractMain {
      * @throws Exception
      */
     static public List<EventNode> parseEvents(TraceParser parser, List<String> logFilenames) throws Exception {
+        AbstractOptions options = getInstance().options;
+        if (options.loadTraceSnapshot != null) {
+            if (options.saveTraceSnapshot != null) {
+                logger.warning("Traces loaded from a snapshot are not saved,"
+                        + " ignoring the saveTraceSnapshot option.");
+            }
+            return loadTraceSnapshot(parser, options.loadTraceSnapshot);
+        }
+
         long startTime = loggerInfoStart("Parsing input files..");
+        TimedTask parsing = PerformanceMetrics.createTask("parse");
+        long linesRead = parser.getNumLinesRead();
 
         List<EventNode> parsedEvents = new ArrayList<EventNode>();
+        int numThreads = options.numParserThreads;
+        if (numThreads > 1) {
+            parsedEvents.addAll(parser.parseTraceFiles(
+                    getLogFiles(logFilenames), numThreads));
+        } else {
+            for (File file : getLogFiles(logFilenames)) {
+                logger.fine("\tcalling parseTraceFile with file: "
+                        + file.getAbsolutePath());
+                parsedEvents.addAll(parser.parseTraceFile(file, -1));
+            }
+        }
+        parsing.stop();
+        loggerInfoEnd("Parsing took ", startTime);
+        recordParseThroughput(parser.getNumLinesRead() - linesRead, startTime);
+
+        if (options.saveTraceSnapshot != null) {
+            startTime = loggerInfoStart("Writing trace snapshot..");
+            TraceSnapshot.write(parser, parsedEvents, new File(
+                    options.saveTraceSnapshot));
+            loggerInfoEnd("Writing trace snapshot took ", startTime);
+        }
+
+        return parsedEvents;
+    }
+
+    /**
+     * Loads the events in a trace snapshot file, written with the
+     * saveTraceSnapshot option, into parser. The returned events and the state
+     * of the parser are the same as after parsing the logs that the snapshot
+     * was taken of.
+     * 
+     * @param parser
+     * @param snapshotFilename
+     * @return
+     * @throws Exception
+     */
+    static public List<EventNode> loadTraceSnapshot(TraceParser parser,
+            String snapshotFilename) throws Exception {
+        long startTime = loggerInfoStart("Loading trace snapshot..");
+        TimedTask loading = PerformanceMetrics.createTask("loadTraceSnapshot");
+        List<EventNode> parsedEvents = TraceSnapshot.read(parser, new File(
+                snapshotFilename));
+        loading.stop();
+        loggerInfoEnd("Loading trace snapshot took ", startTime);
+        return parsedEvents;
+    }
+
+    /**
+     * Logs the parsing throughput, and records it in the "parseLinesPerSecond"
+     * performance metric.
+     */
+    private static void recordParseThroughput(long numLines, long startTime) {
+        long millis = Math.max(System.currentTimeMillis() - startTime, 1);
+        long linesPerSecond = numLines * 1000 / millis;
+        PerformanceMetrics.get().record("parseLinesPerSecond", linesPerSecond);
+        logger.info("Parsed " + numLines + " lines (" + linesPerSecond + " lines/s)");
+    }
+
+    /**
+     * Expands the log filenames (which may contain wildcards) into the list of
+     * files to parse.
+     */
+    private static List<File> getLogFiles(List<String> logFilenames)
+            throws Exception {
+        List<File> logFiles = new ArrayList<File>();
         for (String fileArg : logFilenames) {
             logger.fine("\tprocessing fileArg: " + fileArg);
             File[] files = getFiles(fileArg);
@@ -433,14 +557,9 @@ public abstract class AbstractMain {
                 throw new ParseException(
                         "The set of input files is empty. Please specify a set of existing files to parse.");
             }
-            for (File file : files) {
-                logger.fine("\tcalling parseTraceFile with file: " + file.getAbsolutePath());
-                parsedEvents.addAll(parser.parseTraceFile(file, -1));
-            }
+            logFiles.addAll(Arrays.asList(files));
         }
-        loggerInfoEnd("Parsing took ", startTime);
-
-        return parsedEvents;
+        return logFiles;
     }
 
     static public ChainsTraceGraph genChainsTraceGraph(TraceParser parser, List<EventNode> parsedEvents)
@@ -476,12 +595,13 @@ public abstract class AbstractMain {
         ITOInvariantMiner miner;
 
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true, options.numMiningThreads);
         } else {
-            miner = new ChainWalkingTOInvMiner();
+            miner = new ChainWalkingTOInvMiner(options.numMiningThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants [" + miner.getClass().getName() + "]..");
+        TimedTask mining = PerformanceMetrics.createTask("mine");
         TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph, options.multipleRelations,
                 options.outputSupportCount);
 
@@ -496,6 +616,7 @@ public abstract class AbstractMain {
                 }
             }
         }
+        mining.stop();
 
         loggerInfoEnd("Mining took ", startTime);
 
@@ -516,13 +637,15 @@ public abstract class AbstractMain {
 
         IPOInvariantMiner miner;
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true, options.numMiningThreads);
         } else {
-            miner = new DAGWalkingPOInvMiner(options.mineNeverConcurrentWithInv);
+            miner = new DAGWalkingPOInvMiner(options.mineNeverConcurrentWithInv, options.numMiningThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants [" + miner.getClass().getName() + "]..");
+        TimedTask mining = PerformanceMetrics.createTask("mine");
         TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph);
+        mining.stop();
         loggerInfoEnd("Mining took ", startTime);
         // Miner can be garbage-collected.
         miner = null;
@@ -689,9 +812,29 @@ public abstract class AbstractMain {
      */
     protected ChainsTraceGraph parseIntoTraceGraph()
             throws ParseException, Exception, FileNotFoundException {
+        PeakHeapMonitor parseHeap = new PeakHeapMonitor();
+        ChainsTraceGraph traceGraph = null;
+        try {
+            traceGraph = parseAndAssembleTraceGraph();
+        } finally {
+            long peakHeapMB = parseHeap.stop();
+            if (traceGraph != null) {
+                PerformanceMetrics.get().record("parsePeakHeapMB", peakHeapMB);
+            }
+        }
+        return traceGraph;
+    }
+
+    /**
+     * Does the work of parseIntoTraceGraph, which measures its peak heap
+     * usage.
+     */
+    private ChainsTraceGraph parseAndAssembleTraceGraph()
+            throws ParseException, Exception, FileNotFoundException {
         TraceParser parser = new TraceParser(options.regExps,
                 AbstractOptions.partitionRegExp,
                 AbstractOptions.separatorRegExp, options.dateFormat);
+
         List<EventNode> parsedEvents;
         try {
             parsedEvents = parseEvents(parser,
@@ -726,8 +869,7 @@ public abstract class AbstractMain {
         }
 
         // //////////////////
-        ChainsTraceGraph traceGraph = genChainsTraceGraph(parser, parsedEvents);
-        return traceGraph;
+        return genChainsTraceGraph(parser, parsedEvents);
     }
 
     /**
@@ -819,6 +961,50 @@ public abstract class AbstractMain {
      *            The initial graph model to start refining.
      */
     public void runSynoptic(PartitionGraph pGraph) {
+        // The threads used to model check invariants and to check candidate
+        // merges in parallel are owned by this run.
+        ExecutorService executor = createExecutor();
+        try {
+            refineAndCoarsen(pGraph, executor);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        // At this point, we have the final model in the pGraph object.
+
+        // TODO: check that none of the initially mined synoptic.invariants are
+        // unsatisfied in the result
+
+        // export the resulting graph
+        exportGraph(pGraph);
+
+        if (options.metricsFile != null) {
+            exportMetrics(options.metricsFile);
+        }
+    }
+
+    /**
+     * Creates the executor on which to model check invariants and check
+     * candidate merges in parallel, with as many threads as the larger of
+     * numCheckerThreads and numMergeThreads. Returns null if neither is done
+     * in parallel. The caller owns the executor, and must shut it down.
+     */
+    public ExecutorService createExecutor() {
+        int numThreads = Math.max(options.numCheckerThreads,
+                options.numMergeThreads);
+        if (numThreads <= 1) {
+            return null;
+        }
+        return new ForkJoinPool(numThreads);
+    }
+
+    /**
+     * Refines and then coarsens pGraph, unless either step is disabled.
+     */
+    private void refineAndCoarsen(PartitionGraph pGraph,
+            ExecutorService executor) {
         long startTime;
 
         if (options.logLvlVerbose || options.logLvlExtraVerbose) {
@@ -831,7 +1017,7 @@ public abstract class AbstractMain {
             logger.info("Skipping refinement");
         } else {
             startTime = loggerInfoStart("Refining (Splitting)...");
-            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph, null, executor);
             loggerInfoEnd("Splitting took ", startTime);
         }
         // //////////////////
@@ -846,18 +1032,26 @@ public abstract class AbstractMain {
             logger.info("Skipping coarsening");
         } else {
             startTime = loggerInfoStart("Coarsening (Merging)..");
-            Bisimulation.mergePartitions(pGraph);
+            Bisimulation.mergePartitions(pGraph, pGraph.getInvariants(), 1,
+                    null, executor);
             loggerInfoEnd("Merging took ", startTime);
         }
         // //////////////////
+    }
 
-        // At this point, we have the final model in the pGraph object.
-
-        // TODO: check that none of the initially mined synoptic.invariants are
-        // unsatisfied in the result
-
-        // export the resulting graph
-        exportGraph(pGraph);
+    /**
+     * Writes the performance metrics of the current run to a file, as CSV if
+     * its name ends in .csv, and as JSON otherwise.
+     * 
+     * @param filename
+     */
+    public void exportMetrics(String filename) {
+        logger.info("Exporting performance metrics to " + filename);
+        try {
+            PerformanceMetrics.get().export(new File(filename));
+        } catch (IOException e) {
+            logger.severe("Could not write performance metrics to " + filename + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -867,6 +1061,7 @@ public abstract class AbstractMain {
      */
     protected void exportGraph(PartitionGraph pGraph) {
         long startTime;
+        TimedTask exporting = PerformanceMetrics.createTask("export");
         if (AbstractOptions.outputPathPrefix != null) {
             logger.info("Exporting final graph [" + pGraph.getNodes().size() + " nodes]..");
             startTime = System.currentTimeMillis();
@@ -910,5 +1105,10 @@ public abstract class AbstractMain {
 
             logger.info("Exporting in LTS format took " + (System.currentTimeMillis() - startTime) + "ms");
         }
+
+        // Include the png files of the final graph (and of any intermediate
+        // graphs still being converted) in the export.
+        closePngRenderer();
+        exporting.stop();
     }
 }
@@ -240,6 +240,33 @@ public class AbstractOptions {
     static final String noRefinementStr = "Do not perform refinement";
     public boolean noRefinement = false;
 
+    static final String numCheckerThreadsStr = "Number of threads used to model check invariants in parallel during refinement (1 checks them sequentially)";
+    public int numCheckerThreads = 1;
+
+    static final String numMergeThreadsStr = "Number of threads used to speculatively check candidate merges in parallel during coarsening (1 checks them one at a time)";
+    public int numMergeThreads = 1;
+
+    static final String numMiningThreadsStr = "Number of threads used to mine invariants from the traces in parallel (1 mines them sequentially)";
+    public int numMiningThreads = 1;
+
+    static final String screenInvariantsStr = "Screen invariants with the bitset model checker, and search for counter-examples only for invariants that may be violated";
+    public boolean screenInvariants = true;
+
+    static final String numParserThreadsStr = "Number of threads used to parse the input log files (1 parses them sequentially)";
+    public int numParserThreads = 1;
+
+    static final String numRenderThreadsStr = "Number of threads used to convert exported dot files to png images in the background (0 converts each one before continuing)";
+    public int numRenderThreads = 1;
+
+    static final String saveTraceSnapshotStr = "Write a binary snapshot of the parsed traces to this file, so that later runs can load it with loadTraceSnapshot instead of parsing the logs";
+    public String saveTraceSnapshot = null;
+
+    static final String loadTraceSnapshotStr = "Load the parsed traces from a snapshot file written with saveTraceSnapshot, instead of parsing log files";
+    public String loadTraceSnapshot = null;
+
+    static final String metricsFileStr = "Write the performance metrics collected during the run to this file, as CSV if its name ends in .csv and as JSON otherwise";
+    public String metricsFile = null;
+
     /**
      * Prints help for all option groups, including unpublicized ones.
      */
@@ -448,6 +448,102 @@ public class ExtPerfumeOptions extends Options {
      */
     @Option(AbstractOptions.noRefinementStr)
     public boolean noRefinement = false;
+
+    /**
+     * Size of the fork-join pool used to model check the unsatisfied invariants
+     * in parallel during refinement. Each invariant is checked against a read-
+     * only snapshot of the partition graph, and the counter-examples are
+     * returned in the same order as with sequential checking. A value of 1
+     * checks the invariants sequentially. This option is <i>unpublicized</i>;
+     * it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.numCheckerThreadsStr)
+    public int numCheckerThreads = 1;
+
+    /**
+     * Number of threads used to check candidate merges during coarsening. With
+     * more than one thread, several candidate merges are checked at once, each
+     * against a merged view of a read-only snapshot of the partition graph, and
+     * the first valid one in the sequential order is applied, so the final
+     * model is the same as with sequential coarsening. A value of 1 checks one
+     * candidate at a time. This option is <i>unpublicized</i>; it will not
+     * appear in the default usage message
+     */
+    @Option(AbstractOptions.numMergeThreadsStr)
+    public int numMergeThreads = 1;
+
+    /**
+     * Number of threads used to mine invariants. Each thread summarizes its
+     * own share of the traces, one trace at a time, and the summaries are
+     * merged at the end, so the mined invariants do not depend on the number
+     * of threads. This option is <i>unpublicized</i>; it will not appear in
+     * the default usage message
+     */
+    @Option(AbstractOptions.numMiningThreadsStr)
+    public int numMiningThreads = 1;
+
+    /**
+     * Whether to first check all of the invariants against the partition graph
+     * with the bitset model checker, which checks all invariants of a type in a
+     * single pass, and to run the path-tracing model checker only for the
+     * invariants that may be violated. Time-constrained invariants are screened
+     * with a conservative bound on their running times. This option is
+     * <i>unpublicized</i>; it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.screenInvariantsStr)
+    public boolean screenInvariants = true;
+
+    /**
+     * Number of threads used to parse the input log files. Files are parsed in
+     * parallel with one another, and chunks of a single file are too, unless
+     * the regular expressions use incrementor fields (e.g., a partitions
+     * separator). Events are added to traces in input order, so the parsed
+     * traces do not depend on this option. This option is <i>unpublicized</i>;
+     * it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.numParserThreadsStr)
+    public int numParserThreads = 1;
+
+    /**
+     * Number of threads used to convert exported dot files to png images while
+     * Synoptic continues. Dot files with the same contents as an earlier one
+     * are not converted again, and all of them are converted before Synoptic
+     * exits. This option is <i>unpublicized</i>; it will not appear in the
+     * default usage message
+     */
+    @Option(AbstractOptions.numRenderThreadsStr)
+    public int numRenderThreads = 1;
+
+    /**
+     * Name of a file to write a binary snapshot of the parsed traces to. The
+     * snapshot contains the event types, times, relations, states, and file and
+     * line provenance of all the parsed events, so that later runs on the same
+     * logs can load it with the loadTraceSnapshot option instead of parsing the
+     * logs again. This option is <i>unpublicized</i>; it will not appear in the
+     * default usage message
+     */
+    @Option(AbstractOptions.saveTraceSnapshotStr)
+    public String saveTraceSnapshot = null;
+
+    /**
+     * Name of a trace snapshot file, written with the saveTraceSnapshot option,
+     * to load the parsed traces from. The log files, regular expressions, and
+     * other parsing options are then ignored, and no log files need to be
+     * specified. This option is <i>unpublicized</i>; it will not appear in the
+     * default usage message
+     */
+    @Option(AbstractOptions.loadTraceSnapshotStr)
+    public String loadTraceSnapshot = null;
+
+    /**
+     * Write the performance metrics (e.g., the time taken by parsing, mining,
+     * each refinement round, coarsening and export) collected during the run to
+     * this file when the run finishes, as CSV if the file name ends in .csv and
+     * as JSON otherwise. This option is <i>unpublicized</i>; it will not appear
+     * in the default usage message
+     */
+    @Option(AbstractOptions.metricsFileStr)
+    public String metricsFile = null;
     // end option group "Debugging Options"
 
     /** One line synopsis of usage */
@@ -580,6 +676,15 @@ public class ExtPerfumeOptions extends Options {
         absOpts.runAllTests = runAllTests;
         absOpts.performExtraChecks = performExtraChecks;
         absOpts.noRefinement = noRefinement;
+        absOpts.numCheckerThreads = numCheckerThreads;
+        absOpts.numMergeThreads = numMergeThreads;
+        absOpts.numMiningThreads = numMiningThreads;
+        absOpts.screenInvariants = screenInvariants;
+        absOpts.numParserThreads = numParserThreads;
+        absOpts.numRenderThreads = numRenderThreads;
+        absOpts.saveTraceSnapshot = saveTraceSnapshot;
+        absOpts.loadTraceSnapshot = loadTraceSnapshot;
+        absOpts.metricsFile = metricsFile;
 
         // Set this as the definitive plume options object in AbstractMain and
         // AbstractOptions
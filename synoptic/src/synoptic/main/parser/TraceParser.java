@@ -10,6 +10,7 @@ import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,6 +20,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -40,6 +47,7 @@ import synoptic.util.InternalSynopticException;
 import synoptic.util.matching.NamedMatcher;
 import synoptic.util.matching.NamedPattern;
 import synoptic.util.matching.NamedSubstitution;
+import synoptic.util.matching.PatternPrefilter;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.DTotalResource;
 import synoptic.util.resource.EqualVectorTimestampsException;
@@ -57,6 +65,9 @@ public class TraceParser {
     private static Logger logger = Logger.getLogger("Parser Logger");
 
     private final List<NamedPattern> parsers;
+    // Selects the parsers that may match a line. Rebuilt whenever parsers
+    // changes.
+    private PatternPrefilter prefilter;
     private final List<LinkedHashMap<String, NamedSubstitution>> constantFields;
     private final List<Map<String, Boolean>> incrementors;
 
@@ -72,6 +83,13 @@ public class TraceParser {
     // EventNode -> Relation associated with this event node.
     Map<EventNode, Set<Relation>> allEventRelations = new HashMap<EventNode, Set<Relation>>();
 
+    // The number of lines read by this parser, from all inputs.
+    private final AtomicLong numLinesRead = new AtomicLong();
+
+    // The canonical event types of totally ordered events parsed by this
+    // parser.
+    private final StringEventType.Registry eventTypes = new StringEventType.Registry();
+
     // Patterns used to pre-process regular expressions
     private static final Pattern matchEscapedSeparator = Pattern
             .compile("\\\\;\\\\;");
@@ -136,8 +154,8 @@ public class TraceParser {
     // to be used.
     private String selectedTimeGroup = null;
 
-    // Used to convert delta values into absolute values when the flag is set
-    private AbstractResource lastTime;
+    // Number of lines of a file that parseTraceFiles matches in a single task.
+    private static final int PARALLEL_CHUNK_LINES = 4096;
 
     private static final String dummyEtypeLabel = "dummy-etype-for-line-with-state"
             .intern();
@@ -147,6 +165,7 @@ public class TraceParser {
      */
     public TraceParser() {
         parsers = new ArrayList<NamedPattern>();
+        prefilter = new PatternPrefilter(parsers);
         constantFields = new ArrayList<LinkedHashMap<String, NamedSubstitution>>();
         incrementors = new ArrayList<Map<String, Boolean>>();
         filter = new NamedSubstitution("");
@@ -233,6 +252,35 @@ public class TraceParser {
         return totallyOrderedTimeGroups.contains(selectedTimeGroup);
     }
 
+    /**
+     * Returns the time group used to parse the log(s).
+     */
+    String getTimeGroup() {
+        return selectedTimeGroup;
+    }
+
+    /**
+     * Replaces the time group of this parser with the time group of the traces
+     * in a snapshot, before the traces are restored into it.
+     * 
+     * @throws ParseException
+     *             if the parser already has traces, or timeGroup is unknown
+     */
+    void restoreTimeGroup(String timeGroup) throws ParseException {
+        if (!partitionNameToTraceID.isEmpty()) {
+            throw new ParseException(
+                    "Cannot restore traces into a parser that has already parsed traces");
+        }
+        if (implicitTimeGroup.equals(timeGroup)) {
+            selectedTimeGroup = implicitTimeGroup;
+        } else if (validTimeGroups.contains(timeGroup)) {
+            selectedTimeGroup = validTimeGroups.get(validTimeGroups
+                    .indexOf(timeGroup));
+        } else {
+            throw new ParseException("Unknown time type " + timeGroup);
+        }
+    }
+
     /**
      * Specifies a specific date format for parsing DATETIME capture groups.
      * 
@@ -396,6 +444,7 @@ public class TraceParser {
             throw parseException;
         }
         parsers.add(parser);
+        prefilter = new PatternPrefilter(parsers);
         // A list of all named groups i.e., fields that have no assignment.
         List<String> groups = parser.groupNames();
 
@@ -572,6 +621,7 @@ public class TraceParser {
         cycle(parsers);
         cycle(incrementors);
         cycle(constantFields);
+        prefilter = new PatternPrefilter(parsers);
         filter.concat(new NamedSubstitution("\\k<SEPCOUNT>"));
     }
 
@@ -601,18 +651,174 @@ public class TraceParser {
             throws ParseException, InternalSynopticException {
         String fileName = "";
         try {
-            fileName = file.getAbsolutePath();
+            fileName = internCommonString(file.getAbsolutePath());
             FileInputStream fstream = new FileInputStream(file);
             InputStreamReader fileReader = new InputStreamReader(fstream);
             return parseTrace(fileReader, fileName, linesToRead);
         } catch (IOException e) {
-            String error = "Error while attempting to read log file ["
-                    + fileName + "]: " + e.getMessage();
-            logger.severe(error);
-            throw new ParseException(error);
+            throw fileReadError(fileName, e);
         }
     }
 
+    private static ParseException fileReadError(String fileName,
+            IOException e) {
+        String error = "Error while attempting to read log file [" + fileName
+                + "]: " + e.getMessage();
+        logger.severe(error);
+        return new ParseException(error);
+    }
+
+    /**
+     * Parses trace files using a pool of numThreads threads, and returns the
+     * same events (in the same order, and with the same trace IDs) as calling
+     * parseTraceFile on each of the files in turn would. Lines are matched
+     * against the regular expressions by the pool, while the matched events
+     * are added to partitions by the calling thread, in input order. Each file
+     * is matched by a separate task. If the regular expressions have no
+     * incrementor fields (such as the one a partitions separator adds) and
+     * times are not deltas, then matching a line does not depend on the lines
+     * before it, so each chunk of lines of a file is matched by a separate
+     * task instead.
+     * 
+     * @param files
+     *            Files to read and then parse.
+     * @param numThreads
+     *            Number of threads to parse with.
+     * @return The parsed log events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public ArrayList<EventNode> parseTraceFiles(List<File> files,
+            int numThreads) throws ParseException, InternalSynopticException {
+        // The debugging output is only readable if lines are parsed in order.
+        if (numThreads <= 1 || AbstractMain.getInstance().options.debugParse) {
+            ArrayList<EventNode> results = new ArrayList<EventNode>();
+            for (File file : files) {
+                results.addAll(parseTraceFile(file, -1));
+            }
+            return results;
+        }
+
+        boolean splitFiles = !AbstractOptions.inputDelta
+                && new InputContext().counters.isEmpty();
+        ParallelParse parse = new ParallelParse(numThreads);
+        try {
+            for (File file : files) {
+                String fileName = internCommonString(file.getAbsolutePath());
+                if (!splitFiles) {
+                    parse.submit(fileName, newFileTask(file, fileName), true);
+                    continue;
+                }
+
+                BufferedReader br = null;
+                try {
+                    br = new BufferedReader(new InputStreamReader(
+                            new FileInputStream(file)));
+                    List<String> chunk = new ArrayList<String>();
+                    int firstLineNum = 1;
+                    String strLine;
+                    while ((strLine = br.readLine()) != null) {
+                        chunk.add(strLine);
+                        if (chunk.size() == PARALLEL_CHUNK_LINES) {
+                            parse.submit(fileName, newChunkTask(chunk,
+                                    fileName, firstLineNum), false);
+                            firstLineNum += chunk.size();
+                            chunk = new ArrayList<String>();
+                        }
+                    }
+                    parse.submit(fileName,
+                            newChunkTask(chunk, fileName, firstLineNum), true);
+                } catch (IOException e) {
+                    throw fileReadError(fileName, e);
+                } finally {
+                    if (br != null) {
+                        try {
+                            br.close();
+                        } catch (IOException e) {
+                            throw fileReadError(fileName, e);
+                        }
+                    }
+                }
+            }
+            return parse.finish();
+        } finally {
+            parse.shutdown();
+        }
+    }
+
+    /**
+     * Returns a task that reads and matches all the lines of a file.
+     */
+    private Callable<List<ParsedLine>> newFileTask(final File file,
+            final String fileName) {
+        return new Callable<List<ParsedLine>>() {
+            @Override
+            public List<ParsedLine> call() throws Exception {
+                InputContext context = new InputContext();
+                List<ParsedLine> parsed = new ArrayList<ParsedLine>();
+                BufferedReader br = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(file)));
+                int lineNum = 0;
+                try {
+                    String strLine;
+                    while ((strLine = br.readLine()) != null) {
+                        lineNum++;
+                        ParsedLine line = matchLine(strLine, fileName,
+                                context, lineNum);
+                        if (line != null) {
+                            parsed.add(line);
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+                numLinesRead.addAndGet(lineNum);
+                return parsed;
+            }
+        };
+    }
+
+    /**
+     * Returns a task that matches a chunk of the lines of a file. Only valid
+     * if the parser has no incrementor fields.
+     */
+    private Callable<List<ParsedLine>> newChunkTask(final List<String> lines,
+            final String fileName, final int firstLineNum) {
+        return new Callable<List<ParsedLine>>() {
+            @Override
+            public List<ParsedLine> call() throws Exception {
+                InputContext context = new InputContext();
+                List<ParsedLine> parsed = new ArrayList<ParsedLine>();
+                for (int i = 0; i < lines.size(); i++) {
+                    ParsedLine line = matchLine(lines.get(i), fileName,
+                            context, firstLineNum + i);
+                    if (line != null) {
+                        parsed.add(line);
+                    }
+                }
+                numLinesRead.addAndGet(lines.size());
+                return parsed;
+            }
+        };
+    }
+
+    /**
+     * Returns the canonical StringEventType with the given label, which all of
+     * the events of that type parsed by this parser share.
+     */
+    StringEventType internEventType(String label) {
+        return eventTypes.intern(label);
+    }
+
+    /**
+     * Returns the total number of lines read by this parser so far.
+     */
+    public long getNumLinesRead() {
+        return numLinesRead.get();
+    }
+
     /**
      * Parses a string containing a log into a list of log events.
      * 
@@ -669,23 +875,12 @@ public class TraceParser {
             IOException, InternalSynopticException {
         BufferedReader br = new BufferedReader(traceReader);
 
-        // Initialize incrementor context.
-        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
-        for (Map<String, Boolean> incs : incrementors) {
-            for (String incField : incs.keySet()) {
-                context.put(incField, 0);
-            }
-        }
+        InputContext context = new InputContext();
 
         ArrayList<EventNode> results = new ArrayList<EventNode>();
         String strLine = null;
 
-        String tName = traceName;
-        if (AbstractMain.getInstance().options.internCommonStrings) {
-            tName = tName.intern();
-        }
-
-        lastTime = null;
+        String tName = internCommonString(traceName);
 
         int lineNum = 0;
         // Process each line in sequence.
@@ -701,6 +896,30 @@ public class TraceParser {
             results.add(node);
         }
         br.close();
+        numLinesRead.addAndGet(lineNum);
+
+        finishInput(results);
+        logParsedInput(tName, results.size());
+        return results;
+    }
+
+    /**
+     * Interns a string that many events share, such as the name of a parsed
+     * input or of a relation, if common strings are interned.
+     */
+    private static String internCommonString(String s) {
+        if (s != null && AbstractMain.getInstance().options.internCommonStrings) {
+            return s.intern();
+        }
+        return s;
+    }
+
+    /**
+     * Post-processes the events parsed from a single input, once all of them
+     * have been added to partitions.
+     */
+    private void finishInput(ArrayList<EventNode> results)
+            throws ParseException {
         // TODO: this is a hacky solution, should refactor the parseTrace and
         // parseLine methods so that State is separated from EventNode.
         // At this point, each node in results either represents an event or
@@ -803,11 +1022,12 @@ public class TraceParser {
                 }
             }
         }
+    }
 
-        logger.info("Successfully parsed " + partitions.size()
-                + " traces, containing a total of " + results.size()
+    private void logParsedInput(String tName, int numEvents) {
+        logger.info("Successfully parsed " + partitionNameToTraceID.size()
+                + " traces, containing a total of " + numEvents
                 + " events from [" + tName + "]");
-        return results;
     }
 
     /**
@@ -888,7 +1108,61 @@ public class TraceParser {
      * Parse an individual line.
      */
     private EventNode parseLine(String line, String fileName,
-            Map<String, Integer> context, int lineNum) throws ParseException,
+            InputContext context, int lineNum) throws ParseException,
+            InternalSynopticException {
+        ParsedLine parsed = matchLine(line, fileName, context, lineNum);
+        if (parsed == null) {
+            return null;
+        }
+        return addParsedLine(parsed);
+    }
+
+    /**
+     * Adds a matched line to its partition, and records its relations.
+     */
+    private EventNode addParsedLine(ParsedLine parsed) throws ParseException {
+        EventNode eventNode = addEventNodeToPartition(parsed.event,
+                parsed.partitionName);
+
+        // If a state is captured, save it to eventNode's post-event state
+        // to indicate that this node represents a state and not an event.
+        // Use post-event state because, when merging state nodes to event
+        // nodes,
+        // pre-event state might be set before we check if that node
+        // represents
+        // state or event.
+        if (parsed.state != null) {
+            eventNode.setPostEventState(parsed.state);
+            // State is parsed. Enable state processing.
+            AbstractMain.getInstance().options.stateProcessing = true;
+        }
+
+        // We want to add eventNode->eventRelations to allEventRelations
+        // ONLY IF eventNode actually represents an event, not a dummy
+        // for state.
+        if (parsed.relations != null
+                && !eventNode.getEType().getETypeLabel()
+                        .equals(dummyEtypeLabel)) {
+            if (!allEventRelations.containsKey(eventNode)) {
+                allEventRelations.put(eventNode, new HashSet<Relation>());
+            }
+
+            Set<Relation> relations = allEventRelations.get(eventNode);
+
+            // Relations are immutable so we don't have to worry about
+            // representation exposure.
+            relations.addAll(parsed.relations);
+        }
+        return eventNode;
+    }
+
+    /**
+     * Matches an individual line against the regular expressions, without
+     * modifying any of the parser's state (other than context). Returns null
+     * if the line does not correspond to an event.
+     */
+    private ParsedLine matchLine(String line, String fileName,
+            InputContext context, int lineNum) throws ParseException,
             InternalSynopticException {
 
         Event event = null;
@@ -896,27 +1170,34 @@ public class TraceParser {
 
         AbstractMain main = AbstractMain.getInstance();
 
-        for (int i = 0; i < parsers.size(); i++) {
-            NamedMatcher matcher = parsers.get(i).matcher(line);
+        BitSet candidates = prefilter.candidates(line);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates
+                .nextSetBit(i + 1)) {
+            NamedMatcher matcher = context.matchers[i];
+            if (matcher == null) {
+                matcher = parsers.get(i).matcher(line);
+                context.matchers[i] = matcher;
+            } else {
+                matcher.reset(line);
+            }
             if (!matcher.matches()) {
                 continue;
             }
 
-            @SuppressWarnings("unchecked")
-            Map<String, NamedSubstitution> cs = (Map<String, NamedSubstitution>) constantFields
-                    .get(i).clone();
-            Map<String, String> matched = matcher.toMatchResult().namedGroups();
+            Map<String, NamedSubstitution> cs = constantFields.get(i);
+            context.groups.clear();
+            Map<String, String> matched = matcher.namedGroups(context.groups);
 
             // Perform pre-increments.
             for (Map.Entry<String, Boolean> inc : incrementors.get(i)
                     .entrySet()) {
                 if (inc.getValue() == false) {
-                    context.put(inc.getKey(), context.get(inc.getKey()) + 1);
+                    context.counters.put(inc.getKey(), context.counters.get(inc.getKey()) + 1);
                 }
             }
 
             // Overlay increment context.
-            for (Map.Entry<String, Integer> entry : context.entrySet()) {
+            for (Map.Entry<String, Integer> entry : context.counters.entrySet()) {
                 matched.put(entry.getKey(), entry.getValue().toString());
             }
 
@@ -929,8 +1210,8 @@ public class TraceParser {
                 // Special case for integers, to allow for setting
                 // incrementors.
                 Integer parsed = Integer.getInteger(val, Integer.MIN_VALUE);
-                if (context.containsKey(key)) {
-                    context.put(key, parsed);
+                if (context.counters.containsKey(key)) {
+                    context.counters.put(key, parsed);
                 }
 
                 // TODO: Determine policy of constant fields vs. extracted have
@@ -945,7 +1226,7 @@ public class TraceParser {
                 for (Map.Entry<String, Boolean> inc : incrementors.get(i)
                         .entrySet()) {
                     if (inc.getValue() == true) {
-                        context.put(inc.getKey(), context.get(inc.getKey()) + 1);
+                        context.counters.put(inc.getKey(), context.counters.get(inc.getKey()) + 1);
                     }
                 }
                 return null;
@@ -958,11 +1239,7 @@ public class TraceParser {
             EventType eType;
             // Check if this line contains event type or state.
             if (matched.containsKey(typeGroup)) {
-                if (main.options.internCommonStrings) {
-                    eTypeLabel = matched.get(typeGroup).intern();
-                } else {
-                    eTypeLabel = matched.get(typeGroup);
-                }
+                eTypeLabel = internCommonString(matched.get(typeGroup));
             } else if (matched.containsKey(stateGroup)) {
                 // This line has state, so event type is irrelevant.
                 // Use use the dummy string as the type.
@@ -977,13 +1254,20 @@ public class TraceParser {
             if (selectedTimeGroup.equals("VTIME")) {
                 if (parsePIDs) {
                     eType = new DistEventType(eTypeLabel,
-                            matched.get(processIDGroup));
+                            internCommonString(matched.get(processIDGroup)));
                 } else {
                     eType = new DistEventType(eTypeLabel);
                 }
                 event = new Event(eType, line, fileName, lineNum);
             } else {
-                eType = new StringEventType(eTypeLabel);
+                // StringEventTypes are immutable, so all events of a type
+                // can share one. DistEventTypes are not (see
+                // DistEventType.interpretEType), so each event gets its own.
+                if (main.options.internCommonStrings) {
+                    eType = eventTypes.intern(eTypeLabel);
+                } else {
+                    eType = new StringEventType(eTypeLabel);
+                }
                 event = new Event(eType, line, fileName, lineNum);
             }
 
@@ -1020,8 +1304,9 @@ public class TraceParser {
                         relName = key.substring(namedRelationGroup.length());
                     }
 
-                    Relation relation = new Relation(relName, relationString,
-                            isClosure);
+                    Relation relation = new Relation(
+                            internCommonString(relName),
+                            internCommonString(relationString), isClosure);
                     eventRelations.add(relation);
                 }
             }
@@ -1070,7 +1355,11 @@ public class TraceParser {
                             logger.severe(error);
                             throw new ParseException(error);
                         }
-                        Date date = dateFormatter.parse(timeField.trim());
+                        // SimpleDateFormat is not thread-safe.
+                        Date date;
+                        synchronized (dateFormatter) {
+                            date = dateFormatter.parse(timeField.trim());
+                        }
                         nextTime = new LTotalResource(date.getTime());
                     } else {
                         String error = buildLineErrorLocString(line, fileName,
@@ -1084,12 +1373,12 @@ public class TraceParser {
                     if (AbstractOptions.inputDelta) {
                         // If this is the first node, assign the zero time to
                         // lastTime
-                        if (lastTime == null) {
-                            lastTime = nextTime.getZeroResource();
+                        if (context.lastTime == null) {
+                            context.lastTime = nextTime.getZeroResource();
                         }
 
-                        nextTime = nextTime.incrBy(lastTime);
-                        lastTime = nextTime;
+                        nextTime = nextTime.incrBy(context.lastTime);
+                        context.lastTime = nextTime;
                     }
                 } catch (Exception e) {
                     String errMsg = buildLineErrorLocString(line, fileName,
@@ -1134,7 +1423,7 @@ public class TraceParser {
             for (Map.Entry<String, Boolean> inc : incrementors.get(i)
                     .entrySet()) {
                 if (inc.getValue() == true) {
-                    context.put(inc.getKey(), context.get(inc.getKey()) + 1);
+                    context.counters.put(inc.getKey(), context.counters.get(inc.getKey()) + 1);
                 }
             }
 
@@ -1160,40 +1449,14 @@ public class TraceParser {
             eventRelations.add(timeRelation);
 
             String partitionName = filter.substitute(eventStringArgs);
-            EventNode eventNode = addEventNodeToPartition(event, partitionName);
-
-            // If a state is captured, save it to eventNode's post-event state
-            // to indicate that this node represents a state and not an event.
-            // Use post-event state because, when merging state nodes to event
-            // nodes,
-            // pre-event state might be set before we check if that node
-            // represents
-            // state or event.
-            if (eventStringArgs.containsKey(stateGroup)) {
-                String stateStr = eventStringArgs.get(stateGroup);
-                State state = new State(stateStr);
-                eventNode.setPostEventState(state);
-                // State is parsed. Enable state processing.
-                main.options.stateProcessing = true;
-            }
-
-            // We want to add eventNode->eventRelations to allEventRelations
-            // ONLY IF eventNode actually represents an event, not a dummy
-            // for state.
-            if (!eventNode.getEType().getETypeLabel().equals(dummyEtypeLabel)) {
-                if (!allEventRelations.containsKey(eventNode)) {
-                    allEventRelations.put(eventNode, new HashSet<Relation>());
-                }
-
-                Set<Relation> relations = allEventRelations.get(eventNode);
 
-                // Relations are immutable so we don't have to worry about
-                // representation exposure.
-                relations.addAll(eventRelations);
+            State state = null;
+            if (eventStringArgs.containsKey(stateGroup)) {
+                state = new State(eventStringArgs.get(stateGroup));
             }
 
             eventStringArgs = null;
-            return eventNode;
+            return new ParsedLine(event, partitionName, eventRelations, state);
         }
 
         if (main.options.recoverFromParseErrors) {
@@ -1213,9 +1476,9 @@ public class TraceParser {
                 throw new ParseException(error);
             }
 
-            EventNode eventNode = addEventNodeToPartition(event,
-                    filter.substitute(new LinkedHashMap<String, String>()));
-            return eventNode;
+            return new ParsedLine(event,
+                    filter.substitute(new LinkedHashMap<String, String>()),
+                    null, null);
 
         } else if (main.options.ignoreNonMatchingLines) {
             logger.fine(buildLineErrorLocString(line, fileName, lineNum)
@@ -1273,6 +1536,33 @@ public class TraceParser {
         return eventNode;
     }
 
+    /**
+     * Creates an empty partition for a trace that is restored from a snapshot,
+     * so that the partitions are in the same order as when they were parsed.
+     */
+    void addRestoredPartition(String pName) throws ParseException {
+        if (partitions.containsKey(pName)) {
+            throw new ParseException("Duplicate partition '" + pName
+                    + "' in snapshot");
+        }
+        partitions.put(pName, new ArrayList<EventNode>());
+        partitionNameToTraceID.put(pName, nextTraceID);
+        nextTraceID++;
+    }
+
+    /**
+     * Adds an event of a trace that is restored from a snapshot to the end of
+     * partition pName, as if it had just been parsed with the given relations.
+     */
+    EventNode addRestoredEvent(Event event, String pName,
+            Set<Relation> relations) throws ParseException {
+        EventNode eventNode = addEventNodeToPartition(event, pName);
+        if (relations != null) {
+            allEventRelations.put(eventNode, relations);
+        }
+        return eventNode;
+    }
+
     public TraceGraph<?> generateDefaultOrderRelation(List<EventNode> allEvents)
             throws ParseException {
         if (logTimeTypeIsTotallyOrdered()) {
@@ -1372,4 +1662,129 @@ public class TraceParser {
 
         return graph;
     }
+
+    /**
+     * The state carried from line to line while parsing a single input: the
+     * values of the incrementor fields, the time of the last event (used to
+     * convert delta times into absolute times when inputDelta is set), and the
+     * objects that matching reuses. Only used by one thread at a time.
+     */
+    private final class InputContext {
+        final Map<String, Integer> counters = new LinkedHashMap<String, Integer>();
+        AbstractResource lastTime = null;
+
+        // A matcher for each of the parsers, and a map for the groups of a
+        // matched line, which are reused from line to line.
+        final NamedMatcher[] matchers = new NamedMatcher[parsers.size()];
+        final Map<String, String> groups = new LinkedHashMap<String, String>();
+
+        InputContext() {
+            for (Map<String, Boolean> incs : incrementors) {
+                for (String incField : incs.keySet()) {
+                    counters.put(incField, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * A line that was matched as an event (or a state), before it is added to
+     * a partition.
+     */
+    private static final class ParsedLine {
+        final Event event;
+        final String partitionName;
+        // Null if the line was not matched by a regular expression.
+        final Set<Relation> relations;
+        // Null if the line does not contain a state.
+        final State state;
+
+        ParsedLine(Event event, String partitionName,
+                Set<Relation> relations, State state) {
+            this.event = event;
+            this.partitionName = partitionName;
+            this.relations = relations;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Tracks the tasks of a parseTraceFiles call, and adds the lines they
+     * matched to partitions in the order the tasks were submitted.
+     */
+    private final class ParallelParse {
+        private final ExecutorService pool;
+        // Bounds the number of submitted tasks whose lines have not been added
+        // to partitions yet, and so the number of lines held in memory.
+        private final int maxPending;
+        private final LinkedList<String> pendingFileNames = new LinkedList<String>();
+        private final LinkedList<Boolean> pendingEndsFile = new LinkedList<Boolean>();
+        private final LinkedList<Future<List<ParsedLine>>> pending = new LinkedList<Future<List<ParsedLine>>>();
+
+        private final ArrayList<EventNode> results = new ArrayList<EventNode>();
+        // The events of the file whose lines are currently being added.
+        private ArrayList<EventNode> fileResults = new ArrayList<EventNode>();
+
+        ParallelParse(int numThreads) {
+            pool = Executors.newFixedThreadPool(numThreads);
+            maxPending = 4 * numThreads;
+        }
+
+        /**
+         * Submits a task that matches (the next) part of a file, where endsFile
+         * indicates whether it is the last part of the file.
+         */
+        void submit(String fileName, Callable<List<ParsedLine>> task,
+                boolean endsFile) throws ParseException {
+            pendingFileNames.add(fileName);
+            pendingEndsFile.add(endsFile);
+            pending.add(pool.submit(task));
+            while (pending.size() > maxPending) {
+                addOldest();
+            }
+        }
+
+        ArrayList<EventNode> finish() throws ParseException {
+            while (!pending.isEmpty()) {
+                addOldest();
+            }
+            return results;
+        }
+
+        void shutdown() {
+            pool.shutdownNow();
+        }
+
+        private void addOldest() throws ParseException {
+            String fileName = pendingFileNames.removeFirst();
+            boolean endsFile = pendingEndsFile.removeFirst();
+            List<ParsedLine> parsed;
+            try {
+                parsed = pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalSynopticException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ParseException) {
+                    throw new ParseException((ParseException) cause);
+                } else if (cause instanceof IOException) {
+                    throw fileReadError(fileName, (IOException) cause);
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw InternalSynopticException.wrap((Exception) cause);
+            }
+
+            for (ParsedLine line : parsed) {
+                fileResults.add(addParsedLine(line));
+            }
+            if (endsFile) {
+                finishInput(fileResults);
+                logParsedInput(fileName, fileResults.size());
+                results.addAll(fileResults);
+                fileResults = new ArrayList<EventNode>();
+            }
+        }
+    }
 }
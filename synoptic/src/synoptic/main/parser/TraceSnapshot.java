@@ -0,0 +1,590 @@
+package synoptic.main.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import synoptic.model.EventNode;
+import synoptic.model.Relation;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.model.state.State;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+import synoptic.util.resource.VectorTime;
+
+/**
+ * Reads and writes snapshots of the traces parsed by a TraceParser, in a
+ * compact binary format. Loading a snapshot into a parser restores the state
+ * the parser was in after parsing the original logs, so the trace graph can
+ * then be generated as usual (e.g., with generateDirectTORelation()), without
+ * re-parsing the logs. A snapshot contains the time type of the log, tables of
+ * the strings, event types, and relations that occur in the traces, and, for
+ * each parsed event: its partition, event type, file name, line number, log
+ * line, time, relations, and pre- and post-event states.
+ * <p>
+ * Snapshots are written through a FileChannel, and read from memory-mapped
+ * windows of the file, so files larger than 2GB are supported. Event resources
+ * other than time (which only the multi-resource parser produces) are not
+ * stored.
+ * </p>
+ */
+public class TraceSnapshot {
+    private static Logger logger = Logger.getLogger("TraceSnapshot Logger");
+
+    // "SYNS" in ASCII.
+    private static final int MAGIC = 0x53594e53;
+
+    /**
+     * The version of the snapshot format. Must be incremented whenever the
+     * format changes.
+     */
+    public static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Number of bytes mapped at a time when reading a snapshot.
+    private static final int WINDOW_SIZE = 1 << 26;
+
+    // Event type kinds.
+    private static final byte STRING_ETYPE = 0;
+    private static final byte DIST_ETYPE = 1;
+
+    // Time kinds.
+    private static final byte NO_TIME = 0;
+    private static final byte ITOTAL_TIME = 1;
+    private static final byte LTOTAL_TIME = 2;
+    private static final byte DTOTAL_TIME = 3;
+    private static final byte VECTOR_TIME = 4;
+
+    // Index of a null string, or of a null set of relations.
+    private static final int NONE = -1;
+
+    private TraceSnapshot() {
+        // Not instantiated.
+    }
+
+    /**
+     * Writes a snapshot of the events that parser has parsed to file.
+     *
+     * @param parser
+     *            the parser that parsed the events
+     * @param parsedEvents
+     *            the events returned by the parser, in the order that they were
+     *            returned in
+     * @param file
+     *            the snapshot file to (over)write
+     * @throws IOException
+     * @throws ParseException
+     *             if some of the events were not parsed by parser
+     */
+    public static void write(TraceParser parser, List<EventNode> parsedEvents,
+            File file) throws IOException, ParseException {
+        // The partition of each event.
+        Map<EventNode, Integer> eventPartitions = new IdentityHashMap<EventNode, Integer>();
+        Table<String> strings = new Table<String>();
+        List<Integer> partitionNames = new ArrayList<Integer>();
+        for (Map.Entry<String, ArrayList<EventNode>> partition : parser.partitions
+                .entrySet()) {
+            for (EventNode event : partition.getValue()) {
+                eventPartitions.put(event, partitionNames.size());
+            }
+            strings.add(partition.getKey());
+            partitionNames.add(strings.idOf(partition.getKey()));
+        }
+
+        // Build the tables of event types and relations (and of the strings
+        // that they, and the events, contain).
+        Table<EventType> eTypes = new Table<EventType>();
+        Table<Relation> relations = new Table<Relation>();
+        for (EventNode event : parsedEvents) {
+            if (!eventPartitions.containsKey(event)) {
+                throw new ParseException("Event " + event
+                        + " does not belong to a partition of the parser");
+            }
+            if (eTypes.add(event.getEType())) {
+                strings.add(event.getEType().getETypeLabel());
+                if (event.getEType() instanceof DistEventType) {
+                    strings.add(((DistEventType) event.getEType())
+                            .getProcessName());
+                }
+            }
+            strings.add(event.getEvent().getFileName());
+            if (event.getTime() != null) {
+                strings.add(event.getTime().getKey());
+            }
+            Set<Relation> eventRelations = parser.allEventRelations.get(event);
+            if (eventRelations != null) {
+                for (Relation relation : eventRelations) {
+                    if (relations.add(relation)) {
+                        strings.add(relation.getName());
+                        strings.add(relation.getRelation());
+                    }
+                }
+            }
+        }
+
+        Output out = new Output(file);
+        try {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putString(parser.getTimeGroup());
+
+            out.putInt(strings.size());
+            for (String s : strings.values()) {
+                out.putString(s);
+            }
+
+            out.putInt(eTypes.size());
+            for (EventType eType : eTypes.values()) {
+                if (eType instanceof DistEventType) {
+                    out.putByte(DIST_ETYPE);
+                    out.putInt(strings.idOf(eType.getETypeLabel()));
+                    out.putInt(strings.idOf(((DistEventType) eType)
+                            .getProcessName()));
+                } else if (eType instanceof StringEventType) {
+                    out.putByte(STRING_ETYPE);
+                    out.putInt(strings.idOf(eType.getETypeLabel()));
+                } else {
+                    throw new ParseException("Cannot write event type "
+                            + eType + " to a snapshot");
+                }
+            }
+
+            out.putInt(relations.size());
+            for (Relation relation : relations.values()) {
+                out.putInt(strings.idOf(relation.getName()));
+                out.putInt(strings.idOf(relation.getRelation()));
+                out.putByte((byte) (relation.isClosure() ? 1 : 0));
+            }
+
+            out.putInt(partitionNames.size());
+            for (int name : partitionNames) {
+                out.putInt(name);
+            }
+
+            out.putInt(parsedEvents.size());
+            for (EventNode event : parsedEvents) {
+                out.putInt(eventPartitions.get(event));
+                out.putInt(eTypes.idOf(event.getEType()));
+                out.putInt(strings.idOf(event.getEvent().getFileName()));
+                out.putInt(event.getLineNum());
+                out.putString(event.getLine());
+                putTime(out, event.getTime(), strings);
+
+                Set<Relation> eventRelations = parser.allEventRelations
+                        .get(event);
+                if (eventRelations == null) {
+                    out.putInt(NONE);
+                } else {
+                    out.putInt(eventRelations.size());
+                    for (Relation relation : eventRelations) {
+                        out.putInt(relations.idOf(relation));
+                    }
+                }
+
+                out.putString(stateString(event.getPreEventState()));
+                out.putString(stateString(event.getPostEventState()));
+            }
+        } finally {
+            out.close();
+        }
+        logger.info("Wrote a snapshot of " + parser.partitions.size()
+                + " traces, containing a total of " + parsedEvents.size()
+                + " events, to [" + file.getPath() + "]");
+    }
+
+    /**
+     * Reads the snapshot in file into parser, as if parser had just parsed the
+     * logs that the snapshot was taken of. The parser's time type is replaced
+     * with the snapshot's, but the parser must not have parsed any traces
+     * yet.
+     *
+     * @return the parsed events, in the order that they were written in
+     * @throws IOException
+     * @throws ParseException
+     *             if the file is not a snapshot, or was written with a
+     *             different version of the format
+     */
+    public static List<EventNode> read(TraceParser parser, File file)
+            throws IOException, ParseException {
+        Input in = new Input(file);
+        ArrayList<EventNode> parsedEvents;
+        try {
+            if (in.size() < 8 || in.getInt() != MAGIC) {
+                throw new ParseException("[" + file.getPath()
+                        + "] is not a trace snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new ParseException("Trace snapshot [" + file.getPath()
+                        + "] has version " + version
+                        + ", but only version " + VERSION
+                        + " is supported. Re-create it from the logs.");
+            }
+            parser.restoreTimeGroup(in.getString());
+
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.getString();
+            }
+
+            // DistEventType instances are mutable (e.g., CSight interprets each
+            // one in place), so a new one is created for every event, and
+            // only StringEventTypes are shared between events.
+            int numETypes = in.getInt();
+            StringEventType[] stringETypes = new StringEventType[numETypes];
+            String[] distETypeLabels = new String[numETypes];
+            String[] processNames = new String[numETypes];
+            for (int i = 0; i < numETypes; i++) {
+                byte kind = in.getByte();
+                String label = strings[in.getInt()];
+                if (kind == STRING_ETYPE) {
+                    stringETypes[i] = parser.internEventType(label);
+                } else if (kind == DIST_ETYPE) {
+                    distETypeLabels[i] = label;
+                    processNames[i] = strings[in.getInt()];
+                } else {
+                    throw corrupt(file);
+                }
+            }
+
+            Relation[] relations = new Relation[in.getInt()];
+            for (int i = 0; i < relations.length; i++) {
+                String name = strings[in.getInt()];
+                String relation = strings[in.getInt()];
+                relations[i] = new Relation(name, relation, in.getByte() != 0);
+            }
+
+            String[] partitionNames = new String[in.getInt()];
+            for (int i = 0; i < partitionNames.length; i++) {
+                partitionNames[i] = strings[in.getInt()];
+                parser.addRestoredPartition(partitionNames[i]);
+            }
+
+            int numEvents = in.getInt();
+            parsedEvents = new ArrayList<EventNode>(numEvents);
+            for (int i = 0; i < numEvents; i++) {
+                String pName = partitionNames[in.getInt()];
+                int eTypeId = in.getInt();
+                EventType eType = stringETypes[eTypeId];
+                if (eType == null) {
+                    eType = new DistEventType(distETypeLabels[eTypeId],
+                            processNames[eTypeId]);
+                }
+                int fileName = in.getInt();
+                int lineNum = in.getInt();
+                Event event = new Event(eType, in.getString(),
+                        fileName == NONE ? null : strings[fileName], lineNum);
+                event.setTime(getTime(in, strings, file));
+
+                Set<Relation> eventRelations = null;
+                int numRelations = in.getInt();
+                if (numRelations != NONE) {
+                    eventRelations = new LinkedHashSet<Relation>();
+                    for (int j = 0; j < numRelations; j++) {
+                        eventRelations.add(relations[in.getInt()]);
+                    }
+                }
+
+                EventNode eventNode = parser.addRestoredEvent(event, pName,
+                        eventRelations);
+                String preState = in.getString();
+                if (preState != null) {
+                    eventNode.setPreEventState(new State(preState));
+                }
+                String postState = in.getString();
+                if (postState != null) {
+                    eventNode.setPostEventState(new State(postState));
+                }
+                parsedEvents.add(eventNode);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw corrupt(file);
+        } finally {
+            in.close();
+        }
+        logger.info("Loaded " + parser.partitions.size()
+                + " traces, containing a total of " + parsedEvents.size()
+                + " events, from snapshot [" + file.getPath() + "]");
+        return parsedEvents;
+    }
+
+    private static ParseException corrupt(File file) {
+        return new ParseException("Trace snapshot [" + file.getPath()
+                + "] is corrupt");
+    }
+
+    private static String stateString(State state) {
+        return state == null ? null : state.getStateString();
+    }
+
+    private static void putTime(Output out, AbstractResource time,
+            Table<String> strings) throws IOException {
+        if (time == null) {
+            out.putByte(NO_TIME);
+        } else if (time instanceof ITotalResource) {
+            out.putByte(ITOTAL_TIME);
+            out.putInt(strings.idOf(time.getKey()));
+            out.putInt(((ITotalResource) time).value);
+        } else if (time instanceof LTotalResource) {
+            out.putByte(LTOTAL_TIME);
+            out.putInt(strings.idOf(time.getKey()));
+            out.putLong(((LTotalResource) time).value);
+        } else if (time instanceof DTotalResource) {
+            // BigDecimal's string representation is exact.
+            out.putByte(DTOTAL_TIME);
+            out.putInt(strings.idOf(time.getKey()));
+            out.putString(time.toString());
+        } else if (time instanceof VectorTime) {
+            List<Integer> vector = ((VectorTime) time).getVector();
+            out.putByte(VECTOR_TIME);
+            out.putInt(vector.size());
+            for (int clock : vector) {
+                out.putInt(clock);
+            }
+        } else {
+            throw new IOException("Cannot write time " + time
+                    + " to a snapshot");
+        }
+    }
+
+    private static AbstractResource getTime(Input in, String[] strings,
+            File file) throws IOException, ParseException {
+        byte kind = in.getByte();
+        switch (kind) {
+        case NO_TIME:
+            return null;
+        case ITOTAL_TIME: {
+            String key = strings[in.getInt()];
+            return new ITotalResource(in.getInt(), key);
+        }
+        case LTOTAL_TIME: {
+            String key = strings[in.getInt()];
+            return new LTotalResource(in.getLong(), key);
+        }
+        case DTOTAL_TIME: {
+            String key = strings[in.getInt()];
+            return new DTotalResource(in.getString(), key);
+        }
+        case VECTOR_TIME: {
+            int size = in.getInt();
+            List<Integer> vector = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                vector.add(in.getInt());
+            }
+            return new VectorTime(vector);
+        }
+        default:
+            throw corrupt(file);
+        }
+    }
+
+    /**
+     * Assigns consecutive ids to distinct (non-null) values.
+     */
+    private static final class Table<T> {
+        private final Map<T, Integer> ids = new LinkedHashMap<T, Integer>();
+
+        /**
+         * Adds value to the table, if it is not null and not already in it.
+         *
+         * @return whether value was added
+         */
+        boolean add(T value) {
+            if (value == null || ids.containsKey(value)) {
+                return false;
+            }
+            ids.put(value, ids.size());
+            return true;
+        }
+
+        /**
+         * Returns the id of value, which must have been added to the table, or
+         * NONE if value is null.
+         */
+        int idOf(T value) {
+            if (value == null) {
+                return NONE;
+            }
+            return ids.get(value);
+        }
+
+        int size() {
+            return ids.size();
+        }
+
+        Set<T> values() {
+            return ids.keySet();
+        }
+    }
+
+    /**
+     * Writes big-endian primitives and strings to a file through a buffer.
+     */
+    private static final class Output {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(File f) throws IOException {
+            file = new RandomAccessFile(f, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void putByte(byte b) throws IOException {
+            ensure(1);
+            buffer.put(b);
+        }
+
+        void putInt(int i) throws IOException {
+            ensure(4);
+            buffer.putInt(i);
+        }
+
+        void putLong(long l) throws IOException {
+            ensure(8);
+            buffer.putLong(l);
+        }
+
+        /**
+         * Writes the length of the UTF-8 encoding of s (or NONE if s is null),
+         * followed by the encoding.
+         */
+        void putString(String s) throws IOException {
+            if (s == null) {
+                putInt(NONE);
+                return;
+            }
+            byte[] bytes = s.getBytes(UTF8);
+            putInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+            } else {
+                ensure(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        void close() throws IOException {
+            try {
+                if (channel.isOpen()) {
+                    flush();
+                }
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the primitives and strings written by Output from memory-mapped
+     * windows of a file.
+     */
+    private static final class Input {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart = 0;
+
+        Input(File f) throws IOException {
+            file = new RandomAccessFile(f, "r");
+            channel = file.getChannel();
+            size = channel.size();
+            map(0, 0);
+        }
+
+        long size() {
+            return size;
+        }
+
+        /**
+         * Maps the window of the file that starts at start, and is at least n
+         * bytes long (if the file is long enough).
+         */
+        private void map(long start, int n) throws IOException {
+            long length = Math.min(Math.max(WINDOW_SIZE, n), size - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            windowStart = start;
+        }
+
+        private void ensure(int n) throws IOException {
+            if (window.remaining() < n) {
+                long position = windowStart + window.position();
+                if (n < 0 || position + n > size) {
+                    throw new IOException("Unexpected end of trace snapshot");
+                }
+                map(position, n);
+            }
+        }
+
+        byte getByte() throws IOException {
+            ensure(1);
+            return window.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length == NONE) {
+                return null;
+            }
+            ensure(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        void close() throws IOException {
+            window = null;
+            file.close();
+        }
+    }
+}
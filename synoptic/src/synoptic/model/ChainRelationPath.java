@@ -1,5 +1,6 @@
 package synoptic.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -23,6 +24,9 @@ public class ChainRelationPath implements IRelationPath {
     /** Relation this path is over */
     private String relation;
 
+    /** The nodes of this path, in path order, or null if not yet walked. */
+    private List<EventNode> nodes = null;
+
     /**
      * Caching indicator -- whether or not the various counts have already been
      * computed.
@@ -74,18 +78,15 @@ public class ChainRelationPath implements IRelationPath {
 
     /**
      * Assumes tracegraph is already constructed. Walks over the tracegraph that
-     * eNode is part of to populate seen, eventcounts, followedByCounts,
-     * precedesCounts and possibleInterrupts. Throws an error if a node has
-     * multiple transitions for a single relation (i.e., not a totally ordered
-     * relation path).
+     * eNode is part of to collect the nodes of this relation path. Throws an
+     * error if a node has multiple transitions for a single relation (i.e., not
+     * a totally ordered relation path).
      */
-    private void count() {
-        if (counted) {
+    private void walk() {
+        if (nodes != null) {
             return;
         }
-
-        // Used for IntrBy, which needs to record order
-        LinkedList<EventType> history = new LinkedList<EventType>();
+        nodes = new ArrayList<EventNode>();
 
         Set<String> relationSet = new HashSet<String>();
         relationSet.add(relation);
@@ -117,6 +118,38 @@ public class ChainRelationPath implements IRelationPath {
                                         relationSet).size());
             }
 
+            nodes.add(curNode);
+
+            // Move on to the next node in the trace.
+            List<? extends ITransition<EventNode>> searchTransitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+
+            if (curNode.equals(eFinal)) {
+                break;
+            }
+
+            curNode = searchTransitions.get(0).getTarget();
+
+            transitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+
+        }
+
+    }
+
+    /**
+     * Computes seen, eventCounts, followedByCounts, precedesCounts and
+     * possibleInterrupts from the nodes of this relation path.
+     */
+    private void count() {
+        if (counted) {
+            return;
+        }
+
+        // Used for IntrBy, which needs to record order
+        LinkedList<EventType> history = new LinkedList<EventType>();
+
+        for (EventNode curNode : getNodes()) {
             // The current event is 'b', and all prior events are 'a' --
             // this notation indicates that an 'a' always occur prior to a
             // 'b' in the path.
@@ -195,20 +228,6 @@ public class ChainRelationPath implements IRelationPath {
             } else {
                 eventCounts.put(b, eventCounts.get(b) + 1);
             }
-
-            // Move on to the next node in the trace.
-            List<? extends ITransition<EventNode>> searchTransitions = curNode
-                    .getTransitionsWithIntersectingRelations(relationSet);
-
-            if (curNode.equals(eFinal)) {
-                break;
-            }
-
-            curNode = searchTransitions.get(0).getTarget();
-
-            transitions = curNode
-                    .getTransitionsWithIntersectingRelations(relationSet);
-
         }
 
         counted = true;
@@ -253,6 +272,14 @@ public class ChainRelationPath implements IRelationPath {
         return Collections.unmodifiableMap(possibleInterrupts);
     }
 
+    /**
+     * Returns the nodes of this path, in path order.
+     */
+    public List<EventNode> getNodes() {
+        walk();
+        return Collections.unmodifiableList(nodes);
+    }
+
     public EventNode getFirstNode() {
         return this.eNode;
     }
@@ -205,37 +205,57 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         assert relations != null;
 
         TransitiveClosure transClosure = new TransitiveClosure(relations);
-        List<EventNode> prevNodes = new LinkedList<EventNode>();
         for (EventNode firstNode : traceIdToInitNodes.values()) {
-            EventNode curNode = firstNode;
+            recordChainTransitiveClosure(transClosure, firstNode, relations);
+        }
+        return transClosure;
+    }
 
-            while (!curNode.isTerminal()) {
-                prevNodes.clear();
+    @Override
+    public TransitiveClosure getTransitiveClosure(int traceId,
+            Set<String> relations) {
+        assert relations != null;
 
-                while (curNode.getTransitionsWithExactRelations(relations)
-                        .size() == 1) {
-                    for (EventNode prevNode : prevNodes) {
-                        transClosure.recordTransitiveReachability(prevNode,
-                                curNode);
-                    }
-                    prevNodes.add(curNode);
-                    curNode = curNode
-                            .getTransitionsWithExactRelations(relations).get(0)
-                            .getTarget();
-                }
+        TransitiveClosure transClosure = new TransitiveClosure(relations);
+        EventNode firstNode = traceIdToInitNodes.get(traceId);
+        if (firstNode != null) {
+            recordChainTransitiveClosure(transClosure, firstNode, relations);
+        }
+        return transClosure;
+    }
 
-                if (!curNode.isTerminal()) {
-                    for (EventNode prevNode : prevNodes) {
-                        transClosure.recordTransitiveReachability(prevNode,
-                                curNode);
-                    }
+    /**
+     * Records the transitive closure of the chain that starts at firstNode in
+     * transClosure.
+     */
+    private void recordChainTransitiveClosure(TransitiveClosure transClosure,
+            EventNode firstNode, Set<String> relations) {
+        List<EventNode> prevNodes = new LinkedList<EventNode>();
+        EventNode curNode = firstNode;
+
+        while (!curNode.isTerminal()) {
+            prevNodes.clear();
 
-                    assert curNode.getAllSuccessors().size() == 1;
-                    curNode = curNode.getAllSuccessors().iterator().next();
+            while (curNode.getTransitionsWithExactRelations(relations).size() == 1) {
+                for (EventNode prevNode : prevNodes) {
+                    transClosure.recordTransitiveReachability(prevNode,
+                            curNode);
                 }
+                prevNodes.add(curNode);
+                curNode = curNode.getTransitionsWithExactRelations(relations)
+                        .get(0).getTarget();
+            }
+
+            if (!curNode.isTerminal()) {
+                for (EventNode prevNode : prevNodes) {
+                    transClosure.recordTransitiveReachability(prevNode,
+                            curNode);
+                }
+
+                assert curNode.getAllSuccessors().size() == 1;
+                curNode = curNode.getAllSuccessors().iterator().next();
             }
         }
-        return transClosure;
     }
 
     // Used by tests only (so that DAGWalking invariant miner can operate on
@@ -101,6 +101,31 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
         return getTransitiveClosure(relations, true);
     }
 
+    /**
+     * Returns the transitive closure of the DAG of trace traceId, computed
+     * using Floyd Warshall algorithm over just the nodes of that trace.
+     */
+    @Override
+    public TransitiveClosure getTransitiveClosure(int traceId,
+            Set<String> relations) {
+        Set<EventNode> dagInits = traceIdToInitNodes.get(traceId);
+        if (dagInits == null) {
+            return new TransitiveClosure(relations);
+        }
+
+        // Collect the (non-terminal) nodes of the DAG.
+        Set<EventNode> dagNodes = new LinkedHashSet<EventNode>(dagInits);
+        List<EventNode> perimeter = new LinkedList<EventNode>(dagInits);
+        while (!perimeter.isEmpty()) {
+            for (EventNode child : perimeter.remove(0).getAllSuccessors()) {
+                if (!child.isTerminal() && dagNodes.add(child)) {
+                    perimeter.add(child);
+                }
+            }
+        }
+        return FloydWarshall.warshallAlg(dagNodes, relations);
+    }
+
     /**
      * This function takes a collection of transitions, and a list of nodes that
      * are somehow canonically ordered. It returns a list of nodes that the
@@ -153,7 +178,6 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
     @SuppressWarnings("unused")
     private TransitiveClosure goralcikovaAlg(Set<String> relations) {
         TransitiveClosure transClosure = new TransitiveClosure(relations);
-        Map<EventNode, Set<EventNode>> tc = transClosure.getTC();
 
         List<EventNode> sortedNodes = new LinkedList<EventNode>();
 
@@ -4,7 +4,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -48,14 +47,23 @@ public class EventNode implements INode<EventNode> {
 	 */
 	private int traceID = 0;
 
-	List<Transition<EventNode>> transitions = new ArrayList<Transition<EventNode>>();
+	/**
+	 * The transitions from this node. Most nodes have just one, so the list
+	 * starts with room for one. The transitions associated with a particular
+	 * relation are found by scanning this list, rather than being indexed by
+	 * relation, as an index would take several times the space of the node.
+	 */
+	List<Transition<EventNode>> transitions = new ArrayList<Transition<EventNode>>(
+			1);
 
 	/**
-	 * A map from a relation to a list of transitions that are associated with
-	 * the relation. A transition may be associated with multiple relations, and
-	 * may therefore appear in multiple sets.
+	 * Whether transitions were added since the transition probabilities were
+	 * last updated. The probabilities are updated when the transitions are next
+	 * accessed, rather than on every added transition, which would take time
+	 * quadratic in the number of transitions (e.g., from the INITIAL node,
+	 * which has a transition to every trace).
 	 */
-	LinkedHashMap<String, Set<Transition<EventNode>>> transitionsWithRelation = new LinkedHashMap<String, Set<Transition<EventNode>>>();
+	private volatile boolean probabilitiesStale = false;
 
 	/**
 	 * The process local successor node -- node with closest larger timestamp
@@ -76,14 +84,24 @@ public class EventNode implements INode<EventNode> {
 
 	/**
 	 * Updates the transition probabilities of all the transitions emitted from
-	 * this event node. This is used when the set of transitions is somehow
-	 * changed (e.g., a new transition is added).
+	 * this event node, if the set of transitions changed (e.g., a new
+	 * transition was added) since they were last updated. Must be called before
+	 * handing out the transitions.
 	 */
 	private void updateTransitionProbabilities() {
-		int totalTrans = transitions.size();
-		for (Transition<EventNode> tr : transitions) {
-			double freq = (double) 1 / (double) totalTrans;
-			tr.setProbability(freq);
+		if (!probabilitiesStale) {
+			return;
+		}
+		synchronized (this) {
+			if (!probabilitiesStale) {
+				return;
+			}
+			int totalTrans = transitions.size();
+			for (Transition<EventNode> tr : transitions) {
+				double freq = (double) 1 / (double) totalTrans;
+				tr.setProbability(freq);
+			}
+			probabilitiesStale = false;
 		}
 	}
 
@@ -148,7 +166,8 @@ public class EventNode implements INode<EventNode> {
 	public void addTransition(EventNode dest, Set<String> relations) {
 		assert dest != null : "Transition Target cannot be null";
 
-		addTransition(new Transition<EventNode>(this, dest, relations));
+		addTransition(new Transition<EventNode>(this, dest, Transition
+				.internRelations(relations)));
 	}
 
 	/**
@@ -162,9 +181,7 @@ public class EventNode implements INode<EventNode> {
 	public void addTransition(EventNode dest, String relation) {
 		assert dest != null : "Transition Target cannot be null";
 
-		Set<String> relations = new LinkedHashSet<String>();
-		relations.add(relation);
-		addTransition(new Transition<EventNode>(this, dest, relations));
+		addTransition(new Transition<EventNode>(this, dest, relation));
 	}
 
 	/**
@@ -256,16 +273,6 @@ public class EventNode implements INode<EventNode> {
 	 */
 	public void addTransition(Transition<EventNode> transition) {
 		transitions.add(transition);
-		for (String r : transition.getRelation()) {
-			// For each relation associated with the new transition update the
-			// mapping of relations to transitions that carry those relations.
-			Set<Transition<EventNode>> ref = transitionsWithRelation.get(r);
-			if (ref == null) {
-				ref = new LinkedHashSet<Transition<EventNode>>();
-				transitionsWithRelation.put(r, ref);
-			}
-			ref.add(transition);
-		}
 
 		EventNode dest = transition.getTarget();
 		if (AbstractMain.getInstance().options.usePerformanceInfo) {
@@ -274,7 +281,7 @@ public class EventNode implements INode<EventNode> {
 				transition.setTimeDelta(delta);
 			}
 		}
-		updateTransitionProbabilities();
+		probabilitiesStale = true;
 		// Set the count on the newly added transition.
 		transition.setCount(1);
 	}
@@ -289,8 +296,15 @@ public class EventNode implements INode<EventNode> {
 		return event;
 	}
 
-	public Set<String> getNodeRelations() {
-		return transitionsWithRelation.keySet();
+	/**
+	 * Adds the relations of the transitions from this node to relations, in
+	 * the order in which the transitions were added. The node does not keep
+	 * its own set of relations, so callers collect them into theirs.
+	 */
+	public void addNodeRelations(Set<String> relations) {
+		for (Transition<EventNode> t : transitions) {
+			relations.addAll(t.getRelation());
+		}
 	}
 
 	/**
@@ -394,17 +408,20 @@ public class EventNode implements INode<EventNode> {
 	 */
 	@Override
 	public List<? extends ITransition<EventNode>> getWeightedTransitions() {
+		updateTransitionProbabilities();
 		return transitions;
 	}
 
 	@Override
 	public List<Transition<EventNode>> getAllTransitions() {
+		updateTransitionProbabilities();
 		return transitions;
 	}
 
 	@Override
 	public List<? extends ITransition<EventNode>> getTransitionsWithExactRelations(
 			Set<String> relations) {
+		updateTransitionProbabilities();
 		Set<Transition<EventNode>> ret = null;
 		// Iterate through all transitions, adding those to ret that have
 		// exactly the input relations associated with them.
@@ -425,6 +442,7 @@ public class EventNode implements INode<EventNode> {
 	@Override
 	public List<? extends ITransition<EventNode>> getTransitionsWithSubsetRelations(
 			Set<String> relations) {
+		updateTransitionProbabilities();
 		Set<Transition<EventNode>> ret = null;
 		// Iterate through all transitions, adding those to ret that have
 		// exactly a subset of relations associated with them.
@@ -445,13 +463,16 @@ public class EventNode implements INode<EventNode> {
 	@Override
 	public List<? extends ITransition<EventNode>> getTransitionsWithIntersectingRelations(
 			Set<String> relations) {
+		updateTransitionProbabilities();
 		Set<Transition<EventNode>> ret = null;
 		for (String r : relations) {
-			if (transitionsWithRelation.containsKey(r)) {
-				if (ret == null) {
-					ret = new LinkedHashSet<Transition<EventNode>>();
+			for (Transition<EventNode> t : transitions) {
+				if (t.getRelation().contains(r)) {
+					if (ret == null) {
+						ret = new LinkedHashSet<Transition<EventNode>>();
+					}
+					ret.add(t);
 				}
-				ret.addAll(transitionsWithRelation.get(r));
 			}
 		}
 		if (ret == null) {
@@ -1,6 +1,7 @@
 package synoptic.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -31,7 +32,15 @@ import synoptic.util.resource.AbstractResource;
  * view, each partition corresponds to possibly several transitions. The
  * implementation here can only handle state based views where a partition
  * corresponds to a set of transitions that all have the same target (but
- * possibly different sources).
+ * possibly different sources). <br/>
+ * <br/>
+ * Generating the edges means scanning the transitions of every event in the
+ * partition, so each partition keeps an index of the edges that it generated,
+ * along with their counts and time deltas, until they can change. The edges
+ * of a partition change only when its events change, or when the events of a
+ * partition that they target change. So every partition counts the changes to
+ * its events, and the index records the counts of the partition and of the
+ * targets of its edges, and is rebuilt when any of them moved on.
  */
 public class Partition implements INode<Partition> {
     /**
@@ -62,6 +71,117 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /** The number of times that events were added to or removed from this. */
+    private int eventsVersion = 0;
+
+    /** The index of the outgoing edges of this partition, or null. */
+    private TransitionIndex transitionIndex = null;
+
+    /**
+     * The ids of the traces of the events in this partition, as of
+     * traceIDsVersion, or null.
+     */
+    private BitSet traceIDs = null;
+    private int traceIDsVersion;
+
+    /**
+     * The outgoing edges of a partition, as of the given events versions of
+     * the partition and of the targets of the edges.
+     */
+    private static final class TransitionIndex {
+        final int version;
+        /** The edges generated from all event transitions. */
+        final List<TransitionStats> all;
+        /** The events version of the target of each edge in all. */
+        final int[] targetVersions;
+        /**
+         * The relations of all the event transitions, if they are the same,
+         * and null otherwise.
+         */
+        final Set<String> commonRelations;
+        /**
+         * The edges generated from the event transitions with exactly some
+         * relations, by these relations. Only used if the relations of the
+         * event transitions differ.
+         */
+        Map<Set<String>, List<TransitionStats>> byRelations = null;
+        /** The targets of the edges in all, or null if not yet needed. */
+        Set<Partition> successors = null;
+
+        TransitionIndex(int version, List<TransitionStats> all,
+                Set<String> commonRelations) {
+            this.version = version;
+            this.all = all;
+            this.commonRelations = commonRelations;
+            targetVersions = new int[all.size()];
+            for (int i = 0; i < all.size(); i++) {
+                targetVersions[i] = all.get(i).target.eventsVersion;
+            }
+        }
+
+        boolean isCurrent(int currentVersion) {
+            if (version != currentVersion) {
+                return false;
+            }
+            for (int i = 0; i < targetVersions.length; i++) {
+                if (all.get(i).target.eventsVersion != targetVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Summarizes the event transitions from a partition into one target
+     * partition, from which the inter-partition transition is generated.
+     */
+    private static final class TransitionStats {
+        final Partition target;
+        /** The relations of the first event transition to target. */
+        final Set<String> relations;
+        /**
+         * The number of events with a transition to target with the same
+         * relations.
+         */
+        int numSources = 0;
+        /** The time deltas of the event transitions, or null if none. */
+        List<AbstractResource> deltas = null;
+
+        private EventNode lastSource = null;
+
+        TransitionStats(Partition target, Set<String> relations) {
+            this.target = target;
+            this.relations = relations;
+        }
+
+        void add(EventNode source, ITransition<EventNode> tr,
+                boolean usePerformanceInfo) {
+            // Relation sets are usually interned, so compare references first.
+            Set<String> trRelations = tr.getRelation();
+            if (source != lastSource
+                    && (trRelations == relations || trRelations
+                            .equals(relations))) {
+                numSources++;
+                lastSource = source;
+            }
+            if (!usePerformanceInfo) {
+                return;
+            }
+            AbstractResource srcTime = source.getTime();
+            AbstractResource targetTime = tr.getTarget().getTime();
+            if (targetTime != null && srcTime != null) {
+                AbstractResource d = targetTime.computeDelta(srcTime);
+                if (d != null) {
+                    if (deltas == null) {
+                        deltas = new ArrayList<AbstractResource>();
+                    }
+                    deltas.add(d);
+                }
+            }
+        }
+    }
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -102,9 +222,10 @@ public class Partition implements INode<Partition> {
             initialize(eNodes.iterator().next());
         }
 
+        eventsVersion++;
         events.addAll(eNodes);
         for (final EventNode e : eNodes) {
-            e.setParent(this);
+            adopt(e);
             // A Partition is allowed to contain only EventNode instances of the
             // same event type.
             assert eType.equals(e.getEType());
@@ -123,10 +244,23 @@ public class Partition implements INode<Partition> {
         } else {
             assert eType.equals(eNode.getEType());
         }
-        eNode.setParent(this);
+        eventsVersion++;
+        adopt(eNode);
         events.add(eNode);
     }
 
+    /**
+     * Makes this partition the parent of eNode, which changes the events of
+     * its previous parent as well.
+     */
+    private void adopt(EventNode eNode) {
+        Partition prevParent = eNode.getParent();
+        if (prevParent != null && prevParent != this) {
+            prevParent.eventsVersion++;
+        }
+        eNode.setParent(this);
+    }
+
     /**
      * Returns the set of event nodes contained in this partition.
      */
@@ -134,6 +268,23 @@ public class Partition implements INode<Partition> {
         return events;
     }
 
+    /**
+     * Returns the ids of the traces that the events in this partition belong
+     * to. The returned set is kept until the events of this partition change,
+     * and must not be modified.
+     */
+    public BitSet getTraceIDs() {
+        if (traceIDs == null || traceIDsVersion != eventsVersion) {
+            BitSet ids = new BitSet();
+            for (EventNode e : events) {
+                ids.set(e.getTraceID());
+            }
+            traceIDs = ids;
+            traceIDsVersion = eventsVersion;
+        }
+        return traceIDs;
+    }
+
     /**
      * Removes a set of event nodes. NOTE: this method cannot be used to remove
      * all the messages in the partition. For this, use the removeAllMessages()
@@ -142,6 +293,7 @@ public class Partition implements INode<Partition> {
      * @param eventNodes
      */
     public void removeEventNodes(Set<EventNode> eventNodes) {
+        eventsVersion++;
         events.removeAll(eventNodes);
         assert events.size() > 0;
     }
@@ -150,6 +302,7 @@ public class Partition implements INode<Partition> {
      * Removes all the event nodes from this partition.
      */
     public void removeAllEventNodes() {
+        eventsVersion++;
         events.clear();
         initialized = false;
     }
@@ -371,15 +524,13 @@ public class Partition implements INode<Partition> {
         } else {
             // Non-INITIAL partition case.
 
+            // The transitions were generated in the order of the kept
+            // stats, which count the events that fulfill each of them.
             int totalAtSource = events.size();
-            for (ITransition<Partition> tr : transitions) {
-                int numOutgoing = 0;
-                for (final EventNode event : events) {
-                    if (fulfillsStrong(event, tr)) {
-                        numOutgoing += 1;
-                    }
-                }
-
+            List<TransitionStats> stats = getTransitionStats(null);
+            for (int i = 0; i < stats.size(); i++) {
+                ITransition<Partition> tr = transitions.get(i);
+                int numOutgoing = stats.get(i).numSources;
                 double probability = (double) numOutgoing
                         / (double) totalAtSource;
 
@@ -500,6 +651,136 @@ public class Partition implements INode<Partition> {
         return allDeltas;
     }
 
+    /**
+     * Returns the index of the outgoing edges of this partition, rebuilding it
+     * if the events of this partition or of the targets of its edges changed
+     * since it was built.
+     */
+    private TransitionIndex getTransitionIndex() {
+        if (transitionIndex != null && transitionIndex.isCurrent(eventsVersion)) {
+            return transitionIndex;
+        }
+
+        Set<String> commonRelations = null;
+        boolean sameRelations = true;
+        for (EventNode e : events) {
+            for (ITransition<EventNode> tr : e.getAllTransitions()) {
+                Set<String> relations = tr.getRelation();
+                if (commonRelations == null) {
+                    commonRelations = relations;
+                } else if (relations != commonRelations
+                        && !relations.equals(commonRelations)) {
+                    sameRelations = false;
+                }
+            }
+        }
+        transitionIndex = new TransitionIndex(eventsVersion,
+                newTransitionStats(null), sameRelations ? commonRelations
+                        : null);
+        return transitionIndex;
+    }
+
+    /**
+     * Summarizes the event transitions with exactly the given relations, or
+     * all event transitions if relations is null, by target partition.
+     */
+    private List<TransitionStats> newTransitionStats(Set<String> relations) {
+        boolean usePerformanceInfo = AbstractMain.getInstance().options.usePerformanceInfo;
+        Map<Partition, TransitionStats> statsByTarget = new LinkedHashMap<Partition, TransitionStats>();
+        for (EventNode e : events) {
+            List<? extends ITransition<EventNode>> eTransitions;
+            if (relations == null) {
+                eTransitions = e.getAllTransitions();
+            } else {
+                eTransitions = e.getTransitionsWithExactRelations(relations);
+            }
+            for (ITransition<EventNode> tr : eTransitions) {
+                Partition childP = tr.getTarget().getParent();
+                TransitionStats s = statsByTarget.get(childP);
+                if (s == null) {
+                    s = new TransitionStats(childP, tr.getRelation());
+                    statsByTarget.put(childP, s);
+                }
+                s.add(e, tr, usePerformanceInfo);
+            }
+        }
+
+        List<TransitionStats> stats = new ArrayList<TransitionStats>(
+                statsByTarget.values());
+        for (TransitionStats s : stats) {
+            s.lastSource = null;
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the summaries of the outgoing edges of this partition that are
+     * generated from the event transitions with exactly the given relations,
+     * or from all event transitions if relations is null.
+     */
+    private List<TransitionStats> getTransitionStats(Set<String> relations) {
+        TransitionIndex index = getTransitionIndex();
+        if (relations == null || index.all.isEmpty()) {
+            return index.all;
+        }
+        if (index.commonRelations != null) {
+            // All the event transitions have the same relations, so they
+            // either all have the given relations, or none of them does.
+            if (index.commonRelations.equals(relations)) {
+                return index.all;
+            }
+            return Collections.emptyList();
+        }
+
+        relations = Transition.internRelations(relations);
+        if (index.byRelations == null) {
+            index.byRelations = new HashMap<Set<String>, List<TransitionStats>>();
+        }
+        List<TransitionStats> stats = index.byRelations.get(relations);
+        if (stats == null) {
+            stats = newTransitionStats(relations);
+            index.byRelations.put(relations, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Generates the inter-partition transitions summarized by stats. The
+     * transitions are new instances, which callers are free to label.
+     */
+    private List<Transition<Partition>> newTransitions(
+            List<TransitionStats> stats) {
+        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
+                stats.size());
+        for (TransitionStats s : stats) {
+            Transition<Partition> tx = new Transition<Partition>(this,
+                    s.target, s.relations);
+            if (s.deltas != null) {
+                for (AbstractResource d : s.deltas) {
+                    tx.addTimeDeltaToSeries(d);
+                }
+            }
+            ret.add(tx);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the targets of the outgoing transitions of this partition. The
+     * returned set is kept, and must not be modified.
+     */
+    Set<Partition> getSuccessors() {
+        TransitionIndex index = getTransitionIndex();
+        if (index.successors == null) {
+            Set<Partition> succs = new LinkedHashSet<Partition>();
+            for (TransitionStats s : index.all) {
+                succs.add(s.target);
+            }
+            index.successors = Collections.unmodifiableSet(succs);
+        }
+        return index.successors;
+    }
+
     private static void updateTransitionDeltas(EventNode srcENode,
             EventNode targetENode, ITransition<Partition> tx) {
         if (!AbstractMain.getInstance().options.usePerformanceInfo) {
@@ -515,81 +796,18 @@ public class Partition implements INode<Partition> {
 
     @Override
     public List<? extends ITransition<Partition>> getAllTransitions() {
-        // TODO: implement a transition cache optimization.
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
-
-        for (EventNode e : events) {
-            for (ITransition<EventNode> tr : e.getAllTransitions()) {
-                Partition childP = tr.getTarget().getParent();
-                Transition<Partition> tx;
-
-                // Create the transition if it doesn't exist, or retrieve it if
-                // it does
-                if (transitions.containsKey(childP)) {
-                    tx = transitions.get(childP);
-                } else {
-                    tx = new Transition<Partition>(this, childP,
-                            tr.getRelation());
-                    transitions.put(childP, tx);
-                }
-
-                // TODO: calling updateTransitionDeltas() is a fragile kind of
-                // initialization -- we have to remember to call this method
-                // whenever creating a new ITransition<Partition> instance.
-                // Refactor this into a new kind of Transition constructor? Or a
-                // helper method.
-                updateTransitionDeltas(e, tr.getTarget(), tx);
-            }
-        }
-
-        // Return final list of transitions
-        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
-                transitions.values());
-        return ret;
+        return newTransitions(getTransitionStats(null));
     }
 
     @Override
     public Set<Partition> getAllSuccessors() {
-        Set<Partition> successors = new LinkedHashSet<Partition>();
-        for (EventNode e : events) {
-            for (EventNode eSucc : e.getAllSuccessors()) {
-                successors.add(eSucc.getParent());
-            }
-        }
-        return successors;
+        return new LinkedHashSet<Partition>(getSuccessors());
     }
 
-    // TODO: this code is very similar to getAllTransitions(), refactor it.
     @Override
     public List<? extends ITransition<Partition>> getTransitionsWithExactRelations(
             Set<String> relations) {
-
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
-
-        for (EventNode e : events) {
-            for (ITransition<EventNode> tr : e
-                    .getTransitionsWithExactRelations(relations)) {
-                Partition childP = tr.getTarget().getParent();
-                Transition<Partition> tx;
-
-                // Create the transition if it doesn't exist, or retrieve it if
-                // it does
-                if (transitions.containsKey(childP)) {
-                    tx = transitions.get(childP);
-                } else {
-                    tx = new Transition<Partition>(this, childP,
-                            tr.getRelation());
-                    transitions.put(childP, tx);
-                }
-
-                updateTransitionDeltas(e, tr.getTarget(), tx);
-            }
-        }
-
-        // Return final list of transitions
-        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
-                transitions.values());
-        return ret;
+        return newTransitions(getTransitionStats(relations));
     }
 
     @Override
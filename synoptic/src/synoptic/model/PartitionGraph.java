@@ -1,17 +1,16 @@
 package synoptic.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -59,15 +58,18 @@ public class PartitionGraph implements IGraph<Partition> {
     /** Holds all relations known to exist in this graph. */
     private final Set<String> relations = new LinkedHashSet<String>();
 
-    /** A cache of inter-partition transitions. */
-    private final LinkedHashMap<Partition, Set<Partition>> transitionCache = new LinkedHashMap<Partition, Set<Partition>>();
-
     /** An ordered list of all partition splits applied to the graph so far. */
     private final LinkedList<PartitionMultiSplit> appliedSplits = new LinkedList<PartitionMultiSplit>();
 
     /** Initial trace graph. */
     private ChainsTraceGraph traceGraph;
 
+    /**
+     * The events of every trace in the initial trace graph, in order and up to
+     * the terminal event, by trace id. Built when first needed.
+     */
+    private Map<Integer, EventNode[]> traceEvents = null;
+
     // /////////////////////////////////////////////////////////////////////////
     // This part is for the purpose of test generation.
     /**
@@ -153,21 +155,16 @@ public class PartitionGraph implements IGraph<Partition> {
     }
 
     /**
-     * Returns a set of partitions that are adjacent to pNode. Uses the internal
-     * transitionCache for speed.
+     * Returns a set of partitions that are adjacent to pNode. The set is the
+     * one that pNode keeps along with its transitions, so it is not rebuilt on
+     * every call, and must not be modified.
      * 
      * @param pNode
      * @return set of adjacent partitions to pNode
      */
     @Override
     public Set<Partition> getAdjacentNodes(Partition pNode) {
-        if (transitionCache.containsKey(pNode)) {
-            return transitionCache.get(pNode);
-        }
-
-        Set<Partition> adjPartitions = pNode.getAllSuccessors();
-        transitionCache.put(pNode, adjPartitions);
-        return adjPartitions;
+        return pNode.getSuccessors();
     }
 
     /**
@@ -194,8 +191,6 @@ public class PartitionGraph implements IGraph<Partition> {
         for (Set<EventNode> eNodes : prepartitions.values()) {
             partitions.add(new Partition(eNodes));
         }
-
-        transitionCache.clear();
     }
 
     private void partitionByIndexSetsAndLabels(Collection<EventNode> events,
@@ -306,7 +301,6 @@ public class PartitionGraph implements IGraph<Partition> {
             partitions.add(partition);
             seenENodes.add(e);
         }
-        transitionCache.clear();
     }
 
     @Override
@@ -362,39 +356,9 @@ public class PartitionGraph implements IGraph<Partition> {
     @Override
     public void add(Partition node) {
         for (EventNode m : node.getEventNodes()) {
-            relations.addAll(m.getNodeRelations());
+            m.addNodeRelations(relations);
         }
         partitions.add(node);
-
-        clearNodeAdjacentsCache(node);
-    }
-
-    public void mergeAdjacentsCache(Partition from, Partition to) {
-        for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
-                .entrySet().iterator(); pIter.hasNext();) {
-            Set<Partition> parts = pIter.next().getValue();
-            if (parts.contains(from)) {
-                parts.remove(from);
-                parts.add(to);
-            }
-        }
-    }
-
-    public void clearNodeAdjacentsCache(Partition node) {
-        transitionCache.remove(node);
-        // System.out.println("Cache size: " + transitionCache.size());
-        for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
-                .entrySet().iterator(); pIter.hasNext();) {
-            if (pIter.next().getValue().contains(node)) {
-                // System.out.println("cache rm");
-                pIter.remove();
-            }
-        }
-        // System.out.println("Cache' size: " + transitionCache.size());
-    }
-
-    public void removeFromCache(Partition node) {
-        transitionCache.remove(node);
     }
 
     public void removePartition(Partition node) {
@@ -557,52 +521,76 @@ public class PartitionGraph implements IGraph<Partition> {
                     "Expected a non-null and non-empty set of partition nodes.");
         }
 
-        // The list of trace IDs that go through the selected partitions.
-        List<Set<Integer>> traceIDs = new ArrayList<Set<Integer>>();
-
-        // Loop over all the partitions, and collect the trace IDs of the events
-        // in the partitions into a list.
+        // Intersect the trace IDs of the (non-empty) selected partitions, to
+        // keep only the traces that go through all of them.
+        BitSet intersectionOfIDs = null;
         for (INode<Partition> p : parts) {
-            // Temporary trace IDs to be added to the overall list.
-            Set<Integer> tempIDs = new HashSet<Integer>();
-            for (EventNode e : ((Partition) p).getEventNodes()) {
-                tempIDs.add(e.getTraceID());
+            BitSet ids = ((Partition) p).getTraceIDs();
+            if (ids.isEmpty()) {
+                continue;
             }
-
-            if (!tempIDs.isEmpty()) {
-                traceIDs.add(tempIDs);
+            if (intersectionOfIDs == null) {
+                intersectionOfIDs = (BitSet) ids.clone();
+            } else {
+                intersectionOfIDs.and(ids);
             }
         }
 
-        if (traceIDs.isEmpty()) {
-            return Collections.emptyMap();
-        }
-
-        // Filter through all of the IDs and keep only
-        // the ones that intersect with the selected nodes.
-        Set<Integer> intersectionOfIDs = traceIDs.get(0);
-        for (int i = 1; i < traceIDs.size(); i++) {
-            intersectionOfIDs.retainAll(traceIDs.get(i));
-        }
-
         // If there are no traces through the selected partitions.
-        if (intersectionOfIDs.isEmpty()) {
+        if (intersectionOfIDs == null || intersectionOfIDs.isEmpty()) {
             return Collections.emptyMap();
         }
 
         final Map<Integer, List<Partition>> paths = new HashMap<Integer, List<Partition>>();
 
-        // For each initial event, add the entire trace that it belongs to.
-        for (EventNode initE : dummyInitialNode.getAllSuccessors()) {
-            int traceID = initE.getTraceID();
-            if (intersectionOfIDs.contains(traceID)) {
-                paths.put(traceID, getInitialLogTraceFromEventNode(initE));
+        // Map the events of each of these traces to their current partitions.
+        Map<Integer, EventNode[]> traces = getTraceEvents();
+        for (int traceID = intersectionOfIDs.nextSetBit(0); traceID >= 0; traceID = intersectionOfIDs
+                .nextSetBit(traceID + 1)) {
+            EventNode[] trace = traces.get(traceID);
+            if (trace == null) {
+                continue;
+            }
+            List<Partition> path = new ArrayList<Partition>(trace.length + 1);
+            path.add(dummyInitialNode.getParent());
+            for (EventNode e : trace) {
+                path.add(e.getParent());
             }
+            paths.put(traceID, path);
         }
 
         return paths;
     }
 
+    /**
+     * Returns the events of every trace, in order and up to the terminal
+     * event, by trace id. Assumes a totally ordered log, like
+     * getInitialLogTraceFromEventNode. The traces do not change as the graph
+     * is refined or coarsened, so they are collected only once.
+     */
+    private Map<Integer, EventNode[]> getTraceEvents() {
+        if (traceEvents == null) {
+            Map<Integer, EventNode[]> traces = new HashMap<Integer, EventNode[]>();
+            List<EventNode> trace = new ArrayList<EventNode>();
+            for (EventNode initE : dummyInitialNode.getAllSuccessors()) {
+                EventNode currentEvent = initE;
+                while (!currentEvent.isTerminal()) {
+                    trace.add(currentEvent);
+                    // All the transitions of an event in a totally ordered
+                    // trace lead to the next event.
+                    currentEvent = currentEvent.getAllTransitions().get(0)
+                            .getTarget();
+                }
+                trace.add(currentEvent);
+                traces.put(initE.getTraceID(),
+                        trace.toArray(new EventNode[trace.size()]));
+                trace.clear();
+            }
+            traceEvents = traces;
+        }
+        return traceEvents;
+    }
+
     /**
      * Returns a reference to a partition node based on the ID of the node
      * passed. If the node is not found within the graph, null is returned.
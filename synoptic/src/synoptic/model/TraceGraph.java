@@ -89,7 +89,7 @@ public abstract class TraceGraph<EType extends EventType> implements
         }
         cachedRelations = new LinkedHashSet<String>();
         for (EventNode node : nodes) {
-            cachedRelations.addAll(node.getNodeRelations());
+            node.addNodeRelations(cachedRelations);
         }
         return cachedRelations;
     }
@@ -117,6 +117,21 @@ public abstract class TraceGraph<EType extends EventType> implements
         return getTransitiveClosure(relations);
     }
 
+    /**
+     * Returns the transitive closure of just the trace with id traceId. Traces
+     * are disconnected from each other, so the transitive closure of the whole
+     * graph is the union of the closures of its traces, and computing them one
+     * trace at a time only ever keeps one trace's closure around.
+     */
+    public abstract TransitiveClosure getTransitiveClosure(int traceId,
+            Set<String> relations);
+
+    public TransitiveClosure getTransitiveClosure(int traceId, String relation) {
+        Set<String> relations = new LinkedHashSet<String>();
+        relations.add(relation);
+        return getTransitiveClosure(traceId, relations);
+    }
+
     public abstract int getNumTraces();
 
     public void tagTerminal(EventNode terminalNode, String relation) {
@@ -1,7 +1,12 @@
 package synoptic.model;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
@@ -25,6 +30,58 @@ public class Transition<NodeType extends INode<NodeType>> implements ITransition
     // RelationsSet maintained by labels[RELATIONS_LABEL].
     protected Set<String> relations;
 
+    /**
+     * The canonical unmodifiable relation sets, each mapped to itself. A log
+     * has only a handful of distinct relation sets, so transitions share these
+     * sets instead of each keeping a set of its own. The sets are only weakly
+     * referenced, so they are freed along with the last transition that uses
+     * them.
+     */
+    private static final Map<Set<String>, WeakReference<Set<String>>> internedRelations = new WeakHashMap<Set<String>, WeakReference<Set<String>>>();
+
+    /**
+     * Returns the canonical unmodifiable set with the same relations as
+     * relations, in the same order. If the canonical set has these relations
+     * in a different order, returns a new unmodifiable set instead.
+     */
+    public static Set<String> internRelations(Set<String> relations) {
+        synchronized (internedRelations) {
+            WeakReference<Set<String>> ref = internedRelations.get(relations);
+            Set<String> interned = (ref == null) ? null : ref.get();
+            if (interned == null) {
+                interned = Collections
+                        .unmodifiableSet(new LinkedHashSet<String>(relations));
+                internedRelations.put(interned, new WeakReference<Set<String>>(
+                        interned));
+            } else if (!sameOrder(interned, relations)) {
+                interned = Collections
+                        .unmodifiableSet(new LinkedHashSet<String>(relations));
+            }
+            return interned;
+        }
+    }
+
+    /**
+     * Whether the equal sets s1 and s2 iterate over their elements in the same
+     * order.
+     */
+    private static boolean sameOrder(Set<String> s1, Set<String> s2) {
+        Iterator<String> it = s2.iterator();
+        for (String s : s1) {
+            if (!s.equals(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the canonical unmodifiable set that contains just relation.
+     */
+    public static Set<String> internRelations(String relation) {
+        return internRelations(Collections.singleton(relation));
+    }
+
     private Transition(NodeType source, NodeType target) {
         assert source != null;
         assert target != null;
@@ -65,8 +122,7 @@ public class Transition<NodeType extends INode<NodeType>> implements ITransition
      */
     public Transition(NodeType source, NodeType target, String relation) {
         this(source, target);
-        this.relations = new LinkedHashSet<String>();
-        this.relations.add(relation);
+        this.relations = internRelations(relation);
     }
 
     // //////////////////////////////////////////////////////////////////////
@@ -1,8 +1,5 @@
 package synoptic.model;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 import daikonizer.DaikonInvariants;
 
 import synoptic.util.resource.AbstractResource;
@@ -10,14 +7,24 @@ import synoptic.util.resource.ResourceSeries;
 
 /**
  * Maintains a map of labels that are associated with some transition. The types
- * of these labels are dictated by the enum TransitionLabelType.
+ * of these labels are dictated by the enum TransitionLabelType. There is a
+ * transition for every pair of consecutive events in the log, so the labels
+ * are kept in an array indexed by the ordinal of their type, which takes a
+ * fraction of the space of a general-purpose map.
  */
 public class TransitionLabelsMap implements Comparable<TransitionLabelsMap> {
 
-    protected final Map<TransitionLabelType, Object> labels;
+    private static final TransitionLabelType[] labelTypes = TransitionLabelType
+            .values();
+
+    /** The label of each type, by the ordinal of the type, or null. */
+    protected final Object[] labels;
+
+    /** The number of labels that are set. */
+    private int size = 0;
 
     public TransitionLabelsMap() {
-        labels = new LinkedHashMap<TransitionLabelType, Object>();
+        labels = new Object[labelTypes.length];
     }
 
     /**
@@ -25,10 +32,7 @@ public class TransitionLabelsMap implements Comparable<TransitionLabelsMap> {
      * returns null.
      */
     private Object getLabel(TransitionLabelType t) {
-        if (!(labels.containsKey(t))) {
-            return null;
-        }
-        return labels.get(t);
+        return labels[t.ordinal()];
     }
 
     /**
@@ -46,7 +50,10 @@ public class TransitionLabelsMap implements Comparable<TransitionLabelsMap> {
                             + t.toString() + ". Expected: " + t.cls.getName()
                             + ", Got: " + label.getClass().getName());
         }
-        labels.put(t, label);
+        if (labels[t.ordinal()] == null) {
+            size++;
+        }
+        labels[t.ordinal()] = label;
     }
 
     /**
@@ -130,7 +137,7 @@ public class TransitionLabelsMap implements Comparable<TransitionLabelsMap> {
     public int compareTo(TransitionLabelsMap o) {
         int cmp;
 
-        cmp = ((Integer) labels.size()).compareTo(o.labels.size());
+        cmp = ((Integer) size).compareTo(o.size);
         if (cmp != 0) {
             return cmp;
         }
@@ -1,5 +1,6 @@
 package synoptic.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -46,6 +47,9 @@ public class TransitiveRelationPath implements IRelationPath {
      * Event.defaultTimeRelationString, or "t"
      */
     private final String orderingRelation = Event.defTimeRelationStr;
+    /** The nodes of this path, in path order, or null if not yet walked. */
+    private List<EventNode> nodes = null;
+
     /**
      * Caching indicator -- whether or not the various counts have already been
      * computed.
@@ -106,17 +110,15 @@ public class TransitiveRelationPath implements IRelationPath {
 
     /**
      * Assumes tracegraph is already constructed. Walks over the tracegraph that
-     * eNode is part of to populate seen, eventcounts, followedByCounts, and
-     * precedesCounts. Throws an error if a node has multiple transitions for a
-     * single relation (i.e., not a totally ordered relation path).
+     * eNode is part of to collect the nodes of this relation path. Throws an
+     * error if a node has multiple transitions for a single relation (i.e., not
+     * a totally ordered relation path).
      */
-    private void count() {
-        if (counted) {
+    private void walk() {
+        if (nodes != null) {
             return;
         }
-
-        // Used for IntrBy, which needs to record order
-        LinkedList<EventType> history = new LinkedList<EventType>();
+        nodes = new ArrayList<EventNode>();
 
         Set<String> orderingRelationSet = new HashSet<String>();
         orderingRelationSet.add(orderingRelation);
@@ -185,6 +187,45 @@ public class TransitiveRelationPath implements IRelationPath {
 
             hasImmediateIncomingRelation = hasImmediateOutgoingRelation;
 
+            nodes.add(curNode);
+
+            // Move on to the next node in the trace.
+            List<? extends ITransition<EventNode>> searchTransitions = curNode
+                    .getTransitionsWithExactRelations(relationSet);
+
+            if (searchTransitions.isEmpty()) {
+                searchTransitions = curNode
+                        .getTransitionsWithIntersectingRelations(orderingRelationSet);
+            }
+
+            if (curNode.equals(eFinal)) {
+                break;
+            }
+
+            curNode = searchTransitions.get(0).getTarget();
+
+            transitions = curNode.getTransitionsWithExactRelations(relationSet);
+
+            if (transitions.isEmpty()) {
+                transitions = curNode
+                        .getTransitionsWithIntersectingRelations(orderingRelationSet);
+            }
+        }
+    }
+
+    /**
+     * Computes seen, eventCounts, followedByCounts, precedesCounts and
+     * possibleInterrupts from the nodes of this relation path.
+     */
+    private void count() {
+        if (counted) {
+            return;
+        }
+
+        // Used for IntrBy, which needs to record order
+        LinkedList<EventType> history = new LinkedList<EventType>();
+
+        for (EventNode curNode : getNodes()) {
             // The current event is 'b', and all prior events are 'a' --
             // this notation indicates that an 'a' always occur prior to a
             // 'b' in the path.
@@ -263,28 +304,6 @@ public class TransitiveRelationPath implements IRelationPath {
             } else {
                 eventCounts.put(b, eventCounts.get(b) + 1);
             }
-
-            // Move on to the next node in the trace.
-            List<? extends ITransition<EventNode>> searchTransitions = curNode
-                    .getTransitionsWithExactRelations(relationSet);
-
-            if (searchTransitions.isEmpty()) {
-                searchTransitions = curNode
-                        .getTransitionsWithIntersectingRelations(orderingRelationSet);
-            }
-
-            if (curNode.equals(eFinal)) {
-                break;
-            }
-
-            curNode = searchTransitions.get(0).getTarget();
-
-            transitions = curNode.getTransitionsWithExactRelations(relationSet);
-
-            if (transitions.isEmpty()) {
-                transitions = curNode
-                        .getTransitionsWithIntersectingRelations(orderingRelationSet);
-            }
         }
 
         counted = true;
@@ -334,6 +353,15 @@ public class TransitiveRelationPath implements IRelationPath {
         return Collections.unmodifiableMap(possibleInterrupts);
     }
 
+    /**
+     * Returns the nodes of this path, in path order.
+     */
+    @Override
+    public List<EventNode> getNodes() {
+        walk();
+        return Collections.unmodifiableList(nodes);
+    }
+
     @Override
     public EventNode getFirstNode() {
         return this.eNode;
@@ -1,5 +1,6 @@
 package synoptic.model.channelid;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -20,7 +21,9 @@ import java.util.regex.Pattern;
  * records the two processes that use the channel and an optional name for the
  * channel.
  */
-public class ChannelId {
+public class ChannelId implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private static Logger logger = Logger.getLogger("ChannelId");
 
     // Sender pid.
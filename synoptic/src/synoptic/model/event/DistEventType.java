@@ -9,9 +9,16 @@ import synoptic.model.channelid.ChannelId;
  * a unique string, that is also associated with an abstract "process" via some
  * identifier. The process name doesn't have to be a physical process id. For
  * example, it could also be interpreted as a role that a host performs in the
- * system (e.g. replica role id, or a string like "client").
+ * system (e.g. replica role id, or a string like "client"). <br/>
+ * <br/>
+ * Unlike StringEventTypes, DistEventTypes are not interned: the parser sets
+ * the process name of each event's type from its vector time, and CSight
+ * interprets each one in place (see interpretEType), so every event has its
+ * own instance and equals() compares their fields.
  */
 public class DistEventType extends EventType implements IDistEventType {
+    private static final long serialVersionUID = 1L;
+
     // The string representation of the event type (e.g., "send").
     private String eType;
 
@@ -37,9 +37,9 @@ public class Event {
     private AbstractResource time;
 
     /**
-     * The resources associated with this event
+     * The resources associated with this event, or null if there are none.
      */
-    private final HashMap<String, AbstractResource> resources;
+    private HashMap<String, AbstractResource> resources = null;
 
     /**
      * The complete log line corresponding to this event.
@@ -72,7 +72,6 @@ public class Event {
         this.logLine = logLine;
         this.fileName = fileName;
         this.lineNum = lineNum;
-        this.resources = new HashMap<String, AbstractResource>();
     }
 
     /**
@@ -217,10 +216,16 @@ public class Event {
     }
 
     public AbstractResource getResource(String type) {
+        if (resources == null) {
+            return null;
+        }
         return resources.get(time);
     }
 
     public void addResource(String type, AbstractResource res) {
+        if (resources == null) {
+            resources = new HashMap<String, AbstractResource>();
+        }
         resources.put(type, res);
     }
 
@@ -1,5 +1,7 @@
 package synoptic.model.event;
 
+import java.io.Serializable;
+
 /**
  * A class to encapsulate the abstract notion of an event type. This depends on
  * whether we're dealing with totally ordered or partially ordered logs. As
@@ -7,7 +9,10 @@ package synoptic.model.event;
  * fundamentally different from other event types, so this class differentiates
  * between these.
  */
-public abstract class EventType implements Comparable<EventType> {
+public abstract class EventType implements Comparable<EventType>,
+        Serializable {
+    private static final long serialVersionUID = 1L;
+
     /**
      * The label used to distinguish the dummy initial node -- constructed to
      * transition to all initial trace log events.
@@ -1,19 +1,67 @@
 package synoptic.model.event;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Implements an EventType for a totally ordered log. In this case an event type
- * is essentially a unique string.
+ * is essentially a unique string. <br/>
+ * <br/>
+ * When parsing a totally ordered log, the parser obtains event types from its
+ * {@link Registry}, so that all events of a type share a single canonical
+ * instance. The canonical instances of a registry are unique per label, so
+ * equals() compares two of them by identity, instead of comparing their
+ * labels. Partially ordered logs do not benefit from this, see DistEventType.
  */
 public class StringEventType extends EventType {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The canonical StringEventTypes of a single parse, one per label. Each
+     * TraceParser owns a registry, so the canonical instances are freed along
+     * with the parser and the events that it parsed.
+     */
+    public static final class Registry {
+        private final ConcurrentMap<String, StringEventType> eTypes = new ConcurrentHashMap<String, StringEventType>();
+
+        /**
+         * Returns the canonical non-INITIAL and non-TERMINAL StringEventType
+         * of this registry with the given label.
+         */
+        public StringEventType intern(String type) {
+            StringEventType eType = eTypes.get(type);
+            if (eType == null) {
+                eType = new StringEventType(type, false, false, this);
+                StringEventType prev = eTypes.putIfAbsent(type, eType);
+                if (prev != null) {
+                    eType = prev;
+                }
+            }
+            return eType;
+        }
+    }
+
     private final String eType;
 
+    /**
+     * The registry of a canonical instance, or null if this instance is not
+     * one. Deserialized instances are never canonical.
+     */
+    private final transient Registry registry;
+
     /**
      * Most expressive constructor that is used internally.
      */
     private StringEventType(String type, boolean isInitialEventType,
-            boolean isTerminalEventType) {
+            boolean isTerminalEventType, Registry registry) {
         super(isInitialEventType, isTerminalEventType);
         eType = type;
+        this.registry = registry;
+    }
+
+    private StringEventType(String type, boolean isInitialEventType,
+            boolean isTerminalEventType) {
+        this(type, isInitialEventType, isTerminalEventType, null);
     }
 
     /**
@@ -55,6 +103,14 @@ public class StringEventType extends EventType {
 
     @Override
     public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (registry != null && other instanceof StringEventType
+                && ((StringEventType) other).registry == registry) {
+            // Distinct canonical instances of a registry have distinct labels.
+            return false;
+        }
         if (!super.equals(other)) {
             return false;
         }
@@ -10,12 +10,13 @@ package synoptic.model.export;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -79,13 +80,26 @@ public class GraphExporter {
      *            dot file filename
      */
     public static void generatePngFileFromDotFile(String fileName) {
-        File dotFile = new File(fileName);
-
         String dotCommand = getDotCommand();
         if (dotCommand == null) {
             // could not locate a dot executable
             return;
         }
+        generatePngFileFromDotFile(fileName, dotCommand);
+    }
+
+    /**
+     * Converts a dot file as a png image file using the dot executable
+     * dotCommand. The png file will be created in the same place as the dot
+     * file.
+     * 
+     * @param fileName
+     *            dot file filename
+     * @param dotCommand
+     *            the dot command executable
+     */
+    public static void generatePngFileFromDotFile(String fileName, String dotCommand) {
+        File dotFile = new File(fileName);
 
         String imageExt = "png";
 
@@ -115,16 +129,19 @@ public class GraphExporter {
             boolean outputCountLabels) throws IOException {
         File f = new File(fileName);
         logger.info("Exporting graph to: " + fileName);
-        final PrintWriter writer;
+        final Writer writer;
         try {
-            writer = new PrintWriter(f);
+            writer = Files.newBufferedWriter(f.toPath(), Charset.defaultCharset());
         } catch (final IOException e) {
             throw new RuntimeException("Error opening file for graph export: " + e.getMessage(), e);
         }
-        // /////////////
-        exportGraph(writer, graph, outputProbLabels, outputCountLabels);
-        // /////////////
-        writer.close();
+        try {
+            // /////////////
+            exportGraph(writer, graph, outputProbLabels, outputCountLabels);
+            // /////////////
+        } finally {
+            writer.close();
+        }
     }
 
     /**
@@ -132,6 +149,8 @@ public class GraphExporter {
      * writing the resulting string to writer. The export is done canonically --
      * two isomorphic graphs will have equivalent outputs. The generated dot/gml
      * files may then be diff-ed to check if they represent the same graphs.
+     * Nodes and edges are written out as they are visited, so the only state
+     * kept for the whole graph is the sorted list of nodes and their ids.
      * 
      * @param <T>
      *            Graph node type
@@ -157,18 +176,20 @@ public class GraphExporter {
 
             // ////////////////////////// Write out graph body.
 
-            // A mapping between nodes in the graph and the their integer
-            // identifiers in the dot output.
-            LinkedHashMap<T, Integer> nodeToInt = new LinkedHashMap<T, Integer>();
-
-            // A unique identifier used to represent nodes in the exported file.
-            int nodeCnt = 0;
-
             // NOTE: we must create a new collection so that we do not modify
             // the set maintained by the graph!
             List<T> nodes = new ArrayList<T>(graph.getNodes());
             Collections.sort(nodes);
 
+            // A mapping between nodes in the graph and the their integer
+            // identifiers in the dot output. Nodes are compared by identity
+            // (node types do not override equals), which avoids an entry
+            // object per node.
+            IdentityHashMap<T, Integer> nodeToInt = new IdentityHashMap<T, Integer>(nodes.size());
+
+            // A unique identifier used to represent nodes in the exported file.
+            int nodeCnt = 0;
+
             // /////////////////////
             // EXPORT NODES:
             Iterator<T> nodesIter = nodes.iterator();
@@ -220,11 +241,13 @@ public class GraphExporter {
                     // the source or the target node then we skip this
                     // transition. For example, this may occur if the target is
                     // a terminal node and Main.showTerminalNode is false.
-                    if (!nodeToInt.containsKey(trans.getSource()) || !nodeToInt.containsKey(trans.getTarget())) {
+                    Integer srcId = nodeToInt.get(trans.getSource());
+                    Integer dstId = nodeToInt.get(trans.getTarget());
+                    if (srcId == null || dstId == null) {
                         continue;
                     }
-                    int nodeSrc = nodeToInt.get(trans.getSource());
-                    int nodeDst = nodeToInt.get(trans.getTarget());
+                    int nodeSrc = srcId;
+                    int nodeDst = dstId;
                     String s = "";
 
                     // FIXME: special casing to handle PO trace graphs
@@ -1,16 +1,12 @@
 package synoptic.model.export;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import org.json.simple.JSONValue;
 
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -25,16 +21,14 @@ import synoptic.model.interfaces.INode;
 /**
  * Outputs a partition graph as a JSON object. Uses the JSON-simple library,
  * licensed under Apache 2.0 (the same license as Synoptic and its
- * sub-projects), available at https://code.google.com/p/json-simple/.
+ * sub-projects), available at https://code.google.com/p/json-simple/. <br/>
+ * <br/>
+ * The object is streamed to the output as the log, partitions, and invariants
+ * are traversed, so exporting a large model does not need memory for a copy
+ * of it as JSON.
  */
 public class JsonExporter {
 
-    /**
-     * Each event mapped to its relevant JSON information, the trace ID and its
-     * index within the trace
-     */
-    private static Map<EventNode, EventInstance> eventMap = new HashMap<EventNode, EventInstance>();
-
     /**
      * Simple pair of a trace ID and an event index within the trace to uniquely
      * identify a specific event instance/node
@@ -66,55 +60,63 @@ public class JsonExporter {
         assert graph instanceof PartitionGraph;
         PartitionGraph pGraph = (PartitionGraph) graph;
 
-        // EvBasedGraph evGraph = new EvBasedGraph(pGraph);
-        // System.out.println("evGraph:\n" + evGraph);
-
-        Map<String, Object> finalModelMap = new LinkedHashMap<String, Object>();
-
-        // Add log to final model map
-        List<Map<String, Object>> logListOfTraces = makeLogJSON(pGraph);
-        finalModelMap.put("log", logListOfTraces);
-
-        // Add partitions to final model map
-        List<Map<String, Object>> partitionList = makePartitionsJSON(pGraph);
-        finalModelMap.put("partitions", partitionList);
-
-        // Add invariants to final model map
-        List<Map<String, Object>> invariantList = makeInvariantsJSON(pGraph);
-        finalModelMap.put("invariants", invariantList);
-
-        // Output the final model map as a JSON object
+        // Output the model as a JSON object
         try {
-            PrintWriter output = new PrintWriter(baseFilename + ".json");
-            JSONValue.writeJSONString(finalModelMap, output);
-            output.close();
-
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            Writer output = Files.newBufferedWriter(
+                    Paths.get(baseFilename + ".json"), Charset.defaultCharset());
+            try {
+                exportJsonObject(output, pGraph);
+            } finally {
+                output.close();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Creates the 'log' of the JSON object: a list of traces within the log of
+     * Writes the JSON object representation of the partition graph pGraph to
+     * writer.
+     */
+    public static void exportJsonObject(Writer writer, PartitionGraph pGraph)
+            throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(writer);
+        json.beginObject();
+
+        // Write the log, recording where each event is within it
+        Map<EventNode, EventInstance> eventMap = new HashMap<EventNode, EventInstance>();
+        json.name("log");
+        writeLogJSON(json, pGraph, eventMap);
+
+        // Write the partitions
+        json.name("partitions");
+        writePartitionsJSON(json, pGraph, eventMap);
+
+        // Write the invariants
+        json.name("invariants");
+        writeInvariantsJSON(json, pGraph);
+
+        json.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Writes the 'log' of the JSON object: a list of traces within the log of
      * this partition graph
      * 
      * @param pGraph
      *            The partition graph whose log we're outputting
+     * @param eventMap
+     *            Each written event is mapped to its trace ID and its index
+     *            within the trace in this map
      */
-    private static List<Map<String, Object>> makeLogJSON(
-            PartitionGraph pGraph) {
-        // The log (list of traces) to go into the JSON object
-        List<Map<String, Object>> logListOfTraces = new LinkedList<Map<String, Object>>();
-
-        // Get all partitions in the partition graph
-        Set<Partition> allPartitions = pGraph.getNodes();
-
+    private static void writeLogJSON(JsonStreamWriter json,
+            PartitionGraph pGraph, Map<EventNode, EventInstance> eventMap)
+            throws IOException {
         // Get the INITIAL partition, which will be used to retrieve all traces
         // and their events
         Partition initialPart = null;
-        for (Partition part : allPartitions) {
+        for (Partition part : pGraph.getNodes()) {
             if (part.isInitial()) {
                 initialPart = part;
                 break;
@@ -124,39 +126,38 @@ public class JsonExporter {
         // There must have been an INITIAL partition found
         assert initialPart != null;
         if (initialPart == null) {
-            return null;
+            json.value(null);
+            return;
         }
 
-        // Follow all traces and store them in the log list of traces
+        // Follow all traces and write them to the log list of traces
+        json.beginArray();
         int traceID = 0;
         for (EventNode startingEvent : initialPart.getEventNodes().iterator()
                 .next().getAllSuccessors()) {
             // One trace, contains the trace number and a list of events
-            Map<String, Object> singleTraceMap = new LinkedHashMap<String, Object>();
-            // List of events
-            List<Map<String, Object>> singleTraceEventsList = new LinkedList<Map<String, Object>>();
+            json.beginObject();
+            json.name("traceID").value(traceID);
+            json.name("events").beginArray();
 
             int eventIndexWithinTrace = 0;
-            for (EventNode event = startingEvent; !event
-                    .isTerminal(); event = event.getAllSuccessors().iterator()
-                            .next()) {
+            for (EventNode event = startingEvent; !event.isTerminal(); event = event
+                    .getAllTransitions().get(0).getTarget()) {
                 // One event, contains event index, event type, and timestamp
-                Map<String, Object> singleEventMap = new LinkedHashMap<String, Object>();
+                json.beginObject();
 
-                // Populate this event's index within the trace, its type, and
+                // Write this event's index within the trace, its type, and
                 // the line in the log where it was found
-                singleEventMap.put("eventIndex", eventIndexWithinTrace);
+                json.member("eventIndex", eventIndexWithinTrace);
                 EventType evType = event.getEType();
-                singleEventMap.put("eventType", evType.toString());
-                singleEventMap.put("logLine", event.getLineNum());
+                json.member("eventType", evType.toString());
+                json.member("logLine", event.getLineNum());
 
-                // Populate this event's time if it's not INITIAL or TERMINAL
+                // Write this event's time if it's not INITIAL or TERMINAL
                 if (!evType.isSpecialEventType()) {
-                    singleEventMap.put("timestamp", event.getTime());
+                    json.member("timestamp", event.getTime());
                 }
-
-                // Add this event to this trace's list of events
-                singleTraceEventsList.add(singleEventMap);
+                json.endObject();
 
                 // Record this event's event instance information to ease the
                 // creation of the partition part of the JSON later
@@ -164,125 +165,104 @@ public class JsonExporter {
                         new EventInstance(traceID, eventIndexWithinTrace++));
             }
 
-            // Populate the single trace
-            singleTraceMap.put("traceID", traceID++);
-            singleTraceMap.put("events", singleTraceEventsList);
-
-            // Put the trace into the log's list of traces
-            logListOfTraces.add(singleTraceMap);
+            json.endArray();
+            json.endObject();
+            traceID++;
         }
-
-        return logListOfTraces;
+        json.endArray();
     }
 
     /**
-     * Creates the 'partitions' of the JSON object: a list of partitions within
+     * Writes the 'partitions' of the JSON object: a list of partitions within
      * this partition graph
      * 
      * @param pGraph
      *            The partition graph whose partitions we're outputting
+     * @param eventMap
+     *            The trace ID and index within the trace of every event
      */
-    private static List<Map<String, Object>> makePartitionsJSON(
-            PartitionGraph pGraph) {
-        // The list of partitions to go into the JSON object
-        List<Map<String, Object>> partitionsList = new LinkedList<Map<String, Object>>();
-
-        // Get all partitions in the partition graph
-        Set<Partition> allPartitions = pGraph.getNodes();
-
-        PartitionLoop:
-        for (Partition partition : allPartitions) {
-            // One partition, contains event type and list of events
-            Map<String, Object> singlePartitionMap = new LinkedHashMap<String, Object>();
-
-            // This partition's list of events it contains
-            List<Map<String, Object>> singlePartitionEventList = new LinkedList<Map<String, Object>>();
-
-            // Populate this partition's event type
+    private static void writePartitionsJSON(JsonStreamWriter json,
+            PartitionGraph pGraph, Map<EventNode, EventInstance> eventMap)
+            throws IOException {
+        json.beginArray();
+        for (Partition partition : pGraph.getNodes()) {
+            // INITIAL and TERMINAL partitions are not output
             EventType evType = partition.getEType();
-            singlePartitionMap.put("eventType", evType.toString());
+            if (evType.isSpecialEventType()
+                    && !partition.getEventNodes().isEmpty()) {
+                continue;
+            }
 
+            // One partition, contains event type and list of events
+            json.beginObject();
+            json.member("eventType", evType.toString());
+            json.name("events").beginArray();
             for (EventNode event : partition.getEventNodes()) {
-                // One event, contains trace ID and index within the trace
-                Map<String, Object> singleEventMap = new LinkedHashMap<String, Object>();
-
                 // Get the event instance info required to identify this event
                 // within the JSON object
                 EventInstance evInstance = eventMap.get(event);
 
-                if (evType.isSpecialEventType()) {
-                    continue PartitionLoop;
-                }
-
-                // Populate this event's trace ID and index within the trace
-                singleEventMap.put("traceID", evInstance.traceID);
-                singleEventMap.put("eventIndex",
-                        evInstance.eventIndexWithinTrace);
-
-                // Put the event into the partition's list of events
-                singlePartitionEventList.add(singleEventMap);
+                // One event, contains trace ID and index within the trace
+                json.beginObject();
+                json.member("traceID", evInstance.traceID);
+                json.member("eventIndex", evInstance.eventIndexWithinTrace);
+                json.endObject();
             }
-
-            // Store this partition's list of events
-            singlePartitionMap.put("events", singlePartitionEventList);
-
-            // Put the partition into the full list of partitions
-            partitionsList.add(singlePartitionMap);
+            json.endArray();
+            json.endObject();
         }
-
-        return partitionsList;
+        json.endArray();
     }
 
     /**
-     * Creates the 'invariants' of the JSON object: a list of the invariants
+     * Writes the 'invariants' of the JSON object: a list of the invariants
      * used to construct the partition graph
      * 
      * @param pGraph
      *            The partition graph made using the invariants we're outputting
      */
-    private static List<Map<String, Object>> makeInvariantsJSON(
-            PartitionGraph pGraph) {
-        // The list of invariants to go into the JSON object
-        List<Map<String, Object>> invariantsList = new LinkedList<Map<String, Object>>();
-
+    private static void writeInvariantsJSON(JsonStreamWriter json,
+            PartitionGraph pGraph) throws IOException {
         // Get all invariants in the partition graph
         TemporalInvariantSet allInvariants = pGraph.getInvariants();
 
+        json.beginArray();
         for (ITemporalInvariant inv : allInvariants) {
             // One invariant, contains type, predicates, constraint, and bounds
-            Map<String, Object> singleInvariantMap = new LinkedHashMap<String, Object>();
-
-            // Store the invariant type
-            singleInvariantMap.put("invariantType", inv.getLongName());
-
-            // Get invariant predicates
-            List<String> predicateList = new LinkedList<String>();
+            json.beginObject();
+
+            // Write the invariant type
+            json.member("invariantType", inv.getLongName());
+
+            // Write the invariant predicates. In the case where both
+            // predicates are identical [i.e., only one object in the predicate
+            // set returned by ITemporalInvariant.getPredicates()], the
+            // predicate is written twice. This WILL BREAK if any 3-predicate
+            // invariants are introduced.
+            json.name("predicates").beginArray();
+            String lastPredicate = null;
+            int numPredicates = 0;
             for (EventType evType : inv.getPredicates()) {
-                predicateList.add(evType.toString());
+                lastPredicate = evType.toString();
+                json.value(lastPredicate);
+                numPredicates++;
             }
-
-            // Handle case where both predicates are identical [i.e., only one
-            // object in the predicate set returned by
-            // ITemporalInvariant.getPredicates()]. This WILL BREAK if any
-            // 3-predicate invariants are introduced.
-            if (predicateList.size() == 1) {
-                predicateList.add(predicateList.get(0));
+            if (numPredicates == 1) {
+                json.value(lastPredicate);
             }
-            singleInvariantMap.put("predicates", predicateList);
+            json.endArray();
 
             if (inv instanceof TempConstrainedInvariant) {
                 TempConstrainedInvariant<?> constInv = (TempConstrainedInvariant<?>) inv;
 
-                // Store the constraints with bounds
-                List<String> constraintBoundList = new LinkedList<String>();
-                constraintBoundList.add(constInv.getConstraint().toString());
-                singleInvariantMap.put("constraints", constraintBoundList);
+                // Write the constraints with bounds
+                json.name("constraints").beginArray();
+                json.value(constInv.getConstraint().toString());
+                json.endArray();
             }
 
-            // Put the invariant map into the list of invariants
-            invariantsList.add(singleInvariantMap);
+            json.endObject();
         }
-
-        return invariantsList;
+        json.endArray();
     }
 }
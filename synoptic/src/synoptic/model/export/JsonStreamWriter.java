@@ -0,0 +1,109 @@
+package synoptic.model.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.json.simple.JSONValue;
+
+/**
+ * Writes a JSON document to a writer as it is generated, instead of building
+ * it as nested maps and lists first. The output is the same as what
+ * JSONValue.writeJSONString writes for the equivalent maps and lists: no
+ * whitespace, and scalars are written by JSONValue.
+ */
+class JsonStreamWriter {
+    private final Writer out;
+
+    /**
+     * Whether the object or array at each nesting depth already has a member,
+     * which has to be separated from the next one.
+     */
+    private boolean[] hasMembers = new boolean[8];
+    private int depth = 0;
+
+    /** Whether a name was just written, so that the next value is its value. */
+    private boolean afterName = false;
+
+    JsonStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasMembers[depth - 1]) {
+                out.write(',');
+            }
+            hasMembers[depth - 1] = true;
+        }
+    }
+
+    private void open(char c) throws IOException {
+        beforeValue();
+        out.write(c);
+        if (depth == hasMembers.length) {
+            hasMembers = Arrays.copyOf(hasMembers, 2 * depth);
+        }
+        hasMembers[depth++] = false;
+    }
+
+    private void close(char c) throws IOException {
+        assert depth > 0 && !afterName;
+        depth--;
+        out.write(c);
+    }
+
+    JsonStreamWriter beginObject() throws IOException {
+        open('{');
+        return this;
+    }
+
+    JsonStreamWriter endObject() throws IOException {
+        close('}');
+        return this;
+    }
+
+    JsonStreamWriter beginArray() throws IOException {
+        open('[');
+        return this;
+    }
+
+    JsonStreamWriter endArray() throws IOException {
+        close(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     */
+    JsonStreamWriter name(String name) throws IOException {
+        assert !afterName;
+        beforeValue();
+        out.write('"');
+        out.write(JSONValue.escape(name));
+        out.write("\":");
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a scalar value (e.g., a String or a Number), as an array element
+     * or as the value of the member whose name was just written.
+     */
+    JsonStreamWriter value(Object value) throws IOException {
+        beforeValue();
+        JSONValue.writeJSONString(value, out);
+        return this;
+    }
+
+    /**
+     * Writes a member of the current object, with a scalar value.
+     */
+    JsonStreamWriter member(String name, Object value) throws IOException {
+        return name(name).value(value);
+    }
+}
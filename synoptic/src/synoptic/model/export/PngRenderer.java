@@ -0,0 +1,213 @@
+package synoptic.model.export;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Converts dot files to png images in the background, so that exporting a
+ * graph does not wait for the dot command. Dot files are queued for a bounded
+ * pool of worker threads, each of which runs
+ * GraphExporter.generatePngFileFromDotFile. When the queue is full, the
+ * exporting thread converts the file itself, which keeps the queue bounded. <br/>
+ * <br/>
+ * Intermediate models often do not change between stages, so the renderer
+ * remembers the contents of the dot files that it converted (by hash), and
+ * copies the existing png file for a dot file with the same contents instead of
+ * running dot again. All queued files are converted when flush() or close() is
+ * called. The worker threads do not keep the JVM alive, so the owner of a
+ * renderer must close it once it exported its last graph.
+ */
+public class PngRenderer {
+    static Logger logger = Logger.getLogger("PngRenderer");
+
+    /** The default maximum number of dot files waiting for a worker thread. */
+    public static final int defaultQueueCapacity = 64;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The dot command executable, or null to look it up like
+     * GraphExporter.generatePngFileFromDotFile does.
+     */
+    private final String dotCommand;
+
+    /**
+     * The conversion of the first dot file with some contents, by the hash of
+     * these contents. Each conversion returns the name of its dot file.
+     */
+    private final Map<String, Future<String>> rendersByHash = new HashMap<String, Future<String>>();
+
+    /** The conversions and copies that were not flushed yet. */
+    private final List<Future<String>> pending = new ArrayList<Future<String>>();
+
+    /** Whether close() was called. */
+    private boolean closed = false;
+
+    /**
+     * Creates a renderer with numThreads worker threads, which exit when they
+     * are idle.
+     */
+    public PngRenderer(int numThreads) {
+        this(numThreads, defaultQueueCapacity, null);
+    }
+
+    /**
+     * Creates a renderer with numThreads worker threads, which exit when they
+     * are idle, and at most queueCapacity dot files waiting for them. Dot files
+     * are converted with dotCommand, or with the dot executable that
+     * GraphExporter finds if dotCommand is null.
+     */
+    public PngRenderer(int numThreads, int queueCapacity, String dotCommand) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "The number of render threads must be positive");
+        }
+        this.dotCommand = dotCommand;
+        executor = new ThreadPoolExecutor(numThreads, numThreads, 10,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+                        queueCapacity), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        // Daemon threads do not keep the JVM alive, close()
+                        // waits for them instead.
+                        Thread t = new Thread(r, "PngRenderer");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the dot file fileName, which contains dotText, to be converted to
+     * a png file in the same place, like
+     * GraphExporter.generatePngFileFromDotFile does.
+     *
+     * @throws IllegalStateException
+     *             if the renderer was closed
+     */
+    public synchronized void render(final String fileName, String dotText) {
+        if (closed) {
+            throw new IllegalStateException("The png renderer was closed");
+        }
+        String hash = hashText(dotText);
+
+        final Future<String> render = rendersByHash.get(hash);
+        Future<String> task;
+        if (render == null) {
+            task = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    if (dotCommand == null) {
+                        GraphExporter.generatePngFileFromDotFile(fileName);
+                    } else {
+                        GraphExporter.generatePngFileFromDotFile(fileName,
+                                dotCommand);
+                    }
+                    return fileName;
+                }
+            });
+            rendersByHash.put(hash, task);
+        } else {
+            // The conversion of the identical file was queued before this
+            // copy, so it does not wait for a worker thread.
+            task = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    copyPng(render.get(), fileName);
+                    return fileName;
+                }
+            });
+        }
+        pending.add(task);
+    }
+
+    /**
+     * Waits for all of the queued dot files to be converted.
+     */
+    public void flush() {
+        List<Future<String>> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<Future<String>>(pending);
+            pending.clear();
+        }
+        for (Future<String> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                logger.severe("Waiting for png files interrupted: "
+                        + e.getMessage());
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.severe("Could not generate png file: "
+                        + e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for all of the queued dot files to be converted, and stops the
+     * worker threads. The renderer cannot be used afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        executor.shutdown();
+    }
+
+    /**
+     * Copies the png file of the dot file srcFileName to the png file of the
+     * dot file fileName, if dot generated it.
+     */
+    private static void copyPng(String srcFileName, String fileName)
+            throws IOException {
+        Path srcPng = Paths.get(srcFileName + ".png");
+        if (!Files.exists(srcPng)) {
+            return;
+        }
+        Path png = Paths.get(fileName + ".png");
+        logger.info("Exporting graph to: " + png + " (same as " + srcPng + ")");
+        Files.copy(srcPng, png, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the SHA-1 hash of text, in hex.
+     */
+    private static String hashText(String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalSynopticException(e);
+        }
+        byte[] hash = digest.digest(text.getBytes(Charset.defaultCharset()));
+        StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
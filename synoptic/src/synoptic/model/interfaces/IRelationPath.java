@@ -1,5 +1,6 @@
 package synoptic.model.interfaces;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +34,12 @@ public interface IRelationPath {
      */
     public Map<EventType, Set<EventType>> getPossibleInterrupts();
 
+    /**
+     * @return the nodes of this relation path, in path order, which are the
+     *         nodes that the counts above are computed over
+     */
+    public List<EventNode> getNodes();
+
     /**
      * @return first non-INITIAL node in this relation path
      */
@@ -104,6 +104,13 @@ public class State {
         return stateMap.equals(other.stateMap);
     }
 
+    /**
+     * Returns the string that this state was parsed from.
+     */
+    public String getStateString() {
+        return stateString;
+    }
+
     @Override
     public String toString() {
         return stateMap.toString();
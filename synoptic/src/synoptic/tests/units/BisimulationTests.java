@@ -1,15 +1,27 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.IndexedGraph;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
@@ -134,6 +146,124 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Tests that a merged view of an indexed partition graph has the same
+     * structure as the graph in which the two partitions are merged, for every
+     * pair of partitions of the same type.
+     */
+    @Test
+    public void mergedViewTest() throws Exception {
+        PartitionGraph pGraph = genCoarseningGraph();
+        IndexedGraph<Partition> indexed = new IndexedGraph<Partition>(pGraph);
+        List<Partition> partitions = new ArrayList<Partition>(
+                pGraph.getNodes());
+        int numMerges = 0;
+        for (Partition p : partitions) {
+            for (Partition q : partitions) {
+                if (p == q || !p.getEType().equals(q.getEType())) {
+                    continue;
+                }
+                IndexedGraph<Partition> view = indexed.merge(p, q);
+                IOperation rewind = pGraph.apply(new PartitionMerge(p, q));
+                IndexedGraph<Partition> merged = new IndexedGraph<Partition>(
+                        pGraph);
+                assertEquals(getSuccessors(merged), getSuccessors(view));
+                assertEquals(merged.getNode(merged.getInitialNodeId()),
+                        view.getNode(view.getInitialNodeId()));
+                assertEquals(-1, view.getId(q));
+                for (int i = 0; i < view.size(); i++) {
+                    assertEquals(i, view.getId(view.getNode(i)));
+                }
+                pGraph.apply(rewind);
+                numMerges++;
+            }
+        }
+        assertTrue(numMerges > 0);
+    }
+
+    /**
+     * Tests that checking candidate merges speculatively in parallel during
+     * coarsening results in the same partitions, in the same order, as
+     * checking them one at a time.
+     */
+    @Test
+    public void speculativeMergeTest() throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.numMergeThreads = 1;
+        PartitionGraph pGraph = genCoarseningGraph();
+        Bisimulation.mergePartitions(pGraph);
+        List<Set<Integer>> sequential = getLineNums(pGraph);
+
+        main.options.numMergeThreads = 4;
+        ExecutorService executor = main.createExecutor();
+        List<Set<Integer>> parallel;
+        try {
+            pGraph = genCoarseningGraph();
+            Bisimulation.mergePartitions(pGraph, pGraph.getInvariants(), 1,
+                    null, executor);
+            parallel = getLineNums(pGraph);
+        } finally {
+            executor.shutdown();
+            main.options.numMergeThreads = 1;
+        }
+
+        assertTrue(sequential.size() < pGraph.getTraceGraph().getNodes()
+                .size());
+        assertEquals(sequential, parallel);
+        assertNull(pGraph.getInvariants().getFirstCounterExample(pGraph));
+    }
+
+    /**
+     * Returns a partition graph, with a partition for every event, of a log in
+     * which some pairs of events of the same type cannot be merged without
+     * violating the invariants mined from the log.
+     */
+    private PartitionGraph genCoarseningGraph() throws Exception {
+        String[] traceStrArray = new String[] { "a", "b", "c", "d", "--", "a",
+                "c", "b", "d", "--", "e", "b", "c", "f", "--", "e", "c", "b",
+                "f", "--", "a", "b", "b", "d" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+        return new PartitionGraph(inputGraph, false, invariants);
+    }
+
+    private static Map<Partition, Set<Partition>> getSuccessors(
+            IndexedGraph<Partition> indexed) {
+        Map<Partition, Set<Partition>> successors = new HashMap<Partition, Set<Partition>>();
+        for (int i = 0; i < indexed.size(); i++) {
+            Set<Partition> targets = new HashSet<Partition>();
+            for (int target : indexed.getSuccessors(i)) {
+                targets.add(indexed.getNode(target));
+            }
+            successors.put(indexed.getNode(i), targets);
+        }
+        return successors;
+    }
+
+    /**
+     * Returns the line numbers of the events of every partition, in the order
+     * of the partitions.
+     */
+    private static List<Set<Integer>> getLineNums(PartitionGraph pGraph) {
+        List<Set<Integer>> lineNums = new ArrayList<Set<Integer>>();
+        for (Partition p : pGraph.getNodes()) {
+            Set<Integer> partitionLineNums = new HashSet<Integer>();
+            for (EventNode e : p.getEventNodes()) {
+                partitionLineNums.add(e.getLineNum());
+            }
+            lineNums.add(partitionLineNums);
+        }
+        return lineNums;
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
@@ -78,6 +78,36 @@ public class EventTypeTests extends SynopticTest {
         assertTrue(e2.compareTo(e1) == 0);
     }
 
+    /**
+     * Tests that interned StringEventTypes are canonical within their
+     * registry, and equal to non-interned StringEventTypes and to the
+     * StringEventTypes of other registries with the same label.
+     */
+    @Test
+    public void internedStringEventTypesTest() {
+        StringEventType.Registry registry = new StringEventType.Registry();
+        StringEventType e1 = registry.intern("a");
+        StringEventType e2 = registry.intern(new String("a"));
+        assertTrue(e1 == e2);
+
+        StringEventType e3 = registry.intern("b");
+        assertFalse(e1.equals(e3));
+
+        StringEventType e4 = new StringEventType.Registry().intern("a");
+        assertTrue(e1 != e4);
+        assertTrue(e1.equals(e4));
+        assertTrue(e4.equals(e1));
+        assertFalse(e4.equals(e3));
+
+        StringEventType e5 = new StringEventType("a");
+        assertTrue(e1.equals(e5));
+        assertTrue(e5.equals(e1));
+        assertTrue(e1.hashCode() == e5.hashCode());
+        assertTrue(e1.compareTo(e5) == 0);
+        assertFalse(e5.equals(e3));
+        assertFalse(StringEventType.newInitialStringEventType().equals(e1));
+    }
+
     /**
      * Tests that different EventTypes (for now, just StringEventType and
      * DistEventType) can never be equal
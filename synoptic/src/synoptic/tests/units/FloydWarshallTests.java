@@ -1,7 +1,15 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.Test;
 
 import synoptic.algorithms.FloydWarshall;
@@ -28,6 +36,66 @@ public class FloydWarshallTests extends SynopticTest {
         assertTrue(tc.getTC().keySet().size() == 0);
     }
 
+    /**
+     * Tests the transitive closure of several disjoint random DAGs, whose
+     * nodes are added to the graph in an interleaved order, against the
+     * reachability found by a depth-first search.
+     */
+    @Test
+    public void randomDAGsTest() {
+        Random random = new Random(0);
+        ChainsTraceGraph g = new ChainsTraceGraph();
+        List<List<EventNode>> dags = new ArrayList<List<EventNode>>();
+        for (int d = 0; d < 3; d++) {
+            List<EventNode> dag = new ArrayList<EventNode>();
+            for (int i = 0; i < 100; i++) {
+                dag.add(new EventNode(new Event("e" + random.nextInt(5))));
+            }
+            // Edges only lead to later nodes, so the graph is acyclic.
+            for (int i = 0; i < dag.size(); i++) {
+                for (int j = i + 1; j < dag.size(); j++) {
+                    if (random.nextInt(20) == 0) {
+                        dag.get(i).addTransition(dag.get(j),
+                                Event.defTimeRelationStr);
+                    }
+                }
+            }
+            dags.add(dag);
+        }
+        for (int i = 99; i >= 0; i--) {
+            for (List<EventNode> dag : dags) {
+                g.add(dag.get(i));
+            }
+        }
+
+        TransitiveClosure tc = FloydWarshall.warshallAlg(g,
+                Event.defTimeRelationSet);
+        for (List<EventNode> dag : dags) {
+            for (EventNode n : dag) {
+                Set<EventNode> reachable = new HashSet<EventNode>();
+                List<EventNode> stack = new ArrayList<EventNode>(
+                        n.getAllSuccessors());
+                while (!stack.isEmpty()) {
+                    EventNode m = stack.remove(stack.size() - 1);
+                    if (reachable.add(m)) {
+                        stack.addAll(m.getAllSuccessors());
+                    }
+                }
+                for (List<EventNode> dag2 : dags) {
+                    for (EventNode m : dag2) {
+                        assertEquals(reachable.contains(m),
+                                tc.isReachable(n, m));
+                    }
+                }
+                if (reachable.isEmpty()) {
+                    assertNull(tc.getReachableNodes(n));
+                } else {
+                    assertEquals(reachable, tc.getReachableNodes(n));
+                }
+            }
+        }
+    }
+
     /**
      * Circular case
      */
@@ -11,10 +11,12 @@ import org.junit.Test;
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.fsmcheck.AFbyInvFsms;
 import synoptic.invariants.fsmcheck.APInvFsms;
 import synoptic.invariants.fsmcheck.FsmStateSet;
+import synoptic.invariants.fsmcheck.IntrByInvFsms;
 import synoptic.invariants.fsmcheck.NFbyInvFsms;
 import synoptic.model.EventNode;
 import synoptic.model.event.Event;
@@ -102,6 +104,35 @@ public class FsmStateSetTests extends SynopticTest {
         assertTrue(!f1.equals(f2)); // differ in getClass() values
     }
 
+    /**
+     * Tests that setTo overwrites the states of an FsmStateSet with those of
+     * another, without sharing any state with it.
+     */
+    @Test
+    public void setToTest() {
+        List<BinaryInvariant> invs = new LinkedList<BinaryInvariant>();
+        invs.add(new AlwaysFollowedInvariant("a", "b",
+                Event.defTimeRelationStr));
+        invs.add(new AlwaysFollowedInvariant("a", "z",
+                Event.defTimeRelationStr));
+
+        FsmStateSet<EventNode> f1 = new AFbyInvFsms<EventNode>(invs);
+        f1.setInitial(msgA);
+        FsmStateSet<EventNode> f2 = new AFbyInvFsms<EventNode>(invs);
+        f2.setInitial(msgB);
+        assertTrue(!f1.equals(f2));
+
+        f2.setTo(f1);
+        assertTrue(f1.equals(f2));
+
+        // Transitioning the overwritten set must not affect the original.
+        FsmStateSet<EventNode> f1Expected = new AFbyInvFsms<EventNode>(invs);
+        f1Expected.setInitial(msgA);
+        f2.transition(msgB);
+        assertTrue(f1.equals(f1Expected));
+        assertTrue(!f1.equals(f2));
+    }
+
     /**
      * Helper interface for testing different invariant types.
      */
@@ -469,4 +500,93 @@ public class FsmStateSetTests extends SynopticTest {
 
         // TODO: test multiple simultaneous AP machines
     }
+
+    @Test
+    public void IntrByInvFsmsTest() {
+        iInvSpecificGenerator invGen = new iInvSpecificGenerator() {
+            @Override
+            public BinaryInvariant genInv(EventType a, EventType b,
+                    String relation) {
+                return new InterruptedByInvariant(a, b, relation);
+            }
+
+            @Override
+            public FsmStateSet<EventNode> genFsmStateSet(
+                    List<BinaryInvariant> invs) {
+                return new IntrByInvFsms<EventNode>(invs);
+            }
+        };
+
+        FsmStateSet<EventNode> f1, f2;
+
+        // ////////
+        // Simulate a single "a IntrBy b" invariant.
+
+        // z != a
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgZ);
+        f2 = initStateSet("1 1", invGen);
+        f2.setInitial(msgA);
+        assertTrue(!f1.equals(f2));
+        // a is not fail
+        assertTrue(!f2.isFail());
+
+        // a->b == z
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgB);
+        f2 = initStateSet("1 1", invGen);
+        f2.setInitial(msgZ);
+        assertTrue(f1.equals(f2));
+
+        // a->z == a
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgZ);
+        f2 = initStateSet("1 1", invGen);
+        f2.setInitial(msgA);
+        assertTrue(f1.equals(f2));
+
+        // a->b->a is not fail
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgB);
+        f1.transition(msgA);
+        assertTrue(!f1.isFail());
+
+        // a->z->a is fail
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgZ);
+        f1.transition(msgA);
+        assertTrue(f1.isFail());
+
+        // a->a->b is (permanently) fail
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgA);
+        f1.transition(msgB);
+        assertTrue(f1.isFail());
+    }
+
+    /**
+     * Tests that a copy of an FsmStateSet is equal to, but independent of, the
+     * original.
+     */
+    @Test
+    public void copyTest() {
+        List<BinaryInvariant> invs = new LinkedList<BinaryInvariant>();
+        invs.add(new AlwaysPrecedesInvariant("a", "b",
+                Event.defTimeRelationStr));
+
+        FsmStateSet<EventNode> f1 = new APInvFsms<EventNode>(invs);
+        f1.setInitial(msgZ);
+        FsmStateSet<EventNode> f2 = f1.copy();
+        assertTrue(f1.getClass() == f2.getClass());
+        assertTrue(f1.equals(f2));
+
+        f2.transition(msgB);
+        assertTrue(f2.isFail());
+        assertTrue(!f1.isFail());
+    }
 }
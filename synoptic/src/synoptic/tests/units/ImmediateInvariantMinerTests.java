@@ -106,4 +106,30 @@ public class ImmediateInvariantMinerTests extends SynopticTest {
             assertTrue(!invalidINFbys.contains(p));
         }
     }
+
+    /**
+     * Mining the traces with several threads gives the same invariants as
+     * mining them with one thread.
+     */
+    @Test
+    public void parallelMiningTest() throws Exception {
+        String[] events = new String[] { "1 0 c", "2 0 b", "3 0 a", "4 0 d",
+                "1 1 f", "2 1 b", "3 1 a", "4 1 e", "1 2 f", "2 2 b", "3 2 a",
+                "4 2 d" };
+
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<DTIME>)(?<nodename>)(?<TYPE>)$");
+        parser.setPartitionsMap("\\k<nodename>");
+
+        ChainsTraceGraph inputGraph = (ChainsTraceGraph) genChainsTraceGraph(
+                events, parser);
+
+        ImmediateInvariantMiner miner = new ImmediateInvariantMiner(inputGraph);
+        ImmediateInvariantMiner parallelMiner = new ImmediateInvariantMiner(
+                inputGraph, 2);
+
+        assertEquals(miner.getEventTypes(), parallelMiner.getEventTypes());
+        assertEquals(miner.getNIFbyInvariants().getSet(), parallelMiner
+                .getNIFbyInvariants().getSet());
+    }
 }
@@ -0,0 +1,130 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.IncrementalTOInvMiner;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the incremental miner IncrementalTOInvMiner.
+ */
+public class IncrementalTOInvMinerTests extends SynopticTest {
+
+    /**
+     * Returns a log of numTraces traces, in which every trace has more event
+     * types than the one before it, and the odd traces repeat an event type.
+     */
+    private static String[] genLog(int firstTrace, int numTraces) {
+        List<String> log = new ArrayList<String>();
+        for (int i = firstTrace; i < firstTrace + numTraces; i++) {
+            log.add("start");
+            for (int j = 0; j < 2 + 2 * i; j++) {
+                log.add("x" + j);
+            }
+            if (i % 2 == 1) {
+                log.add("x0");
+            }
+            log.add("end");
+            log.add("--");
+        }
+        return log.toArray(new String[log.size()]);
+    }
+
+    /**
+     * Asserts that the two sets contain the same invariants, with the same
+     * support counts.
+     */
+    private static void assertSameInvariants(TemporalInvariantSet expected,
+            TemporalInvariantSet actual) {
+        assertEquals(expected.getSet(), actual.getSet());
+        Map<ITemporalInvariant, ITemporalInvariant> actualInvs = new LinkedHashMap<ITemporalInvariant, ITemporalInvariant>();
+        for (ITemporalInvariant inv : actual) {
+            actualInvs.put(inv, inv);
+        }
+        for (ITemporalInvariant inv : expected) {
+            assertEquals(((BinaryInvariant) inv).getStatistics(),
+                    ((BinaryInvariant) actualInvs.get(inv)).getStatistics());
+        }
+    }
+
+    /**
+     * Adding traces one graph at a time gives the invariants that the chain
+     * walking miner mines from all of the traces at once.
+     */
+    @Test
+    public void incrementalMiningTest() throws Exception {
+        IncrementalTOInvMiner miner = new IncrementalTOInvMiner(true);
+        for (int i = 0; i < 10; i++) {
+            miner.addTraces(genInitialLinearGraph(genLog(i, 1)));
+        }
+        assertEquals(10, miner.getNumTraces());
+
+        ChainsTraceGraph g = genInitialLinearGraph(genLog(0, 10));
+        TemporalInvariantSet expected = new ChainWalkingTOInvMiner()
+                .computeInvariants(g, false, true);
+        TemporalInvariantSet actual = miner.getInvariants();
+        assertTrue(actual.numInvariants() > 0);
+        assertSameInvariants(expected, actual);
+    }
+
+    /**
+     * A miner that is serialized and deserialized between traces mines the
+     * same invariants as a miner that is not.
+     */
+    @Test
+    public void serializationTest() throws Exception {
+        IncrementalTOInvMiner miner = new IncrementalTOInvMiner(true);
+        miner.addTraces(genInitialLinearGraph(genLog(0, 5)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(miner);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        IncrementalTOInvMiner restored = (IncrementalTOInvMiner) in
+                .readObject();
+        in.close();
+
+        assertSameInvariants(miner.getInvariants(), restored.getInvariants());
+
+        ChainsTraceGraph g = genInitialLinearGraph(genLog(5, 5));
+        miner.addTraces(g);
+        restored.addTraces(g);
+        assertEquals(10, restored.getNumTraces());
+        assertSameInvariants(miner.getInvariants(), restored.getInvariants());
+    }
+
+    /**
+     * Traces can also be added as lists of event types.
+     */
+    @Test
+    public void addEventTypesTest() throws Exception {
+        IncrementalTOInvMiner miner = new IncrementalTOInvMiner();
+        miner.addTrace(stringsToStringEventTypes(new String[] { "a", "b",
+                "a", "c" }));
+        miner.addTrace(stringsToStringEventTypes(new String[] { "a", "c" }));
+
+        TemporalInvariantSet expected = new ChainWalkingTOInvMiner()
+                .computeInvariants(genInitialLinearGraph(new String[] { "a",
+                        "b", "a", "c", "--", "a", "c" }), false, false);
+        assertSameInvariants(expected, miner.getInvariants());
+    }
+}
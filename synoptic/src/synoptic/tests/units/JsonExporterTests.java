@@ -0,0 +1,65 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.JsonExporter;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for exporting partition graphs as JSON objects with JsonExporter.
+ */
+public class JsonExporterTests extends SynopticTest {
+
+    /**
+     * The exported object contains the log, and partitions whose events refer
+     * to events of the same type in the log.
+     */
+    @Test
+    public void exportJsonObjectTest() throws Exception {
+        String events[] = new String[] { "1 0 c", "2 0 b", "3 0 a", "1 1 f",
+                "2 1 b" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<nodename>)(?<TYPE>)$");
+        parser.setPartitionsMap("\\k<nodename>");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new ChainWalkingTOInvMiner(), false);
+
+        StringWriter writer = new StringWriter();
+        JsonExporter.exportJsonObject(writer, pGraph);
+        String jsonStr = writer.toString();
+        assertTrue(jsonStr.startsWith("{\"log\":[{\"traceID\":0,\"events\":["));
+
+        Map<?, ?> json = (Map<?, ?>) new JSONParser().parse(jsonStr);
+        List<?> log = (List<?>) json.get("log");
+        assertEquals(2, log.size());
+
+        int numEvents = 0;
+        for (Object p : (List<?>) json.get("partitions")) {
+            Map<?, ?> partition = (Map<?, ?>) p;
+            for (Object e : (List<?>) partition.get("events")) {
+                Map<?, ?> event = (Map<?, ?>) e;
+                Map<?, ?> trace = (Map<?, ?>) log.get(((Long) event
+                        .get("traceID")).intValue());
+                Map<?, ?> logEvent = (Map<?, ?>) ((List<?>) trace.get("events"))
+                        .get(((Long) event.get("eventIndex")).intValue());
+                assertEquals(partition.get("eventType"),
+                        logEvent.get("eventType"));
+                numEvents++;
+            }
+        }
+        // INITIAL and TERMINAL are not exported as partitions.
+        assertEquals(events.length, numEvents);
+        assertTrue(!((List<?>) json.get("invariants")).isEmpty());
+    }
+}
@@ -1,21 +1,27 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
+import synoptic.algorithms.KTailSignatures;
 import synoptic.algorithms.KTails;
+import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
@@ -32,12 +38,19 @@ public class KTailsTests extends SynopticTest {
         // e1 =k= e2 should imply e2 =k= e1
         assertTrue(KTails.kEquals(e1, e2, k));
         assertTrue(KTails.kEquals(e2, e1, k));
+        // k-equivalent nodes should have the same k-tail signature
+        KTailSignatures<EventNode> signatures = new KTailSignatures<EventNode>(
+                Arrays.asList(e1, e2), k);
+        assertEquals(signatures.getSignature(e1), signatures.getSignature(e2));
     }
 
     private static void testNotKEqual(EventNode e1, EventNode e2, int k) {
         // e1 !=k= e2 should imply e2 !=k= e1
         assertFalse(KTails.kEquals(e1, e2, k));
         assertFalse(KTails.kEquals(e2, e1, k));
+        KTailSignatures<EventNode> signatures = new KTailSignatures<EventNode>(
+                Arrays.asList(e1, e2), k);
+        assertFalse(signatures.getSignature(e1) == signatures.getSignature(e2));
     }
 
     // Returns a parser to simplify graph generation from string expressions.
@@ -91,6 +104,100 @@ public class KTailsTests extends SynopticTest {
         assertTrue(pGraph.getNodes().size() == 6);
     }
 
+    /**
+     * Tests that partitions have the same k-tail signatures exactly when they
+     * are k-equal, in partition graphs with branches and cycles.
+     */
+    @Test
+    public void kTailSignaturesTest() throws Exception {
+        Random random = new Random(0);
+        List<String> log = new ArrayList<String>();
+        for (int t = 0; t < 10; t++) {
+            if (t > 0) {
+                log.add("--");
+            }
+            for (int i = 0; i < 6; i++) {
+                log.add(String.valueOf((char) ('a' + random.nextInt(3))));
+            }
+        }
+        ChainsTraceGraph g = (ChainsTraceGraph) genChainsTraceGraph(
+                log.toArray(new String[0]), SynopticTest.genDefParser());
+
+        for (int mergeK = 1; mergeK <= 2; mergeK++) {
+            PartitionGraph pGraph = KTails.performKTails(g, mergeK);
+            List<Partition> partitions = new ArrayList<Partition>(
+                    pGraph.getNodes());
+            for (int k = 1; k <= 4; k++) {
+                KTailSignatures<Partition> signatures = new KTailSignatures<Partition>(
+                        partitions, k);
+                for (Partition p : partitions) {
+                    for (Partition q : partitions) {
+                        assertEquals(KTails.kEquals(p, q, k),
+                                signatures.getSignature(p) == signatures
+                                        .getSignature(q));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the signatures recomputed with update, after partitions have
+     * been merged, are the k-tail signatures of the merged graph.
+     */
+    @Test
+    public void kTailSignaturesUpdateTest() throws Exception {
+        Random random = new Random(0);
+        List<String> log = new ArrayList<String>();
+        for (int t = 0; t < 10; t++) {
+            if (t > 0) {
+                log.add("--");
+            }
+            for (int i = 0; i < 6; i++) {
+                log.add(String.valueOf((char) ('a' + random.nextInt(3))));
+            }
+        }
+        ChainsTraceGraph g = (ChainsTraceGraph) genChainsTraceGraph(
+                log.toArray(new String[0]), SynopticTest.genDefParser());
+
+        int k = 2;
+        PartitionGraph pGraph = KTails.performKTails(g, 4);
+        KTailSignatures<Partition> signatures = new KTailSignatures<Partition>(
+                pGraph.getNodes(), k);
+        for (int merges = 0; merges < 5; merges++) {
+            // Merge the first two partitions of the same type.
+            List<Partition> partitions = new ArrayList<Partition>(
+                    pGraph.getNodes());
+            Partition retained = null;
+            Partition removed = null;
+            for (int i = 0; i < partitions.size() && removed == null; i++) {
+                for (int j = i + 1; j < partitions.size(); j++) {
+                    if (partitions.get(i).getEType()
+                            .equals(partitions.get(j).getEType())) {
+                        retained = partitions.get(i);
+                        removed = partitions.get(j);
+                        break;
+                    }
+                }
+            }
+            if (removed == null) {
+                break;
+            }
+            pGraph.apply(new PartitionMerge(retained, removed));
+            signatures.remove(removed);
+
+            partitions = new ArrayList<Partition>(pGraph.getNodes());
+            signatures.update(partitions);
+            for (Partition p : partitions) {
+                for (Partition q : partitions) {
+                    assertEquals(KTails.kEquals(p, q, k),
+                            signatures.getSignature(p) == signatures
+                                    .getSignature(q));
+                }
+            }
+        }
+    }
+
     /**
      * Returns a simple trace graph with three short chains.
      * 
@@ -25,6 +25,7 @@ import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 
 public class PartitionGraphTests extends SynopticTest {
@@ -89,6 +90,57 @@ public class PartitionGraphTests extends SynopticTest {
         assertTrue(pGraph.getNodes().size() == 3);
     }
 
+    /**
+     * Splitting a partition changes the transitions into it, so the
+     * transitions of its predecessors must reflect the split, and the rewind
+     * of the split.
+     */
+    @Test
+    public void splitSuccessorPartitionTest() throws Exception {
+        String[] events = new String[] { "a", "x", "--", "a", "x", "--", "a",
+                "y" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                concatinateWithNewlines(events), testName.getMethodName(), -1);
+        ChainsTraceGraph inputGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                new ChainWalkingTOInvMiner().computeInvariants(inputGraph,
+                        false, false));
+
+        Partition pA = getNodeByName(pGraph, new StringEventType("a"));
+        Partition pX = getNodeByName(pGraph, new StringEventType("x"));
+        assertEquals(2, pA.getWeightedTransitions().size());
+        assertEquals(2, pGraph.getAdjacentNodes(pA).size());
+
+        // Split one of the x events out of pX.
+        PartitionSplit split = new PartitionSplit(pX);
+        split.addEventToSplit(parsedEvents.get(1));
+        IOperation rewind = pGraph.apply(split);
+
+        List<? extends ITransition<Partition>> transitions = pA
+                .getWeightedTransitions();
+        assertEquals(3, transitions.size());
+        assertEquals(3, pGraph.getAdjacentNodes(pA).size());
+        for (ITransition<Partition> t : transitions) {
+            assertEquals(1, (int) t.getCount());
+        }
+
+        pGraph.apply(rewind);
+        transitions = pA.getWeightedTransitions();
+        assertEquals(2, transitions.size());
+        assertEquals(2, pGraph.getAdjacentNodes(pA).size());
+        for (ITransition<Partition> t : transitions) {
+            if (t.getTarget() == pX) {
+                assertEquals(2, (int) t.getCount());
+            } else {
+                assertEquals(1, (int) t.getCount());
+            }
+        }
+    }
+
     // TODO: Test the multi-split operation.
 
     // TODO: Test merge operation as a primary operation (not as a rewind).
@@ -250,4 +302,43 @@ public class PartitionGraphTests extends SynopticTest {
         assertEquals("There should be exactly one trace",
                 paths.keySet().size(), 1);
     }
+
+    /**
+     * Paths through partitions are computed for the current partitions, after
+     * a partition is split.
+     */
+    @Test
+    public void exportPathsThroughSplitPartitions() throws Exception {
+        PartitionGraph pGraph = getPGraphTemplate();
+        Partition bPartition = getNodeByName(pGraph, new StringEventType("b"));
+        EventNode b0 = bPartition.getEventNodes().iterator().next();
+        Set<INode<Partition>> selectedNodes = new HashSet<INode<Partition>>();
+        selectedNodes.add(bPartition);
+        assertEquals(2, pGraph.getPathsThroughPartitions(selectedNodes).size());
+
+        PartitionSplit split = new PartitionSplit(bPartition);
+        split.addEventToSplit(b0);
+        pGraph.apply(split);
+        Partition splitB = b0.getParent();
+        assertTrue(splitB != bPartition);
+
+        Map<Integer, List<Partition>> paths = pGraph
+                .getPathsThroughPartitions(selectedNodes);
+        assertEquals(1, paths.size());
+        assertTrue(!paths.containsKey(b0.getTraceID()));
+
+        selectedNodes.clear();
+        selectedNodes.add(splitB);
+        paths = pGraph.getPathsThroughPartitions(selectedNodes);
+        assertEquals(1, paths.size());
+        List<Partition> path = paths.get(b0.getTraceID());
+        // INITIAL, c or f, b, a, d or e, TERMINAL
+        assertEquals(6, path.size());
+        assertTrue(path.get(0).isInitial());
+        assertTrue(path.get(2) == splitB);
+        assertTrue(path.get(5).isTerminal());
+
+        selectedNodes.add(bPartition);
+        assertTrue(pGraph.getPathsThroughPartitions(selectedNodes).isEmpty());
+    }
 }
@@ -0,0 +1,113 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.tests.SynopticTest;
+import synoptic.util.matching.NamedPattern;
+import synoptic.util.matching.PatternPrefilter;
+
+/**
+ * Tests for synoptic.util.matching.PatternPrefilter class
+ */
+public class PatternPrefilterTests extends SynopticTest {
+
+    private static final List<String> regExps = Arrays.asList(
+            "^(?<TIME>\\d+) GET /a/(?<TYPE>\\w+)\\.png$",
+            "foo\\.bar(?<X>x)?", "ab*c", "(?<Y>a|b)cd", "x|y", "[ab]]z",
+            "\\d+ e[0-3]", "\u00e9+lan\u20ac\u20ac", "(?i)ABC", "a{2,3}bc",
+            ".*c\\+\\+.*");
+
+    private PatternPrefilter newPrefilter() throws Exception {
+        List<NamedPattern> patterns = new ArrayList<NamedPattern>();
+        for (String regExp : regExps) {
+            patterns.add(NamedPattern.compile(regExp));
+        }
+        return new PatternPrefilter(patterns);
+    }
+
+    /**
+     * Checks that the patterns whose literals do not occur in a line are
+     * filtered out, and that the others are not.
+     */
+    @Test
+    public void candidatesTest() throws Exception {
+        PatternPrefilter prefilter = newPrefilter();
+
+        BitSet candidates = prefilter.candidates("12 GET /a/img.png");
+        assertTrue(candidates.get(0));
+        // No literals can be extracted from these patterns.
+        assertTrue(candidates.get(4));
+        assertTrue(candidates.get(8));
+        // "foo.bar" does not occur.
+        assertFalse(candidates.get(1));
+        // "lan\u20ac\u20ac" does not occur.
+        assertFalse(candidates.get(7));
+        assertFalse(candidates.get(10));
+
+        candidates = prefilter.candidates("\u00e9\u00e9lan\u20ac\u20ac");
+        assertTrue(candidates.get(7));
+        assertFalse(candidates.get(0));
+
+        candidates = prefilter.candidates("ac");
+        assertTrue(candidates.get(2));
+        assertFalse(candidates.get(3));
+    }
+
+    /**
+     * Checks that a pattern that matches a random line is always a candidate
+     * for that line.
+     */
+    @Test
+    public void noFalseNegativesTest() throws Exception {
+        PatternPrefilter prefilter = newPrefilter();
+        List<NamedPattern> patterns = new ArrayList<NamedPattern>();
+        for (String regExp : regExps) {
+            patterns.add(NamedPattern.compile(regExp));
+        }
+
+        List<String> pieces = Arrays.asList("a", "b", "c", "d", "x", "y",
+                "z", "]", "1", "2", " ", " e3", "GET /a/", "img", ".png",
+                "foo.bar", "lan", "\u00e9", "\u20ac", "ABC", "abc", "c++");
+        Random rand = new Random(7);
+        int numMatched = 0;
+        int numFiltered = 0;
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder line = new StringBuilder();
+            int length = rand.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                line.append(pieces.get(rand.nextInt(pieces.size())));
+            }
+            BitSet candidates = prefilter.candidates(line);
+            for (int p = 0; p < patterns.size(); p++) {
+                if (patterns.get(p).matcher(line).matches()) {
+                    numMatched++;
+                    assertTrue(line + " matches " + regExps.get(p),
+                            candidates.get(p));
+                }
+            }
+            numFiltered += patterns.size() - candidates.cardinality();
+        }
+        assertTrue(numMatched > 0);
+        assertTrue(numFiltered > 0);
+    }
+
+    /**
+     * A prefilter without any patterns has no candidates.
+     */
+    @Test
+    public void emptyTest() {
+        PatternPrefilter prefilter = new PatternPrefilter(
+                new ArrayList<NamedPattern>());
+        assertEquals(0, prefilter.candidates("abc").cardinality());
+    }
+}
@@ -0,0 +1,176 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.TimedTask;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.benchmarks.PerformanceMetrics and Histogram classes
+ */
+public class PerformanceMetricsTests extends SynopticTest {
+
+    /**
+     * Nested tasks are named after their parents, and stopping a task pops it
+     * from the task stack.
+     */
+    @Test
+    public void nestedTasksTest() {
+        PerformanceMetrics metrics = new PerformanceMetrics();
+        TimedTask outer = metrics.startTask("outer", false);
+        TimedTask inner = metrics.startTask("inner", false);
+        assertEquals("outer/inner", inner.getTask());
+        assertSame(outer, inner.getParent());
+        inner.stop();
+        TimedTask sibling = metrics.startTask("sibling", false);
+        assertEquals("outer/sibling", sibling.getTask());
+        sibling.stop();
+        outer.stop();
+        assertNull(metrics.startTask("next", false).getParent());
+
+        assertEquals(1, metrics.getHistogram("outer/inner").getCount());
+        assertNull(metrics.getHistogram("inner"));
+    }
+
+    /**
+     * Tasks timed by different threads at once do not nest in each other, and
+     * values recorded by many threads are all counted.
+     */
+    @Test
+    public void concurrentTasksTest() throws InterruptedException {
+        final PerformanceMetrics metrics = new PerformanceMetrics();
+        final int numThreads = 4;
+        final int numTasks = 1000;
+        final List<String> errors = new ArrayList<String>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numThreads; t++) {
+            final String name = "thread" + t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < numTasks; i++) {
+                        TimedTask outer = metrics.startTask(name, false);
+                        TimedTask inner = metrics.startTask("inner", false);
+                        if (!inner.getTask().equals(name + "/inner")) {
+                            synchronized (errors) {
+                                errors.add(inner.getTask());
+                            }
+                        }
+                        metrics.record("count", 1);
+                        inner.stop();
+                        outer.stop();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(numThreads * numTasks, metrics.getValue("count"));
+        for (int t = 0; t < numThreads; t++) {
+            assertEquals(numTasks, metrics.getHistogram("thread" + t + "/inner")
+                    .getCount());
+        }
+    }
+
+    /**
+     * The static task methods record to the metrics that the calling thread
+     * was scoped to.
+     */
+    @Test
+    public void currentMetricsTest() {
+        PerformanceMetrics metrics = new PerformanceMetrics();
+        PerformanceMetrics.setCurrent(metrics);
+        try {
+            assertSame(metrics, PerformanceMetrics.get());
+            PerformanceMetrics.createTask("scoped").stop();
+            assertEquals(1, metrics.getHistogram("scoped").getCount());
+        } finally {
+            PerformanceMetrics.setCurrent(null);
+        }
+        assertTrue(PerformanceMetrics.get() != metrics);
+    }
+
+    /**
+     * Percentiles are reported to within the precision of the histogram's
+     * buckets.
+     */
+    @Test
+    public void histogramTest() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v);
+        }
+        histogram.record(1000000);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(1000000 + 500500, histogram.getTotal());
+
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 501 && median <= 501 * 33 / 32);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 991 && p99 <= 991 * 33 / 32);
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+        // Values smaller than the number of sub-buckets are exact.
+        histogram = new Histogram();
+        histogram.record(3);
+        histogram.record(7);
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(51));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Exported metrics contain the values and the number of measurements of
+     * each metric.
+     */
+    @Test
+    public void exportTest() throws Exception {
+        PerformanceMetrics metrics = new PerformanceMetrics();
+        metrics.record("b", 5);
+        metrics.record("b", 7);
+        metrics.record("a,1", 1);
+
+        StringWriter json = new StringWriter();
+        metrics.writeJSON(json);
+        Map<?, ?> parsed = (Map<?, ?>) JSONValue.parse(json.toString());
+        assertEquals(2, parsed.size());
+        Map<?, ?> b = (Map<?, ?>) parsed.get("b");
+        assertEquals(12L, b.get("value"));
+        assertEquals(2L, b.get("count"));
+        assertEquals(5L, b.get("min"));
+        assertEquals(7L, b.get("max"));
+
+        StringWriter csv = new StringWriter();
+        metrics.writeCSV(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("metric,value,count,"));
+        assertTrue(lines[1].startsWith("\"a,1\",1,1,"));
+        assertTrue(lines[2].startsWith("b,12,2,"));
+    }
+}
@@ -0,0 +1,169 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synoptic.main.parser.ParseException;
+import synoptic.model.export.PngRenderer;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests the background conversion of dot files to png files. Instead of dot,
+ * the renderer runs a stub script that logs the dot files that it converts,
+ * and copies each one to its png file.
+ */
+public class PngRendererTests extends SynopticTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** The stub dot command. */
+    private String dotCommand;
+
+    /** The file to which the stub logs the dot files that it converts. */
+    private File log;
+
+    /**
+     * While this file exists, the stub does not convert dot files whose name
+     * contains "slow".
+     */
+    private File gate;
+
+    @Before
+    @Override
+    public void setUp() throws ParseException {
+        super.setUp();
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        try {
+            log = new File(tmp.getRoot(), "log");
+            gate = new File(tmp.getRoot(), "gate");
+            // Invoked as: dot -O -Tpng <dot file>
+            File stub = tmp.newFile("dot.sh");
+            write(stub, "#!/bin/sh\n" + "case \"$3\" in *slow*)\n"
+                    + "  while [ -e " + gate.getAbsolutePath()
+                    + " ]; do sleep 0.05; done;;\n" + "esac\n" + "echo \"$3\" >> "
+                    + log.getAbsolutePath() + "\n" + "cp \"$3\" \"$3.png\"\n");
+            assertTrue(stub.setExecutable(true));
+            dotCommand = stub.getAbsolutePath();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(Charset.defaultCharset()));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                Charset.defaultCharset());
+    }
+
+    /**
+     * Writes a dot file with the given contents, and queues it for renderer.
+     */
+    private File render(PngRenderer renderer, String name, String dotText)
+            throws IOException {
+        File dotFile = new File(tmp.getRoot(), name);
+        write(dotFile, dotText);
+        renderer.render(dotFile.getAbsolutePath(), dotText);
+        return dotFile;
+    }
+
+    private static File png(File dotFile) {
+        return new File(dotFile.getPath() + ".png");
+    }
+
+    /** Returns the dot files that the stub converted. */
+    private List<String> converted() throws IOException {
+        if (!log.exists()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(read(log).split("\n"));
+    }
+
+    /**
+     * Tests that dot runs once for dot files with the same contents, and that
+     * the png file of the first one is copied for the others.
+     */
+    @Test
+    public void dedupeTest() throws IOException {
+        PngRenderer renderer = new PngRenderer(2, 4, dotCommand);
+        File a = render(renderer, "a.dot", "digraph { a; }");
+        File b = render(renderer, "b.dot", "digraph { a; }");
+        File c = render(renderer, "c.dot", "digraph { c; }");
+        renderer.close();
+
+        assertEquals(2, converted().size());
+        assertTrue(converted().contains(a.getAbsolutePath()));
+        assertTrue(converted().contains(c.getAbsolutePath()));
+        assertEquals("digraph { a; }", read(png(a)));
+        assertEquals("digraph { a; }", read(png(b)));
+        assertEquals("digraph { c; }", read(png(c)));
+    }
+
+    /**
+     * Tests that the exporting thread converts a dot file itself when the
+     * worker thread is busy and the queue is full.
+     */
+    @Test
+    public void callerRunsTest() throws IOException {
+        PngRenderer renderer = new PngRenderer(1, 1, dotCommand);
+        assertTrue(gate.createNewFile());
+        try {
+            // The worker thread blocks on the first file, and the second one
+            // fills the queue.
+            File slow = render(renderer, "slow.dot", "digraph { slow; }");
+            File queued = render(renderer, "queued.dot", "digraph { queued; }");
+            File own = render(renderer, "own.dot", "digraph { own; }");
+
+            assertTrue(png(own).exists());
+            assertFalse(png(slow).exists());
+            assertFalse(png(queued).exists());
+        } finally {
+            assertTrue(gate.delete());
+        }
+        renderer.close();
+        assertEquals(3, converted().size());
+    }
+
+    /**
+     * Tests that flush() waits for the queued files, and that the renderer
+     * cannot be used after close().
+     */
+    @Test
+    public void flushAndCloseTest() throws IOException {
+        PngRenderer renderer = new PngRenderer(1, 4, dotCommand);
+        File a = render(renderer, "a.dot", "digraph { a; }");
+        renderer.flush();
+        assertTrue(png(a).exists());
+
+        File b = render(renderer, "b.dot", "digraph { b; }");
+        renderer.close();
+        assertTrue(png(b).exists());
+        assertEquals(2, converted().size());
+
+        try {
+            render(renderer, "c.dot", "digraph { c; }");
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+    }
+}
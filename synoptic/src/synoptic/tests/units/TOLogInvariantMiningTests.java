@@ -53,7 +53,9 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, 4) },
                 { new ChainWalkingTOInvMiner() },
+                { new ChainWalkingTOInvMiner(4) },
                 { new DAGWalkingPOInvMiner() } };
         return Arrays.asList(data);
     }
@@ -1,13 +1,33 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 import org.junit.Test;
 
+import synoptic.algorithms.Bisimulation;
 import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.IndexedGraph;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.ConstrainedInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
 import synoptic.model.event.Event;
 import synoptic.tests.SynopticTest;
 
@@ -52,4 +72,126 @@ public class TemporalInvariantSetTests extends SynopticTest {
         assertFalse(s2.sameInvariants(s1));
     }
 
+    /**
+     * Tests that checking invariants in parallel returns the same
+     * counter-examples, in the same order, as checking them sequentially.
+     */
+    @Test
+    public void testParallelCounterExamples() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "d", "--", "a", "c",
+                "b", "d", "--", "e", "b", "c", "f", "--", "e", "c", "b", "f" };
+        TraceParser parser = genDefParser();
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                concatinateWithNewlines(events), getTestName()
+                        .getMethodName(), -1);
+        ChainsTraceGraph inputGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        TemporalInvariantSet invs = new ChainWalkingTOInvMiner()
+                .computeInvariants(inputGraph, false, false);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invs);
+
+        AbstractMain main = AbstractMain.getInstance();
+        List<CExamplePath<Partition>> sequential = invs
+                .getAllCounterExamples(pGraph);
+        main.options.numCheckerThreads = 4;
+        ExecutorService executor = main.createExecutor();
+        List<CExamplePath<Partition>> parallel;
+        try {
+            parallel = invs.getAllCounterExamples(pGraph, executor);
+        } finally {
+            executor.shutdown();
+            main.options.numCheckerThreads = 1;
+        }
+
+        assertTrue(sequential != null && sequential.size() > 1);
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).invariant,
+                    parallel.get(i).invariant);
+            assertEquals(sequential.get(i).path, parallel.get(i).path);
+        }
+    }
+
+    /**
+     * Tests that screening invariants with the bitset model checker yields the
+     * same counter-examples, in the same order, as running the tracing model
+     * checker for every invariant. The invariants include the constrained and
+     * IntrBy invariants mined by Perfume, and are checked in every round of
+     * refinement.
+     */
+    @Test
+    public void testScreenedCounterExamples() throws Exception {
+        setUpPerfume();
+        String[] events = new String[] { "a 0", "b 3", "c 5", "d 6", "--",
+                "a 10", "b 11", "c 14", "d 16", "--", "x 0", "z 4", "x 5",
+                "z 7", "--", "x 0", "z 1", "x 5", "z 6", "--", "a 0", "b 1",
+                "a 2", "b 8", "d 9" };
+        ChainsTraceGraph inputGraph = (ChainsTraceGraph) genChainsTraceGraph(
+                events, genITimeParser());
+        TemporalInvariantSet invs = new ConstrainedInvMiner()
+                .computeInvariants(new ChainWalkingTOInvMiner(), inputGraph,
+                        false);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invs);
+
+        // Some, but not all, invariants must be screened out initially.
+        List<BinaryInvariant> allInvs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : invs) {
+            allInvs.add((BinaryInvariant) inv);
+        }
+        int numMayFail = FsmModelChecker.screenInvariants(allInvs,
+                new IndexedGraph<Partition>(pGraph)).cardinality();
+        assertTrue(numMayFail > 0 && numMayFail < allInvs.size());
+
+        checkScreenedCounterExamples(invs, pGraph);
+    }
+
+    /**
+     * Like testScreenedCounterExamples, but for the invariants that Synoptic
+     * mines by default, which are checked by the bitset model checker without
+     * a time bounds screen.
+     */
+    @Test
+    public void testScreenedCounterExamplesUntimed() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "d", "--", "a", "c",
+                "b", "d", "--", "e", "b", "c", "f", "--", "e", "c", "b", "f",
+                "--", "a", "b", "b", "d" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        TemporalInvariantSet invs = pGraph.getInvariants();
+        assertTrue(invs.getAllCounterExamples(pGraph) != null);
+
+        checkScreenedCounterExamples(invs, pGraph);
+    }
+
+    /**
+     * Refines pGraph until it satisfies invs, and checks in every round that
+     * the counter-examples found with and without screening are the same, in
+     * the same order.
+     */
+    private static void checkScreenedCounterExamples(
+            TemporalInvariantSet invs, PartitionGraph pGraph) {
+        AbstractMain main = AbstractMain.getInstance();
+        int numSplits = 0;
+        while (true) {
+            main.options.screenInvariants = false;
+            List<CExamplePath<Partition>> expected = invs
+                    .getAllCounterExamples(pGraph);
+            main.options.screenInvariants = true;
+            List<CExamplePath<Partition>> actual = invs
+                    .getAllCounterExamples(pGraph);
+            if (expected == null) {
+                assertNull(actual);
+                break;
+            }
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).invariant,
+                        actual.get(i).invariant);
+                assertEquals(expected.get(i).path, actual.get(i).path);
+            }
+            numSplits = Bisimulation.performSplits(numSplits, pGraph, expected);
+        }
+    }
+
 }
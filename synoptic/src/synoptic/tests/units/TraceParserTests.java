@@ -6,6 +6,8 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -22,6 +24,7 @@ import synoptic.main.AbstractMain;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
+import synoptic.main.parser.TraceSnapshot;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.event.Event;
@@ -1487,4 +1490,188 @@ public class TraceParserTests extends SynopticTest {
 
         AbstractOptions.inputDelta = false;
     }
+
+    // //////////////////////////////////////////////////////////////////////////
+    // Parallel parsing tests
+    // //////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes numFiles temporary log files, and checks that parsing them with
+     * parseTraceFiles using several threads results in the same events (in
+     * the same order, in the same traces) as parsing them sequentially.
+     */
+    private void checkParallelParse(List<String> regExps, String separator,
+            int numFiles, int linesPerFile) throws Exception {
+        List<File> files = new ArrayList<File>();
+        Random rand = new Random(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            File file = File.createTempFile("parseTraceFilesTest", ".log");
+            file.deleteOnExit();
+            files.add(file);
+            StringBuilder log = new StringBuilder();
+            for (int line = 0; line < linesPerFile; line++) {
+                if (separator != null && rand.nextInt(10) == 0) {
+                    log.append("--\n");
+                } else {
+                    log.append(line + " " + rand.nextInt(3) + " e"
+                            + rand.nextInt(5) + "\n");
+                }
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(log.toString().getBytes());
+            out.close();
+        }
+
+        List<List<EventNode>> parsedEvents = new ArrayList<List<EventNode>>();
+        for (int numThreads : Arrays.asList(1, 4)) {
+            TraceParser tParser = new TraceParser();
+            for (String regExp : regExps) {
+                tParser.addRegex(regExp);
+            }
+            if (separator != null) {
+                tParser.addPartitionsSeparator(separator);
+            } else {
+                tParser.setPartitionsMap("\\k<PARTITION>");
+            }
+            parsedEvents.add(tParser.parseTraceFiles(files, numThreads));
+        }
+
+        List<EventNode> expected = parsedEvents.get(0);
+        List<EventNode> actual = parsedEvents.get(1);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getEvent(), actual.get(i).getEvent());
+            assertEquals(expected.get(i).getTraceID(), actual.get(i)
+                    .getTraceID());
+        }
+
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Parallel parsing of files partitioned by separators (which parses each
+     * file in a single task).
+     */
+    @Test
+    public void parseTraceFilesSeparatorTest() throws Exception {
+        AbstractMain.getInstance().options.debugParse = false;
+        checkParallelParse(Arrays.asList("^(?<TIME>\\d+) \\d+ (?<TYPE>.+)$"),
+                "^--$", 6, 200);
+    }
+
+    /**
+     * Parallel parsing of files with no incrementor fields, and with more
+     * lines than fit in one chunk (which parses chunks of each file in
+     * separate tasks).
+     */
+    @Test
+    public void parseTraceFilesChunksTest() throws Exception {
+        AbstractMain.getInstance().options.debugParse = false;
+        checkParallelParse(Arrays.asList(
+                "^(?<TIME>\\d+) (?<PARTITION>\\d+) (?<TYPE>e[0-3])$",
+                "^\\d+ \\d+ e4(?<HIDE=>true)$"), null, 3, 10000);
+    }
+
+    // //////////////////////////////////////////////////////////////////////////
+    // Trace snapshot tests
+    // //////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes a snapshot of the events parsed by tParser to a temporary file,
+     * loads it into loadedParser, and checks that the loaded events are equal
+     * to the parsed ones, and are in the same traces.
+     * 
+     * @return the loaded events
+     */
+    private List<EventNode> checkSnapshot(TraceParser tParser,
+            List<EventNode> events, TraceParser loadedParser) throws Exception {
+        File file = File.createTempFile("traceSnapshotTest", ".snapshot");
+        file.deleteOnExit();
+        TraceSnapshot.write(tParser, events, file);
+        List<EventNode> loaded = TraceSnapshot.read(loadedParser, file);
+        file.delete();
+
+        assertEquals(tParser.logTimeTypeIsTotallyOrdered(),
+                loadedParser.logTimeTypeIsTotallyOrdered());
+        assertEquals(events.size(), loaded.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(events.get(i).getEvent(), loaded.get(i).getEvent());
+            assertEquals(events.get(i).getTraceID(), loaded.get(i)
+                    .getTraceID());
+        }
+        return loaded;
+    }
+
+    /**
+     * Loading a snapshot of a totally ordered log with multiple relations
+     * results in the same trace graph as parsing the log.
+     */
+    @Test
+    public void traceSnapshotTOTest() throws Exception {
+        String traceStr = "0 call main\n" + "1 call foo\n" + "2 return main\n"
+                + "--\n" + "2 call main\n" + "1 call \u00e9t\u00e9\n"
+                + "0 return main\n" + "--\n" + "0.5 call foo";
+        parser.addRegex("^(?<DTIME>)(?<RELATION>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        ArrayList<EventNode> events = parser.parseTraceString(traceStr, "test",
+                -1);
+        ChainsTraceGraph expectedGraph = parser
+                .generateDirectTORelation(events);
+
+        TraceParser loadedParser = new TraceParser();
+        List<EventNode> loaded = checkSnapshot(parser, events, loadedParser);
+        ChainsTraceGraph graph = loadedParser.generateDirectTORelation(loaded);
+
+        assertEquals(3, graph.getTraces().size());
+        assertTrue(expectedGraph.equalsWith(graph,
+                new IBoolBinary<EventNode, EventNode>() {
+                    @Override
+                    public boolean eval(EventNode a, EventNode b) {
+                        return (a.getEvent().equals(b.getEvent()));
+                    }
+                }));
+    }
+
+    /**
+     * Loading a snapshot of a partially ordered log restores the vector times
+     * and process names of the events.
+     */
+    @Test
+    public void traceSnapshotVTimeTest() throws Exception {
+        String traceStr = "1,0 0 send\n" + "1,1 1 recv\n" + "2,1 0 done\n";
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        ArrayList<EventNode> events = parser.parseTraceString(traceStr, "test",
+                -1);
+
+        TraceParser loadedParser = new TraceParser();
+        List<EventNode> loaded = checkSnapshot(parser, events, loadedParser);
+        assertFalse(loadedParser.logTimeTypeIsTotallyOrdered());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(events.get(i).getEType(), loaded.get(i).getEType());
+            assertTrue(events.get(i).getEType() != loaded.get(i).getEType());
+        }
+        assertEquals(parser.generateDirectPORelation(events).getNodes().size(),
+                loadedParser.generateDirectPORelation(loaded).getNodes()
+                        .size());
+    }
+
+    /**
+     * A file that is not a trace snapshot cannot be loaded -- expect a
+     * ParseException.
+     */
+    @Test(expected = ParseException.class)
+    public void traceSnapshotBadFileExpExceptionTest() throws Exception {
+        File file = File.createTempFile("traceSnapshotTest", ".log");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("0 call main\n".getBytes());
+        out.close();
+        try {
+            TraceSnapshot.read(new TraceParser(), file);
+        } finally {
+            file.delete();
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package synoptic.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of long values, stored in an open-addressing hash table of primitive
+ * longs rather than as boxed Longs in a HashSet. Long.MIN_VALUE cannot be
+ * stored, since it marks empty slots.
+ */
+public class LongHashSet {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] table;
+    private int size = 0;
+
+    public LongHashSet() {
+        table = new long[16];
+        Arrays.fill(table, EMPTY);
+    }
+
+    private static int hash(long value) {
+        // Spread the bits of value (a Murmur3 finalizer step), since ids
+        // packed into longs tend to differ only in a few low bits.
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+    /**
+     * Returns the slot that holds value, or the empty slot where it would be
+     * inserted.
+     */
+    private int slot(long[] t, long value) {
+        int mask = t.length - 1;
+        int i = hash(value) & mask;
+        while (t[i] != EMPTY && t[i] != value) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Adds value to the set.
+     *
+     * @return true if the set did not already contain value
+     */
+    public boolean add(long value) {
+        assert value != EMPTY;
+
+        int i = slot(table, value);
+        if (table[i] == value) {
+            return false;
+        }
+        table[i] = value;
+        size++;
+        // Keep the table at most half full.
+        if (size * 2 > table.length) {
+            long[] newTable = new long[table.length * 2];
+            Arrays.fill(newTable, EMPTY);
+            for (long v : table) {
+                if (v != EMPTY) {
+                    newTable[slot(newTable, v)] = v;
+                }
+            }
+            table = newTable;
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        return value != EMPTY && table[slot(table, value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+}
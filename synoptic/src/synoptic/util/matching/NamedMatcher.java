@@ -105,8 +105,14 @@ public class NamedMatcher implements INamedMatchResult {
     }
 
     public Map<String, String> namedGroups() {
-        Map<String, String> result = new LinkedHashMap<String, String>();
+        return namedGroups(new LinkedHashMap<String, String>());
+    }
 
+    /**
+     * Puts the named groups into result (e.g., a map that is reused for every
+     * match), and returns it.
+     */
+    public Map<String, String> namedGroups(Map<String, String> result) {
         for (int i = 1; i <= groupCount(); i++) {
             String groupName = parentPattern.groupNames().get(i - 1);
             String groupValue = matcher.group(i);
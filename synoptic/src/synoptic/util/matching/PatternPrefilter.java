@@ -0,0 +1,387 @@
+package synoptic.util.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Quickly determines which of a list of patterns may match (the whole of) a
+ * line, so that only those patterns have to be tried. For each pattern, the
+ * literal strings that every match of the pattern must contain are extracted
+ * from the top level of the regular expression. All of these literals are
+ * searched for in a single pass over a line with an Aho-Corasick automaton,
+ * and a pattern is a candidate only if the line contains all of its literals.
+ * Patterns from which no literals can be extracted (e.g., ones that use
+ * alternation at the top level, or inline flags) are always candidates. The
+ * prefilter is immutable, so it can be shared by threads.
+ */
+public class PatternPrefilter {
+    // Characters below this value have a dense transition table.
+    private static final int DENSE_CHARS = 128;
+
+    private final int numPatterns;
+
+    /**
+     * The literal ids that each pattern requires.
+     */
+    private final BitSet[] requiredLiterals;
+
+    /**
+     * Patterns that are candidates for every line.
+     */
+    private final BitSet unfiltered;
+
+    /**
+     * The Aho-Corasick automaton: a dense transition function for the ASCII
+     * characters, sparse goto transitions for the others, failure links, and
+     * the ids of the literals recognized in each state (or null if none).
+     */
+    private final int[][] denseNext;
+    private final List<Map<Character, Integer>> sparseNext;
+    private final int[] fail;
+    private final BitSet[] output;
+    private final int numLiterals;
+
+    public PatternPrefilter(List<NamedPattern> patterns) {
+        numPatterns = patterns.size();
+        requiredLiterals = new BitSet[numPatterns];
+        unfiltered = new BitSet();
+
+        Map<String, Integer> literalIds = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < numPatterns; i++) {
+            Pattern pattern = patterns.get(i).pattern();
+            List<String> literals = null;
+            if (pattern.flags() == 0) {
+                literals = requiredLiterals(pattern.pattern());
+            }
+            if (literals == null || literals.isEmpty()) {
+                unfiltered.set(i);
+                continue;
+            }
+            requiredLiterals[i] = new BitSet();
+            for (String literal : literals) {
+                Integer id = literalIds.get(literal);
+                if (id == null) {
+                    id = literalIds.size();
+                    literalIds.put(literal, id);
+                }
+                requiredLiterals[i].set(id);
+            }
+        }
+        numLiterals = literalIds.size();
+
+        // Build the trie of the literals.
+        List<int[]> dense = new ArrayList<int[]>();
+        sparseNext = new ArrayList<Map<Character, Integer>>();
+        List<BitSet> out = new ArrayList<BitSet>();
+        newState(dense, out);
+        for (Map.Entry<String, Integer> entry : literalIds.entrySet()) {
+            int state = 0;
+            for (char c : entry.getKey().toCharArray()) {
+                int next = getNext(dense, state, c);
+                if (next < 0) {
+                    next = newState(dense, out);
+                    setNext(dense, state, c, next);
+                }
+                state = next;
+            }
+            out.get(state).set(entry.getValue());
+        }
+
+        // Compute the failure links breadth-first, completing the dense
+        // transition function so that it never needs to follow them.
+        int numStates = dense.size();
+        fail = new int[numStates];
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int c = 0; c < DENSE_CHARS; c++) {
+            int next = dense.get(0)[c];
+            if (next < 0) {
+                dense.get(0)[c] = 0;
+            } else {
+                queue.add(next);
+            }
+        }
+        for (int next : sparseNext.get(0).values()) {
+            queue.add(next);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            out.get(state).or(out.get(fail[state]));
+            for (int c = 0; c < DENSE_CHARS; c++) {
+                int next = dense.get(state)[c];
+                if (next < 0) {
+                    dense.get(state)[c] = dense.get(fail[state])[c];
+                } else {
+                    fail[next] = dense.get(fail[state])[c];
+                    queue.add(next);
+                }
+            }
+            for (Map.Entry<Character, Integer> entry : sparseNext.get(state)
+                    .entrySet()) {
+                fail[entry.getValue()] = step(fail[state], entry.getKey());
+                queue.add(entry.getValue());
+            }
+        }
+        denseNext = dense.toArray(new int[numStates][]);
+        // States that recognize no literals have a null output.
+        output = new BitSet[numStates];
+        for (int state = 0; state < numStates; state++) {
+            if (!out.get(state).isEmpty()) {
+                output[state] = out.get(state);
+            }
+        }
+    }
+
+    private int newState(List<int[]> dense, List<BitSet> out) {
+        int[] next = new int[DENSE_CHARS];
+        Arrays.fill(next, -1);
+        dense.add(next);
+        sparseNext.add(new HashMap<Character, Integer>());
+        out.add(new BitSet());
+        return dense.size() - 1;
+    }
+
+    private int getNext(List<int[]> dense, int state, char c) {
+        if (c < DENSE_CHARS) {
+            return dense.get(state)[c];
+        }
+        Integer next = sparseNext.get(state).get(c);
+        return next == null ? -1 : next;
+    }
+
+    private void setNext(List<int[]> dense, int state, char c, int next) {
+        if (c < DENSE_CHARS) {
+            dense.get(state)[c] = next;
+        } else {
+            sparseNext.get(state).put(c, next);
+        }
+    }
+
+    /**
+     * The automaton's transition from state on a (non-ASCII) character c that
+     * has no dense transitions. Only valid for states whose failure links
+     * have been computed.
+     */
+    private int step(int state, char c) {
+        while (true) {
+            Integer next = sparseNext.get(state).get(c);
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Returns the indices of the patterns that may match the whole of line.
+     * The caller may modify the returned set.
+     */
+    public BitSet candidates(CharSequence line) {
+        BitSet candidates = (BitSet) unfiltered.clone();
+        if (numLiterals == 0) {
+            return candidates;
+        }
+
+        BitSet found = new BitSet(numLiterals);
+        int state = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < DENSE_CHARS) {
+                state = denseNext[state][c];
+            } else {
+                state = step(state, c);
+            }
+            if (output[state] != null) {
+                found.or(output[state]);
+            }
+        }
+
+        for (int i = 0; i < numPatterns; i++) {
+            if (requiredLiterals[i] != null && containsAll(found,
+                    requiredLiterals[i])) {
+                candidates.set(i);
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean containsAll(BitSet set, BitSet subset) {
+        for (int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1)) {
+            if (!set.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the literal strings that must occur in any string that the
+     * regular expression matches in its entirety, or null if the expression
+     * uses constructs that this method does not interpret. Only literals at
+     * the top level of the expression are extracted: groups and character
+     * classes are skipped over, and an alternation at the top level means that
+     * nothing is required.
+     */
+    static List<String> requiredLiterals(String regex) {
+        if (regex.contains("\\Q")) {
+            return null;
+        }
+
+        List<String> literals = new ArrayList<String>();
+        StringBuilder cur = new StringBuilder();
+        // Whether the last atom is the last character of cur.
+        boolean lastWasLiteral = false;
+        int i = 0;
+        int n = regex.length();
+        while (i < n) {
+            char c = regex.charAt(i);
+            if (c == '(') {
+                if (i + 1 < n && regex.charAt(i + 1) == '?' && i + 2 < n
+                        && "idmsuxU-".indexOf(regex.charAt(i + 2)) >= 0) {
+                    // Inline flags (e.g., case insensitivity).
+                    return null;
+                }
+                addLiteral(literals, cur);
+                i = skipGroup(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+                lastWasLiteral = false;
+            } else if (c == '[') {
+                addLiteral(literals, cur);
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+                lastWasLiteral = false;
+            } else if (c == '|') {
+                return new ArrayList<String>();
+            } else if (c == '\\') {
+                if (i + 1 >= n) {
+                    return null;
+                }
+                char d = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(d)) {
+                    if ("dDsSwWbB".indexOf(d) < 0) {
+                        // E.g., hex escapes or back-references.
+                        return null;
+                    }
+                    addLiteral(literals, cur);
+                    lastWasLiteral = false;
+                } else {
+                    cur.append(d);
+                    lastWasLiteral = true;
+                }
+                i += 2;
+            } else if (c == '*' || c == '+' || c == '?' || c == '{') {
+                // The preceding atom is optional or repeated.
+                if (lastWasLiteral) {
+                    cur.setLength(cur.length() - 1);
+                }
+                addLiteral(literals, cur);
+                lastWasLiteral = false;
+                if (c == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i < 0) {
+                        return null;
+                    }
+                }
+                i++;
+                // Skip lazy and possessive modifiers.
+                if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    i++;
+                }
+            } else if (c == '.' || c == '^' || c == '$') {
+                addLiteral(literals, cur);
+                lastWasLiteral = false;
+                i++;
+            } else {
+                cur.append(c);
+                lastWasLiteral = true;
+                i++;
+            }
+        }
+        addLiteral(literals, cur);
+        return literals;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder cur) {
+        if (cur.length() > 0) {
+            literals.add(cur.toString());
+            cur.setLength(0);
+        }
+    }
+
+    /**
+     * Returns the index just after the group that starts at regex[start], or
+     * -1 if the group is not terminated.
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index just after the character class that starts at
+     * regex[start], or -1 if the class is not terminated.
+     */
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                depth++;
+                // A ']' right after the opening bracket (or its negation) is a
+                // literal.
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
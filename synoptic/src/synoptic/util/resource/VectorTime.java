@@ -1,6 +1,7 @@
 package synoptic.util.resource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -252,6 +253,13 @@ public class VectorTime extends AbstractResource {
         return true;
     }
 
+    /**
+     * Returns the clocks of this vector timestamp.
+     */
+    public List<Integer> getVector() {
+        return Collections.unmodifiableList(vector);
+    }
+
     /*
      * (non-Javadoc)
      * 
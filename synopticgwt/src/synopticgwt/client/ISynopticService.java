@@ -11,6 +11,7 @@ import synopticgwt.shared.GWTEdge;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
 import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTJobProgress;
 import synopticgwt.shared.GWTPair;
 import synopticgwt.shared.GWTSynOpts;
 import synopticgwt.shared.LogLine;
@@ -75,6 +76,56 @@ public interface ISynopticService extends RemoteService {
      */
     GWTGraph getFinalModel() throws Exception;
 
+    /**
+     * Starts a server-side job that performs a single step of refinement on
+     * the cached model. The job's single result is the delta that
+     * refineOneStep() returns.
+     * 
+     * @return the id of the job
+     * @throws Exception
+     */
+    int startRefineOneStep() throws Exception;
+
+    /**
+     * Starts a server-side job that coarsens the completely refined model. The
+     * job's last result contains the coarsened model.
+     * 
+     * @return the id of the job
+     * @throws Exception
+     */
+    int startCoarsenCompletely() throws Exception;
+
+    /**
+     * Starts a server-side job that completes any refinement left to be done
+     * and then coarsens the graph. The job's results contain the refined model
+     * and then the final model.
+     * 
+     * @return the id of the job
+     * @throws Exception
+     */
+    int startGetFinalModel() throws Exception;
+
+    /**
+     * Returns the progress of a job started by this session.
+     * 
+     * @param jobID
+     * @return
+     * @throws Exception
+     */
+    GWTJobProgress getJobProgress(int jobID) throws Exception;
+
+    /**
+     * Returns the results that a job started by this session computed so far,
+     * starting from the fromIndex-th one.
+     * 
+     * @param jobID
+     * @param fromIndex
+     * @return
+     * @throws Exception
+     */
+    List<GWTGraphDelta> getJobResults(int jobID, int fromIndex)
+            throws Exception;
+
     /**
      * Find the requested partition and returns a list of log lines, each in the
      * form [line #, line, filename]
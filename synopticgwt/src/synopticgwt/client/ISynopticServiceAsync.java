@@ -10,6 +10,7 @@ import synopticgwt.shared.GWTEdge;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
 import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTJobProgress;
 import synopticgwt.shared.GWTPair;
 import synopticgwt.shared.GWTSynOpts;
 import synopticgwt.shared.LogLine;
@@ -39,6 +40,19 @@ public interface ISynopticServiceAsync {
 
     void getFinalModel(AsyncCallback<GWTGraph> callback) throws Exception;
 
+    void startRefineOneStep(AsyncCallback<Integer> callback) throws Exception;
+
+    void startCoarsenCompletely(AsyncCallback<Integer> callback)
+            throws Exception;
+
+    void startGetFinalModel(AsyncCallback<Integer> callback) throws Exception;
+
+    void getJobProgress(int jobID, AsyncCallback<GWTJobProgress> callback)
+            throws Exception;
+
+    void getJobResults(int jobID, int fromIndex,
+            AsyncCallback<List<GWTGraphDelta>> callback) throws Exception;
+
     void handleLogRequest(int nodeID, AsyncCallback<List<LogLine>> callback)
             throws Exception;
 
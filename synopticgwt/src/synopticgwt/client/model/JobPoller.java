@@ -0,0 +1,146 @@
+package synopticgwt.client.model;
+
+import java.util.List;
+
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import synopticgwt.client.ISynopticServiceAsync;
+import synopticgwt.client.util.ErrorReportingAsyncCallback;
+import synopticgwt.client.util.ProgressWheel;
+import synopticgwt.shared.GWTGraphDelta;
+import synopticgwt.shared.GWTJobProgress;
+
+/**
+ * Polls the Synoptic service for the progress of a refinement/coarsening job
+ * until the job is done, and fetches the results of the job as they become
+ * available. The progress wheel animates from the construction of the poller
+ * until the job is done, the progress of the job is reported on each poll,
+ * and errors are reported like those of other RPCs.
+ */
+abstract class JobPoller extends Timer {
+    /** Milliseconds between two polls. */
+    private static final int pollPeriod = 500;
+
+    private final ISynopticServiceAsync synopticService;
+
+    /** Reports the end of the job, like the callback of a synchronous call. */
+    private final ErrorReportingAsyncCallback<Void> jobCallback;
+
+    private int jobID;
+
+    /** The number of results fetched so far. */
+    private int numResults = 0;
+
+    public JobPoller(ISynopticServiceAsync synopticService,
+            ProgressWheel pWheel, String defaultErrorMsg) {
+        this.synopticService = synopticService;
+        this.jobCallback = new ErrorReportingAsyncCallback<Void>(pWheel,
+                defaultErrorMsg) {
+            @Override
+            public void onFailure(Throwable caught) {
+                super.onFailure(caught);
+                onJobFailure();
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+                super.onSuccess(result);
+                onJobDone();
+            }
+        };
+    }
+
+    /** Starts polling for the job with id jobID. */
+    public void start(int jobID) {
+        this.jobID = jobID;
+        schedule(pollPeriod);
+    }
+
+    /**
+     * Called with the results that the job computed since the last call, in
+     * order.
+     */
+    protected abstract void onResults(List<GWTGraphDelta> results);
+
+    /** Called with the progress of the job, each time that it is polled. */
+    protected void onProgress(GWTJobProgress progress) {
+        // Nothing to do by default.
+    }
+
+    /** Called when the job is done, after its last results. */
+    protected abstract void onJobDone();
+
+    /** Called when the job, or polling for it, failed. */
+    protected void onJobFailure() {
+        // Nothing to do by default.
+    }
+
+    @Override
+    public void run() {
+        try {
+            synopticService.getJobProgress(jobID,
+                    new AsyncCallback<GWTJobProgress>() {
+                        @SuppressWarnings("synthetic-access")
+                        @Override
+                        public void onFailure(Throwable caught) {
+                            jobCallback.onFailure(caught);
+                        }
+
+                        @SuppressWarnings("synthetic-access")
+                        @Override
+                        public void onSuccess(GWTJobProgress progress) {
+                            onProgress(progress);
+                            if (progress.getNumResults() > numResults) {
+                                fetchResults(progress);
+                            } else {
+                                continuePolling(progress);
+                            }
+                        }
+                    });
+        } catch (Exception ex) {
+            // Exceptions are handled by callback.
+        }
+    }
+
+    /** Fetches the new results of the job, and then continues polling. */
+    private void fetchResults(final GWTJobProgress progress) {
+        try {
+            synopticService.getJobResults(jobID, numResults,
+                    new AsyncCallback<List<GWTGraphDelta>>() {
+                        @SuppressWarnings("synthetic-access")
+                        @Override
+                        public void onFailure(Throwable caught) {
+                            jobCallback.onFailure(caught);
+                        }
+
+                        @SuppressWarnings("synthetic-access")
+                        @Override
+                        public void onSuccess(List<GWTGraphDelta> results) {
+                            numResults += results.size();
+                            if (!results.isEmpty()) {
+                                onResults(results);
+                            }
+                            continuePolling(progress);
+                        }
+                    });
+        } catch (Exception ex) {
+            // Exceptions are handled by callback.
+        }
+    }
+
+    /**
+     * Schedules the next poll, or reports the end of the job if it is done.
+     * Polls are scheduled one at a time, so that a slow server does not
+     * accumulate them.
+     */
+    private void continuePolling(GWTJobProgress progress) {
+        if (!progress.isDone()) {
+            schedule(pollPeriod);
+        } else if (progress.getError() != null) {
+            jobCallback.onFailure(new Exception(progress.getError()));
+        } else {
+            jobCallback.onSuccess(null);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.google.gwt.user.client.ui.DockLayoutPanel;
 import com.google.gwt.user.client.ui.FlowPanel;
 import com.google.gwt.user.client.ui.Grid;
 import com.google.gwt.user.client.ui.HorizontalPanel;
+import com.google.gwt.user.client.ui.Label;
 import com.google.gwt.user.client.ui.RadioButton;
 
 import synopticgwt.client.ISynopticServiceAsync;
@@ -30,6 +31,7 @@ import synopticgwt.client.util.ProgressWheel;
 import synopticgwt.client.util.TooltipListener;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
+import synopticgwt.shared.GWTJobProgress;
 import synopticgwt.shared.LogLine;
 
 /**
@@ -61,6 +63,9 @@ public class ModelTab extends Tab<DockLayoutPanel> {
     private final Button modelExportPngButton = new Button("Export PNG");
     private final Button modelViewPathsButton = new Button("View Paths");
 
+    // Shows the progress of a refinement/coarsening job while it runs.
+    private final Label jobProgressLabel = new Label();
+
     // Model options widgets
     // Whether or not to show edge transition counts (true) or transition
     // probabilities (false).
@@ -124,6 +129,8 @@ public class ModelTab extends Tab<DockLayoutPanel> {
         modelCoarsenButton.setWidth(buttonWidthStr);
         modelGetFinalButton.setWidth(buttonWidthStr);
         topControlsPanel.add(manualControlButtonsPanel);
+        jobProgressLabel.setVisible(false);
+        topControlsPanel.add(jobProgressLabel);
 
         // Set up buttons for exporting models.
         exportButtonsPanel = new HorizontalPanel();
@@ -565,14 +572,13 @@ public class ModelTab extends Tab<DockLayoutPanel> {
         modelCoarsenButton.setEnabled(false);
         try {
             synopticService
-                    .coarsenCompletely(new ErrorReportingAsyncCallback<GWTGraph>(
-                            pWheel, "coarsenOneStep call") {
-                        @SuppressWarnings("synthetic-access")
+                    .startCoarsenCompletely(new ErrorReportingAsyncCallback<Integer>(
+                            pWheel, "startCoarsenCompletely call") {
                         @Override
-                        public void onSuccess(GWTGraph graph) {
-                            super.onSuccess(graph);
-                            showGraph(graph);
-                            disableManualControlButtons();
+                        public void onSuccess(Integer jobID) {
+                            super.onSuccess(jobID);
+                            new ModelJobPoller("coarsenCompletely job")
+                                    .start(jobID);
                         }
                     });
         } catch (Exception ex) {
@@ -588,14 +594,13 @@ public class ModelTab extends Tab<DockLayoutPanel> {
         // ////////////////////// Call to remote service.
         try {
             synopticService
-                    .getFinalModel(new ErrorReportingAsyncCallback<GWTGraph>(
-                            pWheel, "getFinalModel call") {
-
+                    .startGetFinalModel(new ErrorReportingAsyncCallback<Integer>(
+                            pWheel, "startGetFinalModel call") {
                         @Override
-                        public void onSuccess(GWTGraph graph) {
-                            super.onSuccess(graph);
-                            showGraph(graph);
-                            disableManualControlButtons();
+                        public void onSuccess(Integer jobID) {
+                            super.onSuccess(jobID);
+                            new ModelJobPoller("getFinalModel job")
+                                    .start(jobID);
                         }
                     });
         } catch (Exception ex) {
@@ -604,6 +609,43 @@ public class ModelTab extends Tab<DockLayoutPanel> {
         // //////////////////////
     }
 
+    /**
+     * Polls for a job that coarsens the model (and possibly refines it first),
+     * showing each model that the job computes.
+     */
+    class ModelJobPoller extends JobPoller {
+        public ModelJobPoller(String defaultErrorMsg) {
+            super(synopticService, pWheel, defaultErrorMsg);
+        }
+
+        @Override
+        protected void onResults(List<GWTGraphDelta> results) {
+            // Only the latest model is worth drawing.
+            showGraph(results.get(results.size() - 1).getGraph());
+        }
+
+        @Override
+        protected void onProgress(GWTJobProgress progress) {
+            String step = progress.isCoarsening() ? "Coarsening" : "Refining";
+            jobProgressLabel.setText(step + ": round " + progress.getRound()
+                    + ", " + progress.getNumUnsatInvs()
+                    + " unsatisfied invariants, "
+                    + progress.getNumPartitions() + " nodes");
+            jobProgressLabel.setVisible(true);
+        }
+
+        @Override
+        protected void onJobDone() {
+            jobProgressLabel.setVisible(false);
+            disableManualControlButtons();
+        }
+
+        @Override
+        protected void onJobFailure() {
+            jobProgressLabel.setVisible(false);
+        }
+    }
+
     /** Called when the call to retrieve final model succeeded. */
     public void disableManualControlButtons() {
         modelRefineButton.setEnabled(false);
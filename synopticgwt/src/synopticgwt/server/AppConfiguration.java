@@ -66,6 +66,12 @@ public class AppConfiguration {
      */
     public int vID;
 
+    /**
+     * The maximum number of refinement/coarsening jobs that run at the same
+     * time, across all sessions.
+     */
+    public final int maxRunningJobs;
+
     /**
      * Private constructor prevents instantiation from other classes
      * 
@@ -122,6 +128,9 @@ public class AppConfiguration {
             }
         }
 
+        maxRunningJobs = Integer.parseInt(System.getProperty(
+                "maxRunningJobs", "2"));
+
         this.synopticGWTChangesetID = synopticGWTChangesetID;
 
         try {
@@ -0,0 +1,65 @@
+package synopticgwt.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+/**
+ * The refinement/coarsening jobs started by a session, which is stored as a
+ * session attribute. Since a session runs one job at a time, only its latest
+ * job is kept: the finished jobs are dropped when a new job is added. When
+ * the session ends (or the attribute is removed), the jobs that have not
+ * finished yet are cancelled.
+ */
+class SessionJobs implements HttpSessionBindingListener {
+    private final Map<Integer, SynopticJob> jobs = new LinkedHashMap<Integer, SynopticJob>();
+
+    synchronized void add(SynopticJob job) {
+        Iterator<SynopticJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+        jobs.put(job.getJobID(), job);
+    }
+
+    /** Returns the job with the given id, or null if the session has none. */
+    synchronized SynopticJob get(int jobID) {
+        return jobs.get(jobID);
+    }
+
+    /** Returns a job of the session that has not finished, or null. */
+    synchronized SynopticJob getRunningJob() {
+        for (SynopticJob job : jobs.values()) {
+            if (!job.isDone()) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void valueBound(HttpSessionBindingEvent event) {
+        // Nothing to do.
+    }
+
+    @Override
+    public void valueUnbound(HttpSessionBindingEvent event) {
+        List<SynopticJob> toCancel;
+        synchronized (this) {
+            toCancel = new ArrayList<SynopticJob>(jobs.values());
+            jobs.clear();
+        }
+        for (SynopticJob job : toCancel) {
+            if (!job.isDone()) {
+                job.cancel();
+            }
+        }
+    }
+}
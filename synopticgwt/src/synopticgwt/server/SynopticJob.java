@@ -0,0 +1,298 @@
+package synopticgwt.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpSession;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.IBisimulationListener;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.main.AbstractMain;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synopticgwt.shared.GWTGraphDelta;
+import synopticgwt.shared.GWTJobProgress;
+import synopticgwt.shared.GWTNode;
+
+/**
+ * Refines and/or coarsens the model of a session on a server thread, so that
+ * the request that started it does not wait for Bisimulation. The job reports
+ * its progress after every round, and publishes the model deltas that it
+ * computes as soon as they are available. The job works on the refinement
+ * state of its session, which it stores back into the session when it
+ * finishes; while it runs, SynopticService does not let the session's other
+ * requests access this state.
+ */
+class SynopticJob implements Runnable, IBisimulationListener {
+    static Logger logger = Logger.getLogger("SynopticJob");
+
+    private static final AtomicInteger nextJobID = new AtomicInteger();
+
+    /** The kinds of jobs, corresponding to the synchronous service calls. */
+    enum Kind {
+        REFINE_ONE_STEP, COARSEN_COMPLETELY, GET_FINAL_MODEL
+    }
+
+    private final int jobID = nextJobID.getAndIncrement();
+    private final Kind kind;
+    private final HttpSession session;
+    private final PerformanceMetrics metrics;
+
+    // The refinement state of the session.
+    private final PartitionGraph pGraph;
+    private int numSplitSteps;
+    private final Set<ITemporalInvariant> unsatInvs;
+    private List<CExamplePath<Partition>> counterExampleTraces;
+
+    /** The executor used for parallel checking while the job runs, or null. */
+    private ExecutorService executor = null;
+
+    // Progress, written by the job thread and read by polling requests.
+    private volatile boolean coarsening = false;
+    private volatile int round = 0;
+    private volatile int numUnsatInvs;
+    private volatile int numPartitions;
+    private volatile boolean done = false;
+    private volatile String error = null;
+    private volatile boolean cancelled = false;
+
+    /** Set by whichever of run and cancel gets to the job first. */
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    /** The model deltas computed so far, in order. Guarded by this. */
+    private final List<GWTGraphDelta> results = new ArrayList<GWTGraphDelta>();
+
+    /** The execution of this job, once it is submitted. */
+    private volatile Future<?> future = null;
+
+    SynopticJob(Kind kind, HttpSession session, PerformanceMetrics metrics,
+            PartitionGraph pGraph, int numSplitSteps,
+            Set<ITemporalInvariant> unsatInvs,
+            List<CExamplePath<Partition>> counterExampleTraces) {
+        this.kind = kind;
+        this.session = session;
+        this.metrics = metrics;
+        this.pGraph = pGraph;
+        this.numSplitSteps = numSplitSteps;
+        this.unsatInvs = unsatInvs;
+        this.counterExampleTraces = counterExampleTraces;
+        numUnsatInvs = unsatInvs.size();
+        numPartitions = pGraph.getNodes().size();
+    }
+
+    int getJobID() {
+        return jobID;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Stops the job at the end of its current round, if it is running. This
+     * leaves the model of the session half-refined (or half-coarsened), so it
+     * is only done when the session ends or the model is replaced. A job that
+     * has not started yet is done right away, and never runs.
+     */
+    void cancel() {
+        cancelled = true;
+        if (started.compareAndSet(false, true)) {
+            error = "Job " + jobID + " was cancelled";
+            done = true;
+        }
+        Future<?> f = future;
+        if (f != null) {
+            f.cancel(true);
+        }
+    }
+
+    GWTJobProgress getProgress() {
+        // Read before the number of results, so that a done job reports all
+        // of them.
+        boolean isDone = done;
+        int numResults;
+        synchronized (this) {
+            numResults = results.size();
+        }
+        return new GWTJobProgress(jobID, coarsening, round, numUnsatInvs,
+                numPartitions, numResults, isDone, error);
+    }
+
+    /**
+     * Returns the model deltas computed by the job, starting from the
+     * fromIndex-th one.
+     */
+    synchronized List<GWTGraphDelta> getResults(int fromIndex) {
+        if (fromIndex >= results.size()) {
+            return new ArrayList<GWTGraphDelta>();
+        }
+        return new ArrayList<GWTGraphDelta>(results.subList(
+                Math.max(fromIndex, 0), results.size()));
+    }
+
+    private synchronized void publish(GWTGraphDelta delta) {
+        results.add(delta);
+    }
+
+    /**
+     * Publishes the current model, along with the invariants that it does not
+     * satisfy.
+     */
+    private void publishModel(GWTNode refinedNode) {
+        publish(new GWTGraphDelta(SynopticService.PGraphToGWTGraph(pGraph),
+                refinedNode,
+                SynopticService.TemporalInvariantSetToGWTInvariants(unsatInvs)));
+    }
+
+    @Override
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            // Cancelled before it started.
+            return;
+        }
+        PerformanceMetrics.setCurrent(metrics);
+        // The threads used to check invariants and merges in parallel are
+        // owned by the job, and do not outlive it.
+        executor = AbstractMain.getInstance().createExecutor();
+        try {
+            switch (kind) {
+            case REFINE_ONE_STEP:
+                refineOneStep();
+                break;
+            case COARSEN_COMPLETELY:
+                if (unsatInvs.isEmpty()) {
+                    coarsen();
+                }
+                break;
+            case GET_FINAL_MODEL:
+                Bisimulation
+                        .splitUntilAllInvsSatisfied(pGraph, this, executor);
+                unsatInvs.clear();
+                counterExampleTraces = null;
+                numUnsatInvs = 0;
+                publishModel(null);
+                coarsen();
+                break;
+            default:
+                throw new IllegalStateException("Unknown job kind " + kind);
+            }
+            storeSessionState();
+        } catch (CancellationException e) {
+            logger.info(e.getMessage());
+            error = e.getMessage();
+        } catch (Throwable t) {
+            logger.severe("Job " + jobID + " failed: " + t.toString());
+            t.printStackTrace();
+            error = t.toString();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            PerformanceMetrics.setCurrent(null);
+            done = true;
+        }
+    }
+
+    /**
+     * Performs a single step of refinement, like
+     * SynopticService.refineOneStep.
+     */
+    private void refineOneStep() {
+        if (counterExampleTraces == null) {
+            // We do not need to perform refinement.
+            return;
+        }
+        assert (counterExampleTraces.size() > 0);
+
+        // Perform a single refinement step.
+        numSplitSteps = Bisimulation.performSplits(numSplitSteps, pGraph,
+                counterExampleTraces);
+
+        // Recompute the counter-examples for the unsatisfied invariants.
+        counterExampleTraces = new TemporalInvariantSet(unsatInvs)
+                .getAllCounterExamples(pGraph, executor);
+
+        unsatInvs.clear();
+        if (counterExampleTraces != null) {
+            for (CExamplePath<Partition> relPath : counterExampleTraces) {
+                unsatInvs.add(relPath.invariant);
+            }
+        }
+        round = 1;
+        numUnsatInvs = unsatInvs.size();
+        numPartitions = pGraph.getNodes().size();
+
+        PartitionMultiSplit last = pGraph.getMostRecentSplit();
+        publishModel(SynopticService.gwtNodeFromPartition(last.getPartition()));
+    }
+
+    private void coarsen() {
+        coarsening = true;
+        Bisimulation.mergePartitions(pGraph, pGraph.getInvariants(), 1, this,
+                executor);
+        numPartitions = pGraph.getNodes().size();
+        publishModel(null);
+    }
+
+    /**
+     * Stores the refinement state back into the session, for the requests
+     * that follow the job. Nothing is stored if the session has moved on to
+     * another model (e.g. a new log was parsed) while the job ran.
+     */
+    private void storeSessionState() {
+        try {
+            synchronized (session) {
+                if (session.getAttribute("partitionGraph") != pGraph) {
+                    logger.info("Job " + jobID
+                            + " refined/coarsened a model that was replaced");
+                    return;
+                }
+                session.setAttribute("numSplitSteps", numSplitSteps);
+                session.setAttribute("unsatInvs", unsatInvs);
+                session.setAttribute("counterExampleTraces",
+                        counterExampleTraces);
+            }
+        } catch (IllegalStateException e) {
+            // The session ended while the job ran.
+        }
+    }
+
+    private void checkCancelled() {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Job " + jobID
+                    + " was cancelled");
+        }
+    }
+
+    @Override
+    public void refinementRound(int refinementRound, int numUnsat,
+            int numParts) {
+        round = refinementRound;
+        numUnsatInvs = numUnsat;
+        numPartitions = numParts;
+        checkCancelled();
+    }
+
+    @Override
+    public void coarseningRound(int coarseningRound, int numParts) {
+        round = coarseningRound;
+        numPartitions = numParts;
+        checkCancelled();
+    }
+}
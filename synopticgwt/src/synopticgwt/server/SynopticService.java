@@ -17,6 +17,10 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletContext;
@@ -27,6 +31,7 @@ import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
 import synoptic.algorithms.Bisimulation;
 import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
@@ -53,6 +58,7 @@ import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
 import synopticgwt.shared.GWTInvariant;
 import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTJobProgress;
 import synopticgwt.shared.GWTNode;
 import synopticgwt.shared.GWTPair;
 import synopticgwt.shared.GWTParseException;
@@ -79,6 +85,15 @@ public class SynopticService extends RemoteServiceServlet implements
     // Session attribute name storing path of client's uploaded log file.
     static final String logFileSessionAttribute = "logFilePath";
 
+    // Session attribute name storing the session's refinement/coarsening jobs.
+    static final String jobsSessionAttribute = "synopticJobs";
+
+    // The maximum number of jobs waiting for a thread, across all sessions.
+    static final int maxQueuedJobs = 32;
+
+    // Runs the refinement/coarsening jobs of all sessions.
+    static ThreadPoolExecutor jobExecutor = null;
+
     static AppConfiguration config = null;
     HttpSession session;
 
@@ -95,7 +110,7 @@ public class SynopticService extends RemoteServiceServlet implements
     // //////////////////////////////////////////////////////////////////////////////
     // Helper methods.
 
-    private GWTNode gwtNodeFromPartition(Partition p) {
+    static GWTNode gwtNodeFromPartition(Partition p) {
         return new GWTNode(p.getEType().toString(), p.hashCode());
     }
 
@@ -143,13 +158,28 @@ public class SynopticService extends RemoteServiceServlet implements
             return;
         }
 
-        dstSession.setAttribute("partitionGraph", pGraph);
-        dstSession.setAttribute("numSplitSteps", 0);
-        dstSession.setAttribute("unsatInvs", unsatInvs);
-        dstSession.setAttribute("minedInvs", minedInvs);
-        dstSession.setAttribute("activeInvs", activeInvs);
-        dstSession.setAttribute("traceGraph", traceGraph);
-        dstSession.setAttribute("counterExampleTraces", counterExampleTraces);
+        // Stored atomically with respect to the jobs of the session, which
+        // only store their state if the model is still theirs.
+        synchronized (dstSession) {
+            dstSession.setAttribute("partitionGraph", pGraph);
+            dstSession.setAttribute("numSplitSteps", 0);
+            dstSession.setAttribute("unsatInvs", unsatInvs);
+            dstSession.setAttribute("minedInvs", minedInvs);
+            dstSession.setAttribute("activeInvs", activeInvs);
+            dstSession.setAttribute("traceGraph", traceGraph);
+            dstSession.setAttribute("counterExampleTraces",
+                    counterExampleTraces);
+        }
+    }
+
+    /**
+     * Detaches the request thread, which serves other sessions' requests
+     * later, from the performance metrics of this request's session.
+     */
+    @Override
+    protected void onAfterResponseSerialized(String serializedResponse) {
+        PerformanceMetrics.setCurrent(null);
+        super.onAfterResponseSerialized(serializedResponse);
     }
 
     /**
@@ -165,6 +195,16 @@ public class SynopticService extends RemoteServiceServlet implements
         HttpServletRequest request = getThreadLocalRequest();
         session = request.getSession();
 
+        // Record the performance metrics of this request in those of its
+        // session, rather than in the metrics shared by all sessions.
+        PerformanceMetrics metrics = (PerformanceMetrics) session
+                .getAttribute("performanceMetrics");
+        if (metrics == null) {
+            metrics = new PerformanceMetrics();
+            session.setAttribute("performanceMetrics", metrics);
+        }
+        PerformanceMetrics.setCurrent(metrics);
+
         if (session.getAttribute("vID") == null) {
             logger.info("Derby support disabled");
         } else {
@@ -186,6 +226,9 @@ public class SynopticService extends RemoteServiceServlet implements
         // Retrieve stuff from storage, and if we can't find something then we
         // throw an error since we can't continue with refinement.
 
+        // The state belongs to the running job of the session, if any.
+        checkNoRunningJob();
+
         if (session.getAttribute("partitionGraph") == null) {
             throw new Exception("session attribute 'partitionGraph' missing");
         }
@@ -232,6 +275,100 @@ public class SynopticService extends RemoteServiceServlet implements
         return;
     }
 
+    /**
+     * Throws an exception if the current session has a running job, which
+     * owns the model of the session until it finishes.
+     */
+    private void checkNoRunningJob() throws Exception {
+        SynopticJob runningJob = getSessionJobs().getRunningJob();
+        if (runningJob != null) {
+            throw new Exception("The model is being refined/coarsened by job "
+                    + runningJob.getJobID());
+        }
+    }
+
+    /**
+     * Returns the jobs of the current session, creating them if necessary.
+     */
+    private SessionJobs getSessionJobs() {
+        synchronized (session) {
+            SessionJobs jobs = (SessionJobs) session
+                    .getAttribute(jobsSessionAttribute);
+            if (jobs == null) {
+                jobs = new SessionJobs();
+                session.setAttribute(jobsSessionAttribute, jobs);
+            }
+            return jobs;
+        }
+    }
+
+    /**
+     * Returns the job executor, creating it if necessary.
+     */
+    private static synchronized ThreadPoolExecutor getJobExecutor() {
+        if (jobExecutor == null) {
+            jobExecutor = new ThreadPoolExecutor(config.maxRunningJobs,
+                    config.maxRunningJobs, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(maxQueuedJobs));
+            jobExecutor.allowCoreThreadTimeOut(true);
+        }
+        return jobExecutor;
+    }
+
+    /**
+     * Starts a job of the given kind on the refinement state of the current
+     * session, and returns its id. Assumes that the state was retrieved.
+     */
+    private int startJob(SynopticJob.Kind kind) throws Exception {
+        SynopticJob job = new SynopticJob(kind, session,
+                (PerformanceMetrics) session.getAttribute("performanceMetrics"),
+                pGraph, numSplitSteps, unsatInvs, counterExampleTraces);
+        SessionJobs jobs = getSessionJobs();
+        synchronized (jobs) {
+            // Checked again, in case another request started a job after
+            // retrieveSynopticSessionState.
+            if (jobs.getRunningJob() != null) {
+                throw new Exception("The model is being refined/coarsened by job "
+                        + jobs.getRunningJob().getJobID());
+            }
+            try {
+                job.setFuture(getJobExecutor().submit(job));
+            } catch (RejectedExecutionException e) {
+                throw new Exception(
+                        "The server is too busy to refine/coarsen the model, try again later");
+            }
+            jobs.add(job);
+        }
+        logger.info("Started job " + job.getJobID() + ": " + kind);
+        return job.getJobID();
+    }
+
+    /**
+     * Returns the job of the current session with the given id.
+     */
+    private SynopticJob getJob(int jobID) throws Exception {
+        SynopticJob job = getSessionJobs().get(jobID);
+        if (job == null) {
+            throw new Exception("Unknown job " + jobID);
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the jobs that are still running when the servlet is taken out of
+     * service.
+     */
+    @Override
+    public void destroy() {
+        synchronized (SynopticService.class) {
+            if (jobExecutor != null) {
+                jobExecutor.shutdownNow();
+                jobExecutor = null;
+            }
+        }
+        super.destroy();
+    }
+
     /**
      * Converts a partition graph into a GWTGraph
      * 
@@ -239,7 +376,7 @@ public class SynopticService extends RemoteServiceServlet implements
      *            partition graph
      * @return Equivalent GWTGraph
      */
-    private GWTGraph PGraphToGWTGraph(PartitionGraph partGraph) {
+    static GWTGraph PGraphToGWTGraph(PartitionGraph partGraph) {
         GWTGraph graph = new GWTGraph();
 
         Set<Partition> nodeSet = partGraph.getNodes();
@@ -305,7 +442,7 @@ public class SynopticService extends RemoteServiceServlet implements
      * Calls the TemporalInvariantSetToGWTInvariants below, but first determines
      * if there are any concurrency invariants in the input set.
      */
-    private GWTInvariantSet TemporalInvariantSetToGWTInvariants(
+    static GWTInvariantSet TemporalInvariantSetToGWTInvariants(
             Set<ITemporalInvariant> invs) {
         boolean containsConcurrencyInvs = false;
         for (ITemporalInvariant inv : invs) {
@@ -326,7 +463,7 @@ public class SynopticService extends RemoteServiceServlet implements
      * @param invs
      * @return Equivalent GWTInvariants
      */
-    private GWTInvariantSet TemporalInvariantSetToGWTInvariants(
+    static GWTInvariantSet TemporalInvariantSetToGWTInvariants(
             boolean containsConcurrencyInvs, Set<ITemporalInvariant> invs) {
         GWTInvariantSet GWTinvs = new GWTInvariantSet();
         for (ITemporalInvariant inv : invs) {
@@ -386,6 +523,15 @@ public class SynopticService extends RemoteServiceServlet implements
 
         retrieveSessionState();
 
+        // The new log replaces the model of the session, so a job that is
+        // still refining/coarsening the old model is no longer needed.
+        SynopticJob runningJob = getSessionJobs().getRunningJob();
+        if (runningJob != null) {
+            logger.info("Cancelling job " + runningJob.getJobID()
+                    + " of the previous log");
+            runningJob.cancel();
+        }
+
         if (AbstractMain.instance == null) {
             // Set up some static variables in Main that are necessary to use
             // the Synoptic library.
@@ -622,6 +768,55 @@ public class SynopticService extends RemoteServiceServlet implements
         return PGraphToGWTGraph(pGraph);
     }
 
+    /**
+     * Starts a job that performs a single step of refinement on the cached
+     * model.
+     */
+    @Override
+    public int startRefineOneStep() throws Exception {
+        retrieveSynopticSessionState();
+        return startJob(SynopticJob.Kind.REFINE_ONE_STEP);
+    }
+
+    /**
+     * Starts a job that coarsens the completely refined model.
+     */
+    @Override
+    public int startCoarsenCompletely() throws Exception {
+        retrieveSynopticSessionState();
+        return startJob(SynopticJob.Kind.COARSEN_COMPLETELY);
+    }
+
+    /**
+     * Starts a job that completes any refinement left to be done and then
+     * coarsens the model.
+     */
+    @Override
+    public int startGetFinalModel() throws Exception {
+        retrieveSynopticSessionState();
+        return startJob(SynopticJob.Kind.GET_FINAL_MODEL);
+    }
+
+    /**
+     * Returns the progress of a job of the current session.
+     */
+    @Override
+    public GWTJobProgress getJobProgress(int jobID) throws Exception {
+        retrieveSessionState();
+        return getJob(jobID).getProgress();
+    }
+
+    /**
+     * Returns the model deltas computed by a job of the current session,
+     * starting from the fromIndex-th one.
+     */
+    @Override
+    public List<GWTGraphDelta> getJobResults(int jobID, int fromIndex)
+            throws Exception {
+        retrieveSessionState();
+        return getJob(jobID).getResults(fromIndex);
+    }
+
     /**
      * Find the requested partition and returns a list of log lines, each in the
      * form [line #, line, filename]
@@ -659,6 +854,7 @@ public class SynopticService extends RemoteServiceServlet implements
     @Override
     public String exportDot() throws Exception {
         retrieveSessionState();
+        checkNoRunningJob();
         StringWriter sWriter = new StringWriter();
         GraphExporter.exportGraph(sWriter, pGraph, true);
         return sWriter.toString();
@@ -671,6 +867,7 @@ public class SynopticService extends RemoteServiceServlet implements
     @Override
     public String exportPng() throws Exception {
         retrieveSessionState();
+        checkNoRunningJob();
 
         // First, export the model to a dot file fileName.
         Calendar now = Calendar.getInstance();
@@ -0,0 +1,83 @@
+package synopticgwt.shared;
+
+import java.io.Serializable;
+
+/**
+ * Represents the progress of a refinement/coarsening job that runs on the
+ * server, which the client polls for while the job runs.
+ */
+public class GWTJobProgress implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int jobID;
+
+    /** Whether the job is coarsening the model (rather than refining it). */
+    private boolean coarsening;
+
+    /** The number of refinement/coarsening rounds completed so far. */
+    private int round;
+
+    /** The number of invariants that the model does not satisfy. */
+    private int numUnsatInvs;
+
+    /** The number of partitions (nodes) in the model. */
+    private int numPartitions;
+
+    /** The number of results (model deltas) that the job produced so far. */
+    private int numResults;
+
+    private boolean done;
+
+    /** The error that stopped the job, or null. */
+    private String error;
+
+    public GWTJobProgress() {
+        // Empty constructor to avoid SerializationException.
+    }
+
+    public GWTJobProgress(int jobID, boolean coarsening, int round,
+            int numUnsatInvs, int numPartitions, int numResults, boolean done,
+            String error) {
+        this.jobID = jobID;
+        this.coarsening = coarsening;
+        this.round = round;
+        this.numUnsatInvs = numUnsatInvs;
+        this.numPartitions = numPartitions;
+        this.numResults = numResults;
+        this.done = done;
+        this.error = error;
+    }
+
+    public int getJobID() {
+        return jobID;
+    }
+
+    public boolean isCoarsening() {
+        return coarsening;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getNumUnsatInvs() {
+        return numUnsatInvs;
+    }
+
+    public int getNumPartitions() {
+        return numPartitions;
+    }
+
+    public int getNumResults() {
+        return numResults;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,250 @@
+package synopticgwt.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.parser.ParseException;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.tests.SynopticTest;
+import synopticgwt.shared.GWTJobProgress;
+
+/**
+ * Tests the refinement/coarsening jobs of a session, by running them on the
+ * test thread.
+ */
+public class SynopticJobTests extends SynopticTest {
+
+    /** A session that only stores attributes. */
+    @SuppressWarnings("deprecation")
+    static class TestSession implements HttpSession {
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(attributes.keySet());
+        }
+
+        @Override
+        public long getCreationTime() {
+            return 0;
+        }
+
+        @Override
+        public String getId() {
+            return "test";
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            return 0;
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return null;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(int interval) {
+            // Nothing to do.
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            return 0;
+        }
+
+        @Override
+        public javax.servlet.http.HttpSessionContext getSessionContext() {
+            return null;
+        }
+
+        @Override
+        public Object getValue(String name) {
+            return getAttribute(name);
+        }
+
+        @Override
+        public String[] getValueNames() {
+            return attributes.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        public void putValue(String name, Object value) {
+            setAttribute(name, value);
+        }
+
+        @Override
+        public void removeValue(String name) {
+            removeAttribute(name);
+        }
+
+        @Override
+        public void invalidate() {
+            attributes.clear();
+        }
+
+        @Override
+        public boolean isNew() {
+            return false;
+        }
+    }
+
+    private TestSession session;
+    private PartitionGraph pGraph;
+
+    @Before
+    @Override
+    public void setUp() throws ParseException {
+        super.setUp();
+        session = new TestSession();
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "c", "d" };
+        try {
+            pGraph = genInitialPartitionGraph(events, genDefParser(),
+                    new ChainWalkingTOInvMiner(), false);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        session.setAttribute("partitionGraph", pGraph);
+    }
+
+    /**
+     * Creates a job of the given kind on the initial refinement state of
+     * pGraph, as SynopticService does.
+     */
+    private SynopticJob newJob(SynopticJob.Kind kind) {
+        Set<ITemporalInvariant> unsatInvs = new LinkedHashSet<ITemporalInvariant>();
+        List<CExamplePath<Partition>> counterExampleTraces = new TemporalInvariantSet(
+                pGraph.getInvariants().getSet()).getAllCounterExamples(pGraph);
+        if (counterExampleTraces != null) {
+            for (CExamplePath<Partition> relPath : counterExampleTraces) {
+                unsatInvs.add(relPath.invariant);
+            }
+        }
+        return new SynopticJob(kind, session, new PerformanceMetrics(),
+                pGraph, 0, unsatInvs, counterExampleTraces);
+    }
+
+    /**
+     * Tests that a job computes the final model, publishes it, and stores its
+     * state back into the session.
+     */
+    @Test
+    public void finalModelTest() {
+        SynopticJob job = newJob(SynopticJob.Kind.GET_FINAL_MODEL);
+        assertFalse(job.isDone());
+        job.run();
+
+        GWTJobProgress progress = job.getProgress();
+        assertTrue(job.isDone());
+        assertNull(progress.getError());
+        // The refined model, and then the coarsened model.
+        assertEquals(2, job.getResults(0).size());
+        assertEquals(1, job.getResults(1).size());
+        assertEquals(0, job.getResults(2).size());
+
+        assertTrue(((Set<?>) session.getAttribute("unsatInvs")).isEmpty());
+        assertNull(session.getAttribute("counterExampleTraces"));
+        assertNull(pGraph.getInvariants().getFirstCounterExample(pGraph));
+    }
+
+    /**
+     * Tests that a job does not store its state into a session whose model
+     * was replaced while the job ran.
+     */
+    @Test
+    public void replacedModelTest() {
+        SynopticJob job = newJob(SynopticJob.Kind.GET_FINAL_MODEL);
+        session.setAttribute("partitionGraph", new Object());
+        job.run();
+
+        assertTrue(job.isDone());
+        assertNull(job.getProgress().getError());
+        assertNull(session.getAttribute("unsatInvs"));
+        assertNull(session.getAttribute("numSplitSteps"));
+    }
+
+    /**
+     * Tests that a job that is cancelled before it starts is done, and does
+     * nothing when it is run afterwards.
+     */
+    @Test
+    public void cancelBeforeStartTest() {
+        SynopticJob job = newJob(SynopticJob.Kind.GET_FINAL_MODEL);
+        int numPartitions = pGraph.getNodes().size();
+        job.cancel();
+
+        assertTrue(job.isDone());
+        assertNotNull(job.getProgress().getError());
+
+        job.run();
+        assertEquals(0, job.getResults(0).size());
+        assertEquals(numPartitions, pGraph.getNodes().size());
+        assertNull(session.getAttribute("unsatInvs"));
+    }
+
+    /**
+     * Tests that the jobs of a session only keep the latest job, and that the
+     * running job is cancelled when the session ends.
+     */
+    @Test
+    public void sessionJobsTest() {
+        SessionJobs jobs = new SessionJobs();
+        SynopticJob first = newJob(SynopticJob.Kind.REFINE_ONE_STEP);
+        jobs.add(first);
+        assertSame(first, jobs.getRunningJob());
+        first.run();
+        assertNull(jobs.getRunningJob());
+        assertSame(first, jobs.get(first.getJobID()));
+
+        SynopticJob second = newJob(SynopticJob.Kind.COARSEN_COMPLETELY);
+        jobs.add(second);
+        assertNull(jobs.get(first.getJobID()));
+        assertSame(second, jobs.get(second.getJobID()));
+        assertSame(second, jobs.getRunningJob());
+
+        jobs.valueUnbound(null);
+        assertTrue(second.isDone());
+        assertNull(jobs.get(second.getJobID()));
+    }
+}